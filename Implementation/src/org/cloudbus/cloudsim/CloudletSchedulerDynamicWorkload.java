@@ -96,6 +96,7 @@ public class CloudletSchedulerDynamicWorkload extends CloudletSchedulerTimeShare
 
 		for (ResCloudlet rgl : cloudletsToFinish) {
 			getCloudletExecList().remove(rgl);
+			invalidateCapacity();
 			cloudletFinish(rgl);
 		}
 
@@ -140,6 +141,7 @@ public class CloudletSchedulerDynamicWorkload extends CloudletSchedulerTimeShare
 		}
 
 		getCloudletExecList().add(rcl);
+		invalidateCapacity();
 		return getEstimatedFinishTime(rcl, getPreviousTime());
 	}
 
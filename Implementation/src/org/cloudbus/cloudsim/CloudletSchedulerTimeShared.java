@@ -8,6 +8,7 @@
 package org.cloudbus.cloudsim;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.cloudbus.cloudsim.core.CloudSim;
@@ -35,6 +36,15 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 	/** The current cp us. */
 	protected int currentCPUs;
 
+	/** The mips share the cached capacity was computed for. */
+	private List<Double> capacityMipsShare;
+
+	/** The cached capacity, valid while the mips share and the exec list are unchanged. */
+	private double capacity;
+
+	/** Whether the cached capacity has to be recomputed. */
+	private boolean capacityStale = true;
+
 	/**
 	 * Creates a new CloudletSchedulerTimeShared object. This method must be invoked before starting
 	 * the actual simulation.
@@ -65,42 +75,36 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 		setCurrentMipsShare(mipsShare);
 		double timeSpam = currentTime - getPreviousTime();
 
-		for (ResCloudlet rcl : getCloudletExecList()) {
-						
-			rcl.updateCloudletFinishedSoFar((long) (getCapacity(mipsShare) * timeSpam * rcl.getNumberOfPes() * Consts.MILLION));
-			//System.out.println(getTotalCurrentAllocatedMipsForCloudlet(rcl, getPreviousTime()));
-			//OLA System.out.println(CloudSim.clock()+ " : Remaining length of tuple ID "+((Tuple)rcl.getCloudlet()).getActualTupleId()+" = "+rcl.getRemainingCloudletLength());
-			
-		}
-
 		if (getCloudletExecList().size() == 0) {
 			setPreviousTime(currentTime);
 			return 0.0;
 		}
 
-		// check finished cloudlets
+		// update progress, finish cloudlets and estimate the finish time of the others in a single pass
+		double capacity = getCapacity(mipsShare);
 		double nextEvent = Double.MAX_VALUE;
-		List<ResCloudlet> toRemove = new ArrayList<ResCloudlet>();
-		for (ResCloudlet rcl : getCloudletExecList()) {
-			long remainingLength = rcl.getRemainingCloudletLength();
-			if (remainingLength == 0) {// finished: remove from the list
-				toRemove.add(rcl);
+		boolean cloudletFinished = false;
+		Iterator<ResCloudlet> iterator = getCloudletExecList().iterator();
+		while (iterator.hasNext()) {
+			ResCloudlet rcl = iterator.next();
+			rcl.updateCloudletFinishedSoFar((long) (capacity * timeSpam * rcl.getNumberOfPes() * Consts.MILLION));
+
+			if (rcl.getRemainingCloudletLength() == 0) {// finished: remove from the list
+				iterator.remove();
+				invalidateCapacity();
 				cloudletFinish(rcl);
-				continue;
+				cloudletFinished = true;
+			} else if (!cloudletFinished) {
+				nextEvent = Math.min(nextEvent, getEstimatedFinishTime(rcl, currentTime, capacity));
 			}
 		}
-		getCloudletExecList().removeAll(toRemove);
 
-		// estimate finish time of cloudlets
-		for (ResCloudlet rcl : getCloudletExecList()) {
-			double estimatedFinishTime = currentTime
-					+ (rcl.getRemainingCloudletLength() / (getCapacity(mipsShare) * rcl.getNumberOfPes()));
-			if (estimatedFinishTime - currentTime < CloudSim.getMinTimeBetweenEvents()) {
-				estimatedFinishTime = currentTime + CloudSim.getMinTimeBetweenEvents();
-			}
-
-			if (estimatedFinishTime < nextEvent) {
-				nextEvent = estimatedFinishTime;
+		// finished cloudlets release their PEs, so the others have to be estimated with the new capacity
+		if (cloudletFinished) {
+			capacity = getCapacity(mipsShare);
+			nextEvent = Double.MAX_VALUE;
+			for (ResCloudlet rcl : getCloudletExecList()) {
+				nextEvent = Math.min(nextEvent, getEstimatedFinishTime(rcl, currentTime, capacity));
 			}
 		}
 
@@ -108,6 +112,18 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 		return nextEvent;
 	}
 
+	/**
+	 * Estimates the finish time of a running cloudlet, no earlier than the minimum time between events.
+	 */
+	private double getEstimatedFinishTime(ResCloudlet rcl, double currentTime, double capacity) {
+		double estimatedFinishTime = currentTime
+				+ (rcl.getRemainingCloudletLength() / (capacity * rcl.getNumberOfPes()));
+		if (estimatedFinishTime - currentTime < CloudSim.getMinTimeBetweenEvents()) {
+			estimatedFinishTime = currentTime + CloudSim.getMinTimeBetweenEvents();
+		}
+		return estimatedFinishTime;
+	}
+
 	/**
 	 * Gets the capacity.
 	 * 
@@ -115,6 +131,10 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 	 * @return the capacity
 	 */
 	protected double getCapacity(List<Double> mipsShare) {
+		if (!capacityStale && mipsShare != null && mipsShare.equals(capacityMipsShare)) {
+			return capacity;
+		}
+
 		double capacity = 0.0;
 		int cpus = 0;
 		for (Double mips : mipsShare) {
@@ -135,9 +155,21 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 		} else {
 			capacity /= currentCPUs;
 		}
+
+		this.capacity = capacity;
+		capacityMipsShare = mipsShare == null ? null : new ArrayList<Double>(mipsShare);
+		capacityStale = false;
 		return capacity;
 	}
 
+	/**
+	 * Forces the capacity to be recomputed on its next use. Must be called whenever cloudlets are added to or
+	 * removed from the exec list.
+	 */
+	protected void invalidateCapacity() {
+		capacityStale = true;
+	}
+
 	/**
 	 * Cancels execution of a cloudlet.
 	 * 
@@ -177,6 +209,7 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 
 		if (found) {
 			ResCloudlet rcl = getCloudletExecList().remove(position);
+			invalidateCapacity();
 			if (rcl.getRemainingCloudletLength() == 0) {
 				cloudletFinish(rcl);
 			} else {
@@ -228,6 +261,7 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 		if (found) {
 			// remove cloudlet from the exec list and put it in the paused list
 			ResCloudlet rcl = getCloudletExecList().remove(position);
+			invalidateCapacity();
 			if (rcl.getRemainingCloudletLength() == 0) {
 				cloudletFinish(rcl);
 			} else {
@@ -279,6 +313,7 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 			ResCloudlet rgl = getCloudletPausedList().remove(position);
 			rgl.setCloudletStatus(Cloudlet.INEXEC);
 			getCloudletExecList().add(rgl);
+			invalidateCapacity();
 
 			// calculate the expected time for cloudlet completion
 			// first: how many PEs do we have?
@@ -311,6 +346,7 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 		}
 
 		getCloudletExecList().add(rcl);
+		invalidateCapacity();
 
 		// use the current capacity to estimate the extra amount of
 		// time to file transferring. It must be added to the cloudlet length
@@ -416,6 +452,7 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 	@Override
 	public Cloudlet migrateCloudlet() {
 		ResCloudlet rgl = getCloudletExecList().remove(0);
+		invalidateCapacity();
 		rgl.finalizeCloudlet();
 		return rgl.getCloudlet();
 	}
@@ -439,6 +476,7 @@ public class CloudletSchedulerTimeShared extends CloudletScheduler {
 	 */
 	protected <T extends ResCloudlet> void setCloudletExecList(List<T> cloudletExecList) {
 		this.cloudletExecList = cloudletExecList;
+		invalidateCapacity();
 	}
 
 	/**
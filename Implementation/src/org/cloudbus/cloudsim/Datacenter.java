@@ -674,10 +674,26 @@ public class Datacenter extends SimEntity {
 	 * @post $none
 	 */
 	protected void processCloudletSubmit(SimEvent ev, boolean ack) {
+		if (ev.getData() instanceof Cloudlet) {
+			processCloudletSubmit((Cloudlet) ev.getData(), ack);
+			return;
+		}
+		updateCloudletProcessing();
+		Log.printLine(getName() + ".processCloudletSubmit(): " + "ClassCastException error.");
+		checkCloudletCompletion();
+	}
+
+	/**
+	 * Processes the submission of a Cloudlet the datacenter already holds, e.g. one unpacked from another event.
+	 * 
+	 * @param cl the Cloudlet
+	 * @param ack an acknowledgement
+	 * @pre cl != null
+	 * @post $none
+	 */
+	protected void processCloudletSubmit(Cloudlet cl, boolean ack) {
 		updateCloudletProcessing();
 		try {
-			// gets the Cloudlet object
-			Cloudlet cl = (Cloudlet) ev.getData();
 			// checks whether this Cloudlet has finished or not
 			if (cl.isFinished()) {
 				String name = CloudSim.getEntityName(cl.getUserId());
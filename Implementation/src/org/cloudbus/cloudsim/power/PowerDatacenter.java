@@ -11,6 +11,7 @@ package org.cloudbus.cloudsim.power;
 import java.util.List;
 import java.util.Map;
 
+import org.cloudbus.cloudsim.Cloudlet;
 import org.cloudbus.cloudsim.Datacenter;
 import org.cloudbus.cloudsim.DatacenterCharacteristics;
 import org.cloudbus.cloudsim.Log;
@@ -262,11 +263,11 @@ public class PowerDatacenter extends Datacenter {
 
 	/*
 	 * (non-Javadoc)
-	 * @see cloudsim.Datacenter#processCloudletSubmit(cloudsim.core.SimEvent, boolean)
+	 * @see cloudsim.Datacenter#processCloudletSubmit(cloudsim.Cloudlet, boolean)
 	 */
 	@Override
-	protected void processCloudletSubmit(SimEvent ev, boolean ack) {
-		super.processCloudletSubmit(ev, ack);
+	protected void processCloudletSubmit(Cloudlet cl, boolean ack) {
+		super.processCloudletSubmit(cl, ack);
 		setCloudletSubmitted(CloudSim.clock());
 	}
 
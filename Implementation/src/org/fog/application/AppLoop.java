@@ -7,11 +7,20 @@ import org.fog.utils.TimeKeeper;
 public class AppLoop {
 	private int loopId;
 	private List<String> modules;
+	/**
+	 * Maximum end-to-end delay of the loop targeted by latency-aware placement, Double.MAX_VALUE if the loop has none
+	 */
+	private double deadline = Double.MAX_VALUE;
 	public AppLoop(List<String> modules){
 		setLoopId(TimeKeeper.getInstance().getUniqueId());
 		setModules(modules);
 	}
 	
+	public AppLoop(List<String> modules, double deadline){
+		this(modules);
+		setDeadline(deadline);
+	}
+	
 	public boolean hasEdge(String src, String dest){
 		for(int i=0;i<modules.size()-1;i++){
 			if(modules.get(i).equals(src) && modules.get(i+1).equals(dest))
@@ -67,4 +76,12 @@ public class AppLoop {
 		this.loopId = loopId;
 	}
 	
+	public double getDeadline() {
+		return deadline;
+	}
+
+	public void setDeadline(double deadline) {
+		this.deadline = deadline;
+	}
+	
 }
@@ -1,10 +1,12 @@
 package org.fog.entities;
 
 import org.fog.application.Application;
+import org.fog.placement.ClusteredMicroservicePlacementLogic;
+import org.fog.placement.ConcurrentPlacementExecutor;
 import org.fog.placement.MicroservicePlacementLogic;
 import org.fog.placement.PlacementLogicOutput;
+import org.fog.utils.MicroservicePlacementConfig;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -81,6 +83,16 @@ public class ControllerComponent {
      */
     public PlacementLogicOutput executeApplicationPlacementLogic(List<PlacementRequest> placementRequests) {
         if (microservicePlacementLogic != null) {
+            if (MicroservicePlacementConfig.ENABLE_PARALLEL_PLACEMENT && placementRequests.size() > 1
+                    && microservicePlacementLogic.getClass() == ClusteredMicroservicePlacementLogic.class) {
+                final ClusteredMicroservicePlacementLogic sequentialLogic = (ClusteredMicroservicePlacementLogic) microservicePlacementLogic;
+                ConcurrentPlacementExecutor executor = new ConcurrentPlacementExecutor(() -> {
+                    ClusteredMicroservicePlacementLogic placementLogic = new ClusteredMicroservicePlacementLogic(sequentialLogic.getFonID());
+                    placementLogic.setPlacementCache(sequentialLogic.getPlacementCache());
+                    return placementLogic;
+                });
+                return executor.run(fogDeviceList, applicationInfo, resourceAvailability, placementRequests, MicroservicePlacementConfig.PLACEMENT_PARALLELISM);
+            }
             PlacementLogicOutput placement = microservicePlacementLogic.run(fogDeviceList, applicationInfo, resourceAvailability, placementRequests);
             return placement;
         }
@@ -97,6 +109,10 @@ public class ControllerComponent {
         return loadBalancer.getDeviceId(destModuleName, serviceDiscoveryInfo);
     }
 
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
     public Application getApplicationPerId(String appID) {
         return applicationInfo.get(appID);
     }
@@ -136,46 +152,3 @@ public class ControllerComponent {
 
 
 }
-
-class ServiceDiscovery {
-    protected Map<String, List<Integer>> serviceDiscoveryInfo = new HashMap<>();
-    int deviceId ;
-
-    public ServiceDiscovery(Integer deviceId) {
-        this.deviceId =deviceId;
-    }
-
-    public void addServiceDIscoveryInfo(String microservice, Integer device) {
-        if (serviceDiscoveryInfo.containsKey(microservice)) {
-            List<Integer> deviceList = serviceDiscoveryInfo.get(microservice);
-            deviceList.add(device);
-            serviceDiscoveryInfo.put(microservice, deviceList);
-        } else {
-            List<Integer> deviceList = new ArrayList<>();
-            deviceList.add(device);
-            serviceDiscoveryInfo.put(microservice, deviceList);
-        }
-    }
-
-    public Map<String, List<Integer>> getServiceDiscoveryInfo() {
-        return serviceDiscoveryInfo;
-    }
-
-    public void removeServiceDIscoveryInfo(String microserviceName, Integer deviceID) {
-        if (serviceDiscoveryInfo.containsKey(microserviceName) && serviceDiscoveryInfo.get(microserviceName).contains(new Integer(deviceID))) {
-            System.out.println("Service Discovery Info REMOVED (device:" + this.deviceId + ") for microservice :" + microserviceName + " , destDevice : " + deviceID);
-            serviceDiscoveryInfo.get(microserviceName).remove(new Integer(deviceID));
-            if (serviceDiscoveryInfo.get(microserviceName).size() == 0)
-                serviceDiscoveryInfo.remove(microserviceName);
-        }
-    }
-}
-
-
-
-
-
-
-
-
-
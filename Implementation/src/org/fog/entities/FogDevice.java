@@ -17,6 +17,10 @@ import org.fog.application.AppModule;
 import org.fog.application.Application;
 import org.fog.mobilitydata.Clustering;
 import org.fog.policy.AppModuleAllocationPolicy;
+import org.fog.policy.UplinkAggregationPolicy;
+import org.fog.scheduler.CloudletFinishIndex;
+import org.fog.scheduler.DownlinkScheduler;
+import org.fog.scheduler.IncrementalMipsAllocator;
 import org.fog.scheduler.StreamOperatorScheduler;
 import org.fog.utils.*;
 import org.json.simple.JSONObject;
@@ -85,6 +89,57 @@ public class FogDevice extends PowerDatacenter {
     protected boolean selfCluster = false; // IF there is only one fog device in one cluster without any sibling
     protected Map<Integer, Double> clusterMembersToLatencyMap; // latency to other cluster members
 
+    /**
+     * Applies busy/idle transitions of the modules to the MIPS allocation of the host, created on first use.
+     * Null if the host is not supported, in which case every update re-allocates all modules.
+     */
+    protected IncrementalMipsAllocator mipsAllocator;
+
+    /**
+     * Modules of the host keyed by the estimated finish time of their earliest tuple, created on first use
+     */
+    protected CloudletFinishIndex cloudletFinishIndex;
+
+    /**
+     * Number of tuples received from each sender in the current acknowledgement window (coalesced acknowledgements)
+     */
+    protected Map<Integer, Integer> pendingTupleAcks = new HashMap<Integer, Integer>();
+
+    /**
+     * Per child queues of the southbound link sharing the downlink capacity (fair queueing downlink model),
+     * created on first use
+     */
+    protected DownlinkScheduler downlinkScheduler;
+
+    /**
+     * Identifies the pending completion event of the downlink scheduler, events carrying an older value are stale
+     */
+    protected int downlinkCompletionEvent = 0;
+    protected double downlinkCompletionTime = Double.MAX_VALUE;
+
+    /**
+     * Packs northbound tuples into batches before they are sent to the parent, null if every tuple is sent on its own
+     */
+    protected UplinkAggregationPolicy uplinkAggregationPolicy;
+
+    /**
+     * Northbound tuples waiting for their batch to be sent, and the sum of their batched sizes
+     */
+    protected List<Tuple> uplinkBatch = new ArrayList<Tuple>();
+    protected double uplinkBatchSize = 0;
+
+    /**
+     * Identifies the timeout event of the current batch, events carrying an older value belong to sent batches
+     */
+    protected int uplinkBatchEvent = 0;
+
+    /**
+     * Migration chunks waiting for the north and south links when they are not queued with the tuples
+     * (Config.MIGRATION_PRIORITY background or urgent)
+     */
+    protected Queue<Tuple> northMigrationQueue = new LinkedList<Tuple>();
+    protected Queue<Pair<Tuple, Integer>> southMigrationQueue = new LinkedList<Pair<Tuple, Integer>>();
+
     protected Queue<Pair<Tuple, Integer>> clusterTupleQueue;// tuple and destination cluster device ID
     protected boolean isClusterLinkBusy; //Flag denoting whether the link connecting to cluster from this FogDevice is busy
     protected double clusterLinkBandwidth;
@@ -248,7 +303,12 @@ public class FogDevice extends PowerDatacenter {
     protected void processOtherEvent(SimEvent ev) {
         switch (ev.getTag()) {
             case FogEvents.TUPLE_ARRIVAL:
-                processTupleArrival(ev);
+                if (ev.getData() instanceof TupleBatch)
+                    processTupleBatchArrival(ev);
+                else if (ev.getData() instanceof MigrationChunk)
+                    processMigrationChunkArrival(ev);
+                else
+                    processTupleArrival(ev);
                 break;
             case FogEvents.LAUNCH_MODULE:
                 processModuleArrival(ev);
@@ -269,7 +329,10 @@ public class FogDevice extends PowerDatacenter {
                 updateNorthTupleQueue();
                 break;
             case FogEvents.UPDATE_SOUTH_TUPLE_QUEUE:
-                updateSouthTupleQueue();
+                if (ev.getData() instanceof Integer)
+                    processDownlinkCompletion((Integer) ev.getData());
+                else
+                    updateSouthTupleQueue();
                 break;
             case FogEvents.ACTIVE_APP_UPDATE:
                 updateActiveApplications(ev);
@@ -289,6 +352,12 @@ public class FogDevice extends PowerDatacenter {
             case FogEvents.RELEASE_MODULE:
                 processModuleTermination(ev);
                 break;
+            case FogEvents.START_MIGRATION_TRANSFER:
+                startMigrationTransfer((MigrationTransfer) ev.getData());
+                break;
+            case FogEvents.MIGRATION_TRANSFER_COMPLETE:
+                releaseMigratedModules((MigrationTransfer) ev.getData());
+                break;
             case FogEvents.RESOURCE_MGMT:
                 manageResources(ev);
                 break;
@@ -299,6 +368,12 @@ public class FogDevice extends PowerDatacenter {
                 //This message is received by the devices to start their clustering
                 processClustering(this.getParentId(), this.getId(), ev);
                 break;
+            case FogEvents.FLUSH_UPLINK_BATCH:
+                processUplinkBatchTimeout((Integer) ev.getData());
+                break;
+            case FogEvents.FLUSH_TUPLE_ACKS:
+                flushTupleAcks(ev);
+                break;
             default:
                 break;
         }
@@ -427,7 +502,9 @@ public class FogDevice extends PowerDatacenter {
         for (PowerHost host : this.<PowerHost>getHostList()) {
             Log.printLine();
 
-            double time = host.updateVmsProcessing(currentTime); // inform VMs to update processing
+            IncrementalMipsAllocator allocator = host == getHost() ? getMipsAllocator() : null;
+            double time = allocator != null ? allocator.updateVmsProcessing(currentTime)
+                    : host.updateVmsProcessing(currentTime); // inform VMs to update processing
             if (time < minTime) {
                 minTime = time;
             }
@@ -477,6 +554,8 @@ public class FogDevice extends PowerDatacenter {
 
         setPower(getPower() + timeFrameDatacenterEnergy);
 
+        if (mipsAllocator == null)
+            getCloudletFinishIndex().scanHost();
         checkCloudletCompletion();
 
         /** Remove completed VMs **/
@@ -500,33 +579,38 @@ public class FogDevice extends PowerDatacenter {
 
     protected void checkCloudletCompletion() {
         boolean cloudletCompleted = false;
-        List<? extends Host> list = getVmAllocationPolicy().getHostList();
-        for (int i = 0; i < list.size(); i++) {
-            Host host = list.get(i);
-            for (Vm vm : host.getVmList()) {
-                while (vm.getCloudletScheduler().isFinishedCloudlets()) {
-                    Cloudlet cl = vm.getCloudletScheduler().getNextFinishedCloudlet();
-                    if (cl != null) {
-
-                        cloudletCompleted = true;
-                        Tuple tuple = (Tuple) cl;
-                        TimeKeeper.getInstance().tupleEndedExecution(tuple);
-                        Application application = getApplicationMap().get(tuple.getAppId());
-                        Logger.debug(getName(), "Completed execution of tuple " + tuple.getCloudletId() + "on " + tuple.getDestModuleName());
-                        List<Tuple> resultantTuples = application.getResultantTuples(tuple.getDestModuleName(), tuple, getId(), vm.getId());
-                        for (Tuple resTuple : resultantTuples) {
-                            resTuple.setModuleCopyMap(new HashMap<String, Integer>(tuple.getModuleCopyMap()));
-                            resTuple.getModuleCopyMap().put(((AppModule) vm).getName(), vm.getId());
-                            updateTimingsOnSending(resTuple);
-                            sendToSelf(resTuple);
-                        }
-                        sendNow(cl.getUserId(), CloudSimTags.CLOUDLET_RETURN, cl);
+        for (Vm vm : getCloudletFinishIndex().pollVmsWithFinishedCloudlets()) {
+            while (vm.getCloudletScheduler().isFinishedCloudlets()) {
+                Cloudlet cl = vm.getCloudletScheduler().getNextFinishedCloudlet();
+                if (cl != null) {
+
+                    cloudletCompleted = true;
+                    Tuple tuple = (Tuple) cl;
+                    TimeKeeper.getInstance().tupleEndedExecution(tuple);
+                    tupleCompleted(tuple);
+                    Application application = getApplicationMap().get(tuple.getAppId());
+                    Logger.debug(getName(), "Completed execution of tuple " + tuple.getCloudletId() + "on " + tuple.getDestModuleName());
+                    List<Tuple> resultantTuples = application.getResultantTuples(tuple.getDestModuleName(), tuple, getId(), vm.getId());
+                    for (Tuple resTuple : resultantTuples) {
+                        resTuple.setModuleCopyMap(new HashMap<String, Integer>(tuple.getModuleCopyMap()));
+                        resTuple.getModuleCopyMap().put(((AppModule) vm).getName(), vm.getId());
+                        updateTimingsOnSending(resTuple);
+                        sendToSelf(resTuple);
                     }
+                    sendNow(cl.getUserId(), CloudSimTags.CLOUDLET_RETURN, cl);
+                    if (getMipsAllocator() != null)
+                        getMipsAllocator().markChanged(vm);
                 }
             }
         }
         if (cloudletCompleted)
-            updateAllocatedMips(null);
+            updateAllocatedMips((AppModule) null);
+    }
+
+    /**
+     * Called once the execution of the tuple by its module is completed, or once the tuple is dropped on its way.
+     */
+    protected void tupleCompleted(Tuple tuple) {
     }
 
     protected void updateTimingsOnSending(Tuple resTuple) {
@@ -568,24 +652,35 @@ public class FogDevice extends PowerDatacenter {
     }
 
     protected void updateAllocatedMips(String incomingOperator) {
+        updateAllocatedMips(incomingOperator != null ? getModuleByName(incomingOperator) : null);
+    }
+
+    /**
+     * Updates the MIPS allocated to the modules of the host after tuples were submitted to or collected from them.
+     * Busy modules (running tuples or about to receive one) request the whole host, idle ones nothing.
+     *
+     * @param incomingOperator module about to receive a tuple, may be null
+     */
+    protected void updateAllocatedMips(AppModule incomingOperator) {
+        IncrementalMipsAllocator allocator = getMipsAllocator();
+        if (allocator == null) {
+            reallocateMipsForAllVms(incomingOperator);
+            return;
+        }
+        allocator.update(incomingOperator, CloudSim.clock());
+        double totalMipsAllocated = allocator.getAllocatedMips();
+        if (Math.min(1, totalMipsAllocated / getHost().getTotalMips()) != lastUtilization)
+            accountEnergyConsumption(totalMipsAllocated);
+    }
+
+    private void reallocateMipsForAllVms(AppModule incomingOperator) {
         getHost().getVmScheduler().deallocatePesForAllVms();
         for (final Vm vm : getHost().getVmList()) {
-            if (vm.getCloudletScheduler().runningCloudlets() > 0 || ((AppModule) vm).getName().equals(incomingOperator)) {
-                getHost().getVmScheduler().allocatePesForVm(vm, new ArrayList<Double>() {
-                    protected static final long serialVersionUID = 1L;
-
-                    {
-                        add((double) getHost().getTotalMips());
-                    }
-                });
+            if (vm.getCloudletScheduler().runningCloudlets() > 0
+                    || incomingOperator != null && ((AppModule) vm).getName().equals(incomingOperator.getName())) {
+                getHost().getVmScheduler().allocatePesForVm(vm, Collections.singletonList((double) getHost().getTotalMips()));
             } else {
-                getHost().getVmScheduler().allocatePesForVm(vm, new ArrayList<Double>() {
-                    protected static final long serialVersionUID = 1L;
-
-                    {
-                        add(0.0);
-                    }
-                });
+                getHost().getVmScheduler().allocatePesForVm(vm, Collections.singletonList(0.0));
             }
         }
 
@@ -593,15 +688,52 @@ public class FogDevice extends PowerDatacenter {
 
     }
 
+    /**
+     * Grants the whole host to the first module on tuple arrival, before the tuple is routed to its module.
+     */
+    protected void allocateMipsOnTupleArrival() {
+        if (getHost().getVmList().size() > 0 && CloudSim.clock() > 0) {
+            final AppModule operator = (AppModule) getHost().getVmList().get(0);
+            IncrementalMipsAllocator allocator = getMipsAllocator();
+            if (allocator != null) {
+                allocator.requestFullShare(operator);
+            } else {
+                getHost().getVmScheduler().deallocatePesForVm(operator);
+                getHost().getVmScheduler().allocatePesForVm(operator, Collections.singletonList((double) getHost().getTotalMips()));
+            }
+        }
+    }
+
+    protected IncrementalMipsAllocator getMipsAllocator() {
+        if (mipsAllocator == null && getHost() != null && IncrementalMipsAllocator.supports(getHost()))
+            mipsAllocator = new IncrementalMipsAllocator(getHost(), getCloudletFinishIndex());
+        return mipsAllocator;
+    }
+
+    protected CloudletFinishIndex getCloudletFinishIndex() {
+        if (cloudletFinishIndex == null)
+            cloudletFinishIndex = new CloudletFinishIndex(getHost());
+        return cloudletFinishIndex;
+    }
+
     private void updateEnergyConsumption() {
         double totalMipsAllocated = 0;
         for (final Vm vm : getHost().getVmList()) {
             AppModule operator = (AppModule) vm;
-            operator.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(operator).getVmScheduler()
+            getCloudletFinishIndex().process(operator, CloudSim.clock(), getVmAllocationPolicy().getHost(operator).getVmScheduler()
                     .getAllocatedMipsForVm(operator));
             totalMipsAllocated += getHost().getTotalAllocatedMipsForVm(vm);
         }
+        if (mipsAllocator != null)
+            mipsAllocator.processedAllUntil(CloudSim.clock());
 
+        accountEnergyConsumption(totalMipsAllocated);
+    }
+
+    /**
+     * Charges energy and cost for the utilization since the last update, then records the new utilization.
+     */
+    private void accountEnergyConsumption(double totalMipsAllocated) {
         double timeNow = CloudSim.clock();
         double currentEnergyConsumption = getEnergyConsumption();
         double newEnergyConsumption = currentEnergyConsumption + (timeNow - lastUtilizationUpdateTime) * getHost().getPowerModel().getPower(lastUtilization);
@@ -673,8 +805,15 @@ public class FogDevice extends PowerDatacenter {
     int numClients = 0;
 
     protected void processTupleArrival(SimEvent ev) {
-        Tuple tuple = (Tuple) ev.getData();
+        processTupleArrival((Tuple) ev.getData(), ev.getSource());
+    }
 
+    /**
+     * Processes a tuple received from the given entity, either in its own event or unpacked from a batch.
+     *
+     * @param sourceId entity the tuple was received from, this device for the tuples of a batch
+     */
+    protected void processTupleArrival(Tuple tuple, int sourceId) {
         if (getName().equals("cloud")) {
             updateCloudTraffic();
         }
@@ -683,11 +822,11 @@ public class FogDevice extends PowerDatacenter {
 			System.out.println(++numClients);
 		}*/
         Logger.debug(getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
-                CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+                CloudSim.getEntityName(sourceId) + "|Dest : " + getName());
         
         // Add debug logging for tuple routing
         System.out.println("FogDevice " + getName() + " received tuple " + tuple.getTupleType() + " from " + 
-                          CloudSim.getEntityName(ev.getSource()) + " at time " + CloudSim.clock());
+                          CloudSim.getEntityName(sourceId) + " at time " + CloudSim.clock());
         System.out.println("Tuple destModuleName: " + tuple.getDestModuleName() + ", appId: " + tuple.getAppId());
         System.out.println("appToModulesMap for " + tuple.getAppId() + ": " + appToModulesMap.get(tuple.getAppId()));
 		
@@ -695,7 +834,7 @@ public class FogDevice extends PowerDatacenter {
 			System.out.println(CloudSim.clock()+" "+getName()+" Received tuple "+tuple.getCloudletId()+" with tupleType = "+tuple.getTupleType()+"\t| Source : "+
 		CloudSim.getEntityName(ev.getSource())+"|Dest : "+CloudSim.getEntityName(ev.getDestination()));*/
 
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        acknowledgeTuple(sourceId);
 
         if (FogUtils.appIdToGeoCoverageMap.containsKey(tuple.getAppId())) {
         }
@@ -705,19 +844,7 @@ public class FogDevice extends PowerDatacenter {
             return;
         }
 
-        if (getHost().getVmList().size() > 0) {
-            final AppModule operator = (AppModule) getHost().getVmList().get(0);
-            if (CloudSim.clock() > 0) {
-                getHost().getVmScheduler().deallocatePesForVm(operator);
-                getHost().getVmScheduler().allocatePesForVm(operator, new ArrayList<Double>() {
-                    protected static final long serialVersionUID = 1L;
-
-                    {
-                        add((double) getHost().getTotalMips());
-                    }
-                });
-            }
-        }
+        allocateMipsOnTupleArrival();
 
 
         if (getName().equals("cloud") && tuple.getDestModuleName() == null) {
@@ -746,7 +873,7 @@ public class FogDevice extends PowerDatacenter {
                 updateTimingsOnReceipt(tuple);
 
                 System.out.println("FogDevice " + getName() + ": Executing tuple for module " + tuple.getDestModuleName());
-                executeTuple(ev, tuple.getDestModuleName());
+                executeTuple(tuple, tuple.getDestModuleName());
             } else if (tuple.getDestModuleName() != null) {
                 if (tuple.getDirection() == Tuple.UP)
                     sendUp(tuple);
@@ -794,12 +921,48 @@ public class FogDevice extends PowerDatacenter {
     }
 
     protected void processSensorJoining(SimEvent ev) {
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        acknowledgeTuple(ev.getSource());
+    }
+
+    /**
+     * Acknowledges a tuple received from the sender according to Config.TUPLE_ACK_POLICY. The TUPLE_ACK carries the
+     * number of tuples it acknowledges.
+     *
+     * @param senderId entity the tuple was received from, tuples the device hands to itself are not acknowledged
+     */
+    protected void acknowledgeTuple(int senderId) {
+        if (senderId == getId())
+            return;
+        TupleAckMonitor.acknowledgingTuple();
+        if (Config.TUPLE_ACK_POLICY.equals(Config.ACK_NONE))
+            return;
+        if (Config.TUPLE_ACK_POLICY.equals(Config.ACK_COALESCED)) {
+            Integer pending = pendingTupleAcks.get(senderId);
+            if (pending == null) {
+                pendingTupleAcks.put(senderId, 1);
+                send(getId(), Config.TUPLE_ACK_WINDOW, FogEvents.FLUSH_TUPLE_ACKS, senderId);
+                TupleAckMonitor.schedulingAckEvents(2);
+            } else {
+                pendingTupleAcks.put(senderId, pending + 1);
+            }
+        } else {
+            send(senderId, CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK, 1);
+            TupleAckMonitor.schedulingAckEvents(1);
+        }
+    }
+
+    /**
+     * Sends one cumulative TUPLE_ACK for the tuples received from a sender during the acknowledgement window.
+     */
+    protected void flushTupleAcks(SimEvent ev) {
+        int senderId = (int) ev.getData();
+        Integer pending = pendingTupleAcks.remove(senderId);
+        if (pending != null)
+            send(senderId, CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK, pending);
     }
 
-    protected void executeTuple(SimEvent ev, String moduleName) {
+    protected void executeTuple(Tuple tuple, String moduleName) {
         Logger.debug(getName(), "Executing tuple on module " + moduleName);
-        Tuple tuple = (Tuple) ev.getData();
 
         AppModule module = getModuleByName(moduleName);
 
@@ -818,9 +981,9 @@ public class FogDevice extends PowerDatacenter {
         }
 
         TimeKeeper.getInstance().tupleStartedExecution(tuple);
-        updateAllocatedMips(moduleName);
-        processCloudletSubmit(ev, false);
-        updateAllocatedMips(moduleName);
+        updateAllocatedMips(module);
+        processCloudletSubmit(tuple, false);
+        updateAllocatedMips(module);
 		/*for(Vm vm : getHost().getVmList()){
 			Logger.error(getName(), "MIPS allocated to "+((AppModule)vm).getName()+" = "+getHost().getTotalAllocatedMipsForVm(vm));
 		}*/
@@ -840,7 +1003,7 @@ public class FogDevice extends PowerDatacenter {
 
         initializePeriodicTuples(module);
 
-        module.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(module).getVmScheduler()
+        getCloudletFinishIndex().process(module, CloudSim.clock(), getVmAllocationPolicy().getHost(module).getVmScheduler()
                 .getAllocatedMipsForVm(module));
 
     }
@@ -864,9 +1027,13 @@ public class FogDevice extends PowerDatacenter {
 
 
     protected void updateNorthTupleQueue() {
-        if (!getNorthTupleQueue().isEmpty()) {
+        if (Config.MIGRATION_PRIORITY.equals(Config.MIGRATION_PRIORITY_URGENT) && !northMigrationQueue.isEmpty()) {
+            sendUpFreeLink(northMigrationQueue.poll());
+        } else if (!getNorthTupleQueue().isEmpty()) {
             Tuple tuple = getNorthTupleQueue().poll();
             sendUpFreeLink(tuple);
+        } else if (!northMigrationQueue.isEmpty()) {
+            sendUpFreeLink(northMigrationQueue.poll());
         } else {
             setNorthLinkBusy(false);
         }
@@ -881,6 +1048,50 @@ public class FogDevice extends PowerDatacenter {
     }
 
     protected void sendUp(Tuple tuple) {
+        if (parentId > 0) {
+            if (getUplinkAggregationPolicy() != null && getUplinkAggregationPolicy().canAggregate(tuple)) {
+                addToUplinkBatch(tuple);
+            } else if (!isNorthLinkBusy()) {
+                sendUpFreeLink(tuple);
+            } else {
+                northTupleQueue.add(tuple);
+            }
+        } else {
+            tupleCompleted(tuple);
+        }
+    }
+
+    /**
+     * Adds a northbound tuple to the current batch. The first tuple of a batch starts its latency budget, a full
+     * batch is sent right away.
+     */
+    protected void addToUplinkBatch(Tuple tuple) {
+        if (uplinkBatch.isEmpty())
+            send(getId(), getUplinkAggregationPolicy().getLatencyBudget(), FogEvents.FLUSH_UPLINK_BATCH, uplinkBatchEvent);
+        uplinkBatch.add(tuple);
+        uplinkBatchSize += getUplinkAggregationPolicy().getBatchedSize(tuple);
+        if (getUplinkAggregationPolicy().isBatchFull(uplinkBatch, uplinkBatchSize))
+            flushUplinkBatch();
+    }
+
+    protected void processUplinkBatchTimeout(int batchEvent) {
+        if (batchEvent == uplinkBatchEvent && !uplinkBatch.isEmpty())
+            flushUplinkBatch();
+    }
+
+    /**
+     * Sends the current batch to the parent as a single tuple. A batch of one uncompressed tuple is sent as the tuple
+     * itself.
+     */
+    protected void flushUplinkBatch() {
+        Tuple tuple;
+        if (uplinkBatch.size() == 1 && uplinkBatchSize == uplinkBatch.get(0).getCloudletFileSize())
+            tuple = uplinkBatch.get(0);
+        else
+            tuple = new TupleBatch(uplinkBatch, (long) Math.ceil(uplinkBatchSize));
+        uplinkBatch = new ArrayList<Tuple>();
+        uplinkBatchSize = 0;
+        uplinkBatchEvent++;
         if (parentId > 0) {
             if (!isNorthLinkBusy()) {
                 sendUpFreeLink(tuple);
@@ -890,10 +1101,36 @@ public class FogDevice extends PowerDatacenter {
         }
     }
 
+    /**
+     * Unpacks a batch received from a child. The batch is acknowledged as one tuple and every packed tuple is
+     * processed as if it had arrived on its own.
+     */
+    protected void processTupleBatchArrival(SimEvent ev) {
+        TupleBatch batch = (TupleBatch) ev.getData();
+        acknowledgeTuple(ev.getSource());
+        // the batch is acknowledged as a whole, the tuples are handed to the arrival logic as sent by this device
+        for (Tuple tuple : batch.getTuples())
+            processTupleArrival(tuple, getId());
+    }
+
+    public UplinkAggregationPolicy getUplinkAggregationPolicy() {
+        return uplinkAggregationPolicy;
+    }
+
+    public void setUplinkAggregationPolicy(UplinkAggregationPolicy uplinkAggregationPolicy) {
+        this.uplinkAggregationPolicy = uplinkAggregationPolicy;
+    }
+
 
     protected void updateSouthTupleQueue() {
-        if (!getSouthTupleQueue().isEmpty()) {
-            Pair<Tuple, Integer> pair = getSouthTupleQueue().poll();
+        Pair<Tuple, Integer> pair;
+        if (Config.MIGRATION_PRIORITY.equals(Config.MIGRATION_PRIORITY_URGENT) && !southMigrationQueue.isEmpty())
+            pair = southMigrationQueue.poll();
+        else if (!getSouthTupleQueue().isEmpty())
+            pair = getSouthTupleQueue().poll();
+        else
+            pair = southMigrationQueue.poll();
+        if (pair != null) {
             sendDownFreeLink(pair.getFirst(), pair.getSecond());
         } else {
             setSouthLinkBusy(false);
@@ -905,22 +1142,191 @@ public class FogDevice extends PowerDatacenter {
         //Logger.debug(getName(), "Sending tuple with tupleType = "+tuple.getTupleType()+" DOWN");
         setSouthLinkBusy(true);
         //System.out.println(getName()+" Sending tuple with tupleType = "+tuple.getTupleType()+" to "+childId);
-        double latency = getChildToLatencyMap().get(childId);
         send(getId(), networkDelay, FogEvents.UPDATE_SOUTH_TUPLE_QUEUE);
-        send(childId, networkDelay + latency, FogEvents.TUPLE_ARRIVAL, tuple);
+        sendToChild(tuple, childId, networkDelay);
+    }
+
+    /**
+     * Delivers a tuple to a child once its transmission on the southbound link is over.
+     *
+     * @param transmissionDelay time left until the tuple is completely sent
+     */
+    protected void sendToChild(Tuple tuple, int childId, double transmissionDelay) {
+        double latency = getChildToLatencyMap().get(childId);
+        send(childId, transmissionDelay + latency, FogEvents.TUPLE_ARRIVAL, tuple);
         NetworkUsageMonitor.sendingTuple(latency, tuple.getCloudletFileSize());
     }
 
     protected void sendDown(Tuple tuple, int childId) {
         if (getChildrenIds().contains(childId)) {
-            if (!isSouthLinkBusy()) {
+            if (Config.DOWNLINK_MODEL.equals(Config.DOWNLINK_FAIR_QUEUEING)) {
+                getDownlinkScheduler().enqueue(tuple, childId, Config.getDownlinkPriority(tuple.getTupleType()), CloudSim.clock());
+                setSouthLinkBusy(true);
+                scheduleDownlinkCompletion();
+            } else if (!isSouthLinkBusy()) {
                 sendDownFreeLink(tuple, childId);
             } else {
                 southTupleQueue.add(new Pair<Tuple, Integer>(tuple, childId));
             }
+        } else {
+            // the child moved to another parent
+            tupleCompleted(tuple);
         }
     }
 
+    /**
+     * Sends the tuples whose transmission is over to their child and schedules the next completion.
+     * Stale completion events, superseded by an earlier completion, are ignored.
+     */
+    protected void processDownlinkCompletion(int completionEvent) {
+        if (completionEvent != downlinkCompletionEvent)
+            return;
+        downlinkCompletionTime = Double.MAX_VALUE;
+        for (Pair<Tuple, Integer> pair : getDownlinkScheduler().pollCompleted(CloudSim.clock()))
+            sendToChild(pair.getFirst(), pair.getSecond(), 0);
+        setSouthLinkBusy(!getDownlinkScheduler().isIdle());
+        scheduleDownlinkCompletion();
+    }
+
+    /**
+     * Keeps a single completion event pending for the downlink scheduler. A new event is only scheduled if the next
+     * completion moved earlier, a completion moved later is handled when the pending event fires.
+     */
+    protected void scheduleDownlinkCompletion() {
+        double completionTime = getDownlinkScheduler().getNextCompletionTime(CloudSim.clock());
+        if (completionTime >= downlinkCompletionTime || completionTime == Double.MAX_VALUE)
+            return;
+        downlinkCompletionEvent++;
+        downlinkCompletionTime = completionTime;
+        send(getId(), completionTime - CloudSim.clock(), FogEvents.UPDATE_SOUTH_TUPLE_QUEUE, downlinkCompletionEvent);
+    }
+
+    public DownlinkScheduler getDownlinkScheduler() {
+        if (downlinkScheduler == null)
+            downlinkScheduler = new DownlinkScheduler(getDownlinkBandwidth());
+        return downlinkScheduler;
+    }
+
+    /**
+     * Sets the share of the downlink capacity given to a child relative to the other children (fair queueing
+     * downlink model).
+     */
+    public void setChildLinkWeight(int childId, double weight) {
+        getDownlinkScheduler().setChildWeight(childId, weight, CloudSim.clock());
+        if (!getDownlinkScheduler().isIdle())
+            rescheduleDownlinkCompletion();
+    }
+
+    private void rescheduleDownlinkCompletion() {
+        downlinkCompletionTime = Double.MAX_VALUE;
+        downlinkCompletionEvent++;
+        scheduleDownlinkCompletion();
+    }
+
+
+    /**
+     * Splits the state of the modules into chunks of Config.MIGRATION_CHUNK_SIZE and sends them to the next device of
+     * the route.
+     */
+    protected void startMigrationTransfer(MigrationTransfer transfer) {
+        long chunkSize = Config.MIGRATION_CHUNK_SIZE > 0 ? Config.MIGRATION_CHUNK_SIZE : Math.max(1, transfer.getSize());
+        int chunkCount = (int) Math.max(1, (transfer.getSize() + chunkSize - 1) / chunkSize);
+        transfer.start(CloudSim.clock(), chunkCount);
+        for (String moduleName : getModuleNames(transfer))
+            System.out.println(getName() + " is sending " + moduleName);
+        if (transfer.getRoute().size() == 1) {
+            completeMigrationTransfer(transfer);
+            return;
+        }
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            long size = Math.max(1, Math.min(chunkSize, transfer.getSize() - chunk * chunkSize));
+            forwardMigrationChunk(new MigrationChunk(transfer, size));
+        }
+    }
+
+    private static List<String> getModuleNames(MigrationTransfer transfer) {
+        List<String> moduleNames = new ArrayList<String>();
+        for (AppModule module : transfer.getModules())
+            moduleNames.add(module.getName());
+        return moduleNames;
+    }
+
+    /**
+     * Forwards a migration chunk received from the previous device of its route, the transfer is complete once its
+     * last chunk reaches the destination. The chunk is acknowledged as a tuple.
+     */
+    protected void processMigrationChunkArrival(SimEvent ev) {
+        MigrationChunk chunk = (MigrationChunk) ev.getData();
+        acknowledgeTuple(ev.getSource());
+        if (!chunk.isAtDestination())
+            forwardMigrationChunk(chunk);
+        else if (chunk.getTransfer().chunkArrived())
+            completeMigrationTransfer(chunk.getTransfer());
+    }
+
+    /**
+     * Queues a migration chunk on the link to the next device of its route, with the priority of
+     * Config.MIGRATION_PRIORITY relative to the tuples. Chunks bypass the uplink aggregation stage.
+     */
+    protected void forwardMigrationChunk(MigrationChunk chunk) {
+        int nextDeviceId = chunk.advance();
+        boolean shared = Config.MIGRATION_PRIORITY.equals(Config.MIGRATION_PRIORITY_SHARED);
+        if (nextDeviceId == getParentId()) {
+            if (!isNorthLinkBusy())
+                sendUpFreeLink(chunk);
+            else if (shared)
+                northTupleQueue.add(chunk);
+            else
+                northMigrationQueue.add(chunk);
+        } else if (getChildrenIds().contains(nextDeviceId)) {
+            if (Config.DOWNLINK_MODEL.equals(Config.DOWNLINK_FAIR_QUEUEING)) {
+                getDownlinkScheduler().enqueue(chunk, nextDeviceId, Config.getMigrationDownlinkPriority(), CloudSim.clock());
+                setSouthLinkBusy(true);
+                scheduleDownlinkCompletion();
+            } else if (!isSouthLinkBusy()) {
+                sendDownFreeLink(chunk, nextDeviceId);
+            } else if (shared) {
+                southTupleQueue.add(new Pair<Tuple, Integer>(chunk, nextDeviceId));
+            } else {
+                southMigrationQueue.add(new Pair<Tuple, Integer>(chunk, nextDeviceId));
+            }
+        } else if (getClusterMembers().contains(nextDeviceId)) {
+            sendToCluster(chunk, nextDeviceId);
+        } else {
+            Logger.error("Migration routing error", getName() + " has no link to device " + nextDeviceId + " for the migration of " + getModuleNames(chunk.getTransfer()));
+        }
+    }
+
+    /**
+     * Launches the transferred modules, releases them on the source and notifies the controller, if any. The
+     * migration delay is the time from the start of the transfer.
+     */
+    protected void completeMigrationTransfer(MigrationTransfer transfer) {
+        MigrationDelayMonitor.setMigrationDelay(CloudSim.clock() - transfer.getStartTime());
+        // the modules run on the source until they run on the destination
+        for (AppModule module : transfer.getModules())
+            ModuleMigrationMonitor.moduleMigrated(module.getName(), 0, CloudSim.clock() - transfer.getStartTime());
+        for (int i = 0; i < transfer.getModules().size(); i++)
+            launchMigratedModule(transfer.getModules().get(i), transfer.getApplications().get(i));
+        sendNow(transfer.getSourceId(), FogEvents.MIGRATION_TRANSFER_COMPLETE, transfer);
+        if (transfer.getControllerId() != MigrationTransfer.NO_CONTROLLER)
+            sendNow(transfer.getControllerId(), FogEvents.MIGRATION_TRANSFER_COMPLETE, transfer);
+    }
+
+    protected void releaseMigratedModules(MigrationTransfer transfer) {
+        for (AppModule module : transfer.getModules())
+            releaseMigratedModule(module);
+    }
+
+    protected void launchMigratedModule(AppModule module, Application application) {
+        System.out.println(getName() + " is receiving " + module.getName());
+        sendNow(getId(), FogEvents.APP_SUBMIT, application);
+        sendNow(getId(), FogEvents.LAUNCH_MODULE, module);
+    }
+
+    protected void releaseMigratedModule(AppModule module) {
+        sendNow(getId(), FogEvents.RELEASE_MODULE, module);
+    }
 
     protected void sendToSelf(Tuple tuple) {
         send(getId(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ARRIVAL, tuple);
@@ -1032,6 +1438,11 @@ public class FogDevice extends PowerDatacenter {
 
     public void setDownlinkBandwidth(double downlinkBandwidth) {
         this.downlinkBandwidth = downlinkBandwidth;
+        if (downlinkScheduler != null) {
+            downlinkScheduler.setBandwidth(downlinkBandwidth, CloudSim.clock());
+            if (!downlinkScheduler.isIdle())
+                rescheduleDownlinkCompletion();
+        }
     }
 
     public List<Pair<Integer, Double>> getAssociatedActuatorIds() {
@@ -1168,6 +1579,8 @@ public class FogDevice extends PowerDatacenter {
             } else {
                 clusterTupleQueue.add(new Pair<Tuple, Integer>(tuple, clusterNodeID));
             }
+        } else {
+            tupleCompleted(tuple);
         }
     }
 
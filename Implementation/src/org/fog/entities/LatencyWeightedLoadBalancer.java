@@ -0,0 +1,58 @@
+package org.fog.entities;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.utils.MicroservicePlacementConfig;
+import org.fog.utils.ShortestPaths;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Smooth weighted round robin over the instances, weighted by the inverse of the latency of the shortest path from the
+ * sending device to each instance (routing table of the device) : close instances take most of the tuples while the
+ * far ones still get some, spread evenly over time. Weights follow the routing table as the topology changes.
+ * Instances the device has no path to are not selected, unless no instance can be reached.
+ */
+public class LatencyWeightedLoadBalancer implements LoadBalancer {
+
+    /**
+     * microservice -> device of the instance -> current weight of the smooth weighted round robin
+     */
+    protected Map<String, Map<Integer, Double>> currentWeights = new HashMap<>();
+
+    public int getDeviceId(String microservice, ServiceDiscovery serviceDiscoveryInfo) {
+        ServiceInstances instances = serviceDiscoveryInfo.getInstances(microservice);
+        if (instances == null)
+            return -1;
+        if (instances.size() == 1)
+            return instances.get(0);
+        int sourceDeviceId = serviceDiscoveryInfo.getDeviceId();
+        ShortestPaths routingTable = ((MicroserviceFogDevice) CloudSim.getEntity(sourceDeviceId)).getRoutingTable();
+        Map<Integer, Double> weights = currentWeights.get(microservice);
+        if (weights == null) {
+            weights = new HashMap<>();
+            currentWeights.put(microservice, weights);
+        }
+
+        int selected = instances.get(0);
+        double selectedWeight = Double.NEGATIVE_INFINITY;
+        double totalWeight = 0;
+        for (int i = 0; i < instances.size(); i++) {
+            int deviceId = instances.get(i);
+            double latency = routingTable.getLatency(sourceDeviceId, deviceId);
+            if (latency < 0)
+                continue;
+            double weight = 1 / (latency + MicroservicePlacementConfig.LATENCY_WEIGHT_OFFSET);
+            double currentWeight = weights.getOrDefault(deviceId, 0.0) + weight;
+            weights.put(deviceId, currentWeight);
+            totalWeight += weight;
+            if (currentWeight > selectedWeight) {
+                selectedWeight = currentWeight;
+                selected = deviceId;
+            }
+        }
+        if (totalWeight > 0)
+            weights.put(selected, selectedWeight - totalWeight);
+        return selected;
+    }
+}
@@ -0,0 +1,30 @@
+package org.fog.entities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends each tuple to the instance with the fewest tuples in flight from this device, ties going to the instance
+ * after the one selected last so that idle instances are used in turn.
+ */
+public class LeastOutstandingLoadBalancer extends OutstandingTuplesLoadBalancer {
+
+    private final Map<String, Integer> lastPosition = new HashMap<>();
+
+    protected int selectInstance(String microservice, ServiceInstances instances, int sourceDeviceId) {
+        Integer last = lastPosition.get(microservice);
+        int start = last == null ? 0 : (last + 1) % instances.size();
+        int selected = start;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < instances.size(); i++) {
+            int position = (start + i) % instances.size();
+            int outstanding = getOutstandingTuples(microservice, instances.get(position));
+            if (outstanding < fewest) {
+                fewest = outstanding;
+                selected = position;
+            }
+        }
+        lastPosition.put(microservice, selected);
+        return instances.get(selected);
+    }
+}
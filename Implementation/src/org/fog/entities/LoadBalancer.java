@@ -4,5 +4,16 @@ package org.fog.entities;
  * Created by Samodha Pallewatta
  */
 public interface LoadBalancer {
+    /**
+     * @return id of the device hosting the instance of the microservice the tuple is sent to, -1 if the service
+     * discovery has no instance of the microservice
+     */
     int getDeviceId(String microservice, ServiceDiscovery serviceDiscoveryInfo);
+
+    /**
+     * Called once a tuple sent to the instance of the microservice on the device has been executed or dropped, for
+     * load balancers tracking the tuples in flight.
+     */
+    default void tupleCompleted(String microservice, int deviceId) {
+    }
 }
@@ -44,13 +44,24 @@ public class MicroserviceFogDevice extends FogDevice {
      * used to forward tuples towards the destination device
      * map of <destinationID,nextDeviceID> based on shortest path.
      */
-    protected Map<Integer, Integer> routingTable = new HashMap<>();
+    protected ShortestPaths routingTable = new ShortestPaths(new int[0]);
 
 
     protected ControllerComponent controllerComponent;
 
     protected List<PlacementRequest> placementRequests = new ArrayList<>();
 
+    /**
+     * Tuples buffered for the modules stopped for the last copy of their live migration, by application and module
+     */
+    protected Map<String, List<Tuple>> stoppedModuleTuples = new HashMap<>();
+
+    /**
+     * Devices the modules live migrated from this device run on, tuples still reaching this device for them are forwarded
+     * until the service discovery of their clients points at those devices
+     */
+    protected Map<String, Integer> migratedModuleDestinations = new HashMap<>();
+
     public MicroserviceFogDevice(String name, FogDeviceCharacteristics characteristics, VmAllocationPolicy vmAllocationPolicy, List<Storage> storageList, double schedulingInterval, double uplinkBandwidth, double downlinkBandwidth, double clusterLinkBandwidth, double uplinkLatency, double ratePerMips, String deviceType) throws Exception {
         super(name, characteristics, vmAllocationPolicy, storageList, schedulingInterval, uplinkBandwidth, downlinkBandwidth, uplinkLatency, ratePerMips);
         setClusterLinkBandwidth(clusterLinkBandwidth);
@@ -90,7 +101,12 @@ public class MicroserviceFogDevice extends FogDevice {
             case FogEvents.START_DYNAMIC_CLUSTERING:
                 //This message is received by the devices to start their clustering
                 processClustering(this.getParentId(), this.getId(), ev);
-                updateCLusterConsInRoutingTable();
+                break;
+            case FogEvents.COMPLETE_LIVE_MIGRATION:
+                completeLiveMigration((JSONObject) ev.getData());
+                break;
+            case FogEvents.STOP_FORWARDING_MIGRATED_MODULES:
+                stopForwardingMigratedModules((JSONObject) ev.getData());
                 break;
             default:
                 super.processOtherEvent(ev);
@@ -144,26 +160,27 @@ public class MicroserviceFogDevice extends FogDevice {
         return deviceType;
     }
 
-    public void addRoutingTable(Map<Integer, Integer> routingTable) {
+    /**
+     * @param routingTable shortest paths between the devices, shared by all devices
+     */
+    public void setRoutingTable(ShortestPaths routingTable) {
         this.routingTable = routingTable;
     }
 
-    public Map<Integer, Integer> getRoutingTable() {
+    public ShortestPaths getRoutingTable() {
         return routingTable;
     }
 
-    protected void processTupleArrival(SimEvent ev) {
-
-        Tuple tuple = (Tuple) ev.getData();
+    protected void processTupleArrival(Tuple tuple, int sourceId) {
 
         Logger.debug(getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
-                CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+                CloudSim.getEntityName(sourceId) + "|Dest : " + getName());
 
         if (deviceType.equals(MicroserviceFogDevice.CLOUD)) {
             updateCloudTraffic();
         }
 
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        acknowledgeTuple(sourceId);
 
         if (FogUtils.appIdToGeoCoverageMap.containsKey(tuple.getAppId())) {
         }
@@ -173,19 +190,7 @@ public class MicroserviceFogDevice extends FogDevice {
             return;
         }
 
-        if (getHost().getVmList().size() > 0) {
-            final AppModule operator = (AppModule) getHost().getVmList().get(0);
-            if (CloudSim.clock() > 0) {
-                getHost().getVmScheduler().deallocatePesForVm(operator);
-                getHost().getVmScheduler().allocatePesForVm(operator, new ArrayList<Double>() {
-                    protected static final long serialVersionUID = 1L;
-
-                    {
-                        add((double) getHost().getTotalMips());
-                    }
-                });
-            }
-        }
+        allocateMipsOnTupleArrival();
 
         if (deviceType.equals(MicroserviceFogDevice.CLOUD) && tuple.getDestModuleName() == null) {
             sendNow(getControllerId(), FogEvents.TUPLE_FINISHED, null);
@@ -196,8 +201,19 @@ public class MicroserviceFogDevice extends FogDevice {
             // ACTUATOR tuples already handled above. Only UP and DOWN left
             if (tuple.getDirection() == Tuple.UP) {
                 int destination = controllerComponent.getDestinationDeviceId(tuple.getDestModuleName());
+                if (destination != -1)
+                    tuple.setLoadBalancing(getId(), destination);
+                // the service discovery of a module live migrated from this device is removed as it leaves
+                String moduleKey = getModuleKey(tuple.getAppId(), tuple.getDestModuleName());
+                if (destination == -1 && stoppedModuleTuples.containsKey(moduleKey)) {
+                    destination = getId();
+                } else if (destination == -1 && migratedModuleDestinations.containsKey(moduleKey)) {
+                    destination = migratedModuleDestinations.get(moduleKey);
+                    ModuleMigrationMonitor.tupleForwarded();
+                }
                 if (destination == -1) {
                     System.out.println("Service DiscoveryInfo missing. Tuple routing stopped for : " + tuple.getDestModuleName());
+                    ModuleMigrationMonitor.tupleDropped();
                     return;
                 }
                 tuple.setDestinationDeviceId(destination);
@@ -210,14 +226,30 @@ public class MicroserviceFogDevice extends FogDevice {
         }
 
         if (tuple.getDestinationDeviceId() == getId()) {
+            String moduleKey = getModuleKey(tuple.getAppId(), tuple.getDestModuleName());
+            if (stoppedModuleTuples.containsKey(moduleKey)) {
+                stoppedModuleTuples.get(moduleKey).add(tuple);
+                ModuleMigrationMonitor.tupleBuffered();
+                return;
+            }
             int vmId = -1;
             for (Vm vm : getHost().getVmList()) {
                 if (((AppModule) vm).getName().equals(tuple.getDestModuleName()))
                     vmId = vm.getId();
             }
+            if (vmId < 0 && migratedModuleDestinations.containsKey(moduleKey)) {
+                tupleCompleted(tuple);
+                tuple.setDestinationDeviceId(migratedModuleDestinations.get(moduleKey));
+                ModuleMigrationMonitor.tupleForwarded();
+                sendTowardsDestination(tuple);
+                return;
+            }
             if (vmId < 0
                     || (tuple.getModuleCopyMap().containsKey(tuple.getDestModuleName()) &&
                     tuple.getModuleCopyMap().get(tuple.getDestModuleName()) != vmId)) {
+                if (vmId < 0)
+                    ModuleMigrationMonitor.tupleDropped();
+                tupleCompleted(tuple);
                 return;
             }
             tuple.setVmId(vmId);
@@ -225,20 +257,10 @@ public class MicroserviceFogDevice extends FogDevice {
 
             updateTimingsOnReceipt(tuple);
 
-            executeTuple(ev, tuple.getDestModuleName());
+            executeTuple(tuple, tuple.getDestModuleName());
         } else {
             if (tuple.getDestinationDeviceId() != -1) {
-                int nextDeviceToSend = routingTable.get(tuple.getDestinationDeviceId());
-                if (nextDeviceToSend == parentId)
-                    sendUp(tuple);
-                else if (childrenIds.contains(nextDeviceToSend))
-                    sendDown(tuple, nextDeviceToSend);
-                else if (getClusterMembers().contains(nextDeviceToSend))
-                    sendToCluster(tuple, nextDeviceToSend);
-                else {
-                    Logger.error("Routing error", "Routing table of " + getName() + "does not contain next device for destination Id" + tuple.getDestinationDeviceId());
-
-                }
+                sendTowardsDestination(tuple);
             } else {
                 if (tuple.getDirection() == Tuple.DOWN) {
                     if (appToModulesMap.containsKey(tuple.getAppId())) {
@@ -258,7 +280,7 @@ public class MicroserviceFogDevice extends FogDevice {
 
                             updateTimingsOnReceipt(tuple);
 
-                            executeTuple(ev, tuple.getDestModuleName());
+                            executeTuple(tuple, tuple.getDestModuleName());
 
                             return;
                         }
@@ -276,6 +298,46 @@ public class MicroserviceFogDevice extends FogDevice {
         }
     }
 
+    /**
+     * Sends the tuple to the next device on the route to its destination device.
+     */
+    protected void sendTowardsDestination(Tuple tuple) {
+        int nextDeviceToSend = routingTable.getNextHop(getId(), tuple.getDestinationDeviceId());
+        int linkType = routingTable.getLinkType(getId(), tuple.getDestinationDeviceId());
+        if (linkType == ShortestPaths.PARENT_LINK)
+            sendUp(tuple);
+        else if (linkType == ShortestPaths.CHILD_LINK)
+            sendDown(tuple, nextDeviceToSend);
+        else if (linkType == ShortestPaths.CLUSTER_LINK)
+            sendToCluster(tuple, nextDeviceToSend);
+        else {
+            Logger.error("Routing error", "Routing table of " + getName() + "does not contain next device for destination Id" + tuple.getDestinationDeviceId());
+            tupleCompleted(tuple);
+        }
+    }
+
+    /**
+     * Notifies the load balancer that selected the destination of the tuple, once the tuple is executed, dropped or
+     * forwarded to the device its module migrated to.
+     */
+    @Override
+    protected void tupleCompleted(Tuple tuple) {
+        if (tuple.getLoadBalancingDeviceId() == -1)
+            return;
+        MicroserviceFogDevice loadBalancingDevice = (MicroserviceFogDevice) CloudSim.getEntity(tuple.getLoadBalancingDeviceId());
+        loadBalancingDevice.getControllerComponent().getLoadBalancer().tupleCompleted(tuple.getDestModuleName(), tuple.getLoadBalancedDeviceId());
+        tuple.setLoadBalancing(-1, -1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> getList(JSONObject object, String key) {
+        return (List<T>) object.get(key);
+    }
+
+    private static String getModuleKey(String appId, String moduleName) {
+        return appId + "/" + moduleName;
+    }
+
     /**
      * Both cloud and FON participates in placement process
      */
@@ -330,6 +392,10 @@ public class MicroserviceFogDevice extends FogDevice {
         PlacementLogicOutput placementLogicOutput = getControllerComponent().executeApplicationPlacementLogic(placementRequests);
         long endTime = System.nanoTime();
         System.out.println("Placement Algorithm Completed. Time : " + (endTime - startTime) / 1e6);
+        if (MicroservicePlacementConfig.ENABLE_PLACEMENT_CACHE)
+            System.out.println("Placement cache hit rate : " + String.format("%.2f", PlacementCacheMonitor.getHitRate() * 100) + "% ("
+                    + PlacementCacheMonitor.getHits() + "/" + PlacementCacheMonitor.getLookups() + "), placement time saved : "
+                    + String.format("%.3f", PlacementCacheMonitor.getTimeSaved()) + " ms");
 
         Map<Integer, Map<Application, List<ModuleLaunchConfig>>> perDevice = placementLogicOutput.getPerDevice();
         Map<Integer, List<Pair<String, Integer>>> serviceDicovery = placementLogicOutput.getServiceDiscoveryInfo();
@@ -423,6 +489,17 @@ public class MicroserviceFogDevice extends FogDevice {
 
     protected void updateServiceDiscovery(SimEvent ev) {
         JSONObject object = (JSONObject) ev.getData();
+        // updates grouped by a batched handover
+        if (object.containsKey("updates")) {
+            List<JSONObject> updates = getList(object, "updates");
+            for (JSONObject update : updates)
+                updateServiceDiscovery(update);
+        } else {
+            updateServiceDiscovery(object);
+        }
+    }
+
+    private void updateServiceDiscovery(JSONObject object) {
         Pair<String, Integer> placement = (Pair<String, Integer>) object.get("service data");
         String action = (String) object.get("action");
         if (action.equals("ADD"))
@@ -449,7 +526,7 @@ public class MicroserviceFogDevice extends FogDevice {
                     module.setBeingInstantiated(false);
                 }
                 initializePeriodicTuples(module);
-                module.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(module).getVmScheduler()
+                getCloudletFinishIndex().process(module, CloudSim.clock(), getVmAllocationPolicy().getHost(module).getVmScheduler()
                         .getAllocatedMipsForVm(module));
 
                 System.out.println("Module " + module.getName() + "created on " + getName() + " under Launch module");
@@ -463,31 +540,138 @@ public class MicroserviceFogDevice extends FogDevice {
         }
     }
 
+    /**
+     * Receives a migrated module, or migrated modules delivered together after the same delay ("modules" and
+     * "applications" lists), each counted as migrated after the delay.
+     */
     @Override
     protected void moduleReceive(SimEvent ev) {
         JSONObject object = (JSONObject) ev.getData();
-        AppModule appModule = (AppModule) object.get("module");
-        Application app = (Application) object.get("application");
+        long size = 0;
+        int moduleCount = 1;
+        if (object.containsKey("modules")) {
+            List<AppModule> appModules = getList(object, "modules");
+            List<Application> apps = getList(object, "applications");
+            for (int i = 0; i < appModules.size(); i++) {
+                receiveModule(appModules.get(i), apps.get(i));
+                size += appModules.get(i).getSize();
+            }
+            moduleCount = appModules.size();
+        } else {
+            AppModule appModule = (AppModule) object.get("module");
+            receiveModule(appModule, (Application) object.get("application"));
+            size = appModule.getSize();
+        }
+
+        // a live migration sends the state dirtied during its copy rounds on top of the modules
+        if (object.containsKey("copiedSize"))
+            size = (long) Math.ceil((double) object.get("copiedSize"));
+        NetworkUsageMonitor.sendingModule((double) object.get("delay"), size);
+        // a pre-migrated copy is staged ahead of the handover, it does not delay the application
+        if (!object.containsKey("preMigration"))
+            MigrationDelayMonitor.setMigrationDelay(moduleCount * (double) object.get("delay"));
+    }
+
+    private void receiveModule(AppModule appModule, Application app) {
         System.out.println(CloudSim.clock() + getName() + " is receiving " + appModule.getName());
+        migratedModuleDestinations.remove(getModuleKey(appModule.getAppId(), appModule.getName()));
 
         sendNow(getId(), FogEvents.APP_SUBMIT, app);
         sendNow(getId(), FogEvents.LAUNCH_MODULE, appModule);
         ModuleLaunchConfig moduleLaunchConfig = new ModuleLaunchConfig(appModule, 1);
         sendNow(getId(), FogEvents.LAUNCH_MODULE_INSTANCE, moduleLaunchConfig);
-
-        NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
-        MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
     }
 
-
+    /**
+     * Sends a migrated module, or migrated modules released together after the same delay ("modules" list), each
+     * counted as migrated after the delay. Modules retired after a pre-migration ("preMigration" set) are released
+     * without transfer, modules of a live migration ("live" set) are stopped for its last copy.
+     */
     @Override
     protected void moduleSend(SimEvent ev) {
         JSONObject object = (JSONObject) ev.getData();
-        AppModule appModule = (AppModule) object.get("module");
-        System.out.println(getName() + " is sending " + appModule.getName());
-        NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
-        MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
+        List<AppModule> appModules;
+        if (object.containsKey("modules"))
+            appModules = getList(object, "modules");
+        else
+            appModules = Collections.singletonList((AppModule) object.get("module"));
+        long size = 0;
+        for (AppModule appModule : appModules) {
+            System.out.println(getName() + " is sending " + appModule.getName());
+            size += appModule.getSize();
+        }
+        if (object.containsKey("live")) {
+            stopLiveMigratedModules(object, appModules);
+            return;
+        }
+        // the module replaced by a pre-migrated copy is only released
+        if (!object.containsKey("preMigration")) {
+            NetworkUsageMonitor.sendingModule((double) object.get("delay"), size);
+            MigrationDelayMonitor.setMigrationDelay(appModules.size() * (double) object.get("delay"));
+        }
+
+        for (AppModule appModule : appModules)
+            releaseModule(appModule);
+    }
 
+    /**
+     * Stops the modules of a live migration for the copy of their last dirty state, the tuples reaching them meanwhile
+     * are buffered until the modules run on the destination.
+     */
+    private void stopLiveMigratedModules(JSONObject object, List<AppModule> appModules) {
+        // instances of the module serving other clients may already be stopped for their own migration
+        for (AppModule appModule : appModules)
+            stoppedModuleTuples.putIfAbsent(getModuleKey(appModule.getAppId(), appModule.getName()), new ArrayList<>());
+        send(getId(), (double) object.get("downtime"), FogEvents.COMPLETE_LIVE_MIGRATION, object);
+    }
+
+    /**
+     * Releases the modules of a live migration once they run on the destination and forwards the buffered tuples to
+     * it, as the tuples still reaching this device for them until the service discovery of their clients points at the
+     * destination and the tuples sent before have arrived ("forwardingTime").
+     */
+    private void completeLiveMigration(JSONObject object) {
+        int destination = (int) object.get("destination");
+        List<AppModule> appModules = getList(object, "modules");
+        for (AppModule appModule : appModules) {
+            String moduleKey = getModuleKey(appModule.getAppId(), appModule.getName());
+            releaseModule(appModule);
+            migratedModuleDestinations.put(moduleKey, destination);
+            // the tuples were forwarded by the migration of another instance completed first
+            List<Tuple> stoppedTuples = stoppedModuleTuples.remove(moduleKey);
+            if (stoppedTuples == null)
+                continue;
+            for (Tuple tuple : stoppedTuples) {
+                tupleCompleted(tuple);
+                tuple.setDestinationDeviceId(destination);
+                ModuleMigrationMonitor.tupleForwarded();
+                sendTowardsDestination(tuple);
+            }
+        }
+        send(getId(), (double) object.get("forwardingTime"), FogEvents.STOP_FORWARDING_MIGRATED_MODULES, object);
+    }
+
+    /**
+     * Forgets the destinations of the modules of a live migration, unless the modules have migrated again since.
+     */
+    private void stopForwardingMigratedModules(JSONObject object) {
+        Integer destination = (Integer) object.get("destination");
+        List<AppModule> appModules = getList(object, "modules");
+        for (AppModule appModule : appModules)
+            migratedModuleDestinations.remove(getModuleKey(appModule.getAppId(), appModule.getName()), destination);
+    }
+
+    @Override
+    protected void launchMigratedModule(AppModule module, Application application) {
+        receiveModule(module, application);
+    }
+
+    @Override
+    protected void releaseMigratedModule(AppModule module) {
+        releaseModule(module);
+    }
+
+    private void releaseModule(AppModule appModule) {
         if (moduleInstanceCount.containsKey(appModule.getAppId()) && moduleInstanceCount.get(appModule.getAppId()).containsKey(appModule.getName())) {
             int moduleCount = moduleInstanceCount.get(appModule.getAppId()).get(appModule.getName());
             if (moduleCount > 1)
@@ -555,12 +739,13 @@ public class MicroserviceFogDevice extends FogDevice {
                 sendNow(getId(), FogEvents.UPDATE_RESOURCE_INFO, tuple.getResourceData());
             }
         } else if (tuple.getDestinationDeviceId() != -1) {
-            int nextDeviceToSend = routingTable.get(tuple.getDestinationDeviceId());
-            if (nextDeviceToSend == parentId)
+            int nextDeviceToSend = routingTable.getNextHop(getId(), tuple.getDestinationDeviceId());
+            int linkType = routingTable.getLinkType(getId(), tuple.getDestinationDeviceId());
+            if (linkType == ShortestPaths.PARENT_LINK)
                 sendUp(tuple);
-            else if (childrenIds.contains(nextDeviceToSend))
+            else if (linkType == ShortestPaths.CHILD_LINK)
                 sendDown(tuple, nextDeviceToSend);
-            else if (getClusterMembers().contains(nextDeviceToSend))
+            else if (linkType == ShortestPaths.CLUSTER_LINK)
                 sendToCluster(tuple, nextDeviceToSend);
             else
                 Logger.error("Routing error", "Routing table of " + getName() + "does not contain next device for destination Id" + tuple.getDestinationDeviceId());
@@ -627,18 +812,15 @@ public class MicroserviceFogDevice extends FogDevice {
         }
     }
 
-    protected void sendDownFreeLink(Tuple tuple, int childId) {
+    protected void sendToChild(Tuple tuple, int childId, double transmissionDelay) {
         if (tuple instanceof ManagementTuple) {
-            double networkDelay = tuple.getCloudletFileSize() / getDownlinkBandwidth();
-            setSouthLinkBusy(true);
             double latency = getChildToLatencyMap().get(childId);
-            send(getId(), networkDelay, FogEvents.UPDATE_SOUTH_TUPLE_QUEUE);
-            send(childId, networkDelay + latency + ((ManagementTuple) tuple).processingDelay, FogEvents.MANAGEMENT_TUPLE_ARRIVAL, tuple);
+            send(childId, transmissionDelay + latency + ((ManagementTuple) tuple).processingDelay, FogEvents.MANAGEMENT_TUPLE_ARRIVAL, tuple);
             //todo
 //            if (Config.ENABLE_NETWORK_USAGE_AT_PLACEMENT)
 //                NetworkUsageMonitor.sendingManagementTuple(latency, tuple.getCloudletFileSize());
         } else
-            super.sendDownFreeLink(tuple, childId);
+            super.sendToChild(tuple, childId, transmissionDelay);
     }
 
     protected void sendUpFreeLink(Tuple tuple) {
@@ -656,16 +838,6 @@ public class MicroserviceFogDevice extends FogDevice {
 
     }
 
-    public void updateRoutingTable(int destId, int nextId) {
-        routingTable.put(destId, nextId);
-    }
-
-    private void updateCLusterConsInRoutingTable() {
-        for(int deviceId:clusterMembers){
-            routingTable.put(deviceId,deviceId);
-        }
-    }
-
     public void removeMonitoredDevice(FogDevice fogDevice) {
        controllerComponent.removeMonitoredDevice(fogDevice);
     }
@@ -0,0 +1,41 @@
+package org.fog.entities;
+
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.fog.utils.FogUtils;
+
+/**
+ * Part of the module state of a MigrationTransfer, sent over the links as a tuple of its size. The chunk keeps its
+ * position on the route of the transfer, every device forwards it to the next device of the route.
+ */
+public class MigrationChunk extends Tuple {
+
+    public static final String TUPLE_TYPE = "MIGRATION_CHUNK";
+
+    private final MigrationTransfer transfer;
+    private int hop = 0;
+
+    public MigrationChunk(MigrationTransfer transfer, long chunkSize) {
+        super(transfer.getModules().get(0).getAppId(), FogUtils.generateTupleId(), Tuple.UP, 0, 1, chunkSize, 0,
+                new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+        this.transfer = transfer;
+        setTupleType(TUPLE_TYPE);
+    }
+
+    public MigrationTransfer getTransfer() {
+        return transfer;
+    }
+
+    public boolean isAtDestination() {
+        return hop == transfer.getRoute().size() - 1;
+    }
+
+    /**
+     * Moves the chunk one hop along the route.
+     *
+     * @return the device the chunk is sent to
+     */
+    public int advance() {
+        hop++;
+        return transfer.getRoute().get(hop);
+    }
+}
@@ -0,0 +1,125 @@
+package org.fog.entities;
+
+import org.fog.application.AppModule;
+import org.fog.application.Application;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Module state moved from a device to another one over the links of the devices on its route
+ * (Config.MIGRATION_LINK_SHARED).
+ * <p>
+ * The source splits the state into MigrationChunk tuples of Config.MIGRATION_CHUNK_SIZE and every device on the route
+ * forwards each chunk to the next device through the queues of its north, south or cluster link, as it does for
+ * tuples. Once every chunk has arrived the destination launches the modules, releases them on the source and
+ * notifies the controller that started the transfer, if any, with MIGRATION_TRANSFER_COMPLETE.
+ */
+public class MigrationTransfer {
+
+    /**
+     * Controller id of the transfers no controller waits for.
+     */
+    public static final int NO_CONTROLLER = -1;
+
+    private static int nextId = 0;
+
+    private final int id;
+    private final int controllerId;
+    private final List<Integer> route;
+    private final List<AppModule> modules;
+    private final List<Application> applications;
+    private final long size;
+    private double startTime;
+    private int chunkCount;
+    private int arrivedChunks = 0;
+
+    /**
+     * @param controllerId entity notified when the transfer is complete, or NO_CONTROLLER
+     * @param route        devices from the source to the destination, both included
+     * @param applications application of each module
+     */
+    public MigrationTransfer(int controllerId, List<Integer> route, List<AppModule> modules, List<Application> applications) {
+        this.id = nextId++;
+        this.controllerId = controllerId;
+        this.route = route;
+        this.modules = modules;
+        this.applications = applications;
+        long size = 0;
+        for (AppModule module : modules)
+            size += module.getSize();
+        this.size = size;
+    }
+
+    public MigrationTransfer(int controllerId, List<Integer> route, AppModule module, Application application) {
+        this(controllerId, route, Collections.singletonList(module), Collections.singletonList(application));
+    }
+
+    /**
+     * Numbers the transfers of a new simulation from 0 again.
+     */
+    public static void resetIds() {
+        nextId = 0;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getControllerId() {
+        return controllerId;
+    }
+
+    public List<Integer> getRoute() {
+        return route;
+    }
+
+    public int getSourceId() {
+        return route.get(0);
+    }
+
+    public int getDestinationId() {
+        return route.get(route.size() - 1);
+    }
+
+    public List<AppModule> getModules() {
+        return modules;
+    }
+
+    public List<Application> getApplications() {
+        return applications;
+    }
+
+    /**
+     * @return the total size of the modules
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Records the time the source starts sending the chunks of the transfer.
+     */
+    public void start(double startTime, int chunkCount) {
+        this.startTime = startTime;
+        this.chunkCount = chunkCount;
+    }
+
+    public double getStartTime() {
+        return startTime;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Counts a chunk arrived at the destination.
+     *
+     * @return true if every chunk has arrived
+     */
+    public boolean chunkArrived() {
+        arrivedChunks++;
+        return arrivedChunks == chunkCount;
+    }
+}
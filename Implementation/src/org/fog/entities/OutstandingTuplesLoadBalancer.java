@@ -0,0 +1,57 @@
+package org.fog.entities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load balancer keeping the number of tuples it sent to each instance that are not executed yet (in flight on the
+ * links, queued or executing on the instance). Each device has its own load balancer, the counts are the view of the
+ * device sending the tuples.
+ */
+public abstract class OutstandingTuplesLoadBalancer implements LoadBalancer {
+
+    /**
+     * microservice -> device of the instance -> tuples in flight
+     */
+    protected Map<String, Map<Integer, Integer>> outstandingTuples = new HashMap<>();
+
+    public int getDeviceId(String microservice, ServiceDiscovery serviceDiscoveryInfo) {
+        ServiceInstances instances = serviceDiscoveryInfo.getInstances(microservice);
+        if (instances == null)
+            return -1;
+        int deviceId = selectInstance(microservice, instances, serviceDiscoveryInfo.getDeviceId());
+        Map<Integer, Integer> tuples = outstandingTuples.get(microservice);
+        if (tuples == null) {
+            tuples = new HashMap<>();
+            outstandingTuples.put(microservice, tuples);
+        }
+        tuples.merge(deviceId, 1, Integer::sum);
+        return deviceId;
+    }
+
+    /**
+     * @param instances     instances of the microservice, not empty
+     * @param sourceDeviceId device the tuple is sent from
+     * @return id of the device hosting the selected instance
+     */
+    protected abstract int selectInstance(String microservice, ServiceInstances instances, int sourceDeviceId);
+
+    public void tupleCompleted(String microservice, int deviceId) {
+        Map<Integer, Integer> tuples = outstandingTuples.get(microservice);
+        if (tuples == null || !tuples.containsKey(deviceId))
+            return;
+        int remaining = tuples.get(deviceId) - 1;
+        if (remaining > 0)
+            tuples.put(deviceId, remaining);
+        else
+            tuples.remove(deviceId);
+    }
+
+    public int getOutstandingTuples(String microservice, int deviceId) {
+        Map<Integer, Integer> tuples = outstandingTuples.get(microservice);
+        if (tuples == null)
+            return 0;
+        Integer count = tuples.get(deviceId);
+        return count != null ? count : 0;
+    }
+}
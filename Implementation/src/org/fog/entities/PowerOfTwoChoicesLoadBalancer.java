@@ -0,0 +1,32 @@
+package org.fog.entities;
+
+import java.util.Random;
+
+/**
+ * Sends each tuple to the instance with fewer tuples in flight from this device among two instances drawn at random,
+ * the first drawn on a tie. Close to least outstanding tuples without comparing all the instances, and without all
+ * the devices sending to the same least loaded instance at once.
+ */
+public class PowerOfTwoChoicesLoadBalancer extends OutstandingTuplesLoadBalancer {
+
+    private final Random random;
+
+    public PowerOfTwoChoicesLoadBalancer(long seed) {
+        random = new Random(seed);
+    }
+
+    protected int selectInstance(String microservice, ServiceInstances instances, int sourceDeviceId) {
+        if (instances.size() == 1)
+            return instances.get(0);
+        int first = random.nextInt(instances.size());
+        // second position drawn among the other instances
+        int second = random.nextInt(instances.size() - 1);
+        if (second >= first)
+            second++;
+        int firstDevice = instances.get(first);
+        int secondDevice = instances.get(second);
+        if (getOutstandingTuples(microservice, secondDevice) < getOutstandingTuples(microservice, firstDevice))
+            return secondDevice;
+        return firstDevice;
+    }
+}
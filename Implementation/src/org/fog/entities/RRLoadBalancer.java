@@ -8,27 +8,19 @@ import java.util.Map;
  * Round Robin LoadBalancer
  */
 public class RRLoadBalancer implements LoadBalancer {
-    protected Map<String, Integer> loadBalancerPosition = new HashMap();
+    protected Map<String, Integer> loadBalancerPosition = new HashMap<>();
 
     public int getDeviceId(String microservice, ServiceDiscovery serviceDiscoveryInfo) {
-        if (loadBalancerPosition.containsKey(microservice) && serviceDiscoveryInfo.getServiceDiscoveryInfo().containsKey(microservice)) {
-            int pos = loadBalancerPosition.get(microservice);
-            if (pos + 1 > serviceDiscoveryInfo.getServiceDiscoveryInfo().get(microservice).size() - 1)
-                pos = 0;
-            else
-                pos = pos + 1;
-            loadBalancerPosition.put(microservice, pos);
-            return serviceDiscoveryInfo.getServiceDiscoveryInfo().get(microservice).get(pos);
-        } else {
-            if(serviceDiscoveryInfo.getServiceDiscoveryInfo().containsKey(microservice)) {
-                loadBalancerPosition.put(microservice, 0);
-                if (serviceDiscoveryInfo.getServiceDiscoveryInfo().get(microservice) == null)
-                    System.out.println("null");
-                int deviceId = serviceDiscoveryInfo.getServiceDiscoveryInfo().get(microservice).get(0);
-                return deviceId;
-            }
-            System.out.println("Service Discovery Information Missing");
+        ServiceInstances instances = serviceDiscoveryInfo.getInstances(microservice);
+        if (instances == null)
             return -1;
-        }
+        Integer position = loadBalancerPosition.get(microservice);
+        int pos;
+        if (position == null || position + 1 > instances.getListedCount() - 1)
+            pos = 0;
+        else
+            pos = position + 1;
+        loadBalancerPosition.put(microservice, pos);
+        return instances.getListed(pos);
     }
 }
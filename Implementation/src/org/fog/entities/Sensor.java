@@ -28,6 +28,11 @@ public class Sensor extends SimEntity{
 	private double latency;
 
 	private int transmissionStartDelay = Config.TRANSMISSION_START_DELAY;
+
+	/**
+	 * Tuples acknowledged by the gateway device, a coalesced TUPLE_ACK acknowledges several tuples at once
+	 */
+	private long acknowledgedTuples = 0;
 	
 	public Sensor(String name, int userId, String appId, int gatewayDeviceId, double latency, GeoLocation geoLocation, 
 			Distribution transmitDistribution, int cpuLength, int nwLength, String tupleType, String destModuleName) {
@@ -129,6 +134,7 @@ public class Sensor extends SimEntity{
 		switch(ev.getTag()){
 		case FogEvents.TUPLE_ACK:
 			//transmit(transmitDistribution.getNextValue());
+			acknowledgedTuples += ev.getData() != null ? (int) ev.getData() : 1;
 			break;
 		case FogEvents.EMIT_TUPLE:
 			transmit();
@@ -241,4 +247,8 @@ public class Sensor extends SimEntity{
 		return transmissionStartDelay;
 	}
 
+	public long getAcknowledgedTuples() {
+		return acknowledgedTuples;
+	}
+
 }
@@ -0,0 +1,50 @@
+package org.fog.entities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Devices hosting the instances of each microservice, as known by a device. The instances (ServiceInstances) keep
+ * the order the devices were added in, with a device added several times listed as many times, as the round robin
+ * load balancer expects, and are read without repetition by the load balancers tracking each instance.
+ */
+class ServiceDiscovery {
+    protected Map<String, ServiceInstances> serviceInstances = new HashMap<>();
+    int deviceId ;
+
+    public ServiceDiscovery(Integer deviceId) {
+        this.deviceId =deviceId;
+    }
+
+    public void addServiceDIscoveryInfo(String microservice, Integer device) {
+        ServiceInstances instances = serviceInstances.get(microservice);
+        if (instances == null) {
+            instances = new ServiceInstances();
+            serviceInstances.put(microservice, instances);
+        }
+        instances.add(device);
+    }
+
+    /**
+     * @return the instances of the microservice, null if no instance is known
+     */
+    public ServiceInstances getInstances(String microservice) {
+        return serviceInstances.get(microservice);
+    }
+
+    /**
+     * @return id of the device this service discovery belongs to
+     */
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public void removeServiceDIscoveryInfo(String microserviceName, Integer deviceID) {
+        ServiceInstances instances = serviceInstances.get(microserviceName);
+        if (instances != null && instances.contains(deviceID)) {
+            instances.remove(deviceID);
+            if (instances.isEmpty())
+                serviceInstances.remove(microserviceName);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.fog.entities;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Devices hosting the instances of a microservice, as known by the service discovery of a device.
+ * <p>
+ * Instances are kept in a dense array with the position of each device, so that instances are added and removed in
+ * O(1) (a removed instance is replaced by the last one) and the load balancers tracking each instance index them
+ * directly. A device added several times is a single instance, it is removed once all its additions are removed.
+ * <p>
+ * The additions are also listed in the order they were made, a device added several times being listed as many
+ * times, as the round robin load balancer expects. Removing a device removes its first listed addition. Removed
+ * additions are only counted out of a Fenwick tree, so that additions are removed and read by position in
+ * O(log n), and are dropped when the list is next grown.
+ */
+public class ServiceInstances {
+
+    private static class Instance {
+        int position;
+        /**
+         * listed additions of the device, in order
+         */
+        final ArrayDeque<Integer> slots = new ArrayDeque<>();
+
+        Instance(int position) {
+            this.position = position;
+        }
+    }
+
+    private int[] deviceIds = new int[4];
+    private int size = 0;
+    private final Map<Integer, Instance> instances = new HashMap<>();
+
+    private int[] slots = new int[4];
+    private boolean[] listed = new boolean[4];
+    private int slotCount = 0;
+    private int listedCount = 0;
+    /**
+     * Fenwick tree of the listed additions, 1-based
+     */
+    private int[] tree = new int[5];
+
+    public void add(int deviceId) {
+        Instance instance = instances.get(deviceId);
+        if (instance == null) {
+            if (size == deviceIds.length)
+                deviceIds = Arrays.copyOf(deviceIds, size * 2);
+            deviceIds[size] = deviceId;
+            instance = new Instance(size);
+            instances.put(deviceId, instance);
+            size++;
+        }
+        if (slotCount == slots.length)
+            rebuild(Math.max(4, listedCount * 2));
+        slots[slotCount] = deviceId;
+        listed[slotCount] = true;
+        update(slotCount, 1);
+        instance.slots.add(slotCount);
+        slotCount++;
+        listedCount++;
+    }
+
+    /**
+     * @return true if the device is not an instance anymore
+     */
+    public boolean remove(int deviceId) {
+        Instance instance = instances.get(deviceId);
+        if (instance == null)
+            return false;
+        int slot = instance.slots.poll();
+        listed[slot] = false;
+        update(slot, -1);
+        listedCount--;
+        if (!instance.slots.isEmpty())
+            return false;
+        instances.remove(deviceId);
+        size--;
+        if (instance.position != size) {
+            deviceIds[instance.position] = deviceIds[size];
+            instances.get(deviceIds[instance.position]).position = instance.position;
+        }
+        return true;
+    }
+
+    public boolean contains(int deviceId) {
+        return instances.containsKey(deviceId);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index from 0 to size() - 1, the order changes when instances are removed
+     */
+    public int get(int index) {
+        return deviceIds[index];
+    }
+
+    /**
+     * @return number of additions listed, a device being counted once per addition
+     */
+    public int getListedCount() {
+        return listedCount;
+    }
+
+    /**
+     * @param position from 0 to getListedCount() - 1, in the order the additions were made
+     * @return device of the addition listed at the position
+     */
+    public int getListed(int position) {
+        int slot = 0;
+        int remaining = position + 1;
+        for (int step = Integer.highestOneBit(slots.length); step > 0; step >>= 1) {
+            int next = slot + step;
+            if (next <= slots.length && tree[next] < remaining) {
+                slot = next;
+                remaining -= tree[next];
+            }
+        }
+        return slots[slot];
+    }
+
+    private void update(int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i)
+            tree[i] += delta;
+    }
+
+    /**
+     * Drops the removed additions and resizes the list to the capacity.
+     */
+    private void rebuild(int capacity) {
+        int[] oldSlots = slots;
+        boolean[] oldListed = listed;
+        int oldCount = slotCount;
+        slots = new int[capacity];
+        listed = new boolean[capacity];
+        tree = new int[capacity + 1];
+        slotCount = 0;
+        for (Instance instance : instances.values())
+            instance.slots.clear();
+        for (int i = 0; i < oldCount; i++) {
+            if (!oldListed[i])
+                continue;
+            slots[slotCount] = oldSlots[i];
+            listed[slotCount] = true;
+            tree[slotCount + 1] = 1;
+            instances.get(oldSlots[i]).slots.add(slotCount);
+            slotCount++;
+        }
+        for (int i = 1; i <= capacity; i++) {
+            int parent = i + (i & -i);
+            if (parent <= capacity)
+                tree[parent] += tree[i];
+        }
+    }
+}
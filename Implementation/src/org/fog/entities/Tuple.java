@@ -33,6 +33,12 @@ public class Tuple extends Cloudlet{
 	 * For device id based routing used
 	 */
 	protected int destinationDeviceId;
+	/**
+	 * Device whose load balancer selected the destination device of the tuple, and the selected device. -1 if the
+	 * destination was not load balanced or the load balancer was notified of the completion of the tuple.
+	 */
+	protected int loadBalancingDeviceId = -1;
+	protected int loadBalancedDeviceId = -1;
 	/* keep track of traversed microservices by tuples of type UP in microservices architecture UP -> tuple travelling towards service
 	 DOWN -> tuple travelling from service to client microservice.*/
 	protected Map<String, Integer> traversedMicroservices = new HashMap<>();
@@ -140,6 +146,19 @@ public class Tuple extends Cloudlet{
 		return destinationDeviceId;
 	}
 
+	public void setLoadBalancing(int loadBalancingDeviceId, int loadBalancedDeviceId) {
+		this.loadBalancingDeviceId = loadBalancingDeviceId;
+		this.loadBalancedDeviceId = loadBalancedDeviceId;
+	}
+
+	public int getLoadBalancingDeviceId() {
+		return loadBalancingDeviceId;
+	}
+
+	public int getLoadBalancedDeviceId() {
+		return loadBalancedDeviceId;
+	}
+
 	public void addToTraversedMicroservices(Integer deviceID, String microserviceName) {
 		traversedMicroservices.put(microserviceName, deviceID);
 	}
@@ -0,0 +1,29 @@
+package org.fog.entities;
+
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.fog.utils.FogUtils;
+
+import java.util.List;
+
+/**
+ * Northbound tuples packed by the uplink aggregation stage of a fog device and sent to its parent as a single
+ * transmission. The size of the batch is the sum of the (possibly compressed) sizes of the packed tuples, the parent
+ * unpacks the batch on arrival and processes every packed tuple as if it had arrived on its own.
+ */
+public class TupleBatch extends Tuple {
+
+    public static final String TUPLE_TYPE = "TUPLE_BATCH";
+
+    private final List<Tuple> tuples;
+
+    public TupleBatch(List<Tuple> tuples, long batchSize) {
+        super(tuples.get(0).getAppId(), FogUtils.generateTupleId(), Tuple.UP, 0, 1, batchSize, 0,
+                new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+        this.tuples = tuples;
+        setTupleType(TUPLE_TYPE);
+    }
+
+    public List<Tuple> getTuples() {
+        return tuples;
+    }
+}
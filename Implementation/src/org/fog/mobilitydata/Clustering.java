@@ -7,15 +7,160 @@ import org.fog.utils.Config;
 import org.json.simple.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 
 /**
  * @author Mohammad Goudarzi
  */
 public class Clustering {
+
+    private static final int EARTH_RADIUS = 6371; // Kilometers, as in calculateInRange
+
+    /**
+     * Forms the clusters of all devices of a level in one pass, with the result of createClusterMembers for each
+     * device : the siblings of the device within Config.Node_Communication_RANGE, in the order of the children of
+     * their parent.
+     * <p>
+     * The siblings are bucketed per parent in a grid of cells at least as large as the communication range, only the
+     * siblings in the cell of a device and the adjacent cells are tested. Devices are processed in parallel, their
+     * cluster members are then assigned together.
+     *
+     * @param levelDevices devices of the level to cluster
+     */
+    public static void createClusters(List<FogDevice> levelDevices, LocationHandler locator) {
+        double range = Config.Node_Communication_RANGE / 1000;
+        // siblings of the devices to cluster, the cluster members are taken from them
+        Map<Integer, Location> locations = new HashMap<>();
+        Map<Integer, Map<Integer, Integer>> childOrder = new HashMap<>();
+        for (FogDevice fogDevice : levelDevices) {
+            FogDevice parentDevice = (FogDevice) CloudSim.getEntity(fogDevice.getParentId());
+            if (parentDevice == null || childOrder.containsKey(parentDevice.getId()))
+                continue;
+            Map<Integer, Integer> order = new HashMap<>();
+            for (int childId : parentDevice.getChildrenIds()) {
+                order.put(childId, order.size());
+                Location location = getResourceLocation(locator, childId);
+                if (location != null)
+                    locations.put(childId, location);
+            }
+            childOrder.put(parentDevice.getId(), order);
+        }
+
+        // cells as high as the range and as wide as the longitude difference of two points in range can be
+        double maxLatitude = 0;
+        double maxLongitude = 0;
+        for (Location location : locations.values()) {
+            maxLatitude = Math.max(maxLatitude, Math.abs(location.latitude));
+            maxLongitude = Math.max(maxLongitude, Math.abs(location.longitude));
+        }
+        double angle = range / EARTH_RADIUS;
+        double cellHeight = Math.toDegrees(angle) * (1 + 1e-9);
+        // haversine : sin(dLon / 2) <= sin(angle / 2) / cos(lat) for points in range at latitudes up to lat
+        double sinHalfWidth = Math.sin(angle / 2) / Math.cos(Math.toRadians(maxLatitude));
+        double cellWidth = sinHalfWidth < 1 ? Math.toDegrees(2 * Math.asin(sinHalfWidth)) * (1 + 1e-9) : 360;
+        // a single column when points in range can be on both sides of the antimeridian
+        if (maxLongitude + cellWidth > 180)
+            cellWidth = 360;
+
+        Map<Integer, Map<Long, List<Integer>>> grids = new HashMap<>();
+        for (Map.Entry<Integer, Map<Integer, Integer>> parent : childOrder.entrySet()) {
+            Map<Long, List<Integer>> grid = new HashMap<>();
+            for (int childId : parent.getValue().keySet()) {
+                Location location = locations.get(childId);
+                if (location == null)
+                    continue;
+                long cell = getCell(getRow(location, cellHeight), getColumn(location, cellWidth));
+                List<Integer> cellDevices = grid.get(cell);
+                if (cellDevices == null) {
+                    cellDevices = new ArrayList<>();
+                    grid.put(cell, cellDevices);
+                }
+                cellDevices.add(childId);
+            }
+            grids.put(parent.getKey(), grid);
+        }
+
+        final double cellW = cellWidth;
+        List<List<Integer>> clusters = new ArrayList<>(levelDevices.size());
+        for (int i = 0; i < levelDevices.size(); i++)
+            clusters.add(null);
+        IntStream.range(0, levelDevices.size()).parallel().forEach(i -> {
+            FogDevice fogDevice = levelDevices.get(i);
+            Map<Long, List<Integer>> grid = grids.get(fogDevice.getParentId());
+            Location location = locations.get(fogDevice.getId());
+            if (grid == null || location == null)
+                return;
+            int row = getRow(location, cellHeight);
+            int column = getColumn(location, cellW);
+            List<Integer> clusterMemberList = new ArrayList<>();
+            for (int r = row - 1; r <= row + 1; r++) {
+                for (int c = column - 1; c <= column + 1; c++) {
+                    List<Integer> cellDevices = grid.get(getCell(r, c));
+                    if (cellDevices == null)
+                        continue;
+                    for (int siblingId : cellDevices) {
+                        if (siblingId != fogDevice.getId() && calculateInRange(location, locations.get(siblingId), Config.Node_Communication_RANGE))
+                            clusterMemberList.add(siblingId);
+                    }
+                }
+            }
+            Map<Integer, Integer> order = childOrder.get(fogDevice.getParentId());
+            clusterMemberList.sort(Comparator.comparing(order::get));
+            clusters.set(i, clusterMemberList);
+        });
+
+        int clustered = 0;
+        for (int i = 0; i < levelDevices.size(); i++) {
+            List<Integer> clusterMemberList = clusters.get(i);
+            if (clusterMemberList == null) {
+                System.out.println("ERROR in clustering --> " + levelDevices.get(i).getName() + " cannot be clustered");
+                continue;
+            }
+            setClusterMembers(levelDevices.get(i), clusterMemberList);
+            if (!clusterMemberList.isEmpty())
+                clustered++;
+        }
+        System.out.println(CloudSim.clock() + " Clustering done for " + levelDevices.size() + " devices, " + clustered + " of them have cluster members");
+    }
+
+    private static Location getResourceLocation(LocationHandler locator, int deviceId) {
+        String dataId = locator.instanceToDataId.get(deviceId);
+        return dataId != null ? locator.dataObject.resourceLocationData.get(dataId) : null;
+    }
+
+    private static int getRow(Location location, double cellHeight) {
+        return (int) Math.floor(location.latitude / cellHeight);
+    }
+
+    private static int getColumn(Location location, double cellWidth) {
+        return (int) Math.floor(location.longitude / cellWidth);
+    }
+
+    private static long getCell(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static void setClusterMembers(FogDevice fogDevice, List<Integer> clusterMemberList) {
+        if (clusterMemberList.isEmpty()) {
+            fogDevice.setSelfCluster(true);
+            fogDevice.setIsInCluster(true);
+        } else {
+            fogDevice.setIsInCluster(true);
+            fogDevice.setSelfCluster(false);
+            fogDevice.setClusterMembers(clusterMemberList);
+            Map<Integer, Double> latencyMapL2 = new HashMap<>();
+            for (int id : clusterMemberList) {
+                latencyMapL2.put(id, Config.clusteringLatency);
+            }
+            fogDevice.setClusterMembersToLatencyMap(latencyMapL2);
+        }
+    }
+
     public void createClusterMembers(int parentId, int nodeId, JSONObject locatorObject) {
         List<Integer> SiblingListIDs = new ArrayList<>();
         List<FogDevice> SiblingsList = new ArrayList<FogDevice>();
@@ -68,20 +213,7 @@ public class Clustering {
         // Clustering Policy
 
 
-        if (clusterMemberList.isEmpty() || clusterMemberList.size() < 1) {
-            ((FogDevice) CloudSim.getEntity(fogId)).setSelfCluster(true);
-            ((FogDevice) CloudSim.getEntity(fogId)).setIsInCluster(true);
-        } else {
-            ((FogDevice) CloudSim.getEntity(fogId)).setIsInCluster(true);
-            ((FogDevice) CloudSim.getEntity(fogId)).setSelfCluster(false);
-            ((FogDevice) CloudSim.getEntity(fogId)).setClusterMembers(clusterMemberList);
-            Map<Integer, Double> latencyMapL2 = new HashMap<>();
-            for (int id : clusterMemberList) {
-                latencyMapL2.put(id, Config.clusteringLatency);
-            }
-            ((FogDevice) CloudSim.getEntity(fogId)).setClusterMembersToLatencyMap(latencyMapL2);
-
-        }
+        setClusterMembers((FogDevice) CloudSim.getEntity(fogId), clusterMemberList);
         System.out.println("The Fog Device: " + locatorTemp.instanceToDataId.get(fogId) + " with id: " + fogId + " and parent id: " + parentId +
                 " has these cluster members: " + ((FogDevice) CloudSim.getEntity(fogId)).getClusterMembers());
         return;
@@ -99,10 +231,7 @@ public class Clustering {
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
         double distance = R * c; // kms
 
-
-        distance = Math.pow(distance, 2);
-
-        if (Math.sqrt(distance) <= fogRange / 1000) {
+        if (distance <= fogRange / 1000) {
             return true;
         } else {
             return false;
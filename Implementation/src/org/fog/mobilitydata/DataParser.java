@@ -7,6 +7,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
@@ -18,6 +19,10 @@ public class DataParser {
     public Map<Integer, ArrayList<String>> levelwiseResources = new HashMap<Integer, ArrayList<String>>();
     public Map<String, Integer> resourceAndUserToLevel = new HashMap<String, Integer>();
     public Map<String, Map<Double, Location>> usersLocation = new HashMap<String, Map<Double, Location>>();
+    // users whose trace is read from a binary trace file rather than from usersLocation
+    private MobilityTraceFile userTraces;
+    // draws the times of the mobility events of the parsed traces
+    private static Random mobilityEventRandom = new Random();
 
 
     public DataParser() {
@@ -39,9 +44,17 @@ public class DataParser {
         }
     }
 
+    /**
+     * Seeds the times of the mobility events of the traces parsed afterwards, so that a simulation replays the same
+     * mobility events.
+     */
+    public static void setMobilityEventSeed(long seed) {
+        mobilityEventRandom = new Random(seed);
+    }
+
     private double nextMobilisationEvent(double eventTime, int mobilityPattern) {
         // TODO Auto-generated method stub
-        Random ran = new Random();
+        Random ran = mobilityEventRandom;
         int seed;
         double newEventTime = -1;
         switch (mobilityPattern) {
@@ -92,6 +105,81 @@ public class DataParser {
 
     }
 
+    /**
+     * Loads the traces of the users from a binary trace file (see MobilityTraceFile), instead of parsing their CSV
+     * traces with parseUserData. Traces stay in the mapped file.
+     */
+    public void loadUserData(String traceFile) throws IOException {
+        userTraces = new MobilityTraceFile(traceFile);
+        for (int userId : userTraces.getUserIds())
+            resourceAndUserToLevel.put("usr_" + userId, levelID.get("User"));
+    }
+
+    /**
+     * Adds traces generated in memory (see SyntheticMobilityGenerator.generate), instead of parsing their CSV traces
+     * with parseUserData.
+     */
+    public void addUserData(Map<Integer, Map<Double, Location>> userTraces) {
+        for (Map.Entry<Integer, Map<Double, Location>> trace : userTraces.entrySet()) {
+            usersLocation.put("usr_" + trace.getKey(), trace.getValue());
+            resourceAndUserToLevel.put("usr_" + trace.getKey(), levelID.get("User"));
+        }
+    }
+
+    /**
+     * Loads the edge resources from a binary file (see EdgeResourceFile), instead of parsing the CSV dataset with
+     * parseResourceData.
+     */
+    public void loadResourceData(String resourceFile) throws IOException {
+        EdgeResourceFile.load(resourceFile, this);
+    }
+
+    public List<String> getUserDataIds() {
+        List<String> userDataIds = new ArrayList<String>(usersLocation.keySet());
+        if (userTraces != null) {
+            for (int userId : userTraces.getUserIds()) {
+                if (!usersLocation.containsKey("usr_" + userId))
+                    userDataIds.add("usr_" + userId);
+            }
+        }
+        return userDataIds;
+    }
+
+    /**
+     * @return the location of the user at the time, for traces of binary files the location at the last event at or
+     * before the time
+     */
+    public Location getUserLocation(String dataId, double time) {
+        if (usersLocation.containsKey(dataId))
+            return usersLocation.get(dataId).get(time);
+        int user = getTraceIndex(dataId);
+        return user != -1 ? userTraces.getLocation(user, time) : null;
+    }
+
+    public List<Double> getUserEventTimes(String dataId) {
+        if (usersLocation.containsKey(dataId))
+            return new ArrayList<Double>(usersLocation.get(dataId).keySet());
+        List<Double> eventTimes = new ArrayList<Double>();
+        int user = getTraceIndex(dataId);
+        if (user != -1) {
+            for (double eventTime : userTraces.getEventTimes(user))
+                eventTimes.add(eventTime);
+        }
+        return eventTimes;
+    }
+
+    public MobilityTraceCursor getUserTraceCursor(String dataId) {
+        if (usersLocation.containsKey(dataId))
+            return new MobilityTraceCursor(usersLocation.get(dataId).keySet());
+        return new MobilityTraceCursor(userTraces, getTraceIndex(dataId));
+    }
+
+    private int getTraceIndex(String dataId) {
+        if (userTraces == null || !dataId.startsWith("usr_"))
+            return -1;
+        return userTraces.indexOf(Integer.parseInt(dataId.substring("usr_".length())));
+    }
+
     @SuppressWarnings("unchecked")
     public void parseResourceData() throws NumberFormatException, IOException {
 
@@ -0,0 +1,83 @@
+package org.fog.mobilitydata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Edge resources in a binary columnar file, memory mapped for reading.
+ * <p>
+ * Layout (big endian) : a header (magic, version, number of resources) and the columns of the resources : ids, levels
+ * and blocks as ints, then latitudes and longitudes as doubles. Resources are stored level by level, in the order of
+ * DataParser.levelwiseResources. Files are created from the CSV dataset with {@link #convert(String)}.
+ */
+public class EdgeResourceFile {
+
+	private static final int MAGIC = 0x45444752; // "EDGR"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+
+	/**
+	 * Parses the CSV dataset of the edge resources (see DataParser.parseResourceData) and writes it as a binary file.
+	 */
+	public static void convert(String resourceFile) throws IOException {
+		DataParser parser = new DataParser();
+		parser.parseResourceData();
+		write(parser, resourceFile);
+	}
+
+	public static void write(DataParser parser, String resourceFile) throws IOException {
+		List<String> dataIds = new ArrayList<String>();
+		for (int level = 0; level < parser.levelID.get("LevelsNum"); level++)
+			dataIds.addAll(parser.levelwiseResources.get(level));
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(resourceFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(dataIds.size());
+			for (String dataId : dataIds)
+				out.writeInt(Integer.parseInt(dataId.substring("res_".length())));
+			for (String dataId : dataIds)
+				out.writeInt(parser.resourceAndUserToLevel.get(dataId));
+			for (String dataId : dataIds)
+				out.writeInt(parser.resourceLocationData.get(dataId).block);
+			for (String dataId : dataIds)
+				out.writeDouble(parser.resourceLocationData.get(dataId).latitude);
+			for (String dataId : dataIds)
+				out.writeDouble(parser.resourceLocationData.get(dataId).longitude);
+		}
+	}
+
+	/**
+	 * Reads the resources of the file into the parser, as DataParser.parseResourceData does from the CSV dataset.
+	 */
+	public static void load(String resourceFile, DataParser parser) throws IOException {
+		MappedByteBuffer buffer;
+		try (RandomAccessFile file = new RandomAccessFile(resourceFile, "r"); FileChannel channel = file.getChannel()) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException(resourceFile + " is not an edge resource file");
+		int count = buffer.getInt(8);
+		int levels = HEADER_SIZE + 4 * count;
+		int blocks = levels + 4 * count;
+		int latitudes = blocks + 4 * count;
+		int longitudes = latitudes + 8 * count;
+
+		int numOfLevels = parser.levelID.get("LevelsNum");
+		for (int level = 0; level < numOfLevels; level++)
+			parser.levelwiseResources.put(level, new ArrayList<String>());
+		for (int i = 0; i < count; i++) {
+			String dataId = "res_" + buffer.getInt(HEADER_SIZE + 4 * i);
+			int level = buffer.getInt(levels + 4 * i);
+			parser.levelwiseResources.get(level).add(dataId);
+			parser.resourceAndUserToLevel.put(dataId, level);
+			parser.resourceLocationData.put(dataId, new Location(buffer.getDouble(latitudes + 8 * i), buffer.getDouble(longitudes + 8 * i), buffer.getInt(blocks + 4 * i)));
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.fog.mobilitydata;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Position of a mobile device in its mobility trace : the times of its mobility events, in order. Controllers schedule
+ * only the next mobility event of each device and schedule the following one when it fires, the event queue holds one
+ * mobility event per device whatever the length of the traces.
+ * <p>
+ * Times are either copied from a parsed trace or read one at a time from a binary trace file.
+ */
+public class MobilityTraceCursor {
+
+	private final double[] eventTimes;
+	private final MobilityTraceFile traceFile;
+	private final int user;
+	private final int eventCount;
+	private int position = 0;
+
+	public MobilityTraceCursor(Collection<Double> eventTimes) {
+		this.eventTimes = new double[eventTimes.size()];
+		int i = 0;
+		for (double eventTime : eventTimes)
+			this.eventTimes[i++] = eventTime;
+		Arrays.sort(this.eventTimes);
+		traceFile = null;
+		user = -1;
+		eventCount = this.eventTimes.length;
+	}
+
+	/**
+	 * @param user position of the user in the trace file
+	 */
+	public MobilityTraceCursor(MobilityTraceFile traceFile, int user) {
+		eventTimes = null;
+		this.traceFile = traceFile;
+		this.user = user;
+		eventCount = traceFile.getEventCount(user);
+	}
+
+	public boolean hasNext() {
+		return position < eventCount;
+	}
+
+	/**
+	 * @return the time of the next mobility event, the cursor moves past it
+	 */
+	public double next() {
+		if (eventTimes != null)
+			return eventTimes[position++];
+		return traceFile.getEventTime(user, position++);
+	}
+
+	public int getRemaining() {
+		return eventCount - position;
+	}
+}
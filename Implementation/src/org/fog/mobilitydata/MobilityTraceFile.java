@@ -0,0 +1,229 @@
+package org.fog.mobilitydata;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mobility traces of users in a binary columnar file, memory mapped for reading.
+ * <p>
+ * Layout (big endian) : a header (magic, version, number of users), an index with one entry per user sorted by user
+ * id (user id, number of events, offset of the user data) and the data of every user : event times in increasing
+ * order, then latitudes, then longitudes, as doubles. Positions are looked up by binary search on the event times
+ * without loading the traces on the heap. A single mapping limits the file to 2 GB.
+ * <p>
+ * Files are created from the CSV datasets with {@link #convert(Map, String, String)}, the times of the mobility events
+ * generated while parsing the CSV files are stored so that a converted trace always replays the same way.
+ */
+public class MobilityTraceFile {
+
+	private static final int MAGIC = 0x4D4F4254; // "MOBT"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+	private static final int INDEX_ENTRY_SIZE = 16;
+
+	private final MappedByteBuffer buffer;
+	private final int userCount;
+
+	public MobilityTraceFile(String traceFile) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(traceFile, "r"); FileChannel channel = file.getChannel()) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException(traceFile + " is not a mobility trace file");
+		userCount = buffer.getInt(8);
+	}
+
+	/**
+	 * Parses the CSV traces of the users (see DataParser.parseUserData) and writes them as a binary trace file.
+	 */
+	public static void convert(Map<Integer, Integer> userMobilityPattern, String datasetReference, String traceFile) throws IOException {
+		DataParser parser = new DataParser();
+		parser.parseUserData(userMobilityPattern, datasetReference);
+		Map<Integer, Map<Double, Location>> traces = new TreeMap<Integer, Map<Double, Location>>();
+		for (int userId : userMobilityPattern.keySet())
+			traces.put(userId, parser.usersLocation.get("usr_" + userId));
+		write(traces, traceFile);
+	}
+
+	/**
+	 * Writes the positions of the users by event time.
+	 */
+	public static void write(Map<Integer, Map<Double, Location>> traces, String traceFile) throws IOException {
+		Map<Integer, Map<Double, Location>> sorted = new TreeMap<Integer, Map<Double, Location>>(traces);
+		try (Writer writer = new Writer(traceFile, sorted.size())) {
+			for (Map.Entry<Integer, Map<Double, Location>> trace : sorted.entrySet()) {
+				Map<Double, Location> events = new TreeMap<Double, Location>(trace.getValue());
+				double[] times = new double[events.size()];
+				double[] latitudes = new double[events.size()];
+				double[] longitudes = new double[events.size()];
+				int event = 0;
+				for (Map.Entry<Double, Location> location : events.entrySet()) {
+					times[event] = location.getKey();
+					latitudes[event] = location.getValue().latitude;
+					longitudes[event] = location.getValue().longitude;
+					event++;
+				}
+				writer.append(trace.getKey(), times, latitudes, longitudes, event);
+			}
+		}
+	}
+
+	/**
+	 * Streams the traces of a known number of users to a trace file, one user at a time in increasing user id order.
+	 * The index is written when the writer is closed, only the trace being appended is held in memory.
+	 */
+	public static class Writer implements Closeable {
+
+		private final RandomAccessFile file;
+		private final DataOutputStream out;
+		private final int[] userIds;
+		private final int[] eventCounts;
+		private final long[] offsets;
+		private int users = 0;
+		private long offset;
+
+		public Writer(String traceFile, int userCount) throws IOException {
+			file = new RandomAccessFile(traceFile, "rw");
+			file.setLength(0);
+			userIds = new int[userCount];
+			eventCounts = new int[userCount];
+			offsets = new long[userCount];
+			offset = HEADER_SIZE + (long) INDEX_ENTRY_SIZE * userCount;
+			file.seek(offset);
+			out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(file.getChannel()), 1 << 16));
+		}
+
+		/**
+		 * @param times event times of the user, in increasing order
+		 * @param count number of events, the first count values of the arrays are written
+		 */
+		public void append(int userId, double[] times, double[] latitudes, double[] longitudes, int count) throws IOException {
+			if (users == userIds.length)
+				throw new IllegalStateException("more than " + userIds.length + " users appended");
+			if (users > 0 && userId <= userIds[users - 1])
+				throw new IllegalArgumentException("user " + userId + " appended after user " + userIds[users - 1]);
+			userIds[users] = userId;
+			eventCounts[users] = count;
+			offsets[users] = offset;
+			users++;
+			for (int event = 0; event < count; event++)
+				out.writeDouble(times[event]);
+			for (int event = 0; event < count; event++)
+				out.writeDouble(latitudes[event]);
+			for (int event = 0; event < count; event++)
+				out.writeDouble(longitudes[event]);
+			offset += 24L * count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				out.flush();
+				ByteBuffer index = ByteBuffer.allocate(HEADER_SIZE + INDEX_ENTRY_SIZE * users);
+				index.putInt(MAGIC).putInt(VERSION).putInt(users);
+				for (int user = 0; user < users; user++)
+					index.putInt(userIds[user]).putInt(eventCounts[user]).putLong(offsets[user]);
+				index.flip();
+				FileChannel channel = file.getChannel();
+				while (index.hasRemaining())
+					channel.write(index, index.position());
+			} finally {
+				file.close();
+			}
+		}
+	}
+
+	public int getUserCount() {
+		return userCount;
+	}
+
+	/**
+	 * @param user position of the user in the file, from 0 to getUserCount() - 1
+	 */
+	public int getUserId(int user) {
+		return buffer.getInt(HEADER_SIZE + INDEX_ENTRY_SIZE * user);
+	}
+
+	public List<Integer> getUserIds() {
+		List<Integer> userIds = new ArrayList<Integer>(userCount);
+		for (int user = 0; user < userCount; user++)
+			userIds.add(getUserId(user));
+		return userIds;
+	}
+
+	/**
+	 * @return the position of the user in the file, -1 if the file has no trace for the user
+	 */
+	public int indexOf(int userId) {
+		int low = 0;
+		int high = userCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = getUserId(mid);
+			if (midId < userId)
+				low = mid + 1;
+			else if (midId > userId)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	public int getEventCount(int user) {
+		return buffer.getInt(HEADER_SIZE + INDEX_ENTRY_SIZE * user + 4);
+	}
+
+	private int getDataOffset(int user) {
+		return (int) buffer.getLong(HEADER_SIZE + INDEX_ENTRY_SIZE * user + 8);
+	}
+
+	public double getEventTime(int user, int event) {
+		return buffer.getDouble(getDataOffset(user) + 8 * event);
+	}
+
+	/**
+	 * @return the event times of the user, in increasing order
+	 */
+	public double[] getEventTimes(int user) {
+		double[] times = new double[getEventCount(user)];
+		for (int event = 0; event < times.length; event++)
+			times[event] = getEventTime(user, event);
+		return times;
+	}
+
+	/**
+	 * @return the position of the user at its last event at or before the time, null if the time is before the
+	 * first event
+	 */
+	public Location getLocation(int user, double time) {
+		int count = getEventCount(user);
+		int offset = getDataOffset(user);
+		int low = 0;
+		int high = count - 1;
+		int event = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (buffer.getDouble(offset + 8 * mid) <= time) {
+				event = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		if (event == -1)
+			return null;
+		return new Location(buffer.getDouble(offset + 8 * (count + event)), buffer.getDouble(offset + 8 * (2 * count + event)), References.NOT_SET);
+	}
+}
@@ -0,0 +1,71 @@
+package org.fog.mobilitydata;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Point in polygon test through a precomputed grid over the bounds of the polygon.
+ * <p>
+ * Each cell is classified once as outside, inside or crossed by the polygon boundary. Points of outside and inside
+ * cells are answered with a lookup, only points of boundary cells are tested against the polygon, so the answer is
+ * always the one of Polygon2D.contains. Lookups do not modify the grid and can be made from several threads.
+ */
+public class PolygonGrid {
+
+	private static final byte OUTSIDE = 0;
+	private static final byte INSIDE = 1;
+	private static final byte BOUNDARY = 2;
+
+	private final Polygon2D polygon;
+	private final double minX;
+	private final double minY;
+	private final double cellWidth;
+	private final double cellHeight;
+	private final int columns;
+	private final int rows;
+	private final byte[] cells;
+
+	public PolygonGrid(Polygon2D polygon, int columns, int rows) {
+		this.polygon = polygon;
+		this.columns = columns;
+		this.rows = rows;
+		Rectangle2D bounds = polygon.getBounds2D();
+		minX = bounds.getMinX();
+		minY = bounds.getMinY();
+		cellWidth = bounds.getWidth() / columns;
+		cellHeight = bounds.getHeight() / rows;
+		cells = new byte[columns * rows];
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				// the cell is widened a little so that points on its edges are decided with it
+				double x = minX + column * cellWidth - cellWidth * 1e-6;
+				double y = minY + row * cellHeight - cellHeight * 1e-6;
+				double width = cellWidth * (1 + 2e-6);
+				double height = cellHeight * (1 + 2e-6);
+				byte cell;
+				// both tests are conservative, a cell they cannot decide is a boundary cell
+				if (!polygon.intersects(x, y, width, height))
+					cell = OUTSIDE;
+				else if (polygon.contains(x, y, width, height))
+					cell = INSIDE;
+				else
+					cell = BOUNDARY;
+				cells[row * columns + column] = cell;
+			}
+		}
+	}
+
+	public boolean contains(double x, double y) {
+		int column = (int) Math.floor((x - minX) / cellWidth);
+		int row = (int) Math.floor((y - minY) / cellHeight);
+		if (column < 0 || column >= columns || row < 0 || row >= rows)
+			return polygon.contains(x, y);
+		switch (cells[row * columns + column]) {
+			case OUTSIDE:
+				return false;
+			case INSIDE:
+				return true;
+			default:
+				return polygon.contains(x, y);
+		}
+	}
+}
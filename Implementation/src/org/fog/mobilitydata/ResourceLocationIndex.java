@@ -0,0 +1,118 @@
+package org.fog.mobilitydata;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fog.placement.LocationHandler;
+
+/**
+ * Nearest resource lookup over the resources of one level.
+ *
+ * Resource locations are indexed in a k-d tree over their position on the unit sphere, where the straight line
+ * (chord) distance grows with the great circle distance. Candidates are compared with
+ * LocationHandler.calculateDistance, the first resource of the list wins among resources at the same distance, as with
+ * a linear scan of the list.
+ */
+public class ResourceLocationIndex {
+
+	private static final double EARTH_RADIUS = 6371; // Kilometers, as in LocationHandler.calculateDistance
+
+	private final List<String> dataIds;
+	private final Location[] locations;
+	private final double[][] points;
+	// resource positions in the list, each range is split on its median along the axis of its depth
+	private final Integer[] tree;
+	private final Map<Integer, String> blockToDataId = new HashMap<Integer, String>();
+
+	public ResourceLocationIndex(List<String> dataIds, Map<String, Location> resourceLocationData) {
+		this.dataIds = dataIds;
+		int size = dataIds.size();
+		locations = new Location[size];
+		points = new double[size][];
+		tree = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			locations[i] = resourceLocationData.get(dataIds.get(i));
+			points[i] = toUnitVector(locations[i]);
+			tree[i] = i;
+			// the last resource of the block is kept, as with a scan of the list
+			blockToDataId.put(locations[i].block, dataIds.get(i));
+		}
+		build(0, size, 0);
+	}
+
+	private static double[] toUnitVector(Location location) {
+		double latitude = Math.toRadians(location.latitude);
+		double longitude = Math.toRadians(location.longitude);
+		return new double[]{Math.cos(latitude) * Math.cos(longitude), Math.cos(latitude) * Math.sin(longitude), Math.sin(latitude)};
+	}
+
+	private void build(int from, int to, final int axis) {
+		if (to - from <= 1)
+			return;
+		Arrays.sort(tree, from, to, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(points[i1][axis], points[i2][axis]);
+			}
+		});
+		int mid = (from + to) >>> 1;
+		build(from, mid, (axis + 1) % 3);
+		build(mid + 1, to, (axis + 1) % 3);
+	}
+
+	/**
+	 * @return the data id of the resource nearest to the location, null if there is no resource
+	 */
+	public String getNearest(Location location) {
+		double[] best = new double[]{-1, Double.MAX_VALUE};
+		search(0, tree.length, 0, toUnitVector(location), location, best);
+		return best[0] != -1 ? dataIds.get((int) best[0]) : null;
+	}
+
+	/**
+	 * @param best position and distance of the nearest resource found so far, updated
+	 */
+	private void search(int from, int to, int axis, double[] point, Location location, double[] best) {
+		if (from >= to)
+			return;
+		int mid = (from + to) >>> 1;
+		int candidate = tree[mid];
+		double distance = LocationHandler.calculateDistance(location, locations[candidate]);
+		if (distance < best[1] || (distance == best[1] && candidate < best[0])) {
+			best[0] = candidate;
+			best[1] = distance;
+		}
+
+		double offset = point[axis] - points[candidate][axis];
+		int nextAxis = (axis + 1) % 3;
+		if (offset < 0) {
+			search(from, mid, nextAxis, point, location, best);
+			if (-offset <= getChordBound(best[1]))
+				search(mid + 1, to, nextAxis, point, location, best);
+		} else {
+			search(mid + 1, to, nextAxis, point, location, best);
+			if (offset <= getChordBound(best[1]))
+				search(from, mid, nextAxis, point, location, best);
+		}
+	}
+
+	/**
+	 * Chord length of a great circle distance, slightly widened so that resources at the same distance are still
+	 * compared.
+	 */
+	private static double getChordBound(double distance) {
+		if (distance >= Math.PI * EARTH_RADIUS)
+			return Double.MAX_VALUE;
+		return 2 * Math.sin(distance / (2 * EARTH_RADIUS)) * (1 + 1e-9) + 1e-12;
+	}
+
+	/**
+	 * @return the data id of the last resource of the list in the block, null if there is none
+	 */
+	public String getByBlock(int block) {
+		return blockToDataId.get(block);
+	}
+}
@@ -0,0 +1,197 @@
+package org.fog.mobilitydata;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Generates random walk and random waypoint traces for many users in parallel, without going through the CSV datasets
+ * of RandomMobilityGenerator.
+ * <p>
+ * Users move as with RandomMobilityGenerator, from the reference position in the Melbourne CBD, and their event times
+ * follow their mobility pattern as in DataParser.parseUserData. Every user draws from its own SplittableRandom seeded
+ * from the generator seed and the user id, a user gets the same trace whatever the other users generated with it and
+ * the number of threads. A move that would leave the CBD is not made and, for random waypoint users, a new direction
+ * is taken.
+ * <p>
+ * Traces are either returned as maps for DataParser.addUserData or streamed to a binary trace file (see
+ * MobilityTraceFile) a batch of users at a time.
+ */
+public class SyntheticMobilityGenerator {
+
+    private static final int BATCH_SIZE = 4096;
+    private static final int GRID_SIZE = 256;
+
+    private final int mobilityModel;
+    private final int numberOfPositions;
+    private final long seed;
+    private final PolygonGrid environment;
+
+    /**
+     * @param mobilityModel References.random_walk_mobility_model or References.random_waypoint_mobility_model
+     * @param numberOfPositions number of positions of each user, as the rows of a CSV dataset
+     */
+    public SyntheticMobilityGenerator(int mobilityModel, int numberOfPositions, long seed) {
+        if (mobilityModel != References.random_walk_mobility_model && mobilityModel != References.random_waypoint_mobility_model)
+            throw new IllegalArgumentException("Unknown mobility model " + mobilityModel);
+        if (numberOfPositions < 1)
+            throw new IllegalArgumentException("numberOfPositions must be at least 1");
+        this.mobilityModel = mobilityModel;
+        this.numberOfPositions = numberOfPositions;
+        this.seed = seed;
+        environment = new PolygonGrid(createEnvironment(), GRID_SIZE, GRID_SIZE);
+    }
+
+    /**
+     * The CBD boundary of RandomMobilityGenerator
+     */
+    private static Polygon2D createEnvironment() {
+        Polygon2D polygon = new Polygon2D();
+        polygon.addPoint(-37.813046f, 144.951380f);
+        polygon.addPoint(-37.821229f, 144.955039f);
+        polygon.addPoint(-37.807397f, 144.971062f);
+        polygon.addPoint(-37.815136f, 144.975044f);
+        return polygon;
+    }
+
+    private static class Trace {
+        private final double[] times;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final int count;
+
+        private Trace(double[] times, double[] latitudes, double[] longitudes, int count) {
+            this.times = times;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.count = count;
+        }
+    }
+
+    /**
+     * @param userMobilityPattern mobility pattern of each user, References.DIRECTIONAL_MOBILITY or
+     *                            References.RANDOM_MOBILITY
+     * @return the positions of each user by event time
+     */
+    public Map<Integer, Map<Double, Location>> generate(Map<Integer, Integer> userMobilityPattern) {
+        final int[] userIds = getSortedUserIds(userMobilityPattern);
+        final int[] patterns = getPatterns(userIds, userMobilityPattern);
+        final Trace[] traces = new Trace[userIds.length];
+        IntStream.range(0, userIds.length).parallel().forEach(user -> traces[user] = generateTrace(userIds[user], patterns[user]));
+
+        Map<Integer, Map<Double, Location>> userTraces = new HashMap<>();
+        for (int user = 0; user < userIds.length; user++) {
+            Trace trace = traces[user];
+            Map<Double, Location> locations = new HashMap<>();
+            for (int event = 0; event < trace.count; event++)
+                locations.put(trace.times[event], new Location(trace.latitudes[event], trace.longitudes[event], References.NOT_SET));
+            userTraces.put(userIds[user], locations);
+        }
+        return userTraces;
+    }
+
+    /**
+     * Generates the traces of the users into a binary trace file, to be loaded with DataParser.loadUserData.
+     *
+     * @param userMobilityPattern mobility pattern of each user, References.DIRECTIONAL_MOBILITY or
+     *                            References.RANDOM_MOBILITY
+     */
+    public void write(Map<Integer, Integer> userMobilityPattern, String traceFile) throws IOException {
+        final int[] userIds = getSortedUserIds(userMobilityPattern);
+        final int[] patterns = getPatterns(userIds, userMobilityPattern);
+        final Trace[] batch = new Trace[Math.min(BATCH_SIZE, userIds.length)];
+        try (MobilityTraceFile.Writer writer = new MobilityTraceFile.Writer(traceFile, userIds.length)) {
+            for (int from = 0; from < userIds.length; from += BATCH_SIZE) {
+                final int start = from;
+                int size = Math.min(BATCH_SIZE, userIds.length - from);
+                IntStream.range(0, size).parallel().forEach(i -> batch[i] = generateTrace(userIds[start + i], patterns[start + i]));
+                for (int i = 0; i < size; i++)
+                    writer.append(userIds[from + i], batch[i].times, batch[i].latitudes, batch[i].longitudes, batch[i].count);
+            }
+        }
+    }
+
+    private static int[] getSortedUserIds(Map<Integer, Integer> userMobilityPattern) {
+        return userMobilityPattern.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    private static int[] getPatterns(int[] userIds, Map<Integer, Integer> userMobilityPattern) {
+        int[] patterns = new int[userIds.length];
+        for (int user = 0; user < userIds.length; user++)
+            patterns[user] = userMobilityPattern.get(userIds[user]);
+        return patterns;
+    }
+
+    private SplittableRandom getRandom(int userId) {
+        // the user id is mixed into the seed so that users with close ids draw unrelated sequences
+        return new SplittableRandom(new SplittableRandom(seed + userId).nextLong());
+    }
+
+    private Trace generateTrace(int userId, int mobilityPattern) {
+        SplittableRandom random = getRandom(userId);
+        double[] latitudes = new double[numberOfPositions];
+        double[] longitudes = new double[numberOfPositions];
+        double positionX = References.lat_reference;
+        double positionY = References.long_reference;
+        latitudes[0] = positionX;
+        longitudes[0] = positionY;
+
+        int minSpeed = (int) References.MinMobilitySpeed * 100;
+        int maxSpeed = (int) References.MaxMobilitySpeed * 100;
+        int angle = random.nextInt(260);
+        boolean directionFlag = true;
+        for (int index = 1; index < numberOfPositions; index++) {
+            if (!directionFlag || mobilityModel == References.random_walk_mobility_model) {
+                angle = random.nextInt(260); // Random direction, as in RandomMobilityGenerator
+                directionFlag = true;
+            }
+            double mobilitySpeed = (double) random.nextInt(minSpeed, maxSpeed + 1) / 100; // meter/seconds
+            double nextPositionX = positionX + Math.cos(Math.toRadians(angle)) * mobilitySpeed / 1000;
+            double nextPositionY = positionY + Math.sin(Math.toRadians(angle)) * mobilitySpeed / 1000;
+            if (environment.contains((float) nextPositionX, (float) nextPositionY)) {
+                positionX = nextPositionX;
+                positionY = nextPositionY;
+            } else {
+                directionFlag = false;
+            }
+            latitudes[index] = positionX;
+            longitudes[index] = positionY;
+        }
+        return assignEventTimes(random, mobilityPattern, latitudes, longitudes);
+    }
+
+    /**
+     * Event times as in DataParser.parseUserData : the first position at INIT_TIME, then directional users move every
+     * 1 to 20 seconds and random users at random times in [1, 2000], a later position replacing an earlier one drawn
+     * at the same time.
+     */
+    private Trace assignEventTimes(SplittableRandom random, int mobilityPattern, double[] latitudes, double[] longitudes) {
+        double[] times = new double[numberOfPositions];
+        times[0] = References.INIT_TIME;
+        if (mobilityPattern == References.DIRECTIONAL_MOBILITY) {
+            for (int index = 1; index < numberOfPositions; index++)
+                times[index] = times[index - 1] + 1.00 + random.nextInt(20);
+            return new Trace(times, latitudes, longitudes, numberOfPositions);
+        }
+        if (mobilityPattern != References.RANDOM_MOBILITY)
+            throw new IllegalArgumentException("Unknown mobility pattern " + mobilityPattern);
+
+        TreeMap<Double, Integer> positionByTime = new TreeMap<>();
+        positionByTime.put(References.INIT_TIME, 0);
+        for (int index = 1; index < numberOfPositions; index++)
+            positionByTime.put(1.00 + random.nextInt(2000), index);
+        double[] eventLatitudes = new double[positionByTime.size()];
+        double[] eventLongitudes = new double[positionByTime.size()];
+        int count = 0;
+        for (Map.Entry<Double, Integer> event : positionByTime.entrySet()) {
+            times[count] = event.getKey();
+            eventLatitudes[count] = latitudes[event.getValue()];
+            eventLongitudes[count] = longitudes[event.getValue()];
+            count++;
+        }
+        return new Trace(times, eventLatitudes, eventLongitudes, count);
+    }
+}
@@ -10,7 +10,9 @@ import org.fog.entities.ControllerComponent;
 import org.fog.entities.MicroserviceFogDevice;
 import org.fog.entities.PlacementRequest;
 import org.fog.utils.Logger;
+import org.fog.utils.MicroservicePlacementConfig;
 import org.fog.utils.ModuleLaunchConfig;
+import org.fog.utils.PlacementCacheMonitor;
 
 import java.util.*;
 
@@ -24,7 +26,7 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
     List<FogDevice> fogDevices; //fog devices considered by FON for placements of requests
     List<PlacementRequest> placementRequests; // requests to be processed
     protected Map<Integer, Map<String, Double>> resourceAvailability;
-    private Map<String, Application> applicationInfo = new HashMap<>();
+    protected Map<String, Application> applicationInfo = new HashMap<>();
     private Map<String, String> moduleToApp = new HashMap<>();
 
     int fonID;
@@ -37,6 +39,21 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
     Map<Integer, Map<String, Integer>> mappedMicroservices = new HashMap<>();
     ; //mappedMicroservice
 
+    /**
+     * Capacity and load of the devices considered by the current run
+     */
+    protected PlacementState placementState;
+
+    /**
+     * Placements of previous requests, kept across runs (MicroservicePlacementConfig.ENABLE_PLACEMENT_CACHE) and shared
+     * with the speculative placement logics of parallel runs
+     */
+    private PlacementDecisionCache placementCache = new PlacementDecisionCache();
+
+    // false for speculative placements (ConcurrentPlacementExecutor), the output then refers to the modules of the
+    // applications instead of new copies, which would take entity ids
+    private boolean createLaunchedModules = true;
+
     public ClusteredMicroservicePlacementLogic(int fonID) {
         setFONId(fonID);
     }
@@ -49,12 +66,17 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
         return fonID;
     }
 
+    public void setCreateLaunchedModules(boolean createLaunchedModules) {
+        this.createLaunchedModules = createLaunchedModules;
+    }
+
     @Override
     public PlacementLogicOutput run(List<FogDevice> fogDevices, Map<String, Application> applicationInfo, Map<Integer, Map<String, Double>> resourceAvailability, List<PlacementRequest> pr) {
         this.fogDevices = fogDevices;
         this.placementRequests = pr;
         this.resourceAvailability = resourceAvailability;
         this.applicationInfo = applicationInfo;
+        this.placementState = new PlacementState(fogDevices, resourceAvailability);
 
         setCurrentCpuLoad(new HashMap<Integer, Double>());
         setCurrentModuleMap(new HashMap<>());
@@ -68,6 +90,8 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
         mapModules();
         PlacementLogicOutput placement = generatePlacementMap();
         updateResources(resourceAvailability);
+        if (MicroservicePlacementConfig.ENABLE_PLACEMENT_CACHE)
+            invalidateCachedPlacements(resourceAvailability);
         postProcessing();
         return placement;
     }
@@ -140,7 +164,7 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
             for (int deviceId : currentModuleInstanceNum.keySet()) {
                 for (String microservice : currentModuleInstanceNum.get(deviceId).keySet()) {
                     Application application = applicationInfo.get(moduleToApp.get(microservice));
-                    AppModule appModule = new AppModule(application.getModuleByName(microservice));
+                    AppModule appModule = createLaunchedModules ? new AppModule(application.getModuleByName(microservice)) : application.getModuleByName(microservice);
                     ModuleLaunchConfig moduleLaunchConfig = new ModuleLaunchConfig(appModule, currentModuleInstanceNum.get(deviceId).get(microservice));
                     if (perDevice.keySet().contains(deviceId)) {
                         if (perDevice.get(deviceId).containsKey(application)) {
@@ -214,47 +238,144 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
         for (PlacementRequest placementRequest : placementRequests) {
             deviceToPlace.put(placementRequest, getDevice(placementRequest.getGatewayDeviceId()).getParentId());
 
-            // already placed modules
-            mappedMicroservices.put(placementRequest.getPlacementRequestId(), new HashMap<>(placementRequest.getPlacedMicroservices()));
-
-            //special modules  - predefined cloud placements
-            Application app =  applicationInfo.get(placementRequest.getApplicationId());
-            for (String microservice : app.getSpecialPlacementInfo().keySet()) {
-                for (String deviceName : app.getSpecialPlacementInfo().get(microservice)) {
-                    FogDevice device = getDeviceByName(deviceName);
-                    int deviceId = device.getId();
+            placeSpecialMicroservices(placementRequest);
+        }
 
-                    if (getModule(microservice, app).getMips() + getCurrentCpuLoad().get(deviceId) <= resourceAvailability.get(deviceId).get(ControllerComponent.CPU)) {
-                        Logger.debug("ModulePlacementEdgeward", "Placement of operator " + microservice + " on device " + device.getName() + " successful.");
-                        getCurrentCpuLoad().put(deviceId, getModule(microservice, app).getMips() + getCurrentCpuLoad().get(deviceId));
-                        System.out.println("Placement of operator " + microservice + " on device " + device.getName() + " successful.");
+        if (MicroservicePlacementConfig.ENABLE_PLACEMENT_CACHE)
+            mapModulesWithCache(deviceToPlace);
+        else
+            searchPlacements(placementRequests, deviceToPlace);
+    }
 
-                        moduleToApp.put(microservice, app.getAppId());
+    /**
+     * Places the requests replaying a cached placement where possible and searching the placement of the others. The
+     * first request of a fingerprint missing from the cache is searched first, the other requests with the same
+     * fingerprint then replay its placement.
+     */
+    private void mapModulesWithCache(Map<PlacementRequest, Integer> deviceToPlace) {
+        Map<PlacementRequest, PlacementDecisionCache.Fingerprint> fingerprints = new HashMap<>();
+        for (PlacementRequest placementRequest : placementRequests) {
+            Application app = applicationInfo.get(placementRequest.getApplicationId());
+            Set<String> placed = mappedMicroservices.get(placementRequest.getPlacementRequestId()).keySet();
+            fingerprints.put(placementRequest, placementCache.getFingerprint(app, placed, deviceToPlace.get(placementRequest), placementState));
+        }
 
-                        if (!currentModuleMap.get(deviceId).contains(microservice))
-                            currentModuleMap.get(deviceId).add(microservice);
+        List<PlacementRequest> toSearch = new ArrayList<>();
+        List<PlacementRequest> waiting = new ArrayList<>();
+        Set<String> searchedKeys = new HashSet<>();
+        for (PlacementRequest placementRequest : placementRequests) {
+            PlacementDecisionCache.Fingerprint fingerprint = fingerprints.get(placementRequest);
+            if (placementCache.get(fingerprint) != null)
+                replayOrSearch(placementRequest, fingerprint, toSearch);
+            else if (searchedKeys.add(fingerprint.getKey())) {
+                PlacementCacheMonitor.lookingUp(false);
+                toSearch.add(placementRequest);
+            } else
+                waiting.add(placementRequest);
+        }
+        searchAndCache(toSearch, deviceToPlace, fingerprints);
 
-                        mappedMicroservices.get(placementRequest.getPlacementRequestId()).put(microservice, deviceId);
+        toSearch = new ArrayList<>();
+        for (PlacementRequest placementRequest : waiting)
+            replayOrSearch(placementRequest, fingerprints.get(placementRequest), toSearch);
+        searchAndCache(toSearch, deviceToPlace, fingerprints);
+    }
 
-                        //currentModuleLoad
-                        if (!currentModuleLoadMap.get(deviceId).containsKey(microservice))
-                            currentModuleLoadMap.get(deviceId).put(microservice, getModule(microservice, app).getMips());
-                        else
-                            currentModuleLoadMap.get(deviceId).put(microservice, getModule(microservice, app).getMips() + currentModuleLoadMap.get(deviceId).get(microservice));
+    private void replayOrSearch(PlacementRequest placementRequest, PlacementDecisionCache.Fingerprint fingerprint, List<PlacementRequest> toSearch) {
+        Map<String, Integer> cached = placementCache.get(fingerprint);
+        boolean replayed = cached != null && replayPlacement(placementRequest, cached);
+        if (cached != null && !replayed)
+            PlacementCacheMonitor.replayFailing();
+        PlacementCacheMonitor.lookingUp(replayed);
+        if (!replayed)
+            toSearch.add(placementRequest);
+    }
 
+    /**
+     * Places the microservices of the request on the devices of a cached placement if the devices can take them all.
+     *
+     * @return false if a device cannot take its microservices, nothing is placed then
+     */
+    private boolean replayPlacement(PlacementRequest placementRequest, Map<String, Integer> placement) {
+        Application app = applicationInfo.get(placementRequest.getApplicationId());
+        Map<Integer, List<AppModule>> perDevice = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> microservice : placement.entrySet()) {
+            if (!perDevice.containsKey(microservice.getValue()))
+                perDevice.put(microservice.getValue(), new ArrayList<>());
+            perDevice.get(microservice.getValue()).add(getModule(microservice.getKey(), app));
+        }
+        for (Map.Entry<Integer, List<AppModule>> device : perDevice.entrySet()) {
+            if (!canPlaceAll(device.getKey(), device.getValue()))
+                return false;
+        }
+        for (Map.Entry<String, Integer> microservice : placement.entrySet())
+            placeMicroservice(placementRequest, microservice.getKey(), app, getDevice(microservice.getValue()));
+        return true;
+    }
 
-                        //currentModuleInstance
-                        if (!currentModuleInstanceNum.get(deviceId).containsKey(microservice))
-                            currentModuleInstanceNum.get(deviceId).put(microservice, 1);
-                        else
-                            currentModuleInstanceNum.get(deviceId).put(microservice, currentModuleInstanceNum.get(deviceId).get(microservice) + 1);
+    /**
+     * Searches the placement of the requests and caches the placement found for each of them.
+     */
+    private void searchAndCache(List<PlacementRequest> placementRequests, Map<PlacementRequest, Integer> deviceToPlace,
+                                Map<PlacementRequest, PlacementDecisionCache.Fingerprint> fingerprints) {
+        if (placementRequests.isEmpty())
+            return;
+        Map<PlacementRequest, Set<String>> placedBefore = new HashMap<>();
+        for (PlacementRequest placementRequest : placementRequests)
+            placedBefore.put(placementRequest, new HashSet<>(mappedMicroservices.get(placementRequest.getPlacementRequestId()).keySet()));
+
+        long startTime = System.nanoTime();
+        searchPlacements(placementRequests, deviceToPlace);
+        PlacementCacheMonitor.searchingPlacements(placementRequests.size(), System.nanoTime() - startTime);
 
-                        break;
-                    }
-                }
+        for (PlacementRequest placementRequest : placementRequests) {
+            Application app = applicationInfo.get(placementRequest.getApplicationId());
+            Map<String, Integer> mapped = mappedMicroservices.get(placementRequest.getPlacementRequestId());
+            Map<String, Integer> placement = new LinkedHashMap<>();
+            for (AppModule module : app.getModules()) {
+                if (mapped.containsKey(module.getName()) && !placedBefore.get(placementRequest).contains(module.getName()))
+                    placement.put(module.getName(), mapped.get(module.getName()));
             }
+            placementCache.put(fingerprints.get(placementRequest), placement);
+        }
+    }
+
+    /**
+     * Evicts the cached placements that can no longer be matched after the run changed the free resources of devices.
+     */
+    private void invalidateCachedPlacements(Map<Integer, Map<String, Double>> resourceAvailability) {
+        for (int ordinal = 0; ordinal < placementState.getDeviceCount(); ordinal++) {
+            int deviceId = placementState.getDeviceAt(ordinal).getId();
+            Map<String, Double> resources = resourceAvailability.get(deviceId);
+            if (resources == null)
+                continue;
+            double cpu = getResource(resources, ControllerComponent.CPU);
+            double ram = getResource(resources, ControllerComponent.RAM);
+            double storage = getResource(resources, ControllerComponent.STORAGE);
+            if (cpu != placementState.getCpuCapacity(ordinal) || ram != placementState.getRamCapacity(ordinal)
+                    || storage != placementState.getStorageCapacity(ordinal))
+                placementCache.invalidate(deviceId, cpu, ram, storage);
         }
+    }
+
+    private static double getResource(Map<String, Double> resources, String resource) {
+        Double value = resources.get(resource);
+        return value != null ? value : 0;
+    }
+
+    public PlacementDecisionCache getPlacementCache() {
+        return placementCache;
+    }
 
+    public void setPlacementCache(PlacementDecisionCache placementCache) {
+        this.placementCache = placementCache;
+    }
+
+    /**
+     * Places the requests edge-wards: each request starts from the parent of its gateway and moves to the parent (or
+     * the cluster) of its current device while microservices are left to place.
+     */
+    private void searchPlacements(List<PlacementRequest> placementRequests, Map<PlacementRequest, Integer> deviceToPlace) {
         Map<PlacementRequest, Integer> clusterNode = new HashMap<>();
 
         Map<PlacementRequest, List<String>> toPlace = new HashMap<>();
@@ -281,31 +402,8 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
                     if (toPlace.containsKey(placementRequest)) {
                         for (String microservice : toPlace.get(placementRequest)) {
                             // try to place
-                            if (getModule(microservice, app).getMips() + getCurrentCpuLoad().get(deviceId) <= resourceAvailability.get(deviceId).get(ControllerComponent.CPU)) {
-                                Logger.debug("ModulePlacementEdgeward", "Placement of operator " + microservice + " on device " + device.getName() + " successful.");
-                                getCurrentCpuLoad().put(deviceId, getModule(microservice, app).getMips() + getCurrentCpuLoad().get(deviceId));
-                                System.out.println("Placement of operator " + microservice + " on device " + device.getName() + " successful.");
-
-                                moduleToApp.put(microservice, app.getAppId());
-
-                                if (!currentModuleMap.get(deviceId).contains(microservice))
-                                    currentModuleMap.get(deviceId).add(microservice);
-
-                                mappedMicroservices.get(placementRequest.getPlacementRequestId()).put(microservice, deviceId);
-
-                                //currentModuleLoad
-                                if (!currentModuleLoadMap.get(deviceId).containsKey(microservice))
-                                    currentModuleLoadMap.get(deviceId).put(microservice, getModule(microservice, app).getMips());
-                                else
-                                    currentModuleLoadMap.get(deviceId).put(microservice, getModule(microservice, app).getMips() + currentModuleLoadMap.get(deviceId).get(microservice));
-
-
-                                //currentModuleInstance
-                                if (!currentModuleInstanceNum.get(deviceId).containsKey(microservice))
-                                    currentModuleInstanceNum.get(deviceId).put(microservice, 1);
-                                else
-                                    currentModuleInstanceNum.get(deviceId).put(microservice, currentModuleInstanceNum.get(deviceId).get(microservice) + 1);
-
+                            if (canPlace(deviceId, getModule(microservice, app))) {
+                                placeMicroservice(placementRequest, microservice, app, device);
                                 placed.add(microservice);
                             }
                         }
@@ -330,85 +428,12 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
                         int clusterDeviceId = clusterNode.get(placementRequest);
                         FogDevice device = getDevice(clusterDeviceId);
                         List<Integer> clusterDeviceIds = ((MicroserviceFogDevice) device).getClusterMembers();
-                        List<Integer> sortedClusterDevicesActive = new ArrayList<>();
-                        List<Integer> sortedClusterDevicesInactive = new ArrayList<>();
-                        for (Integer id : clusterDeviceIds) {
-                            //sort list from min to max
-                            if (currentModuleMap.get(id).size()>0 && sortedClusterDevicesActive.isEmpty())
-                                sortedClusterDevicesActive.add(id);
-                            else if(currentModuleMap.get(id).size()==0 && sortedClusterDevicesInactive.isEmpty())
-                                sortedClusterDevicesInactive.add(id);
-                            else if(currentModuleMap.get(id).size()>0){
-                                boolean isPlaced = false;
-                                for (int i = 0; i < sortedClusterDevicesActive.size(); i++) {
-                                    double sorted = resourceAvailability.get(sortedClusterDevicesActive.get(i)).get("cpu") -
-                                            getCurrentCpuLoad().get(sortedClusterDevicesActive.get(i));
-                                    double current = resourceAvailability.get(id).get("cpu") -
-                                            getCurrentCpuLoad().get(id);
-                                    if (sorted < current) {sortedClusterDevicesActive.add(i, id);
-                                        isPlaced = true;
-                                        break;
-                                    } else {
-                                        continue;
-                                    }
-                                }
-                                if (!isPlaced)
-                                    sortedClusterDevicesActive.add(id);
-                            }
-                            else{
-                                boolean isPlaced = false;
-                                for (int i = 0; i < sortedClusterDevicesInactive.size(); i++) {
-                                    double sorted = resourceAvailability.get(sortedClusterDevicesInactive.get(i)).get("cpu") -
-                                            getCurrentCpuLoad().get(sortedClusterDevicesInactive.get(i));
-                                    double current = resourceAvailability.get(id).get("cpu") -
-                                            getCurrentCpuLoad().get(id);
-                                    if (sorted < current) {sortedClusterDevicesInactive.add(i, id);
-                                        isPlaced = true;
-                                        break;
-                                    } else {
-                                        continue;
-                                    }
-                                }
-                                if (!isPlaced)
-                                    sortedClusterDevicesInactive.add(id);
-                            }
-                        }
-
-                        List<Integer> sortedClusterDevices = new ArrayList<>(sortedClusterDevicesActive);
-                        sortedClusterDevices.addAll(sortedClusterDevicesInactive);
                         List<String> placed = new ArrayList<>();
                         for (String microservice : toPlace.get(placementRequest)) {
-                            for (int id : sortedClusterDevices) {
-                                // try to place
-                                if (getModule(microservice, app).getMips() + getCurrentCpuLoad().get(id) <= resourceAvailability.get(id).get(ControllerComponent.CPU)) {
-                                    FogDevice placedDevice = getDevice(id);
-                                    Logger.debug("ModulePlacementEdgeward", "Placement of operator " + microservice + " on device " + placedDevice.getName() + " successful.");
-                                    getCurrentCpuLoad().put(id, getModule(microservice, app).getMips() + getCurrentCpuLoad().get(id));
-                                    System.out.println("Placement of operator " + microservice + " on device " + placedDevice.getName() + " successful.");
-
-                                    if (!currentModuleMap.get(id).contains(microservice))
-                                        currentModuleMap.get(id).add(microservice);
-
-                                    mappedMicroservices.get(placementRequest.getPlacementRequestId()).put(microservice, id);
-
-                                    moduleToApp.put(microservice, app.getAppId());
-
-                                    //currentModuleLoad
-                                    if (!currentModuleLoadMap.get(id).containsKey(microservice))
-                                        currentModuleLoadMap.get(id).put(microservice, getModule(microservice, app).getMips());
-                                    else
-                                        currentModuleLoadMap.get(id).put(microservice, getModule(microservice, app).getMips() + currentModuleLoadMap.get(id).get(microservice));
-
-
-                                    //currentModuleInstance
-                                    if (!currentModuleInstanceNum.get(id).containsKey(microservice))
-                                        currentModuleInstanceNum.get(id).put(microservice, 1);
-                                    else
-                                        currentModuleInstanceNum.get(id).put(microservice, currentModuleInstanceNum.get(id).get(microservice) + 1);
-
-                                    placed.add(microservice);
-                                    break;
-                                }
+                            int id = selectClusterDevice(clusterDeviceId, clusterDeviceIds, getModule(microservice, app));
+                            if (id != -1) {
+                                placeMicroservice(placementRequest, microservice, app, getDevice(id));
+                                placed.add(microservice);
                             }
                         }
 
@@ -428,35 +453,104 @@ public class ClusteredMicroservicePlacementLogic implements MicroservicePlacemen
 
     }
 
-    private FogDevice getDeviceByName(String deviceName) {
-        for (FogDevice f : fogDevices) {
-            if (f.getName().equals(deviceName))
-                return f;
+    /**
+     * Records the microservices already placed for the request and places its microservices with predefined
+     * placements (e.g. cloud) on the first of their devices that can take them.
+     */
+    protected void placeSpecialMicroservices(PlacementRequest placementRequest) {
+        // already placed modules
+        mappedMicroservices.put(placementRequest.getPlacementRequestId(), new HashMap<>(placementRequest.getPlacedMicroservices()));
+
+        //special modules  - predefined cloud placements
+        Application app =  applicationInfo.get(placementRequest.getApplicationId());
+        for (String microservice : app.getSpecialPlacementInfo().keySet()) {
+            for (String deviceName : app.getSpecialPlacementInfo().get(microservice)) {
+                FogDevice device = getDeviceByName(deviceName);
+                int deviceId = device.getId();
+
+                if (canPlace(deviceId, getModule(microservice, app))) {
+                    placeMicroservice(placementRequest, microservice, app, device);
+                    break;
+                }
+            }
         }
-        return null;
+    }
+
+    /**
+     * Returns true if the resources left on the device can take the module. Only cpu is considered.
+     */
+    protected boolean canPlace(int deviceId, AppModule module) {
+        return placementState.canHost(deviceId, module.getMips());
+    }
+
+    /**
+     * Returns true if the resources left on the device can take all the modules together. Only cpu is considered.
+     */
+    protected boolean canPlaceAll(int deviceId, List<AppModule> modules) {
+        double mips = 0;
+        for (AppModule module : modules)
+            mips += module.getMips();
+        return placementState.canHost(deviceId, mips);
+    }
+
+    /**
+     * Selects the cluster member to place the module on: the member with the most free cpu, members already used by
+     * this placement first.
+     *
+     * @return the id of the selected device, -1 if no member can take the module
+     */
+    protected int selectClusterDevice(int clusterDeviceId, List<Integer> clusterMembers, AppModule module) {
+        return placementState.selectClusterDevice(clusterDeviceId, clusterMembers, module.getMips());
+    }
+
+    /**
+     * Records the placement of a microservice of the request on a device and reserves its cpu.
+     */
+    protected void placeMicroservice(PlacementRequest placementRequest, String microservice, Application app, FogDevice device) {
+        int deviceId = device.getId();
+        AppModule module = getModule(microservice, app);
+        Logger.debug("ModulePlacementEdgeward", "Placement of operator " + microservice + " on device " + device.getName() + " successful.");
+        placementState.reserve(deviceId, module.getMips(), module.getRam(), module.getSize());
+        getCurrentCpuLoad().put(deviceId, module.getMips() + getCurrentCpuLoad().get(deviceId));
+        System.out.println("Placement of operator " + microservice + " on device " + device.getName() + " successful.");
+
+        moduleToApp.put(microservice, app.getAppId());
+
+        if (!currentModuleMap.get(deviceId).contains(microservice))
+            currentModuleMap.get(deviceId).add(microservice);
+
+        mappedMicroservices.get(placementRequest.getPlacementRequestId()).put(microservice, deviceId);
+
+        //currentModuleLoad
+        if (!currentModuleLoadMap.get(deviceId).containsKey(microservice))
+            currentModuleLoadMap.get(deviceId).put(microservice, module.getMips());
+        else
+            currentModuleLoadMap.get(deviceId).put(microservice, module.getMips() + currentModuleLoadMap.get(deviceId).get(microservice));
+
+        //currentModuleInstance
+        if (!currentModuleInstanceNum.get(deviceId).containsKey(microservice))
+            currentModuleInstanceNum.get(deviceId).put(microservice, 1);
+        else
+            currentModuleInstanceNum.get(deviceId).put(microservice, currentModuleInstanceNum.get(deviceId).get(microservice) + 1);
+    }
+
+    private FogDevice getDeviceByName(String deviceName) {
+        return placementState.getDeviceByName(deviceName);
     }
 
     public Map<Integer, Double> getCurrentCpuLoad() {
         return currentCpuLoad;
     }
 
-    private AppModule getModule(String moduleName, Application app) {
-        for (AppModule appModule : app.getModules()) {
-            if (appModule.getName().equals(moduleName))
-                return appModule;
-        }
-        return null;
+    protected AppModule getModule(String moduleName, Application app) {
+        return placementState.getModule(moduleName, app);
     }
 
-    private FogDevice getDevice(int deviceId) {
-        for (FogDevice fogDevice : fogDevices) {
-            if (fogDevice.getId() == deviceId)
-                return fogDevice;
-        }
-        return null;
+    protected FogDevice getDevice(int deviceId) {
+        return placementState.getDevice(deviceId);
     }
 
-    private List<String> getModulesToPlace(Set<String> placedModules, Application app) {
+    protected List<String> getModulesToPlace(Set<String> placedModules, Application app) {
         List<String> modulesToPlace_1 = new ArrayList<String>();
         List<String> modulesToPlace = new ArrayList<String>();
         for (AppModule module : app.getModules()) {
@@ -8,13 +8,14 @@ import org.fog.application.AppModule;
 import org.fog.application.Application;
 import org.fog.entities.Actuator;
 import org.fog.entities.FogDevice;
+import org.fog.entities.MigrationTransfer;
 import org.fog.entities.Sensor;
+import org.fog.mobilitydata.Clustering;
 import org.fog.mobilitydata.References;
 import org.fog.utils.*;
 import org.json.simple.JSONObject;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 
 public class ClusteringController extends SimEntity {
@@ -26,6 +27,7 @@ public class ClusteringController extends SimEntity {
     private List<Actuator> actuators;
     private LocationHandler locator;
     private Map<Integer, Integer> parentReference;
+    private TopologyAncestry ancestry;
 
 
     private Map<String, Application> applications;
@@ -54,7 +56,7 @@ public class ClusteringController extends SimEntity {
 
     }
 
-    public ClusteringController(String name, List<FogDevice> fogDevices, List<Sensor> sensors, List<Actuator> actuators, LocationHandler locator, List Levels) {
+    public ClusteringController(String name, List<FogDevice> fogDevices, List<Sensor> sensors, List<Actuator> actuators, LocationHandler locator, List<Integer> Levels) {
         super(name);
         this.applications = new HashMap<String, Application>();
         setLocator(locator);
@@ -145,6 +147,9 @@ public class ClusteringController extends SimEntity {
             case FogEvents.APP_SUBMIT:
                 processAppSubmit(ev);
                 break;
+            case FogEvents.START_DYNAMIC_CLUSTERING:
+                processClustering((List<?>) ev.getData());
+                break;
             case FogEvents.MOBILITY_SUBMIT:
                 processMobilityData();
                 break;
@@ -170,20 +175,22 @@ public class ClusteringController extends SimEntity {
         }
     }
 
-    public void clusteringSubmit(List Levels) {
-        System.out.println(CloudSim.clock() + " Start sending Clustering Request to Fog Devices in level: " + Levels);
+    public void clusteringSubmit(List<Integer> Levels) {
+        System.out.println(CloudSim.clock() + " Start sending Clustering Request for Fog Devices in level: " + Levels);
+        // processed after the start of the controller, as the clustering requests the devices processed one by one
+        sendNow(getId(), FogEvents.START_DYNAMIC_CLUSTERING, Levels);
+    }
+
+    private void processClustering(List<?> Levels) {
         for (int i = 0; i < Levels.size(); i++) {
-            int clusterLevel = (int) Levels.get(i);
+            int clusterLevel = (Integer) Levels.get(i);
+            List<FogDevice> levelDevices = new ArrayList<>();
             for (FogDevice fogDevice : fogDevices) {
-                System.out.println(CloudSim.clock() + " fog Device: " + fogDevice.getName() + " with id: " + fogDevice.getId() + " is at level: " + fogDevice.getLevel());
-                if ((int) fogDevice.getLevel() == clusterLevel) {
-                    JSONObject jsonMessage = new JSONObject();
-                    jsonMessage.put("locationsInfo", getLocator());
-                    sendNow(fogDevice.getId(), FogEvents.START_DYNAMIC_CLUSTERING, jsonMessage);
-                }
+                if (fogDevice.getLevel() == clusterLevel)
+                    levelDevices.add(fogDevice);
             }
+            Clustering.createClusters(levelDevices, getLocator());
         }
-
     }
 
 
@@ -214,12 +221,11 @@ public class ClusteringController extends SimEntity {
             //printFogDeviceChildren(prevParent.getId());
 
             //common ancestor policy
-            List<Integer> newParentPath = getPathsToCloud(newParent.getId());
-            List<Integer> prevParentPath = getPathsToCloud(prevParent.getId());
-            int commonAncestor = determineAncestor(newParentPath, prevParentPath);
+            int commonAncestor = getAncestry().getCommonAncestor(newParent.getId(), prevParent.getId());
 
 
             fogDevice.setParentId(newParent.getId());
+            getAncestry().setParent(fogDevice.getId(), newParent.getId());
             System.out.println("Child " + fogDevice.getName() + "\t----->\tParent " + newParent.getName());
             newParent.getChildToLatencyMap().put(fogDevice.getId(), fogDevice.getUplinkLatency());
             newParent.addChild(fogDevice.getId());
@@ -230,6 +236,21 @@ public class ClusteringController extends SimEntity {
                 getAppModulePlacementPolicy().get(applicationName).getModulesOnPath().get(fogDevice.getId()).put(newParent.getId(), migratingModules);
                 for (String moduleName : migratingModules) {
 
+                    if (Config.MIGRATION_TRANSFER_MODEL.equals(Config.MIGRATION_LINK_SHARED)) {
+                        // through the cluster link when the new parent is a cluster member of the previous one, devices
+                        // created without cluster link bandwidth only send through the tree
+                        List<Integer> route;
+                        if (getAppModulePlacementPolicy().get(applicationName).getClusteringFeature() && prevParent.getClusterMembers().contains(newParent.getId())
+                                && prevParent.getClusterLinkBandwidth() > 0)
+                            route = Arrays.asList(prevParent.getId(), newParent.getId());
+                        else
+                            route = getAncestry().getRoute(prevParent.getId(), commonAncestor, newParent.getId());
+                        MigrationTransfer transfer = new MigrationTransfer(MigrationTransfer.NO_CONTROLLER, route, getApplications().get(applicationName).getModuleByName(moduleName), getApplications().get(applicationName));
+                        sendNow(prevParent.getId(), FogEvents.START_MIGRATION_TRANSFER, transfer);
+                        System.out.println("Migrating " + moduleName + " from " + prevParent.getName() + " to " + newParent.getName());
+                        continue;
+                    }
+
                     double upDelay;
                     double downDelay;
                     upDelay = getUpDelay(prevParent.getId(), commonAncestor, getApplications().get(applicationName).getModuleByName(moduleName));
@@ -266,42 +287,22 @@ public class ClusteringController extends SimEntity {
 
     }
 
-    private double getDownDelay(int deviceID, int commonAncestorID, AppModule module) {
-        // TODO Auto-generated method stub
-        double networkDelay = 0.0;
-        while (deviceID != commonAncestorID) {
-            networkDelay = networkDelay + module.getSize() / getFogDeviceById(deviceID).getDownlinkBandwidth();
-            deviceID = getFogDeviceById(deviceID).getParentId();
-        }
-        return networkDelay;
+    /**
+     * Ancestry index of the topology, built on first use once the devices are connected
+     */
+    private TopologyAncestry getAncestry() {
+        if (ancestry == null)
+            ancestry = new TopologyAncestry(getFogDevices());
+        return ancestry;
     }
 
-
-    private double getUpDelay(int deviceID, int commonAncestorID, AppModule module) {
-        // TODO Auto-generated method stub
-        double networkDelay = 0.0;
-        while (deviceID != commonAncestorID) {
-            networkDelay = networkDelay + module.getSize() / getFogDeviceById(deviceID).getUplinkBandwidth();
-            deviceID = getFogDeviceById(deviceID).getParentId();
-        }
-        return networkDelay;
+    private double getDownDelay(int deviceID, int commonAncestorID, AppModule module) {
+        return getAncestry().getDownDelay(deviceID, commonAncestorID, module.getSize());
     }
 
-    private int determineAncestor(List<Integer> newParentPath, List<Integer> prevParentPath) {
-        // TODO Auto-generated method stub
-        List<Integer> common = newParentPath.stream().filter(prevParentPath::contains).collect(Collectors.toList());
-        return common.get(0);
-    }
 
-    private List<Integer> getPathsToCloud(int deviceID) {
-        // TODO Auto-generated method stub
-        List<Integer> path = new ArrayList<Integer>();
-        while (!locator.isCloud(deviceID)) {
-            path.add(deviceID);
-            deviceID = getFogDeviceById(deviceID).getParentId();
-        }
-        path.add(getCloud().getId());
-        return path;
+    private double getUpDelay(int deviceID, int commonAncestorID, AppModule module) {
+        return getAncestry().getUpDelay(deviceID, commonAncestorID, module.getSize());
     }
 
     private void processMobilityData() {
@@ -318,6 +319,8 @@ public class ClusteringController extends SimEntity {
 
     private void printNetworkUsageDetails() {
         System.out.println("Total network usage = " + NetworkUsageMonitor.getNetworkUsage() / Config.MAX_SIMULATION_TIME);
+        if (!Config.TUPLE_ACK_POLICY.equals(Config.ACK_PER_TUPLE))
+            System.out.println("Tuple ACK events avoided = " + TupleAckMonitor.getAvoidedAckEvents());
     }
 
     private FogDevice getCloud() {
@@ -0,0 +1,295 @@
+package org.fog.placement;
+
+import org.apache.commons.math3.util.Pair;
+import org.fog.application.AppModule;
+import org.fog.application.Application;
+import org.fog.entities.FogDevice;
+import org.fog.entities.MicroserviceFogDevice;
+import org.fog.entities.PlacementRequest;
+import org.fog.utils.ModuleLaunchConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a placement logic on the placement requests of a period in parallel.
+ * <p>
+ * Requests are partitioned by the device their placement starts from (the parent of the gateway device), requests
+ * starting from a device of a cluster share the partition of the cluster. Every partition is placed by its own
+ * placement logic instance on a fork-join pool, against the resource availability at the start of the period.
+ * <p>
+ * The CPU used by the placement of every partition is then claimed from a {@link PlacementBudget} on the calling
+ * thread, in partition order. A partition whose claim fails because an earlier partition took the CPU first loses its
+ * placement. The losing partitions are placed again in parallel against what is left in the budget and claimed again
+ * in partition order. Partitions failing their second claim are placed last, on the calling thread and all together,
+ * as the sequential placement does. The result therefore does not depend on the order in which the tasks run.
+ * <p>
+ * Speculative placements do not create the launched modules, the merged output creates them.
+ */
+public class ConcurrentPlacementExecutor {
+
+    public interface PlacementLogicSupplier {
+        MicroservicePlacementLogic newPlacementLogic();
+    }
+
+    private static ForkJoinPool pool;
+
+    private final PlacementLogicSupplier logicSupplier;
+
+    private int conflicts = 0;
+    private int sequentialFallbacks = 0;
+
+    public ConcurrentPlacementExecutor(PlacementLogicSupplier logicSupplier) {
+        this.logicSupplier = logicSupplier;
+    }
+
+    private static synchronized ForkJoinPool getPool(int parallelism) {
+        if (pool == null || pool.getParallelism() != parallelism) {
+            if (pool != null)
+                pool.shutdown();
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    private MicroservicePlacementLogic newSpeculativePlacementLogic() {
+        MicroservicePlacementLogic placementLogic = logicSupplier.newPlacementLogic();
+        if (placementLogic instanceof ClusteredMicroservicePlacementLogic)
+            ((ClusteredMicroservicePlacementLogic) placementLogic).setCreateLaunchedModules(false);
+        return placementLogic;
+    }
+
+    /**
+     * Places the requests and updates the CPU of the resource availability map, as a sequential run of the placement
+     * logic does.
+     */
+    public PlacementLogicOutput run(List<FogDevice> fogDevices, Map<String, Application> applicationInfo,
+                                    Map<Integer, Map<String, Double>> resourceAvailability,
+                                    List<PlacementRequest> placementRequests, int parallelism) {
+        Map<Integer, FogDevice> deviceById = new HashMap<>();
+        for (FogDevice device : fogDevices)
+            deviceById.put(device.getId(), device);
+        List<List<PlacementRequest>> partitions = partition(placementRequests, deviceById);
+
+        final Map<Integer, Map<String, Double>> snapshot = copy(resourceAvailability);
+        PlacementBudget budget = new PlacementBudget(fogDevices, resourceAvailability);
+        List<List<Map<String, Integer>>> placedBefore = new ArrayList<>();
+        for (List<PlacementRequest> partition : partitions)
+            placedBefore.add(getPlacedMicroservices(partition));
+
+        PlacementLogicOutput[] outputs = new PlacementLogicOutput[partitions.size()];
+        List<Integer> toPlace = new ArrayList<>();
+        for (int i = 0; i < partitions.size(); i++)
+            toPlace.add(i);
+        // the second round places the partitions that lost their claim against what the first round left
+        for (int round = 0; round < 2 && !toPlace.isEmpty(); round++) {
+            Map<Integer, Map<String, Double>> available = copy(snapshot);
+            budget.writeCpuTo(available);
+            List<PlacementLogicOutput> speculative = placeAll(fogDevices, applicationInfo, available, partitions, toPlace, parallelism);
+            List<Integer> losers = new ArrayList<>();
+            for (int i = 0; i < toPlace.size(); i++) {
+                int index = toPlace.get(i);
+                if (budget.tryReserveAll(getCpuReservations(speculative.get(i)))) {
+                    outputs[index] = speculative.get(i);
+                } else {
+                    restorePlacedMicroservices(partitions.get(index), placedBefore.get(index));
+                    losers.add(index);
+                }
+            }
+            if (round == 0)
+                conflicts += losers.size();
+            toPlace = losers;
+        }
+
+        // partitions that could not claim their cpu twice are placed together on this thread, against what is left
+        List<PlacementRequest> remaining = new ArrayList<>();
+        for (int index : toPlace)
+            remaining.addAll(partitions.get(index));
+        List<PlacementLogicOutput> placed = new ArrayList<>();
+        for (PlacementLogicOutput output : outputs) {
+            if (output != null)
+                placed.add(output);
+        }
+        if (!remaining.isEmpty()) {
+            sequentialFallbacks++;
+            Map<Integer, Map<String, Double>> available = copy(snapshot);
+            budget.writeCpuTo(available);
+            PlacementLogicOutput output = newSpeculativePlacementLogic().run(fogDevices, applicationInfo, available, remaining);
+            budget.reserveAll(getCpuReservations(output));
+            placed.add(output);
+        }
+        budget.writeCpuTo(resourceAvailability);
+        return merge(placed, applicationInfo);
+    }
+
+    /**
+     * Places the given partitions in parallel, each one by its own placement logic against its own copy of the
+     * resource availability.
+     *
+     * @return the placement of each partition, in the order of the given indexes
+     */
+    private List<PlacementLogicOutput> placeAll(List<FogDevice> fogDevices, Map<String, Application> applicationInfo,
+                                                Map<Integer, Map<String, Double>> available,
+                                                List<List<PlacementRequest>> partitions, List<Integer> indexes,
+                                                int parallelism) {
+        List<Callable<PlacementLogicOutput>> tasks = new ArrayList<>();
+        for (int index : indexes) {
+            final List<PlacementRequest> partition = partitions.get(index);
+            final Map<Integer, Map<String, Double>> partitionAvailable = copy(available);
+            tasks.add(() -> newSpeculativePlacementLogic().run(fogDevices, applicationInfo, partitionAvailable, partition));
+        }
+        List<PlacementLogicOutput> outputs = new ArrayList<>();
+        try {
+            for (Future<PlacementLogicOutput> future : getPool(parallelism).invokeAll(tasks))
+                outputs.add(future.get());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Parallel placement failed", e);
+        }
+        return outputs;
+    }
+
+    private static List<Map<String, Integer>> getPlacedMicroservices(List<PlacementRequest> partition) {
+        List<Map<String, Integer>> placed = new ArrayList<>();
+        for (PlacementRequest placementRequest : partition)
+            placed.add(new HashMap<>(placementRequest.getPlacedMicroservices()));
+        return placed;
+    }
+
+    private static void restorePlacedMicroservices(List<PlacementRequest> partition, List<Map<String, Integer>> placedBefore) {
+        for (int i = 0; i < partition.size(); i++) {
+            Map<String, Integer> placed = partition.get(i).getPlacedMicroservices();
+            placed.clear();
+            placed.putAll(placedBefore.get(i));
+        }
+    }
+
+    /**
+     * Number of partitions placed again because their devices were taken by an earlier partition.
+     */
+    public int getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Number of runs whose partitions failing their second claim were placed on the calling thread.
+     */
+    public int getSequentialFallbacks() {
+        return sequentialFallbacks;
+    }
+
+    /**
+     * Groups the requests by starting device, or by cluster if the starting device is clustered. Partitions are
+     * ordered by the smallest device id of their device or cluster, requests keep their order within a partition.
+     */
+    public static List<List<PlacementRequest>> partition(List<PlacementRequest> placementRequests, Map<Integer, FogDevice> deviceById) {
+        Map<Integer, List<PlacementRequest>> partitions = new TreeMap<>();
+        for (PlacementRequest placementRequest : placementRequests) {
+            int key = getPartitionKey(placementRequest, deviceById);
+            List<PlacementRequest> partition = partitions.get(key);
+            if (partition == null) {
+                partition = new ArrayList<>();
+                partitions.put(key, partition);
+            }
+            partition.add(placementRequest);
+        }
+        return new ArrayList<>(partitions.values());
+    }
+
+    private static int getPartitionKey(PlacementRequest placementRequest, Map<Integer, FogDevice> deviceById) {
+        FogDevice gateway = deviceById.get(placementRequest.getGatewayDeviceId());
+        int startId = gateway != null ? gateway.getParentId() : placementRequest.getGatewayDeviceId();
+        FogDevice start = deviceById.get(startId);
+        int key = startId;
+        if (start instanceof MicroserviceFogDevice && ((MicroserviceFogDevice) start).getIsInCluster()) {
+            for (Integer memberId : start.getClusterMembers())
+                key = Math.min(key, memberId);
+        }
+        return key;
+    }
+
+    /**
+     * CPU used on each device by the modules launched by a placement, by increasing device id.
+     */
+    private Map<Integer, Double> getCpuReservations(PlacementLogicOutput output) {
+        Map<Integer, Double> reservations = new TreeMap<>();
+        for (Map.Entry<Integer, Map<Application, List<ModuleLaunchConfig>>> device : output.getPerDevice().entrySet()) {
+            double mips = 0;
+            for (Map.Entry<Application, List<ModuleLaunchConfig>> app : device.getValue().entrySet()) {
+                for (ModuleLaunchConfig config : app.getValue())
+                    mips += app.getKey().getModuleByName(config.getModule().getName()).getMips() * config.getInstanceCount();
+            }
+            reservations.put(device.getKey(), mips);
+        }
+        return reservations;
+    }
+
+    /**
+     * Merges the outputs of the partitions in partition order. Instances of the same module placed on a device by
+     * several partitions are launched together, and the launched modules are created here so that their ids do not
+     * depend on the order in which the partitions ran.
+     */
+    private PlacementLogicOutput merge(List<PlacementLogicOutput> outputs, Map<String, Application> applicationInfo) {
+        Map<Integer, Map<String, Map<String, Integer>>> instanceCounts = new TreeMap<>();
+        Map<Integer, List<Pair<String, Integer>>> serviceDiscoveryInfo = new HashMap<>();
+        Map<PlacementRequest, Integer> prStatus = new HashMap<>();
+        for (PlacementLogicOutput output : outputs) {
+            for (Map.Entry<Integer, Map<Application, List<ModuleLaunchConfig>>> device : output.getPerDevice().entrySet()) {
+                Map<String, Map<String, Integer>> appCounts = instanceCounts.get(device.getKey());
+                if (appCounts == null) {
+                    appCounts = new TreeMap<>();
+                    instanceCounts.put(device.getKey(), appCounts);
+                }
+                for (Map.Entry<Application, List<ModuleLaunchConfig>> app : device.getValue().entrySet()) {
+                    Map<String, Integer> moduleCounts = appCounts.get(app.getKey().getAppId());
+                    if (moduleCounts == null) {
+                        moduleCounts = new TreeMap<>();
+                        appCounts.put(app.getKey().getAppId(), moduleCounts);
+                    }
+                    for (ModuleLaunchConfig config : app.getValue()) {
+                        String moduleName = config.getModule().getName();
+                        Integer count = moduleCounts.get(moduleName);
+                        moduleCounts.put(moduleName, (count != null ? count : 0) + config.getInstanceCount());
+                    }
+                }
+            }
+            for (Map.Entry<Integer, List<Pair<String, Integer>>> client : output.getServiceDiscoveryInfo().entrySet()) {
+                List<Pair<String, Integer>> services = serviceDiscoveryInfo.get(client.getKey());
+                if (services == null) {
+                    services = new ArrayList<>();
+                    serviceDiscoveryInfo.put(client.getKey(), services);
+                }
+                services.addAll(client.getValue());
+            }
+            prStatus.putAll(output.getPrStatus());
+        }
+
+        Map<Integer, Map<Application, List<ModuleLaunchConfig>>> perDevice = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, Map<String, Integer>>> device : instanceCounts.entrySet()) {
+            Map<Application, List<ModuleLaunchConfig>> apps = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, Integer>> app : device.getValue().entrySet()) {
+                Application application = applicationInfo.get(app.getKey());
+                List<ModuleLaunchConfig> configs = new ArrayList<>();
+                for (Map.Entry<String, Integer> module : app.getValue().entrySet())
+                    configs.add(new ModuleLaunchConfig(new AppModule(application.getModuleByName(module.getKey())), module.getValue()));
+                apps.put(application, configs);
+            }
+            perDevice.put(device.getKey(), apps);
+        }
+        return new PlacementLogicOutput(perDevice, serviceDiscoveryInfo, prStatus);
+    }
+
+    private static Map<Integer, Map<String, Double>> copy(Map<Integer, Map<String, Double>> resourceAvailability) {
+        Map<Integer, Map<String, Double>> copy = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, Double>> device : resourceAvailability.entrySet())
+            copy.put(device.getKey(), new HashMap<>(device.getValue()));
+        return copy;
+    }
+}
@@ -20,6 +20,7 @@ import org.fog.utils.FogEvents;
 import org.fog.utils.FogUtils;
 import org.fog.utils.NetworkUsageMonitor;
 import org.fog.utils.TimeKeeper;
+import org.fog.utils.TupleAckMonitor;
 
 public class Controller extends SimEntity{
 	
@@ -111,6 +112,8 @@ public class Controller extends SimEntity{
 	
 	private void printNetworkUsageDetails() {
 		System.out.println("Total network usage = "+NetworkUsageMonitor.getNetworkUsage()/Config.MAX_SIMULATION_TIME);		
+		if(!Config.TUPLE_ACK_POLICY.equals(Config.ACK_PER_TUPLE))
+			System.out.println("Tuple ACK events avoided = "+TupleAckMonitor.getAvoidedAckEvents());
 	}
 
 	private FogDevice getCloud(){
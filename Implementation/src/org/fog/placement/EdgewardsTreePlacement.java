@@ -0,0 +1,349 @@
+package org.fog.placement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.math3.util.Pair;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.application.AppEdge;
+import org.fog.application.AppModule;
+import org.fog.application.Application;
+import org.fog.application.selectivity.SelectivityModel;
+import org.fog.entities.Actuator;
+import org.fog.entities.FogDevice;
+import org.fog.entities.Sensor;
+import org.fog.entities.Tuple;
+import org.fog.utils.Logger;
+
+/**
+ * Edgewards placement of the modules of an application in a single bottom-up traversal of the device tree.
+ *
+ * The per path placement places the modules once for every leaf-to-root path, recomputing the tuple rates and the
+ * modules ready to be placed on every device of every path. Here the paths reaching a device with the same modules
+ * placed below it are merged into one flow carrying the sum of their tuple rates, and every device takes its placement
+ * decisions once per flow after all its children.
+ *
+ * The two placements are the same as long as every device can take the aggregated load of the flows reaching it, the
+ * per path placement then takes the same decisions path by path. A module of a single path flow that does not fit is
+ * left to the devices further north by both. Otherwise, when a device cannot take the load of a flow of several paths,
+ * or the additional load of a module it already hosts, the per path placement places the module for the first paths
+ * only or shifts it north with part of the load, which aggregated flows cannot reproduce. The bottom-up placement is
+ * therefore restricted to trees that are not loaded up to that point: it gives up on such a flow and leaves the maps
+ * as they were, for the per path placement.
+ *
+ * The placement is written to the load, module, module load and instance maps of the edgewards placement.
+ */
+public class EdgewardsTreePlacement {
+
+	/**
+	 * Leaf-to-root paths reaching a device with the same modules placed below it
+	 */
+	private static class Flow {
+		private final Set<String> placedModules;
+		private final Map<AppEdge, Double> sourceRates;
+		private int paths;
+
+		private Flow(Set<String> placedModules, Map<AppEdge, Double> sourceRates, int paths) {
+			this.placedModules = placedModules;
+			this.sourceRates = sourceRates;
+			this.paths = paths;
+		}
+
+		private void merge(Flow flow) {
+			for(Map.Entry<AppEdge, Double> rate : flow.sourceRates.entrySet()){
+				Double current = sourceRates.get(rate.getKey());
+				sourceRates.put(rate.getKey(), current != null ? current + rate.getValue() : rate.getValue());
+			}
+			paths += flow.paths;
+		}
+	}
+
+	private final Application application;
+	private final Map<Integer, Double> currentCpuLoad;
+	private final Map<Integer, List<String>> currentModuleMap;
+	private final Map<Integer, Map<String, Double>> currentModuleLoadMap;
+	private final Map<Integer, Map<String, Integer>> currentModuleInstanceNum;
+
+	private final List<String> moduleNames = new ArrayList<String>();
+	private final Map<String, AppModule> modules = new HashMap<String, AppModule>();
+	/**
+	 * Modules and endpoints that have to be placed below a module before it: destinations of its DOWN edges and
+	 * sources of its UP edges
+	 */
+	private final Map<String, List<String>> placementDependencies = new HashMap<String, List<String>>();
+	private final Map<String, List<AppEdge>> edgesBySource = new HashMap<String, List<AppEdge>>();
+	private final Map<String, List<AppEdge>> edgesByDestination = new HashMap<String, List<AppEdge>>();
+	private final List<AppEdge> periodicEdges = new ArrayList<AppEdge>();
+
+	private final Map<Integer, Map<String, Integer>> associatedSensors = new HashMap<Integer, Map<String, Integer>>();
+	private final Map<Integer, Map<String, Integer>> associatedActuators = new HashMap<Integer, Map<String, Integer>>();
+	private final Map<String, Double> sensorRates = new HashMap<String, Double>();
+
+	public EdgewardsTreePlacement(Application application, List<Sensor> sensors, List<Actuator> actuators,
+			Map<Integer, Double> currentCpuLoad, Map<Integer, List<String>> currentModuleMap,
+			Map<Integer, Map<String, Double>> currentModuleLoadMap, Map<Integer, Map<String, Integer>> currentModuleInstanceNum){
+		this.application = application;
+		this.currentCpuLoad = currentCpuLoad;
+		this.currentModuleMap = currentModuleMap;
+		this.currentModuleLoadMap = currentModuleLoadMap;
+		this.currentModuleInstanceNum = currentModuleInstanceNum;
+
+		for(AppModule module : application.getModules()){
+			moduleNames.add(module.getName());
+			modules.put(module.getName(), module);
+			placementDependencies.put(module.getName(), new ArrayList<String>());
+		}
+		for(AppEdge edge : application.getEdges()){
+			getList(edgesBySource, edge.getSource()).add(edge);
+			getList(edgesByDestination, edge.getDestination()).add(edge);
+			if(edge.getDirection()==Tuple.DOWN && placementDependencies.containsKey(edge.getSource()))
+				placementDependencies.get(edge.getSource()).add(edge.getDestination());
+			if(edge.getDirection()==Tuple.UP && placementDependencies.containsKey(edge.getDestination()))
+				placementDependencies.get(edge.getDestination()).add(edge.getSource());
+			if(edge.isPeriodic())
+				periodicEdges.add(edge);
+		}
+
+		for(Sensor sensor : sensors){
+			count(associatedSensors, sensor.getGatewayDeviceId(), sensor.getTupleType());
+			if(!sensorRates.containsKey(sensor.getTupleType()))
+				sensorRates.put(sensor.getTupleType(), 1/sensor.getTransmitDistribution().getMeanInterTransmitTime());
+		}
+		for(Actuator actuator : actuators)
+			count(associatedActuators, actuator.getGatewayDeviceId(), actuator.getActuatorType());
+	}
+
+	/**
+	 * Places the modules on the tree below the given root device, children before their parent.
+	 *
+	 * @return false if a device cannot take the aggregated load of a flow, nothing is placed then
+	 */
+	public boolean placeModules(int rootId){
+		List<Integer> order = new ArrayList<Integer>();
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		stack.push(rootId);
+		while(!stack.isEmpty()){
+			int deviceId = stack.pop();
+			order.add(deviceId);
+			for(int childId : getFogDeviceById(deviceId).getChildrenIds())
+				stack.push(childId);
+		}
+		Collections.reverse(order);
+
+		Map<Integer, Double> cpuLoad = new HashMap<Integer, Double>(currentCpuLoad);
+		Map<Integer, List<String>> moduleMap = new HashMap<Integer, List<String>>();
+		for(Map.Entry<Integer, List<String>> entry : currentModuleMap.entrySet())
+			moduleMap.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+		Map<Integer, Map<String, Double>> moduleLoadMap = copy(currentModuleLoadMap);
+		Map<Integer, Map<String, Integer>> moduleInstanceNum = copy(currentModuleInstanceNum);
+
+		List<String> placements = new ArrayList<String>();
+		Map<Integer, List<Flow>> outgoingFlows = new HashMap<Integer, List<Flow>>();
+		for(int deviceId : order){
+			FogDevice device = getFogDeviceById(deviceId);
+			List<Flow> flows;
+			if(device.getChildrenIds().size() == 0){
+				Map<AppEdge, Double> sourceRates = new HashMap<AppEdge, Double>();
+				for(AppEdge edge : periodicEdges)
+					sourceRates.put(edge, 1/edge.getPeriodicity());
+				flows = Collections.singletonList(new Flow(new HashSet<String>(), sourceRates, 1));
+			} else {
+				// paths of all children, merged by the modules placed below this device
+				Map<Set<String>, Flow> merged = new LinkedHashMap<Set<String>, Flow>();
+				for(int childId : device.getChildrenIds()){
+					for(Flow flow : outgoingFlows.remove(childId)){
+						Flow existing = merged.get(flow.placedModules);
+						if(existing == null)
+							merged.put(flow.placedModules, flow);
+						else
+							existing.merge(flow);
+					}
+				}
+				flows = new ArrayList<Flow>(merged.values());
+			}
+			for(Flow flow : flows){
+				if(!placeFlow(device, flow, placements)){
+					Logger.debug("EdgewardsTreePlacement", "Device "+device.getName()+" cannot take the aggregated load, placing per path");
+					currentCpuLoad.putAll(cpuLoad);
+					currentModuleMap.clear();
+					currentModuleMap.putAll(moduleMap);
+					currentModuleLoadMap.clear();
+					currentModuleLoadMap.putAll(moduleLoadMap);
+					currentModuleInstanceNum.clear();
+					currentModuleInstanceNum.putAll(moduleInstanceNum);
+					return false;
+				}
+			}
+			outgoingFlows.put(deviceId, flows);
+		}
+		for(String placement : placements)
+			System.out.println(placement);
+		return true;
+	}
+
+	/**
+	 * Places the modules ready to be placed on the device with the load of the flow.
+	 *
+	 * @param placements messages of the successful placements, printed once the whole tree is placed
+	 * @return false if the device cannot take the load of a module of the flow
+	 */
+	private boolean placeFlow(FogDevice device, Flow flow, List<String> placements){
+		int deviceId = device.getId();
+		Map<String, Integer> sensorsAssociated = getAssociated(associatedSensors, deviceId);
+		Map<String, Integer> actuatorsAssociated = getAssociated(associatedActuators, deviceId);
+		flow.placedModules.addAll(sensorsAssociated.keySet());
+		flow.placedModules.addAll(actuatorsAssociated.keySet());
+
+		for(String sensor : sensorsAssociated.keySet()){
+			for(AppEdge edge : getList(edgesBySource, sensor))
+				flow.sourceRates.put(edge, flow.paths*sensorsAssociated.get(sensor)*sensorRates.get(sensor));
+		}
+		Map<AppEdge, Double> appEdgeToRate = getEdgeRates(flow.sourceRates);
+
+		List<String> modulesToPlace = getModulesToPlace(flow.placedModules);
+		while(modulesToPlace.size() > 0){
+			String moduleName = modulesToPlace.get(0);
+			double totalCpuLoad = 0;
+			for(AppEdge edge : getList(edgesByDestination, moduleName)){
+				Double rate = appEdgeToRate.get(edge);
+				totalCpuLoad += (rate != null ? rate : 0.0)*edge.getTupleCpuLength();
+			}
+
+			int placedDeviceId = getPlacedDevice(moduleName, deviceId);
+			boolean fits = totalCpuLoad + currentCpuLoad.get(deviceId) <= device.getHost().getTotalMips();
+			// the per path placement would shift the module north with part of the load, or place it for the first paths
+			if(!fits && (placedDeviceId == deviceId || placedDeviceId == -1 && flow.paths > 1))
+				return false;
+			if(placedDeviceId == deviceId){
+				// MODULE ALREADY ON THIS DEVICE, ADD THE LOAD OF THE FLOW
+				flow.placedModules.add(moduleName);
+				modulesToPlace = getModulesToPlace(flow.placedModules);
+				currentCpuLoad.put(deviceId, currentCpuLoad.get(deviceId)+totalCpuLoad);
+				currentModuleInstanceNum.get(deviceId).put(moduleName, currentModuleInstanceNum.get(deviceId).get(moduleName)+flow.paths);
+			} else if(placedDeviceId == -1 && !fits){
+				Logger.debug("EdgewardsTreePlacement", "Placement of operator "+moduleName+ " NOT POSSIBLE on device "+device.getName());
+			} else if(placedDeviceId == -1){
+				currentCpuLoad.put(deviceId, totalCpuLoad + currentCpuLoad.get(deviceId));
+				placements.add("Placement of operator "+moduleName+ " on device "+device.getName() + " successful.");
+
+				if(!currentModuleMap.containsKey(deviceId))
+					currentModuleMap.put(deviceId, new ArrayList<String>());
+				currentModuleMap.get(deviceId).add(moduleName);
+				flow.placedModules.add(moduleName);
+				modulesToPlace = getModulesToPlace(flow.placedModules);
+				currentModuleLoadMap.get(deviceId).put(moduleName, totalCpuLoad);
+
+				// first path of the flow creates as many instances as endpoints served, every other path one more
+				int max = 1;
+				for(AppEdge edge : getList(edgesBySource, moduleName)){
+					if(actuatorsAssociated.containsKey(edge.getDestination()))
+						max = Math.max(actuatorsAssociated.get(edge.getDestination()), max);
+				}
+				for(AppEdge edge : getList(edgesByDestination, moduleName)){
+					if(sensorsAssociated.containsKey(edge.getSource()))
+						max = Math.max(sensorsAssociated.get(edge.getSource()), max);
+				}
+				currentModuleInstanceNum.get(deviceId).put(moduleName, max + flow.paths - 1);
+			}
+			modulesToPlace.remove(moduleName);
+		}
+		return true;
+	}
+
+	/**
+	 * Propagates the rates of the sensor and periodic edges to the whole application through the selectivity of the modules.
+	 */
+	private Map<AppEdge, Double> getEdgeRates(Map<AppEdge, Double> sourceRates){
+		Map<AppEdge, Double> appEdgeToRate = new HashMap<AppEdge, Double>(sourceRates);
+		boolean changed = true;
+		while(changed){
+			changed = false;
+			Map<AppEdge, Double> rateMap = new HashMap<AppEdge, Double>(appEdgeToRate);
+			for(AppEdge edge : rateMap.keySet()){
+				AppModule destModule = modules.get(edge.getDestination());
+				if(destModule == null)continue;
+				Map<Pair<String, String>, SelectivityModel> map = destModule.getSelectivityMap();
+				for(Pair<String, String> pair : map.keySet()){
+					if(pair.getFirst().equals(edge.getTupleType())){
+						double outputRate = appEdgeToRate.get(edge)*map.get(pair).getMeanRate();
+						AppEdge outputEdge = application.getEdgeMap().get(pair.getSecond());
+						if(!appEdgeToRate.containsKey(outputEdge) || appEdgeToRate.get(outputEdge)!=outputRate)
+							changed = true;
+						appEdgeToRate.put(outputEdge, outputRate);
+					}
+				}
+			}
+		}
+		return appEdgeToRate;
+	}
+
+	/**
+	 * Modules not placed yet whose DOWN destinations and UP sources are all placed
+	 */
+	private List<String> getModulesToPlace(Set<String> placedModules){
+		List<String> modulesToPlace = new ArrayList<String>();
+		for(String moduleName : moduleNames){
+			if(placedModules.contains(moduleName))
+				continue;
+			if(placedModules.containsAll(placementDependencies.get(moduleName)))
+				modulesToPlace.add(moduleName);
+		}
+		return modulesToPlace;
+	}
+
+	/**
+	 * Device hosting a module among the given device and the devices north of it, -1 if there is none
+	 */
+	private int getPlacedDevice(String moduleName, int deviceId){
+		int id = deviceId;
+		while(id != -1){
+			if(currentModuleMap.containsKey(id) && currentModuleMap.get(id).contains(moduleName))
+				return id;
+			id = getFogDeviceById(id).getParentId();
+		}
+		return -1;
+	}
+
+	private FogDevice getFogDeviceById(int fogDeviceId){
+		return (FogDevice)CloudSim.getEntity(fogDeviceId);
+	}
+
+	private static <V> Map<Integer, Map<String, V>> copy(Map<Integer, Map<String, V>> map){
+		Map<Integer, Map<String, V>> copy = new HashMap<Integer, Map<String, V>>();
+		for(Map.Entry<Integer, Map<String, V>> entry : map.entrySet())
+			copy.put(entry.getKey(), new HashMap<String, V>(entry.getValue()));
+		return copy;
+	}
+
+	private static Map<String, Integer> getAssociated(Map<Integer, Map<String, Integer>> associated, int deviceId){
+		Map<String, Integer> endpoints = associated.get(deviceId);
+		return endpoints != null ? endpoints : Collections.<String, Integer>emptyMap();
+	}
+
+	private static void count(Map<Integer, Map<String, Integer>> associated, int deviceId, String type){
+		Map<String, Integer> endpoints = associated.get(deviceId);
+		if(endpoints == null){
+			endpoints = new HashMap<String, Integer>();
+			associated.put(deviceId, endpoints);
+		}
+		Integer count = endpoints.get(type);
+		endpoints.put(type, count != null ? count + 1 : 1);
+	}
+
+	private static <T> List<T> getList(Map<String, List<T>> map, String key){
+		List<T> list = map.get(key);
+		if(list == null){
+			list = new ArrayList<T>();
+			map.put(key, list);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,265 @@
+package org.fog.placement;
+
+import org.apache.commons.math3.util.Pair;
+import org.fog.application.AppEdge;
+import org.fog.application.AppLoop;
+import org.fog.application.AppModule;
+import org.fog.application.Application;
+import org.fog.entities.FogDevice;
+import org.fog.entities.MicroserviceFogDevice;
+import org.fog.entities.PlacementRequest;
+import org.fog.utils.Logger;
+import org.fog.utils.MicroservicePlacementConfig;
+import org.fog.utils.ShortestPathRoutingGenerator;
+import org.fog.utils.TimeKeeper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Microservice placement minimising the predicted delay of the application loops.
+ * <p>
+ * The delay of a loop is predicted as the shortest path latency between the devices hosting its consecutive modules
+ * (see ShortestPathRoutingGenerator) plus the execution time of the loop tuples on the modules, sensors and actuators
+ * being on the gateway device of the request. The microservices of a request are first placed greedily, in the order
+ * they become ready, on the device minimising the predicted delay of the loops through them. Microservices are then
+ * moved one at a time to the device reducing the predicted delay of all loops the most, for at most
+ * MicroservicePlacementConfig.LATENCY_LOCAL_SEARCH_ROUNDS rounds. Placements exceeding the loop deadlines
+ * (AppLoop.getDeadline) by less are preferred over shorter loop delays.
+ * <p>
+ * The predicted loop delays are recorded in the TimeKeeper and reported against the measured ones at the end of the
+ * simulation.
+ */
+public class LatencyAwarePlacementLogic extends ClusteredMicroservicePlacementLogic {
+
+    /**
+     * Relative difference of predicted delays below which two placements are considered equal
+     */
+    private static final double TOLERANCE = 1e-9;
+
+    private final Map<String, Map<Pair<String, String>, AppEdge>> edgesByEndpoints = new HashMap<>();
+
+    public LatencyAwarePlacementLogic(int fonID) {
+        super(fonID);
+    }
+
+    @Override
+    public void mapModules() {
+        for (PlacementRequest placementRequest : placementRequests) {
+            placeSpecialMicroservices(placementRequest);
+            Application app = applicationInfo.get(placementRequest.getApplicationId());
+            Map<String, Integer> placed = mappedMicroservices.get(placementRequest.getPlacementRequestId());
+
+            Map<String, Integer> plan = planPlacement(placementRequest, app, new HashMap<>(placed));
+            for (Map.Entry<String, Integer> microservice : plan.entrySet())
+                placeMicroservice(placementRequest, microservice.getKey(), app, getDevice(microservice.getValue()));
+
+            for (AppLoop loop : app.getLoops()) {
+                double[] cost = getLoopCost(app, Collections.singletonList(loop), placed, placementRequest.getGatewayDeviceId(), true);
+                if (cost != null && !Double.isInfinite(cost[1]))
+                    TimeKeeper.getInstance().addPredictedLoopDelay(loop.getLoopId(), cost[1]);
+            }
+        }
+    }
+
+    /**
+     * Chooses the devices of the microservices of the request left to place.
+     *
+     * @param assignment devices of the microservices already placed, completed with the chosen devices
+     * @return the chosen device of each microservice, in placement order
+     */
+    private Map<String, Integer> planPlacement(PlacementRequest placementRequest, Application app, Map<String, Integer> assignment) {
+        int gatewayId = placementRequest.getGatewayDeviceId();
+        List<Integer> candidates = getCandidateDevices(gatewayId);
+        Map<String, List<AppLoop>> loopsByModule = new HashMap<>();
+        for (AppLoop loop : app.getLoops()) {
+            for (String module : loop.getModules()) {
+                if (!loopsByModule.containsKey(module))
+                    loopsByModule.put(module, new ArrayList<>());
+                if (!loopsByModule.get(module).contains(loop))
+                    loopsByModule.get(module).add(loop);
+            }
+        }
+        Map<Integer, Double> plannedCpu = new HashMap<>();
+        Map<String, Integer> plan = new LinkedHashMap<>();
+
+        // greedy pass : every microservice on the device minimising the delay of its loops
+        List<String> toPlace = getModulesToPlace(assignment.keySet(), app);
+        boolean progress = true;
+        while (!toPlace.isEmpty() && progress) {
+            progress = false;
+            for (String microservice : toPlace) {
+                AppModule module = getModule(microservice, app);
+                List<AppLoop> loops = loopsByModule.containsKey(microservice) ? loopsByModule.get(microservice) : Collections.<AppLoop>emptyList();
+                int best = -1;
+                double[] bestCost = null;
+                for (int deviceId : candidates) {
+                    if (!fits(deviceId, module, plannedCpu))
+                        continue;
+                    assignment.put(microservice, deviceId);
+                    double[] cost = getLoopCost(app, loops, assignment, gatewayId, false);
+                    if (bestCost == null || compare(cost, bestCost) < 0) {
+                        best = deviceId;
+                        bestCost = cost;
+                    }
+                }
+                if (best == -1) {
+                    assignment.remove(microservice);
+                    Logger.error("Placement Logic Error", "No device can host " + microservice + " of placement request " + placementRequest.getPlacementRequestId());
+                    continue;
+                }
+                assignment.put(microservice, best);
+                plan.put(microservice, best);
+                addCpu(plannedCpu, best, module.getMips());
+                progress = true;
+            }
+            toPlace = getModulesToPlace(assignment.keySet(), app);
+        }
+
+        // local search : move single microservices while the delay of all loops decreases
+        double[] current = getLoopCost(app, app.getLoops(), assignment, gatewayId, false);
+        for (int round = 0; round < MicroservicePlacementConfig.LATENCY_LOCAL_SEARCH_ROUNDS; round++) {
+            boolean improved = false;
+            for (String microservice : plan.keySet()) {
+                AppModule module = getModule(microservice, app);
+                int from = plan.get(microservice);
+                for (int deviceId : candidates) {
+                    if (deviceId == from || !fits(deviceId, module, plannedCpu))
+                        continue;
+                    assignment.put(microservice, deviceId);
+                    double[] cost = getLoopCost(app, app.getLoops(), assignment, gatewayId, false);
+                    if (compare(cost, current) < 0) {
+                        addCpu(plannedCpu, from, -module.getMips());
+                        addCpu(plannedCpu, deviceId, module.getMips());
+                        plan.put(microservice, deviceId);
+                        from = deviceId;
+                        current = cost;
+                        improved = true;
+                    } else {
+                        assignment.put(microservice, from);
+                    }
+                }
+            }
+            if (!improved)
+                break;
+        }
+        return plan;
+    }
+
+    /**
+     * Devices the microservices of a request can be placed on: devices of the run reachable from the gateway, client
+     * devices excluded, by increasing latency from the gateway.
+     */
+    private List<Integer> getCandidateDevices(final int gatewayId) {
+        List<Integer> candidates = new ArrayList<>();
+        for (FogDevice device : fogDevices) {
+            if (device.getId() == gatewayId || ShortestPathRoutingGenerator.getLatency(gatewayId, device.getId()) < 0)
+                continue;
+            if (device instanceof MicroserviceFogDevice && MicroserviceFogDevice.CLIENT.equals(((MicroserviceFogDevice) device).getDeviceType()))
+                continue;
+            candidates.add(device.getId());
+        }
+        Collections.sort(candidates, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer d1, Integer d2) {
+                return Double.compare(ShortestPathRoutingGenerator.getLatency(gatewayId, d1), ShortestPathRoutingGenerator.getLatency(gatewayId, d2));
+            }
+        });
+        return candidates;
+    }
+
+    private boolean fits(int deviceId, AppModule module, Map<Integer, Double> plannedCpu) {
+        Double planned = plannedCpu.get(deviceId);
+        double free = placementState.getFreeCpu(placementState.getOrdinal(deviceId)) - (planned != null ? planned : 0);
+        return canPlace(deviceId, module) && module.getMips() <= free;
+    }
+
+    private static void addCpu(Map<Integer, Double> plannedCpu, int deviceId, double mips) {
+        Double planned = plannedCpu.get(deviceId);
+        plannedCpu.put(deviceId, (planned != null ? planned : 0) + mips);
+    }
+
+    /**
+     * Predicted delay of a set of loops. Sensors and actuators are on the gateway device, hops with a module not
+     * placed yet are not counted unless complete loops are required. A loop with a hop between devices that have no
+     * route between them is infeasible, its delay is infinite.
+     *
+     * @param complete true to predict complete loops only
+     * @return the delay in excess of the loop deadlines and the total delay, null if complete loops are required and
+     * a module of a loop is not placed
+     */
+    private double[] getLoopCost(Application app, List<AppLoop> loops, Map<String, Integer> assignment, int gatewayId, boolean complete) {
+        Map<Pair<String, String>, AppEdge> edges = getEdgesByEndpoints(app);
+        double excess = 0;
+        double total = 0;
+        for (AppLoop loop : loops) {
+            List<String> modules = loop.getModules();
+            double delay = 0;
+            for (int i = 0; i < modules.size() - 1; i++) {
+                Integer source = getHostDevice(app, modules.get(i), assignment, gatewayId);
+                Integer dest = getHostDevice(app, modules.get(i + 1), assignment, gatewayId);
+                if (source == null || dest == null) {
+                    if (complete)
+                        return null;
+                    continue;
+                }
+                double latency = ShortestPathRoutingGenerator.getLatency(source, dest);
+                if (latency < 0) {
+                    delay = Double.POSITIVE_INFINITY;
+                    break;
+                }
+                delay += latency;
+                AppEdge edge = edges.get(new Pair<>(modules.get(i), modules.get(i + 1)));
+                AppModule destModule = app.getModuleByName(modules.get(i + 1));
+                if (edge != null && destModule != null && destModule.getMips() > 0)
+                    delay += edge.getTupleCpuLength() / destModule.getMips();
+            }
+            total += delay;
+            if (delay > loop.getDeadline())
+                excess += delay - loop.getDeadline();
+        }
+        return new double[]{excess, total};
+    }
+
+    private Integer getHostDevice(Application app, String name, Map<String, Integer> assignment, int gatewayId) {
+        if (app.getModuleByName(name) == null)
+            return gatewayId;
+        return assignment.get(name);
+    }
+
+    private Map<Pair<String, String>, AppEdge> getEdgesByEndpoints(Application app) {
+        Map<Pair<String, String>, AppEdge> edges = edgesByEndpoints.get(app.getAppId());
+        if (edges == null) {
+            edges = new HashMap<>();
+            for (AppEdge edge : app.getEdges())
+                edges.put(new Pair<>(edge.getSource(), edge.getDestination()), edge);
+            edgesByEndpoints.put(app.getAppId(), edges);
+        }
+        return edges;
+    }
+
+    /**
+     * Orders loop costs by delay in excess of the deadlines, then by total delay.
+     */
+    private static int compare(double[] cost1, double[] cost2) {
+        for (int i = 0; i < cost1.length; i++) {
+            // an infinite cost is only equal to another infinite cost, whatever the tolerance
+            if (Double.isInfinite(cost1[i]) || Double.isInfinite(cost2[i])) {
+                if (cost1[i] != cost2[i])
+                    return cost1[i] < cost2[i] ? -1 : 1;
+                continue;
+            }
+            double tolerance = TOLERANCE * Math.max(1, Math.max(Math.abs(cost1[i]), Math.abs(cost2[i])));
+            if (cost1[i] < cost2[i] - tolerance)
+                return -1;
+            if (cost1[i] > cost2[i] + tolerance)
+                return 1;
+        }
+        return 0;
+    }
+}
@@ -7,19 +7,25 @@ import java.util.Map;
 
 import org.fog.mobilitydata.Location;
 import org.fog.mobilitydata.DataParser;
+import org.fog.mobilitydata.MobilityTraceCursor;
 import org.fog.mobilitydata.References;
-import org.fog.utils.Config;
+import org.fog.mobilitydata.ResourceLocationIndex;
 
 public class LocationHandler {
 	
 	public DataParser dataObject;
 	public Map<Integer, String> instanceToDataId;
+	private Map<String, Integer> dataIdToInstanceId;
+	// nearest resource lookup of each level, built on first use
+	private Map<Integer, ResourceLocationIndex> levelIndexes;
 	
 
 	public LocationHandler(DataParser dataObject) {
 		// TODO Auto-generated constructor stub
 		this.dataObject = dataObject;
 		instanceToDataId = new HashMap<Integer, String>();
+		dataIdToInstanceId = new HashMap<String, Integer>();
+		levelIndexes = new HashMap<Integer, ResourceLocationIndex>();
 		
 	}
 
@@ -42,12 +48,7 @@ public class LocationHandler {
 	            + Math.cos(Math.toRadians(loc1.latitude)) * Math.cos(Math.toRadians(loc2.latitude))
 	            * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
 	    double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-	    double distance = R * c; // kms
-
-
-	    distance = Math.pow(distance, 2);
-
-	    return Math.sqrt(distance);
+	    return R * c; // kms
 	}
 	
 
@@ -62,54 +63,49 @@ public class LocationHandler {
 		else
 			resourceLoc = getUserLocationInfo(dataId,time);
 		
-		int parentInstanceId = References.NOT_SET;	
-		String parentDataId = "";
-				
-	
-		if(time<References.INIT_TIME){
-			for(int i=0; i<getLevelWiseResources(parentLevel).size();i++){
-				Location potentialParentLoc = getResourceLocationInfo(getLevelWiseResources(parentLevel).get(i));
-				if(potentialParentLoc.block==resourceLoc.block) {
-					parentDataId = getLevelWiseResources(parentLevel).get(i);
-					for(int parentIdIterator: instanceToDataId.keySet())
-					{
-						if(instanceToDataId.get(parentIdIterator).equals(parentDataId))
-						{
-							parentInstanceId = parentIdIterator;
-						}
-					}
-				}	
-			}
-		}
+		ResourceLocationIndex parentLevelIndex = getLevelIndex(parentLevel);
+		String parentDataId;
+		if(time<References.INIT_TIME)
+			parentDataId = parentLevelIndex.getByBlock(resourceLoc.block);
 		else
-		{
-			double minmumDistance = Config.MAX_VALUE;
-			for(int i=0; i<getLevelWiseResources(parentLevel).size();i++){
-				Location potentialParentLoc = getResourceLocationInfo(getLevelWiseResources(parentLevel).get(i));
-				
-				double distance = calculateDistance(resourceLoc, potentialParentLoc);
-					if(distance<minmumDistance){
-						parentDataId = getLevelWiseResources(parentLevel).get(i);
-						minmumDistance = distance;
-					}
-			}
-			
-			for(int parentIdIterator: instanceToDataId.keySet())
-			{
-				if(instanceToDataId.get(parentIdIterator).equals(parentDataId))
-				{
-					parentInstanceId = parentIdIterator;
-				}
-			}
-			
+			parentDataId = parentLevelIndex.getNearest(resourceLoc);
+
+		return getInstanceId(parentDataId);
+	}
+
+	/**
+	 * @return the parent the device would have at the location, the nearest resource of the level above the device
+	 */
+	public int determineParent(int resourceId, Location location) {
+		String dataId = getDataIdByInstanceID(resourceId);
+		int parentLevel = getDataObject().resourceAndUserToLevel.get(dataId)-1;
+		return getInstanceId(getLevelIndex(parentLevel).getNearest(location));
+	}
+
+	private int getInstanceId(String dataId) {
+		Integer instanceId = dataId != null ? dataIdToInstanceId.get(dataId) : null;
+		return instanceId != null ? instanceId : References.NOT_SET;
+	}
+
+	/**
+	 * @return the location of the mobile device in its trace at the time, null if the trace has no position for it
+	 */
+	public Location getUserLocation(int instanceId, double time) {
+		return getUserLocationInfo(getDataIdByInstanceID(instanceId), time);
+	}
+
+	private ResourceLocationIndex getLevelIndex(int levelNo) {
+		ResourceLocationIndex index = levelIndexes.get(levelNo);
+		if(index == null) {
+			index = new ResourceLocationIndex(getLevelWiseResources(levelNo), getDataObject().resourceLocationData);
+			levelIndexes.put(levelNo, index);
 		}
-		
-		return parentInstanceId;	
-	}	
+		return index;
+	}
 
 	private Location getUserLocationInfo(String dataId, double time) {
 		// TODO Auto-generated method stub
-		return getDataObject().usersLocation.get(dataId).get(time);
+		return getDataObject().getUserLocation(dataId, time);
 	}
 
 	private Location getResourceLocationInfo(String dataId) {
@@ -121,13 +117,21 @@ public class LocationHandler {
 	public List<Double> getTimeSheet(int instanceId) {
 		
 		String dataId = getDataIdByInstanceID(instanceId);
-		List<Double>timeSheet = new ArrayList<Double>(getDataObject().usersLocation.get(dataId).keySet());
-		return timeSheet;
+		return getDataObject().getUserEventTimes(dataId);
+	}
+
+	/**
+	 * @return a cursor over the mobility event times of the mobile device, in order
+	 */
+	public MobilityTraceCursor getTraceCursor(int instanceId) {
+		String dataId = getDataIdByInstanceID(instanceId);
+		return getDataObject().getUserTraceCursor(dataId);
 	}
 
 	public void linkDataWithInstance(int instanceId, String dataID) {
 		// TODO Auto-generated method stub
 		instanceToDataId.put(instanceId, dataID);
+		dataIdToInstanceId.put(dataID, instanceId);
 	}
 
 	public int getLevelID(String resourceType) {
@@ -145,15 +149,37 @@ public class LocationHandler {
 		getDataObject().parseUserData(userMobilityPattern, datasetReference);
 	}
 
+	/**
+	 * Loads the user traces from a binary trace file, see MobilityTraceFile
+	 */
+	public void loadUserInfo(String traceFile) throws IOException {
+		getDataObject().loadUserData(traceFile);
+	}
+
+	/**
+	 * Adds user traces generated in memory, see SyntheticMobilityGenerator
+	 */
+	public void addUserInfo(Map<Integer, Map<Double, Location>> userTraces) {
+		getDataObject().addUserData(userTraces);
+	}
+
+	/**
+	 * Loads the edge resources from a binary file, see EdgeResourceFile
+	 */
+	public void loadResourceInfo(String resourceFile) throws IOException {
+		getDataObject().loadResourceData(resourceFile);
+		levelIndexes.clear();
+	}
+
 	public void parseResourceInfo() throws NumberFormatException, IOException {
 		// TODO Auto-generated method stub
 		getDataObject().parseResourceData();
+		levelIndexes.clear();
 	}
 
 	public List<String> getMobileUserDataId() {
 		// TODO Auto-generated method stub
-		List<String> userDataIds = new ArrayList<>(getDataObject().usersLocation.keySet());
-		return userDataIds;
+		return getDataObject().getUserDataIds();
 		
 	}
 
@@ -86,7 +86,7 @@ public class MicroservicesController extends SimEntity {
 
     protected void initializeControllers(int placementLogic) {
         for (FogDevice device : fogDevices) {
-            LoadBalancer loadBalancer = new RRLoadBalancer();
+            LoadBalancer loadBalancer = createLoadBalancer(device);
             MicroserviceFogDevice cdevice = (MicroserviceFogDevice) device;
 
             //responsible for placement decision making
@@ -102,7 +102,7 @@ public class MicroservicesController extends SimEntity {
 
     protected void initializeControllers(int placementLogic, Map<Integer, List<FogDevice>> monitored) {
         for (FogDevice device : fogDevices) {
-            LoadBalancer loadBalancer = new RRLoadBalancer();
+            LoadBalancer loadBalancer = createLoadBalancer(device);
             MicroserviceFogDevice cdevice = (MicroserviceFogDevice) device;
 
             //responsible for placement decision making
@@ -116,6 +116,22 @@ public class MicroservicesController extends SimEntity {
         }
     }
 
+    /**
+     * @return the load balancer of the device, as set by MicroservicePlacementConfig.LOAD_BALANCER
+     */
+    protected LoadBalancer createLoadBalancer(FogDevice device) {
+        String loadBalancer = MicroservicePlacementConfig.LOAD_BALANCER;
+        if (loadBalancer.equals(MicroservicePlacementConfig.LEAST_OUTSTANDING))
+            return new LeastOutstandingLoadBalancer();
+        else if (loadBalancer.equals(MicroservicePlacementConfig.LATENCY_WEIGHTED))
+            return new LatencyWeightedLoadBalancer();
+        else if (loadBalancer.equals(MicroservicePlacementConfig.POWER_OF_TWO_CHOICES))
+            return new PowerOfTwoChoicesLoadBalancer(MicroservicePlacementConfig.LOAD_BALANCER_SEED + device.getId());
+        else if (!loadBalancer.equals(MicroservicePlacementConfig.ROUND_ROBIN))
+            Logger.error("Load balancer error", "Unknown load balancer " + loadBalancer + ", round robin is used");
+        return new RRLoadBalancer();
+    }
+
     protected FogDevice getFogDeviceById(int id) {
         for (FogDevice f : fogDevices) {
             if (f.getId() == id)
@@ -125,14 +141,26 @@ public class MicroservicesController extends SimEntity {
     }
 
     protected void generateRoutingTable() {
-        Map<Integer, Map<Integer, Integer>> routing = ShortestPathRoutingGenerator.generateRoutingTable(fogDevices);
+        ShortestPaths routes = ShortestPathRoutingGenerator.generateRoutes(fogDevices);
 
         for (FogDevice f : fogDevices) {
-            ((MicroserviceFogDevice) f).addRoutingTable(routing.get(f.getId()));
+            ((MicroserviceFogDevice) f).setRoutingTable(routes);
         }
 
     }
 
+    /**
+     * Updates the routing table after links between devices changed. Only the routes of the sources affected by the
+     * change are computed again, in the routing table shared by the devices.
+     */
+    protected void updateRoutingTable() {
+        ShortestPaths routes = ShortestPathRoutingGenerator.getShortestPaths();
+        ShortestPathRoutingGenerator.updateRoutingTable(fogDevices);
+        // all routes are computed again in a new table if the devices changed
+        if (ShortestPathRoutingGenerator.getShortestPaths() != routes)
+            generateRoutingTable();
+    }
+
     public void startEntity() {
         if (MicroservicePlacementConfig.SIMULATION_MODE == "STATIC")
             initiatePlacementRequestProcessing();
@@ -261,6 +289,8 @@ public class MicroservicesController extends SimEntity {
 
     protected void printNetworkUsageDetails() {
         System.out.println("Total network usage = " + NetworkUsageMonitor.getNetworkUsage() / Config.MAX_SIMULATION_TIME);
+        if (!Config.TUPLE_ACK_POLICY.equals(Config.ACK_PER_TUPLE))
+            System.out.println("Tuple ACK events avoided = " + TupleAckMonitor.getAvoidedAckEvents());
     }
 
     protected FogDevice getCloud() {
@@ -312,6 +342,15 @@ public class MicroservicesController extends SimEntity {
             System.out.println(getStringForLoopId(loopId) + " ---> " + TimeKeeper.getInstance().getLoopIdToCurrentAverage().get(loopId));
         }
         System.out.println("=========================================");
+        if (!TimeKeeper.getInstance().getLoopIdToPredictedDelay().isEmpty()) {
+            System.out.println("PREDICTED vs MEASURED LOOP DELAYS");
+            System.out.println("=========================================");
+            for (Integer loopId : TimeKeeper.getInstance().getLoopIdToPredictedDelay().keySet()) {
+                System.out.println(getStringForLoopId(loopId) + " ---> predicted " + TimeKeeper.getInstance().getLoopIdToPredictedDelay().get(loopId)
+                        + ", measured " + TimeKeeper.getInstance().getLoopIdToCurrentAverage().get(loopId));
+            }
+            System.out.println("=========================================");
+        }
         System.out.println("TUPLE CPU EXECUTION DELAY");
         System.out.println("=========================================");
 
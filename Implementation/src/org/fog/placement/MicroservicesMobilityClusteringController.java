@@ -7,21 +7,31 @@ import org.fog.application.AppEdge;
 import org.fog.application.AppModule;
 import org.fog.application.Application;
 import org.fog.entities.FogDevice;
+import org.fog.entities.MigrationTransfer;
 import org.fog.entities.Sensor;
 import org.fog.entities.Tuple;
 import org.fog.entities.MicroserviceFogDevice;
 import org.fog.entities.PlacementRequest;
+import org.fog.mobilitydata.Clustering;
+import org.fog.mobilitydata.MobilityTraceCursor;
 import org.fog.mobilitydata.References;
 import org.fog.utils.Config;
 import org.fog.utils.FogEvents;
+import org.fog.utils.MicroservicePlacementConfig;
 import org.fog.utils.MigrationDelayMonitor;
+import org.fog.utils.ModuleMigrationMonitor;
+import org.fog.utils.PreMigrationMonitor;
+import org.fog.utils.TopologyAncestry;
 import org.json.simple.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * Created by Samodha Pallewatta on 7/31/2020.
@@ -30,6 +40,13 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
 
     private LocationHandler locator;
     private Map<Integer, Integer> parentReference;
+    private TopologyAncestry ancestry;
+    private Map<Integer, MobilityTraceCursor> traceCursors = new HashMap<>();
+    // mobile devices whose mobility event fired at the current time, handed over together (batched handover)
+    private List<FogDevice> pendingHandovers = new ArrayList<>();
+    private PreMigrationPolicy preMigrationPolicy;
+    // modules of the link shared migration transfers in progress, with their handover, by transfer id
+    private Map<Integer, List<Pair<Handover, String>>> transferredModules = new HashMap<>();
 
 
     protected Map<Integer, Map<String, PlacementRequest>> perClientDevicePrs = new HashMap<>();  // clientDevice -> <Application -> PR>
@@ -77,6 +94,8 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
 
     @Override
     public void startEntity() {
+        // transfers are keyed by id, the ids of a previous simulation in the same JVM start again
+        MigrationTransfer.resetIds();
         if (Config.ENABLE_DYNAMIC_CLUSTERING)
             clusteringSubmit(clustering_levels);
 
@@ -92,7 +111,22 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
                 processMobilityData();
                 break;
             case FogEvents.MOBILITY_MANAGEMENT:
-                processMobility(ev);
+                if (MicroservicePlacementConfig.ENABLE_BATCHED_HANDOVER)
+                    queueHandover(ev);
+                else
+                    processMobility(ev);
+                break;
+            case FogEvents.PROCESS_HANDOVER_BATCH:
+                processHandoverBatch();
+                break;
+            case FogEvents.PRE_MIGRATE:
+                processPreMigration(ev);
+                break;
+            case FogEvents.MIGRATION_TRANSFER_COMPLETE:
+                processMigrationTransferComplete((MigrationTransfer) ev.getData());
+                break;
+            case FogEvents.START_DYNAMIC_CLUSTERING:
+                processClustering((List<?>) ev.getData());
                 break;
             case FogEvents.STOP_SIMULATION:
                 CloudSim.stopSimulation();
@@ -112,6 +146,19 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
     private void printMigrationDelayDetails() {
         // TODO Auto-generated method stub
         System.out.println("Total time required for module migration = " + MigrationDelayMonitor.getMigrationDelay());
+        for (String moduleName : ModuleMigrationMonitor.getMigratedModules()) {
+            int migrations = ModuleMigrationMonitor.getMigrationCount(moduleName);
+            System.out.println("Migrations of " + moduleName + " = " + migrations + ", average downtime = " + ModuleMigrationMonitor.getDowntime(moduleName) / migrations
+                    + ", maximum downtime = " + ModuleMigrationMonitor.getMaxDowntime(moduleName) + ", average migration time = " + ModuleMigrationMonitor.getMigrationTime(moduleName) / migrations);
+        }
+        System.out.println("Tuples buffered during migrations = " + ModuleMigrationMonitor.getBufferedTuples() + ", forwarded = " + ModuleMigrationMonitor.getForwardedTuples()
+                + ", dropped = " + ModuleMigrationMonitor.getDroppedTuples());
+        if (preMigrationPolicy != null && preMigrationPolicy.isEnabled()) {
+            System.out.println("Pre-migrated modules = " + PreMigrationMonitor.getStagedModules() + " (used " + PreMigrationMonitor.getUsedModules() + ", wasted " + PreMigrationMonitor.getWastedModules() + ")");
+            System.out.println("Migration delay avoided by pre-migration = " + PreMigrationMonitor.getAvoidedMigrationDelay());
+            System.out.println("Network usage of wasted pre-migrations = " + PreMigrationMonitor.getWastedNetworkUsage());
+            System.out.println("Time modules were duplicated by pre-migration = " + PreMigrationMonitor.getDuplicateModuleTime());
+        }
     }
 
     @Override
@@ -163,72 +210,394 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
     }
 
     private void processMobility(SimEvent ev) {
-
-        // TODO Auto-generated method stub
         FogDevice fogDevice = (FogDevice) ev.getData();
+        scheduleNextMobilityEvent(fogDevice);
+        List<Handover> handovers = handOver(fogDevice);
+        startMigrations(handovers, false);
+        completeHandovers(handovers, null);
+
+        updateRoutingTable();
+    }
+
+    /**
+     * Handover of the application of a mobile device
+     */
+    private static class Handover {
+        private final FogDevice fogDevice;
+        private final String applicationName;
+        private final int newParent;
+        private final Map<String, Integer> migratingModules;
+        // migrations of the modules without a pre-migrated copy on the new parent
+        private final Map<String, ModuleMigration> migrations = new LinkedHashMap<>();
+        // delays of the modules with a pre-migrated copy on the new parent
+        private final Map<String, Double> stagedDelays = new HashMap<>();
+
+        private Handover(FogDevice fogDevice, String applicationName, int newParent, Map<String, Integer> migratingModules) {
+            this.fogDevice = fogDevice;
+            this.applicationName = applicationName;
+            this.newParent = newParent;
+            this.migratingModules = migratingModules;
+        }
+    }
+
+    /**
+     * Migration of a module of a handover
+     */
+    private static class ModuleMigration {
+        private final AppModule module;
+        private final Application application;
+        private final int sourceId;
+        private final int commonAncestor;
+        private final int destinationId;
+        // delays until the module is released from the source and runs on the destination
+        private double upDelay;
+        private double downDelay;
+        // link shared transfer of the module, null if it is delivered after the delays
+        private MigrationTransfer migrationTransfer;
+
+        private ModuleMigration(AppModule module, Application application, int sourceId, int commonAncestor, int destinationId) {
+            this.module = module;
+            this.application = application;
+            this.sourceId = sourceId;
+            this.commonAncestor = commonAncestor;
+            this.destinationId = destinationId;
+        }
+    }
+
+    /**
+     * Moves the mobile device under its parent of the current time and lists the migrations of the modules of its
+     * applications, the modules with a copy pre-migrated to the new parent use it.
+     *
+     * @return the handovers of the applications of the device, none if its parent does not change
+     */
+    private List<Handover> handOver(FogDevice fogDevice) {
         FogDevice prevParent = getFogDeviceById(parentReference.get(fogDevice.getId()));
         FogDevice newParent = getFogDeviceById(locator.determineParent(fogDevice.getId(), CloudSim.clock()));
         System.out.println(CloudSim.clock() + " Starting Mobility Management for " + fogDevice.getName());
         parentReference.put(fogDevice.getId(), newParent.getId());
-        Map<String, Integer> migratingModules = new HashMap<>(); // migrating module _> it's device (can be preParent or  device the same cluster
-        setNewOrchestratorNode(fogDevice,newParent);
+        setNewOrchestratorNode(fogDevice, newParent);
+        preMigrationPolicy.observe(fogDevice.getId(), CloudSim.clock());
+        int stagedParent = preMigrationPolicy.getStagedParent(fogDevice.getId());
+        List<PreMigrationPolicy.StagedModule> stagedModules = preMigrationPolicy.takeStagedModules(fogDevice.getId());
 
+        List<Handover> handovers = new ArrayList<>();
         if (prevParent.getId() != newParent.getId()) {
-            //printFogDeviceChildren(newParent.getId());
-            //printFogDeviceChildren(prevParent.getId());
-
             //common ancestor policy
-            List<Integer> newParentPath = getPathsToCloud(newParent.getId());
-            List<Integer> prevParentPath = getPathsToCloud(prevParent.getId());
-            int commonAncestor = determineAncestor(newParentPath, prevParentPath);
-
+            int commonAncestor = getAncestry().getCommonAncestor(newParent.getId(), prevParent.getId());
 
             fogDevice.setParentId(newParent.getId());
+            getAncestry().setParent(fogDevice.getId(), newParent.getId());
             System.out.println("Child " + fogDevice.getName() + "\t----->\tParent " + newParent.getName());
             newParent.getChildToLatencyMap().put(fogDevice.getId(), fogDevice.getUplinkLatency());
             newParent.addChild(fogDevice.getId());
             prevParent.removeChild(fogDevice.getId());
 
             for (String applicationName : fogDevice.getActiveApplications()) {
+                Handover handover = new Handover(fogDevice, applicationName, newParent.getId(), getModulesToMigrate(fogDevice, commonAncestor, applicationName));
+                for (String moduleName : handover.migratingModules.keySet()) {
+                    int sourceId = handover.migratingModules.get(moduleName);
+                    PreMigrationPolicy.StagedModule stagedModule = stagedParent == newParent.getId() ? removeStagedModule(stagedModules, applicationName, moduleName) : null;
+                    if (stagedModule != null) {
+                        handover.stagedDelays.put(moduleName, useStagedModule(stagedModule, sourceId, commonAncestor, newParent));
+                        continue;
+                    }
+                    Application application = applications.get(applicationName);
+                    handover.migrations.put(moduleName, new ModuleMigration(application.getModuleByName(moduleName), application, sourceId, commonAncestor, newParent.getId()));
+                    System.out.println("Migrating " + moduleName + " from " + prevParent.getName() + " to " + newParent.getName());
+                }
+                handovers.add(handover);
+            }
+        }
+        retireStagedModules(stagedModules, stagedParent);
+        return handovers;
+    }
 
-                migratingModules = getModulesToMigrate(fogDevice, commonAncestor, applicationName);
-                HashMap<String, Double> upDelays = new HashMap<>(); // per migrating module
-                HashMap<String, Double> downDelays = new HashMap<>(); // per migrating module
+    /**
+     * Starts the migrations of the modules of the handovers. Each module is delivered after the delays of its own size,
+     * or the end of its own link shared transfer.
+     *
+     * @param combine whether stop and copy migrations from the same device to the same new parent with the same delays
+     *                share their MODULE_SEND and MODULE_RECEIVE events
+     */
+    private void startMigrations(List<Handover> handovers, boolean combine) {
+        Map<String, List<ModuleMigration>> deliveries = new LinkedHashMap<>();
+        for (Handover handover : handovers) {
+            for (ModuleMigration migration : handover.migrations.values()) {
+                if (Config.MIGRATION_TRANSFER_MODEL.equals(Config.MIGRATION_LINK_SHARED)) {
+                    migration.migrationTransfer = new MigrationTransfer(getId(), getAncestry().getRoute(migration.sourceId, migration.commonAncestor, migration.destinationId), new AppModule(migration.module), migration.application);
+                    sendNow(migration.sourceId, FogEvents.START_MIGRATION_TRANSFER, migration.migrationTransfer);
+                    awaitTransfer(migration.migrationTransfer, handover, migration.module.getName());
+                    continue;
+                }
 
-                for (String moduleName : migratingModules.keySet()) {
+                if (MicroservicePlacementConfig.MIGRATION_MODE.equals(MicroservicePlacementConfig.LIVE_PRE_COPY)) {
+                    double migrationTime = startLiveMigration(migration.sourceId, migration.commonAncestor, migration.destinationId, migration.module, migration.application,
+                            getForwardingTime(handover, migration));
+                    migration.upDelay = migrationTime;
+                    migration.downDelay = migrationTime;
+                    continue;
+                }
 
-                    double upDelay = getUpDelay(migratingModules.get(moduleName), commonAncestor, applications.get(applicationName).getModuleByName(moduleName));
-                    double downDelay = getDownDelay(newParent.getId(), commonAncestor, applications.get(applicationName).getModuleByName(moduleName));
-                    upDelays.put(moduleName, upDelay);
-                    downDelays.put(moduleName, downDelay);
-                    JSONObject jsonSend = new JSONObject();
-                    jsonSend.put("module", applications.get(applicationName).getModuleByName(moduleName));
-                    jsonSend.put("delay", upDelay);
+                migration.upDelay = getUpDelay(migration.sourceId, migration.commonAncestor, migration.module);
+                migration.downDelay = getDownDelay(migration.destinationId, migration.commonAncestor, migration.module);
+                // stop and copy, the module runs on the new parent with its state of the start of the migration
+                ModuleMigrationMonitor.moduleMigrated(migration.module.getName(), Math.max(migration.upDelay, migration.downDelay), Math.max(migration.upDelay, migration.downDelay));
+                String key = combine ? migration.sourceId + "|" + migration.destinationId + "|" + migration.upDelay + "|" + migration.downDelay : String.valueOf(deliveries.size());
+                List<ModuleMigration> delivery = deliveries.get(key);
+                if (delivery == null) {
+                    delivery = new ArrayList<>();
+                    deliveries.put(key, delivery);
+                }
+                delivery.add(migration);
+            }
+        }
 
-                    JSONObject jsonReceive = new JSONObject();
-                    jsonReceive.put("module", new AppModule(applications.get(applicationName).getModuleByName(moduleName)));
-                    jsonReceive.put("delay", downDelay);
-                    jsonReceive.put("application", applications.get(applicationName));
+        for (List<ModuleMigration> delivery : deliveries.values()) {
+            ModuleMigration first = delivery.get(0);
+            List<AppModule> sentModules = new ArrayList<>();
+            List<AppModule> receivedModules = new ArrayList<>();
+            List<Application> moduleApplications = new ArrayList<>();
+            for (ModuleMigration migration : delivery) {
+                sentModules.add(migration.module);
+                receivedModules.add(new AppModule(migration.module));
+                moduleApplications.add(migration.application);
+            }
+            send(first.sourceId, first.upDelay, FogEvents.MODULE_SEND, createPayload("modules", sentModules, "delay", first.upDelay));
+            send(first.destinationId, first.downDelay, FogEvents.MODULE_RECEIVE, createPayload("modules", receivedModules, "applications", moduleApplications, "delay", first.downDelay));
+        }
+    }
 
-                    send(migratingModules.get(moduleName), upDelay, FogEvents.MODULE_SEND, jsonSend);
-                    send(newParent.getId(), downDelay, FogEvents.MODULE_RECEIVE, jsonReceive);
-                    System.out.println("Migrating " + moduleName + " from " + prevParent.getName() + " to " + newParent.getName());
-                }
+    /**
+     * Updates the service discovery for the modules of the handovers delivered after known delays, the others once their
+     * link shared transfer completes, then the placements of the handovers.
+     *
+     * @param serviceDiscoveryUpdates updates collected by device and delay instead of being sent, null to send them
+     */
+    private void completeHandovers(List<Handover> handovers, Map<Integer, Map<Double, List<JSONObject>>> serviceDiscoveryUpdates) {
+        // service discovery updates use the placements from before the handovers
+        for (Handover handover : handovers) {
+            HashMap<String, Double> upDelays = new HashMap<>(handover.stagedDelays);
+            HashMap<String, Double> downDelays = new HashMap<>(handover.stagedDelays);
+            for (Map.Entry<String, ModuleMigration> migration : handover.migrations.entrySet()) {
+                if (migration.getValue().migrationTransfer != null)
+                    continue;
+                upDelays.put(migration.getKey(), migration.getValue().upDelay);
+                downDelays.put(migration.getKey(), migration.getValue().downDelay);
+            }
+            Map<String, Integer> updatedModules = getModulesWithDelay(handover, upDelays.keySet());
+            if (!updatedModules.isEmpty())
+                serviceDiscoveryUpdate(handover.fogDevice, updatedModules, handover.applicationName, handover.newParent, upDelays, downDelays, serviceDiscoveryUpdates);
+        }
 
-                serviceDiscoveryUpdate(fogDevice, migratingModules, applicationName, newParent.getId(), upDelays, downDelays);
-                for (String moduleName : migratingModules.keySet()) {
-                    //because modules are moved to next parent
-                    perClientDevicePrs.get(fogDevice.getId()).get(applicationName).getPlacedMicroservices().put(moduleName, newParent.getId());
-                }
+        for (Handover handover : handovers) {
+            for (String moduleName : handover.migratingModules.keySet()) {
+                //because modules are moved to next parent
+                perClientDevicePrs.get(handover.fogDevice.getId()).get(handover.applicationName).getPlacedMicroservices().put(moduleName, handover.newParent);
+            }
+        }
+    }
+
+    /**
+     * Queues the mobility event, the mobile devices moving at the same time are handed over together once all their
+     * events are processed.
+     */
+    private void queueHandover(SimEvent ev) {
+        FogDevice fogDevice = (FogDevice) ev.getData();
+        // queued after the mobility events already scheduled for this time, and before the pre-migration for the next
+        // mobility event of the device
+        if (pendingHandovers.isEmpty())
+            sendNow(getId(), FogEvents.PROCESS_HANDOVER_BATCH);
+        pendingHandovers.add(fogDevice);
+        scheduleNextMobilityEvent(fogDevice);
+    }
+
+    /**
+     * Hands over the queued mobile devices as processMobility does, with one routing table update for the batch, the
+     * stop and copy migrations from the same device to the same new parent with the same delays sent together and the
+     * service discovery updates of a device arriving at the same time sent as one event.
+     */
+    private void processHandoverBatch() {
+        List<FogDevice> devices = pendingHandovers;
+        pendingHandovers = new ArrayList<>();
+
+        List<Handover> handovers = new ArrayList<>();
+        for (FogDevice fogDevice : devices)
+            handovers.addAll(handOver(fogDevice));
+        startMigrations(handovers, true);
+
+        Map<Integer, Map<Double, List<JSONObject>>> serviceDiscoveryUpdates = new LinkedHashMap<>();
+        completeHandovers(handovers, serviceDiscoveryUpdates);
+        for (Map.Entry<Integer, Map<Double, List<JSONObject>>> device : serviceDiscoveryUpdates.entrySet()) {
+            for (Map.Entry<Double, List<JSONObject>> updates : device.getValue().entrySet())
+                send(device.getKey(), updates.getKey(), FogEvents.UPDATE_SERVICE_DISCOVERY, createPayload("updates", updates.getValue()));
+        }
+
+        updateRoutingTable();
+    }
+
+    /**
+     * Migrates the module from the source to the destination by live pre-copy (MicroservicePlacementConfig.LIVE_PRE_COPY),
+     * the module keeps running on the source until the copy of its last dirty state. The state streams up to the common
+     * ancestor and down to the destination at once, the slower side sets the time to copy it.
+     *
+     * @param forwardingTime time the source forwards the tuples still reaching it for the module once it runs on the
+     *                       destination
+     * @return the time until the module runs on the destination
+     */
+    private double startLiveMigration(int sourceId, int commonAncestor, int destinationId, AppModule module, Application application, double forwardingTime) {
+        double transferDelay = Math.max(getAncestry().getUpDelay(sourceId, commonAncestor, 1), getAncestry().getDownDelay(destinationId, commonAncestor, 1));
+        PreCopyMigration migration = new PreCopyMigration(module.getSize(), MicroservicePlacementConfig.getDirtyRate(module.getName()), transferDelay);
+
+        JSONObject jsonStop = createPayload("modules", Collections.singletonList(module), "live", true, "destination", destinationId,
+                "downtime", migration.getDowntime(), "forwardingTime", forwardingTime);
+        JSONObject jsonReceive = createPayload("modules", Collections.singletonList(new AppModule(module)), "applications", Collections.singletonList(application),
+                "delay", migration.getMigrationTime(), "copiedSize", migration.getCopiedSize());
+
+        send(sourceId, migration.getPreCopyTime(), FogEvents.MODULE_SEND, jsonStop);
+        send(destinationId, migration.getMigrationTime(), FogEvents.MODULE_RECEIVE, jsonReceive);
+        ModuleMigrationMonitor.moduleMigrated(module.getName(), migration.getDowntime(), migration.getMigrationTime());
+        return migration.getMigrationTime();
+    }
+
+    /**
+     * @return the latency of the longest route to the source of the migration from the devices whose service discovery
+     * the handover updates for the module, the time the tuples sent to the source before the update may still take to
+     * reach it
+     */
+    private double getForwardingTime(Handover handover, ModuleMigration migration) {
+        PlacementRequest pr = perClientDevicePrs.get(handover.fogDevice.getId()).get(handover.applicationName);
+        Set<Integer> updatedDevices = new HashSet<>();
+        updatedDevices.add(handover.fogDevice.getId());
+        updatedDevices.add(handover.newParent);
+        for (String clientM : getClientMicroservices(migration.module.getName(), handover.applicationName))
+            updatedDevices.add(pr.getPlacedMicroservices().get(clientM));
+        double forwardingTime = 0;
+        for (int deviceId : updatedDevices)
+            forwardingTime = Math.max(forwardingTime, getRouteLatency(deviceId, migration.sourceId));
+        return forwardingTime;
+    }
+
+    private double getRouteLatency(int sourceId, int destinationId) {
+        List<Integer> route = getAncestry().getRoute(sourceId, getAncestry().getCommonAncestor(sourceId, destinationId), destinationId);
+        double latency = 0;
+        for (int i = 1; i < route.size(); i++) {
+            FogDevice from = getFogDeviceById(route.get(i - 1));
+            FogDevice to = getFogDeviceById(route.get(i));
+            // both directions of a link have the uplink latency of the lower device
+            latency += from.getParentId() == to.getId() ? from.getUplinkLatency() : to.getUplinkLatency();
+        }
+        return latency;
+    }
+
+    /**
+     * Defers the service discovery update of a module of the handover to the end of its link shared transfer.
+     */
+    private void awaitTransfer(MigrationTransfer transfer, Handover handover, String moduleName) {
+        List<Pair<Handover, String>> modules = transferredModules.get(transfer.getId());
+        if (modules == null) {
+            modules = new ArrayList<>();
+            transferredModules.put(transfer.getId(), modules);
+        }
+        modules.add(new Pair<>(handover, moduleName));
+    }
+
+    /**
+     * @param delayedModules modules delivered after a known delay, the others wait for the end of their link shared transfer
+     */
+    private static Map<String, Integer> getModulesWithDelay(Handover handover, Set<String> delayedModules) {
+        Map<String, Integer> modules = new HashMap<>(handover.migratingModules);
+        modules.keySet().retainAll(delayedModules);
+        return modules;
+    }
+
+    /**
+     * Updates the service discovery for the modules of a link shared transfer once they run on their new parent.
+     */
+    private void processMigrationTransferComplete(MigrationTransfer transfer) {
+        List<Pair<Handover, String>> modules = transferredModules.remove(transfer.getId());
+        if (modules == null)
+            return;
+        for (Pair<Handover, String> module : modules) {
+            Handover handover = module.getFirst();
+            String moduleName = module.getSecond();
+            HashMap<String, Double> delays = new HashMap<>();
+            delays.put(moduleName, 0.0);
+            serviceDiscoveryUpdate(handover.fogDevice, Collections.singletonMap(moduleName, handover.migratingModules.get(moduleName)), handover.applicationName, handover.newParent, delays, delays, null);
+        }
+    }
+
+    /**
+     * Copies the modules the next handover of the mobile device would migrate to its predicted next parent.
+     */
+    private void processPreMigration(SimEvent ev) {
+        JSONObject object = (JSONObject) ev.getData();
+        FogDevice fogDevice = (FogDevice) object.get("device");
+        double time = (double) object.get("time");
+        int currentParent = parentReference.get(fogDevice.getId());
+        int predictedParent = preMigrationPolicy.predictParent(fogDevice.getId(), time);
+        if (predictedParent == References.NOT_SET || predictedParent == currentParent || preMigrationPolicy.hasStagedModules(fogDevice.getId()))
+            return;
+
+        int commonAncestor = getAncestry().getCommonAncestor(predictedParent, currentParent);
+        for (String applicationName : fogDevice.getActiveApplications()) {
+            Map<String, Integer> migratingModules = getModulesToMigrate(fogDevice, commonAncestor, applicationName);
+            for (String moduleName : migratingModules.keySet()) {
+                if (migratingModules.get(moduleName) == predictedParent)
+                    continue;
+                AppModule module = applications.get(applicationName).getModuleByName(moduleName);
+                double downDelay = getDownDelay(predictedParent, commonAncestor, module);
+
+                JSONObject jsonReceive = createPayload("module", new AppModule(module), "delay", downDelay, "application", applications.get(applicationName), "preMigration", true);
+                send(predictedParent, downDelay, FogEvents.MODULE_RECEIVE, jsonReceive);
+
+                preMigrationPolicy.stage(fogDevice.getId(), predictedParent, new PreMigrationPolicy.StagedModule(applicationName, moduleName, module.getSize(), CloudSim.clock(), CloudSim.clock() + downDelay));
+                PreMigrationMonitor.moduleStaged();
+                System.out.println("Pre-migrating " + moduleName + " of " + fogDevice.getName() + " to " + getFogDeviceById(predictedParent).getName());
             }
+        }
+    }
 
-            // = get
-            //printFogDeviceChildren(newParent.getId());
-            //printFogDeviceChildren(prevParent.getId());
+    private static PreMigrationPolicy.StagedModule removeStagedModule(List<PreMigrationPolicy.StagedModule> stagedModules, String applicationName, String moduleName) {
+        for (int i = 0; i < stagedModules.size(); i++) {
+            PreMigrationPolicy.StagedModule stagedModule = stagedModules.get(i);
+            if (stagedModule.getApplication().equals(applicationName) && stagedModule.getModule().equals(moduleName))
+                return stagedModules.remove(i);
         }
+        return null;
+    }
 
-        updateRoutingTable(fogDevice);
+    /**
+     * Uses the copy staged on the new parent instead of migrating the module, the module is released from its device
+     * once the copy runs. The wait for a copy not ready yet counts as migration delay.
+     *
+     * @return the time until the copy runs
+     */
+    private double useStagedModule(PreMigrationPolicy.StagedModule stagedModule, int sourceId, int commonAncestor, FogDevice newParent) {
+        AppModule module = applications.get(stagedModule.getApplication()).getModuleByName(stagedModule.getModule());
+        double wait = Math.max(0, stagedModule.getReadyTime() - CloudSim.clock());
+        MigrationDelayMonitor.setMigrationDelay(wait);
+
+        JSONObject jsonRetire = createPayload("module", module, "delay", 0.0, "preMigration", true);
+        send(sourceId, wait, FogEvents.MODULE_SEND, jsonRetire);
+
+        double migrationDelay = getDownDelay(newParent.getId(), commonAncestor, module);
+        PreMigrationMonitor.stagedModuleUsed(Math.max(0, migrationDelay - wait), Math.max(0, CloudSim.clock() - stagedModule.getReadyTime()));
+        System.out.println("Using pre-migrated " + stagedModule.getModule() + " on " + newParent.getName());
+        return wait;
+    }
 
+    /**
+     * Releases the staged copies the handover did not use, once they run. The rest of the transfer of a copy not ready
+     * yet counts as migration delay.
+     */
+    private void retireStagedModules(List<PreMigrationPolicy.StagedModule> stagedModules, int stagedParent) {
+        for (PreMigrationPolicy.StagedModule stagedModule : stagedModules) {
+            double wait = Math.max(0, stagedModule.getReadyTime() - CloudSim.clock());
+            MigrationDelayMonitor.setMigrationDelay(wait);
+            JSONObject jsonRetire = createPayload("module", applications.get(stagedModule.getApplication()).getModuleByName(stagedModule.getModule()), "delay", 0.0, "preMigration", true);
+            send(stagedParent, wait, FogEvents.MODULE_SEND, jsonRetire);
+            PreMigrationMonitor.stagedModuleWasted(stagedModule.getReadyTime() - stagedModule.getStagedAt(), stagedModule.getSize(), Math.max(0, CloudSim.clock() - stagedModule.getReadyTime()));
+        }
     }
 
     private void setNewOrchestratorNode(FogDevice fogDevice, FogDevice newParent) {
@@ -252,24 +621,10 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
         }
     }
 
-    private void updateRoutingTable(FogDevice fogDevice) {
-
-        for (FogDevice f : fogDevices) {
-            if (f.getId() != fogDevice.getId()) {
-                // for mobile device update all to parent
-                ((MicroserviceFogDevice) fogDevice).updateRoutingTable(f.getId(), fogDevice.getParentId());
-
-                ////for other update route to mobile based on route to parent
-                int nextId = ((MicroserviceFogDevice) f).getRoutingTable().get(fogDevice.getParentId());
-                if (f.getId() != nextId)
-                    ((MicroserviceFogDevice) f).updateRoutingTable(fogDevice.getId(), nextId);
-                else
-                    ((MicroserviceFogDevice) f).updateRoutingTable(fogDevice.getId(), fogDevice.getId());
-            }
-        }
-    }
-
-    private void serviceDiscoveryUpdate(FogDevice fogDevice, Map<String, Integer> migratingModules, String applicationName, int newParent, HashMap<String, Double> upDelays, HashMap<String, Double> downDelays) {
+    /**
+     * @param serviceDiscoveryUpdates updates collected by device and delay instead of being sent, null to send them
+     */
+    private void serviceDiscoveryUpdate(FogDevice fogDevice, Map<String, Integer> migratingModules, String applicationName, int newParent, HashMap<String, Double> upDelays, HashMap<String, Double> downDelays, Map<Integer, Map<Double, List<JSONObject>>> serviceDiscoveryUpdates) {
         PlacementRequest pr = perClientDevicePrs.get(fogDevice.getId()).get(applicationName);
 
         for (String m : migratingModules.keySet()) {
@@ -278,7 +633,7 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
                 JSONObject serviceDiscoveryRemove = new JSONObject();
                 serviceDiscoveryRemove.put("service data", new Pair<>(m, migratingModules.get(m)));
                 serviceDiscoveryRemove.put("action", "REMOVE");
-                send(pr.getPlacedMicroservices().get(clientM), downDelays.get(m), FogEvents.UPDATE_SERVICE_DISCOVERY, serviceDiscoveryRemove);
+                sendServiceDiscoveryUpdate(pr.getPlacedMicroservices().get(clientM), downDelays.get(m), serviceDiscoveryRemove, serviceDiscoveryUpdates);
             }
         }
 
@@ -290,7 +645,7 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
                         JSONObject serviceDiscoveryAdd = new JSONObject();
                         serviceDiscoveryAdd.put("service data", new Pair<>(service, newParent));
                         serviceDiscoveryAdd.put("action", "ADD");
-                        send(fogDevice.getId(), upDelays.get(service), FogEvents.UPDATE_SERVICE_DISCOVERY, serviceDiscoveryAdd);
+                        sendServiceDiscoveryUpdate(fogDevice.getId(), upDelays.get(service), serviceDiscoveryAdd, serviceDiscoveryUpdates);
                     }
                 }
             }
@@ -303,18 +658,47 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
                     JSONObject serviceDiscoveryAdd = new JSONObject();
                     serviceDiscoveryAdd.put("service data", new Pair<>(service, newParent));
                     serviceDiscoveryAdd.put("action", "ADD");
-                    send(newParent, upDelays.get(service), FogEvents.UPDATE_SERVICE_DISCOVERY, serviceDiscoveryAdd);
+                    sendServiceDiscoveryUpdate(newParent, upDelays.get(service), serviceDiscoveryAdd, serviceDiscoveryUpdates);
                 } else {
                     int d = pr.getPlacedMicroservices().get(service);
                     JSONObject serviceDiscoveryAdd = new JSONObject();
                     serviceDiscoveryAdd.put("service data", new Pair<>(service, d));
                     serviceDiscoveryAdd.put("action", "ADD");
-                    sendNow(newParent, FogEvents.UPDATE_SERVICE_DISCOVERY, serviceDiscoveryAdd);
+                    sendServiceDiscoveryUpdate(newParent, 0.0, serviceDiscoveryAdd, serviceDiscoveryUpdates);
                 }
             }
         }
     }
 
+    private void sendServiceDiscoveryUpdate(int deviceId, double delay, JSONObject update, Map<Integer, Map<Double, List<JSONObject>>> serviceDiscoveryUpdates) {
+        if (serviceDiscoveryUpdates == null) {
+            send(deviceId, delay, FogEvents.UPDATE_SERVICE_DISCOVERY, update);
+            return;
+        }
+        Map<Double, List<JSONObject>> deviceUpdates = serviceDiscoveryUpdates.get(deviceId);
+        if (deviceUpdates == null) {
+            deviceUpdates = new LinkedHashMap<>();
+            serviceDiscoveryUpdates.put(deviceId, deviceUpdates);
+        }
+        List<JSONObject> updates = deviceUpdates.get(delay);
+        if (updates == null) {
+            updates = new ArrayList<>();
+            deviceUpdates.put(delay, updates);
+        }
+        updates.add(update);
+    }
+
+    /**
+     * @param entries keys of the event payload, each followed by its value
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject createPayload(Object... entries) {
+        JSONObject payload = new JSONObject();
+        for (int i = 0; i < entries.length; i += 2)
+            payload.put(entries[i], entries[i + 1]);
+        return payload;
+    }
+
     private List<String> getClientMicroservices(String m, String applicationName) {
         List<String> services = new ArrayList<>();
         Application app = applications.get(applicationName);
@@ -354,80 +738,72 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
     }
 
     private boolean beforeCommonAncestor(Integer deviceid, int commonAncestor) {
-        FogDevice f = getFogDeviceById(deviceid);
-        if (f.getId() == commonAncestor)
-            return false;
-        while (f.getParentId() != -1) {
-            f = getFogDeviceById(f.getParentId());
-            if (f.getId() == commonAncestor)
-                return true;
-        }
-        return false;
+        return getAncestry().isAncestor(commonAncestor, deviceid);
     }
 
-    private double getDownDelay(int deviceID, int commonAncestorID, AppModule module) {
-        // TODO Auto-generated method stub
-        double networkDelay = 0.0;
-        while (deviceID != commonAncestorID) {
-            networkDelay = networkDelay + module.getSize() / getFogDeviceById(deviceID).getDownlinkBandwidth();
-            deviceID = getFogDeviceById(deviceID).getParentId();
-        }
-        return networkDelay;
-    }
-
-    private double getUpDelay(int deviceID, int commonAncestorID, AppModule module) {
-        // TODO Auto-generated method stub
-        double networkDelay = 0.0;
-        while (deviceID != commonAncestorID) {
-            networkDelay = networkDelay + module.getSize() / getFogDeviceById(deviceID).getUplinkBandwidth();
-            deviceID = getFogDeviceById(deviceID).getParentId();
-        }
-        return networkDelay;
+    /**
+     * Ancestry index of the topology, built on first use once the devices are connected
+     */
+    private TopologyAncestry getAncestry() {
+        if (ancestry == null)
+            ancestry = new TopologyAncestry(fogDevices);
+        return ancestry;
     }
 
-    private int determineAncestor(List<Integer> newParentPath, List<Integer> prevParentPath) {
-        // TODO Auto-generated method stub
-        List<Integer> common = newParentPath.stream().filter(prevParentPath::contains).collect(Collectors.toList());
-        return common.get(0);
+    private double getDownDelay(int deviceID, int commonAncestorID, AppModule module) {
+        return getAncestry().getDownDelay(deviceID, commonAncestorID, module.getSize());
     }
 
-    private List<Integer> getPathsToCloud(int deviceID) {
-        // TODO Auto-generated method stub
-        List<Integer> path = new ArrayList<Integer>();
-        while (!locator.isCloud(deviceID)) {
-            path.add(deviceID);
-            deviceID = getFogDeviceById(deviceID).getParentId();
-        }
-        path.add(getCloud().getId());
-        return path;
+    private double getUpDelay(int deviceID, int commonAncestorID, AppModule module) {
+        return getAncestry().getUpDelay(deviceID, commonAncestorID, module.getSize());
     }
 
     private void processMobilityData() {
         // TODO Auto-generated method stub
-        List<Double> timeSheet = new ArrayList<Double>();
+        preMigrationPolicy = new PreMigrationPolicy(locator, MicroservicePlacementConfig.PRE_MIGRATION_MODE);
         for (FogDevice fogDevice : fogDevices) {
             if (locator.isAMobileDevice(fogDevice.getId())) {
-                timeSheet = locator.getTimeSheet(fogDevice.getId());
-                for (double timeEntry : timeSheet)
-                    send(getId(), timeEntry, FogEvents.MOBILITY_MANAGEMENT, fogDevice);
+                traceCursors.put(fogDevice.getId(), locator.getTraceCursor(fogDevice.getId()));
+                scheduleNextMobilityEvent(fogDevice);
             }
         }
     }
 
+    /**
+     * Schedules the next mobility event of the device from its trace, the following one is scheduled when it fires.
+     */
+    private void scheduleNextMobilityEvent(FogDevice fogDevice) {
+        MobilityTraceCursor cursor = traceCursors.get(fogDevice.getId());
+        if (cursor == null || !cursor.hasNext())
+            return;
+        double time = cursor.next();
+        send(getId(), Math.max(0, time - CloudSim.clock()), FogEvents.MOBILITY_MANAGEMENT, fogDevice);
+        // the copies must be staged before the mobility event, which takes them
+        if (preMigrationPolicy.isEnabled() && MicroservicePlacementConfig.PRE_MIGRATION_LEAD_TIME > 0 && time > CloudSim.clock()) {
+            JSONObject preMigration = createPayload("device", fogDevice, "time", time);
+            send(getId(), Math.max(0, time - MicroservicePlacementConfig.PRE_MIGRATION_LEAD_TIME - CloudSim.clock()), FogEvents.PRE_MIGRATE, preMigration);
+        }
+    }
 
-    public void clusteringSubmit(List Levels) {
-        System.out.println(CloudSim.clock() + " Start sending Clustering Request to Fog Devices in level: " + Levels);
+
+    public void clusteringSubmit(List<Integer> Levels) {
+        System.out.println(CloudSim.clock() + " Start sending Clustering Request for Fog Devices in level: " + Levels);
+        // processed after the start of the controller, as the clustering requests the devices processed one by one
+        sendNow(getId(), FogEvents.START_DYNAMIC_CLUSTERING, Levels);
+    }
+
+    private void processClustering(List<?> Levels) {
         for (int i = 0; i < Levels.size(); i++) {
-            int clusterLevel = (int) Levels.get(i);
+            int clusterLevel = (Integer) Levels.get(i);
+            List<FogDevice> levelDevices = new ArrayList<>();
             for (FogDevice fogDevice : fogDevices) {
-                System.out.println(CloudSim.clock() + " fog Device: " + fogDevice.getName() + " with id: " + fogDevice.getId() + " is at level: " + fogDevice.getLevel());
-                if ((int) fogDevice.getLevel() == clusterLevel) {
-                    JSONObject jsonMessage = new JSONObject();
-                    jsonMessage.put("locationsInfo", getLocator());
-                    sendNow(fogDevice.getId(), FogEvents.START_DYNAMIC_CLUSTERING, jsonMessage);
-                }
+                if (fogDevice.getLevel() == clusterLevel)
+                    levelDevices.add(fogDevice);
             }
+            Clustering.createClusters(levelDevices, getLocator());
         }
+        // routes over the new cluster links
+        updateRoutingTable();
     }
 
     public LocationHandler getLocator() {
@@ -5,7 +5,6 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.SimEntity;
@@ -15,7 +14,9 @@ import org.fog.application.AppModule;
 import org.fog.application.Application;
 import org.fog.entities.Actuator;
 import org.fog.entities.FogDevice;
+import org.fog.entities.MigrationTransfer;
 import org.fog.entities.Sensor;
+import org.fog.mobilitydata.MobilityTraceCursor;
 import org.fog.mobilitydata.References;
 import org.fog.utils.Config;
 import org.fog.utils.FogEvents;
@@ -23,6 +24,8 @@ import org.fog.utils.FogUtils;
 import org.fog.utils.MigrationDelayMonitor;
 import org.fog.utils.NetworkUsageMonitor;
 import org.fog.utils.TimeKeeper;
+import org.fog.utils.TopologyAncestry;
+import org.fog.utils.TupleAckMonitor;
 import org.json.simple.JSONObject;
 
 
@@ -35,6 +38,8 @@ public class MobilityController extends SimEntity{
 	private List<Actuator> actuators;
 	private LocationHandler locator;
 	private Map<Integer, Integer> parentReference;
+	private TopologyAncestry ancestry;
+	private Map<Integer, MobilityTraceCursor> traceCursors = new HashMap<Integer, MobilityTraceCursor>();
 
 
 	private Map<String, Application> applications;
@@ -175,6 +180,7 @@ public class MobilityController extends SimEntity{
 	private void processMobility(SimEvent ev) {
 		// TODO Auto-generated method stub
 		FogDevice fogDevice = (FogDevice) ev.getData();
+		scheduleNextMobilityEvent(fogDevice);
 		FogDevice prevParent = getFogDeviceById(parentReference.get(fogDevice.getId()));
 		FogDevice newParent = getFogDeviceById(locator.determineParent(fogDevice.getId(),CloudSim.clock()));
 		System.out.println(CloudSim.clock()+" Starting Mobility Management for "+fogDevice.getName());
@@ -185,12 +191,11 @@ public class MobilityController extends SimEntity{
 			//printFogDeviceChildren(prevParent.getId());
 			
 			//common ancestor policy
-			List<Integer>newParentPath = getPathsToCloud(newParent.getId());
-			List<Integer>prevParentPath = getPathsToCloud(prevParent.getId());
-			int commonAncestor = determineAncestor(newParentPath,prevParentPath);
+			int commonAncestor = getAncestry().getCommonAncestor(newParent.getId(),prevParent.getId());
 			
 			
 			fogDevice.setParentId(newParent.getId());
+			getAncestry().setParent(fogDevice.getId(),newParent.getId());
 			System.out.println("Child "+fogDevice.getName()+"\t----->\tParent "+newParent.getName());
 			newParent.getChildToLatencyMap().put(fogDevice.getId(), fogDevice.getUplinkLatency());
 			newParent.addChild(fogDevice.getId());
@@ -200,6 +205,13 @@ public class MobilityController extends SimEntity{
 				getAppModulePlacementPolicy().get(applicationName).getModulesOnPath().get(fogDevice.getId()).remove(prevParent.getId());
 				getAppModulePlacementPolicy().get(applicationName).getModulesOnPath().get(fogDevice.getId()).put(newParent.getId(),migratingModules);	
 				for(String moduleName:migratingModules){
+					if (Config.MIGRATION_TRANSFER_MODEL.equals(Config.MIGRATION_LINK_SHARED)) {
+						MigrationTransfer transfer = new MigrationTransfer(MigrationTransfer.NO_CONTROLLER, getAncestry().getRoute(prevParent.getId(), commonAncestor, newParent.getId()),
+								getApplications().get(applicationName).getModuleByName(moduleName), getApplications().get(applicationName));
+						sendNow(prevParent.getId(), FogEvents.START_MIGRATION_TRANSFER, transfer);
+						System.out.println("Migrating "+moduleName+" from "+prevParent.getName()+" to "+newParent.getName());
+						continue;
+					}
 					double upDelay = getUpDelay(prevParent.getId(),commonAncestor,getApplications().get(applicationName).getModuleByName(moduleName));
 					double downDelay = getDownDelay(newParent.getId(),commonAncestor,getApplications().get(applicationName).getModuleByName(moduleName));
 					JSONObject jsonSend = new JSONObject();
@@ -226,57 +238,46 @@ public class MobilityController extends SimEntity{
 		
 	}
 
-	private double getDownDelay(int deviceID, int commonAncestorID, AppModule module) {
-		// TODO Auto-generated method stub
-		double networkDelay = 0.0;
-		while(deviceID!=commonAncestorID){	
-			networkDelay = networkDelay + module.getSize()/getFogDeviceById(deviceID).getDownlinkBandwidth();
-			deviceID = getFogDeviceById(deviceID).getParentId();
-		}
-		return networkDelay;
-	}
-
-	private double getUpDelay(int deviceID, int commonAncestorID, AppModule module) {
-		// TODO Auto-generated method stub
-		double networkDelay = 0.0;
-		while(deviceID!=commonAncestorID){	
-			networkDelay = networkDelay + module.getSize()/getFogDeviceById(deviceID).getUplinkBandwidth();
-			deviceID = getFogDeviceById(deviceID).getParentId();
-		}
-		return networkDelay;
+	/**
+	 * Ancestry index of the topology, built on first use once the devices are connected
+	 */
+	private TopologyAncestry getAncestry() {
+		if (ancestry == null)
+			ancestry = new TopologyAncestry(getFogDevices());
+		return ancestry;
 	}
 
-	private int determineAncestor(List<Integer> newParentPath, List<Integer> prevParentPath) {
-		// TODO Auto-generated method stub
-		List<Integer> common = newParentPath.stream().filter(prevParentPath::contains).collect(Collectors.toList());
-		return common.get(0);
+	private double getDownDelay(int deviceID, int commonAncestorID, AppModule module) {
+		return getAncestry().getDownDelay(deviceID, commonAncestorID, module.getSize());
 	}
 
-	private List<Integer> getPathsToCloud(int deviceID) {
-		// TODO Auto-generated method stub
-		List<Integer>path = new ArrayList<Integer>();
-		while(!locator.isCloud(deviceID)){
-			path.add(deviceID);
-			deviceID = getFogDeviceById(deviceID).getParentId();
-		}
-		path.add(getCloud().getId());
-		return path;
+	private double getUpDelay(int deviceID, int commonAncestorID, AppModule module) {
+		return getAncestry().getUpDelay(deviceID, commonAncestorID, module.getSize());
 	}
 
 	private void processMobilityData() {
 		// TODO Auto-generated method stub
-		List<Double>timeSheet = new ArrayList<Double>();
 		for(FogDevice fogDevice : getFogDevices()){
 			if(locator.isAMobileDevice(fogDevice.getId())) {
-				timeSheet = locator.getTimeSheet(fogDevice.getId());
-				for(double timeEntry:timeSheet)
-					send(getId(), timeEntry, FogEvents.MOBILITY_MANAGEMENT,fogDevice);
+				traceCursors.put(fogDevice.getId(), locator.getTraceCursor(fogDevice.getId()));
+				scheduleNextMobilityEvent(fogDevice);
 			}
 		}
 	}
 
+	/**
+	 * Schedules the next mobility event of the device from its trace, the following one is scheduled when it fires.
+	 */
+	private void scheduleNextMobilityEvent(FogDevice fogDevice) {
+		MobilityTraceCursor cursor = traceCursors.get(fogDevice.getId());
+		if(cursor != null && cursor.hasNext())
+			send(getId(), Math.max(0, cursor.next() - CloudSim.clock()), FogEvents.MOBILITY_MANAGEMENT, fogDevice);
+	}
+
 	private void printNetworkUsageDetails() {
 		System.out.println("Total network usage = "+NetworkUsageMonitor.getNetworkUsage()/Config.MAX_SIMULATION_TIME);		
+		if(!Config.TUPLE_ACK_POLICY.equals(Config.ACK_PER_TUPLE))
+			System.out.println("Tuple ACK events avoided = "+TupleAckMonitor.getAvoidedAckEvents());
 	}
 
 	private FogDevice getCloud(){
@@ -15,6 +15,7 @@ import org.fog.entities.Actuator;
 import org.fog.entities.FogDevice;
 import org.fog.entities.Sensor;
 import org.fog.entities.Tuple;
+import org.fog.utils.Config;
 import org.fog.utils.Logger;
 
 public class ModulePlacementMobileEdgewards extends ModulePlacement{
@@ -71,10 +72,15 @@ public class ModulePlacementMobileEdgewards extends ModulePlacement{
 			}
 		}
 		
-		List<List<Integer>> leafToRootPaths = getLeafToRootPaths();
-		
-		for(List<Integer> path : leafToRootPaths){
-			placeModulesInPath(path);
+		// the bottom-up placement leaves trees loaded beyond the aggregated flows to the per path placement
+		if(!Config.EDGEWARDS_PLACEMENT.equals(Config.EDGEWARDS_BOTTOM_UP)
+				|| !new EdgewardsTreePlacement(getApplication(), getSensors(), getActuators(), getCurrentCpuLoad(), getCurrentModuleMap(),
+						getCurrentModuleLoadMap(), getCurrentModuleInstanceNum()).placeModules(getDeviceByName("cloud").getId())){
+			List<List<Integer>> leafToRootPaths = getLeafToRootPaths();
+			
+			for(List<Integer> path : leafToRootPaths){
+				placeModulesInPath(path);
+			}
 		}
 		
 		for(int deviceId : getCurrentModuleMap().keySet()){
@@ -0,0 +1,128 @@
+package org.fog.placement;
+
+import org.cloudbus.cloudsim.Vm;
+import org.fog.application.AppModule;
+import org.fog.entities.ControllerComponent;
+import org.fog.entities.FogDevice;
+import org.fog.entities.MicroserviceFogDevice;
+import org.fog.utils.MicroservicePlacementConfig;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Edge-ward microservice placement admitting modules on CPU, RAM and storage together.
+ * <p>
+ * Requests are walked up from the gateway as in {@link ClusteredMicroservicePlacementLogic}, but a device only takes
+ * a module if every resource fits, and within a cluster the module goes to the member it fits most tightly
+ * (best fit or dominant resource fit, see MicroservicePlacementConfig.PLACEMENT_FIT). Members are kept in sorted fit
+ * indexes updated in O(log k) per placement on a cluster of k members, a selection scans the members from the demand
+ * upwards and visits every member in the worst case. RAM and storage of the placed modules are deducted from
+ * the resource availability along with CPU, and the resulting per resource utilisation of the edge devices used is
+ * reported after every run.
+ */
+public class MultiDimensionalPlacementLogic extends ClusteredMicroservicePlacementLogic {
+
+    private int edgeDevicesUsed;
+    private double cpuUtilisation;
+    private double ramUtilisation;
+    private double storageUtilisation;
+
+    public MultiDimensionalPlacementLogic(int fonID) {
+        super(fonID);
+    }
+
+    @Override
+    protected boolean canPlace(int deviceId, AppModule module) {
+        return placementState.canHost(deviceId, module.getMips(), module.getRam(), module.getSize());
+    }
+
+    @Override
+    protected boolean canPlaceAll(int deviceId, List<AppModule> modules) {
+        double cpu = 0, ram = 0, storage = 0;
+        for (AppModule module : modules) {
+            cpu += module.getMips();
+            ram += module.getRam();
+            storage += module.getSize();
+        }
+        return placementState.canHost(deviceId, cpu, ram, storage);
+    }
+
+    @Override
+    protected int selectClusterDevice(int clusterDeviceId, List<Integer> clusterMembers, AppModule module) {
+        boolean dominantResourceFit = MicroservicePlacementConfig.PLACEMENT_FIT.equals(MicroservicePlacementConfig.DOMINANT_RESOURCE_FIT);
+        return placementState.selectBestFitDevice(clusterDeviceId, clusterMembers, module.getMips(), module.getRam(),
+                module.getSize(), dominantResourceFit);
+    }
+
+    @Override
+    public void updateResources(Map<Integer, Map<String, Double>> resourceAvailability) {
+        super.updateResources(resourceAvailability);
+        for (int ordinal = 0; ordinal < placementState.getDeviceCount(); ordinal++) {
+            if (!placementState.isActive(ordinal))
+                continue;
+            Map<String, Double> resources = resourceAvailability.get(placementState.getDeviceAt(ordinal).getId());
+            resources.put(ControllerComponent.RAM, placementState.getFreeRam(ordinal));
+            resources.put(ControllerComponent.STORAGE, placementState.getFreeStorage(ordinal));
+        }
+    }
+
+    /**
+     * Computes the utilisation of each resource over the edge devices hosting modules placed by the run, counting the
+     * resources already in use before the run.
+     */
+    @Override
+    public void postProcessing() {
+        double cpuTotal = 0, ramTotal = 0, storageTotal = 0;
+        double cpuUsed = 0, ramUsed = 0, storageUsed = 0;
+        edgeDevicesUsed = 0;
+        for (int ordinal = 0; ordinal < placementState.getDeviceCount(); ordinal++) {
+            FogDevice device = placementState.getDeviceAt(ordinal);
+            if (!placementState.isActive(ordinal) || isCloud(device))
+                continue;
+            edgeDevicesUsed++;
+            double storage = getTotalStorage(device);
+            cpuTotal += device.getHost().getTotalMips();
+            ramTotal += device.getHost().getRam();
+            storageTotal += storage;
+            cpuUsed += device.getHost().getTotalMips() - placementState.getFreeCpu(ordinal);
+            ramUsed += device.getHost().getRam() - placementState.getFreeRam(ordinal);
+            storageUsed += storage - placementState.getFreeStorage(ordinal);
+        }
+        cpuUtilisation = cpuTotal > 0 ? cpuUsed / cpuTotal : 0;
+        ramUtilisation = ramTotal > 0 ? ramUsed / ramTotal : 0;
+        storageUtilisation = storageTotal > 0 ? storageUsed / storageTotal : 0;
+        System.out.println("Placement utilisation of " + edgeDevicesUsed + " edge devices - cpu : " + String.format("%.2f", cpuUtilisation * 100)
+                + "%, ram : " + String.format("%.2f", ramUtilisation * 100) + "%, storage : " + String.format("%.2f", storageUtilisation * 100) + "%");
+    }
+
+    /**
+     * Storage of the host, the host only reports the storage left by the modules it runs.
+     */
+    private double getTotalStorage(FogDevice device) {
+        double storage = device.getHost().getStorage();
+        for (Vm vm : device.getHost().getVmList())
+            storage += vm.getSize();
+        return storage;
+    }
+
+    private boolean isCloud(FogDevice device) {
+        return device instanceof MicroserviceFogDevice && MicroserviceFogDevice.CLOUD.equals(((MicroserviceFogDevice) device).getDeviceType());
+    }
+
+    public int getEdgeDevicesUsed() {
+        return edgeDevicesUsed;
+    }
+
+    public double getCpuUtilisation() {
+        return cpuUtilisation;
+    }
+
+    public double getRamUtilisation() {
+        return ramUtilisation;
+    }
+
+    public double getStorageUtilisation() {
+        return storageUtilisation;
+    }
+}
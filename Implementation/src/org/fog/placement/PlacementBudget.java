@@ -0,0 +1,122 @@
+package org.fog.placement;
+
+import org.fog.entities.ControllerComponent;
+import org.fog.entities.FogDevice;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * CPU budget of a set of fog devices shared by concurrent placements. The free CPU of every device is held as the
+ * bits of a double in an atomic array and is reserved with compare-and-set, so that placements never take more CPU
+ * from a device than it has left.
+ */
+public class PlacementBudget {
+
+    private final Map<Integer, Integer> idToIndex = new HashMap<>();
+    private final int[] deviceIds;
+    private final AtomicLongArray freeCpu;
+
+    public PlacementBudget(List<FogDevice> fogDevices, Map<Integer, Map<String, Double>> resourceAvailability) {
+        deviceIds = new int[fogDevices.size()];
+        freeCpu = new AtomicLongArray(fogDevices.size());
+        for (int index = 0; index < fogDevices.size(); index++) {
+            int deviceId = fogDevices.get(index).getId();
+            idToIndex.put(deviceId, index);
+            deviceIds[index] = deviceId;
+            Map<String, Double> resources = resourceAvailability.get(deviceId);
+            Double cpu = resources != null ? resources.get(ControllerComponent.CPU) : null;
+            freeCpu.set(index, Double.doubleToLongBits(cpu != null ? cpu : 0));
+        }
+    }
+
+    public double getFreeCpu(int deviceId) {
+        Integer index = idToIndex.get(deviceId);
+        return index != null ? Double.longBitsToDouble(freeCpu.get(index)) : 0;
+    }
+
+    /**
+     * Reserves CPU on a device if enough is left.
+     *
+     * @return false if the device has less CPU left than requested, nothing is reserved then
+     */
+    public boolean tryReserve(int deviceId, double mips) {
+        Integer index = idToIndex.get(deviceId);
+        if (index == null)
+            return false;
+        while (true) {
+            long current = freeCpu.get(index);
+            double free = Double.longBitsToDouble(current);
+            if (mips > free)
+                return false;
+            if (freeCpu.compareAndSet(index, current, Double.doubleToLongBits(free - mips)))
+                return true;
+        }
+    }
+
+    /**
+     * Reserves CPU on a device whatever it has left, the free CPU of the device may become negative.
+     */
+    public void reserve(int deviceId, double mips) {
+        add(deviceId, -mips);
+    }
+
+    /**
+     * Gives back CPU reserved on a device.
+     */
+    public void release(int deviceId, double mips) {
+        add(deviceId, mips);
+    }
+
+    private void add(int deviceId, double mips) {
+        Integer index = idToIndex.get(deviceId);
+        if (index == null)
+            return;
+        while (true) {
+            long current = freeCpu.get(index);
+            if (freeCpu.compareAndSet(index, current, Double.doubleToLongBits(Double.longBitsToDouble(current) + mips)))
+                return;
+        }
+    }
+
+    /**
+     * Reserves CPU on several devices, either on all of them or on none.
+     *
+     * @param reservations MIPS to reserve per device id, reserved in the iteration order of the map
+     * @return false if a device has less CPU left than requested, nothing is reserved then
+     */
+    public boolean tryReserveAll(Map<Integer, Double> reservations) {
+        Map<Integer, Double> reserved = new HashMap<>();
+        for (Map.Entry<Integer, Double> reservation : reservations.entrySet()) {
+            if (!tryReserve(reservation.getKey(), reservation.getValue())) {
+                for (Map.Entry<Integer, Double> rollback : reserved.entrySet())
+                    release(rollback.getKey(), rollback.getValue());
+                return false;
+            }
+            reserved.put(reservation.getKey(), reservation.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Reserves CPU on several devices whatever they have left, for placements made against the budget that are
+     * applied as they are.
+     */
+    public void reserveAll(Map<Integer, Double> reservations) {
+        for (Map.Entry<Integer, Double> reservation : reservations.entrySet())
+            reserve(reservation.getKey(), reservation.getValue());
+    }
+
+    /**
+     * Copies the free CPU of every device of the budget into a resource availability map.
+     */
+    public void writeCpuTo(Map<Integer, Map<String, Double>> resourceAvailability) {
+        for (int index = 0; index < deviceIds.length; index++) {
+            Map<String, Double> resources = resourceAvailability.get(deviceIds[index]);
+            if (resources != null)
+                resources.put(ControllerComponent.CPU, Double.longBitsToDouble(freeCpu.get(index)));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.fog.placement;
+
+import org.fog.application.AppModule;
+import org.fog.application.Application;
+import org.fog.entities.FogDevice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Placements of previous requests, reused for requests of the same application starting from the same device in the
+ * same capacity state.
+ * <p>
+ * A placement is keyed by the application, the microservices already placed for the request, the device the placement
+ * starts from and the free resources of the devices the placement can reach: the starting device, its ancestors and
+ * the members of their clusters. Free resources are capped at the demand of the microservices to place, a device able
+ * to host all of them counts the same whatever its exact free resources. A cached placement is only a candidate: the
+ * placement logic replays it if the devices still take its microservices.
+ * <p>
+ * Entries are evicted when the free resources of one of their devices change so that they can no longer be matched.
+ * <p>
+ * The cache is shared by the placement logics of the partitions of a parallel run ({@link ConcurrentPlacementExecutor})
+ * and is thread-safe. A placement cached by a partition is replayed by the others against their own capacity state, the
+ * executor then claims its CPU like that of a searched placement.
+ */
+public class PlacementDecisionCache {
+
+    /**
+     * Cache key of a request and the capacity state it was computed from
+     */
+    public static class Fingerprint {
+        private final String key;
+        private final Map<Integer, double[]> capacity;
+        private final double[] demand;
+
+        private Fingerprint(String key, Map<Integer, double[]> capacity, double[] demand) {
+            this.key = key;
+            this.capacity = capacity;
+            this.demand = demand;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static class Entry {
+        private final Fingerprint fingerprint;
+        private final Map<String, Integer> placement;
+
+        private Entry(Fingerprint fingerprint, Map<String, Integer> placement) {
+            this.fingerprint = fingerprint;
+            this.placement = placement;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<Integer, Set<String>> keysByDevice = new HashMap<>();
+
+    /**
+     * Computes the cache key of a request.
+     *
+     * @param app application of the request
+     * @param placedMicroservices microservices already placed for the request
+     * @param startDeviceId device the placement starts from
+     * @param state capacity state of the placement run
+     */
+    public Fingerprint getFingerprint(Application app, Set<String> placedMicroservices, int startDeviceId, PlacementState state) {
+        double[] demand = new double[3];
+        for (AppModule module : app.getModules()) {
+            if (!placedMicroservices.contains(module.getName())) {
+                demand[0] += module.getMips();
+                demand[1] += module.getRam();
+                demand[2] += module.getSize();
+            }
+        }
+
+        Map<Integer, double[]> capacity = new LinkedHashMap<>();
+        int deviceId = startDeviceId;
+        while (deviceId != -1) {
+            FogDevice device = state.getDevice(deviceId);
+            if (device == null)
+                break;
+            addCapacity(capacity, deviceId, state, demand);
+            if (device.getClusterMembers() != null) {
+                for (int memberId : new TreeSet<>(device.getClusterMembers()))
+                    addCapacity(capacity, memberId, state, demand);
+            }
+            deviceId = device.getParentId();
+        }
+
+        StringBuilder key = new StringBuilder(app.getAppId()).append('|').append(startDeviceId).append('|')
+                .append(new TreeSet<>(placedMicroservices));
+        for (Map.Entry<Integer, double[]> device : capacity.entrySet()) {
+            key.append('|').append(device.getKey());
+            for (double value : device.getValue())
+                key.append(':').append(value);
+        }
+        return new Fingerprint(key.toString(), capacity, demand);
+    }
+
+    private static void addCapacity(Map<Integer, double[]> capacity, int deviceId, PlacementState state, double[] demand) {
+        int ordinal = state.getOrdinal(deviceId);
+        if (ordinal == -1 || capacity.containsKey(deviceId))
+            return;
+        capacity.put(deviceId, cap(state.getFreeCpu(ordinal), state.getFreeRam(ordinal), state.getFreeStorage(ordinal), demand));
+    }
+
+    private static double[] cap(double cpu, double ram, double storage, double[] demand) {
+        return new double[]{Math.min(cpu, demand[0]), Math.min(ram, demand[1]), Math.min(storage, demand[2])};
+    }
+
+    /**
+     * @return the cached device of each microservice to place, in placement order, null if there is none
+     */
+    public synchronized Map<String, Integer> get(Fingerprint fingerprint) {
+        Entry entry = entries.get(fingerprint.key);
+        return entry != null ? entry.placement : null;
+    }
+
+    public synchronized void put(Fingerprint fingerprint, Map<String, Integer> placement) {
+        entries.put(fingerprint.key, new Entry(fingerprint, new LinkedHashMap<>(placement)));
+        for (int deviceId : fingerprint.capacity.keySet()) {
+            Set<String> keys = keysByDevice.get(deviceId);
+            if (keys == null) {
+                keys = new HashSet<>();
+                keysByDevice.put(deviceId, keys);
+            }
+            keys.add(fingerprint.key);
+        }
+    }
+
+    /**
+     * Evicts the entries that can no longer be matched after the free resources of a device changed.
+     */
+    public synchronized void invalidate(int deviceId, double cpu, double ram, double storage) {
+        Set<String> keys = keysByDevice.get(deviceId);
+        if (keys == null)
+            return;
+        for (String key : new ArrayList<>(keys)) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                keys.remove(key);
+                continue;
+            }
+            double[] cached = entry.fingerprint.capacity.get(deviceId);
+            double[] current = cap(cpu, ram, storage, entry.fingerprint.demand);
+            for (int i = 0; i < cached.length; i++) {
+                if (cached[i] != current[i]) {
+                    entries.remove(key);
+                    keys.remove(key);
+                    break;
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        keysByDevice.clear();
+    }
+}
@@ -10,6 +10,8 @@ public class PlacementLogicFactory {
     public static final int EDGEWART_MICROSERCVICES_PLACEMENT = 1;
     public static final int CLUSTERED_MICROSERVICES_PLACEMENT = 2;
     public static final int DISTRIBUTED_MICROSERVICES_PLACEMENT =3;
+    public static final int MULTI_DIMENSIONAL_MICROSERVICES_PLACEMENT = 4;
+    public static final int LATENCY_AWARE_MICROSERVICES_PLACEMENT = 5;
 
     public MicroservicePlacementLogic getPlacementLogic(int logic, int fonId) {
         switch (logic) {
@@ -19,6 +21,10 @@ public class PlacementLogicFactory {
                 return new ClusteredMicroservicePlacementLogic(fonId);
             case DISTRIBUTED_MICROSERVICES_PLACEMENT:
                 return new DistributedMicroservicePlacementLogic(fonId);
+            case MULTI_DIMENSIONAL_MICROSERVICES_PLACEMENT:
+                return new MultiDimensionalPlacementLogic(fonId);
+            case LATENCY_AWARE_MICROSERVICES_PLACEMENT:
+                return new LatencyAwarePlacementLogic(fonId);
         }
 
         Logger.error("Placement Logic Error", "Error initializing placement logic");
@@ -0,0 +1,531 @@
+package org.fog.placement;
+
+import org.fog.application.AppModule;
+import org.fog.application.Application;
+import org.fog.entities.ControllerComponent;
+import org.fog.entities.FogDevice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Resource view of the fog devices considered by one run of a placement logic.
+ * <p>
+ * Capacity (resources available when the run starts) and load (resources reserved by the run so far) are kept in
+ * dense arrays indexed by device ordinal, the position of the device in the device list of the run. Devices and
+ * modules are looked up by id and name in constant time. For every cluster used by the run an indexed max-heap on
+ * free CPU is maintained, so that the cluster device with the most free CPU is found without sorting the cluster
+ * and every reservation updates the heaps in O(log k). Clusters placed on all three resources are indexed by a fit key
+ * instead (see {@link #selectBestFitDevice}).
+ */
+public class PlacementState {
+
+    private final FogDevice[] devices;
+    private final Map<Integer, Integer> idToOrdinal = new HashMap<>();
+    private final Map<String, FogDevice> nameToDevice = new HashMap<>();
+
+    private final double[] cpuCapacity;
+    private final double[] ramCapacity;
+    private final double[] storageCapacity;
+    private final double[] cpuLoad;
+    private final double[] ramLoad;
+    private final double[] storageLoad;
+
+    /**
+     * True once a module is placed on the device by the run
+     */
+    private final boolean[] active;
+
+    private final Map<String, Map<String, AppModule>> appToModules = new HashMap<>();
+
+    /**
+     * Capacity views of the clusters, keyed by the device identifying the cluster
+     */
+    private final Map<Integer, ClusterView> clusterViews = new HashMap<>();
+
+    /**
+     * Cluster views each device belongs to, created on first use
+     */
+    private final ClusterView[][] deviceToClusterViews;
+
+    /**
+     * Largest capacity of each resource over all devices, used to normalise the resources
+     */
+    private final double maxCpuCapacity;
+    private final double maxRamCapacity;
+    private final double maxStorageCapacity;
+
+    /**
+     * Multi-resource fit indexes of the clusters, keyed by the device identifying the cluster, and the indexes each
+     * device belongs to
+     */
+    private final Map<Integer, FitIndex> fitIndexes = new HashMap<>();
+    private final Map<Integer, List<FitIndex>> deviceToFitIndexes = new HashMap<>();
+
+    public PlacementState(List<FogDevice> fogDevices, Map<Integer, Map<String, Double>> resourceAvailability) {
+        int n = fogDevices.size();
+        devices = fogDevices.toArray(new FogDevice[n]);
+        cpuCapacity = new double[n];
+        ramCapacity = new double[n];
+        storageCapacity = new double[n];
+        cpuLoad = new double[n];
+        ramLoad = new double[n];
+        storageLoad = new double[n];
+        active = new boolean[n];
+        deviceToClusterViews = new ClusterView[n][];
+        for (int ordinal = 0; ordinal < n; ordinal++) {
+            FogDevice device = devices[ordinal];
+            idToOrdinal.put(device.getId(), ordinal);
+            nameToDevice.put(device.getName(), device);
+            Map<String, Double> resources = resourceAvailability.get(device.getId());
+            if (resources != null) {
+                cpuCapacity[ordinal] = getResource(resources, ControllerComponent.CPU);
+                ramCapacity[ordinal] = getResource(resources, ControllerComponent.RAM);
+                storageCapacity[ordinal] = getResource(resources, ControllerComponent.STORAGE);
+            }
+        }
+        maxCpuCapacity = getMax(cpuCapacity);
+        maxRamCapacity = getMax(ramCapacity);
+        maxStorageCapacity = getMax(storageCapacity);
+    }
+
+    private static double getMax(double[] values) {
+        double max = 0;
+        for (double value : values)
+            max = Math.max(max, value);
+        return max > 0 ? max : 1;
+    }
+
+    private static double getResource(Map<String, Double> resources, String resource) {
+        Double value = resources.get(resource);
+        return value != null ? value : 0;
+    }
+
+    public int getDeviceCount() {
+        return devices.length;
+    }
+
+    /**
+     * @return the position of the device in the device list of the run, -1 if the device is not part of the run
+     */
+    public int getOrdinal(int deviceId) {
+        Integer ordinal = idToOrdinal.get(deviceId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public FogDevice getDevice(int deviceId) {
+        Integer ordinal = idToOrdinal.get(deviceId);
+        return ordinal != null ? devices[ordinal] : null;
+    }
+
+    public FogDevice getDeviceAt(int ordinal) {
+        return devices[ordinal];
+    }
+
+    public FogDevice getDeviceByName(String deviceName) {
+        return nameToDevice.get(deviceName);
+    }
+
+    public AppModule getModule(String moduleName, Application app) {
+        Map<String, AppModule> modules = appToModules.get(app.getAppId());
+        if (modules == null) {
+            modules = new HashMap<>();
+            for (AppModule appModule : app.getModules())
+                modules.putIfAbsent(appModule.getName(), appModule);
+            appToModules.put(app.getAppId(), modules);
+        }
+        return modules.get(moduleName);
+    }
+
+    public double getCpuCapacity(int ordinal) {
+        return cpuCapacity[ordinal];
+    }
+
+    public double getRamCapacity(int ordinal) {
+        return ramCapacity[ordinal];
+    }
+
+    public double getStorageCapacity(int ordinal) {
+        return storageCapacity[ordinal];
+    }
+
+    public double getCpuLoad(int ordinal) {
+        return cpuLoad[ordinal];
+    }
+
+    public double getRamLoad(int ordinal) {
+        return ramLoad[ordinal];
+    }
+
+    public double getStorageLoad(int ordinal) {
+        return storageLoad[ordinal];
+    }
+
+    public double getFreeCpu(int ordinal) {
+        return cpuCapacity[ordinal] - cpuLoad[ordinal];
+    }
+
+    public double getFreeRam(int ordinal) {
+        return ramCapacity[ordinal] - ramLoad[ordinal];
+    }
+
+    public double getFreeStorage(int ordinal) {
+        return storageCapacity[ordinal] - storageLoad[ordinal];
+    }
+
+    public boolean isActive(int ordinal) {
+        return active[ordinal];
+    }
+
+    /**
+     * Returns true if the CPU left on the device can take the given MIPS.
+     */
+    public boolean canHost(int deviceId, double mips) {
+        int ordinal = getOrdinal(deviceId);
+        return ordinal != -1 && mips + cpuLoad[ordinal] <= cpuCapacity[ordinal];
+    }
+
+    /**
+     * Returns true if the CPU, RAM and storage left on the device can take the given demand.
+     */
+    public boolean canHost(int deviceId, double cpu, double ram, double storage) {
+        int ordinal = getOrdinal(deviceId);
+        return ordinal != -1 && fits(ordinal, cpu, ram, storage);
+    }
+
+    private boolean fits(int ordinal, double cpu, double ram, double storage) {
+        return cpu + cpuLoad[ordinal] <= cpuCapacity[ordinal] && ram + ramLoad[ordinal] <= ramCapacity[ordinal]
+                && storage + storageLoad[ordinal] <= storageCapacity[ordinal];
+    }
+
+    /**
+     * Reserves resources on a device and updates the cluster views the device belongs to.
+     */
+    public void reserve(int deviceId, double cpu, double ram, double storage) {
+        int ordinal = getOrdinal(deviceId);
+        List<FitIndex> indexes = deviceToFitIndexes.get(ordinal);
+        if (indexes != null) {
+            for (FitIndex index : indexes)
+                index.remove(ordinal);
+        }
+        cpuLoad[ordinal] += cpu;
+        ramLoad[ordinal] += ram;
+        storageLoad[ordinal] += storage;
+        boolean activated = !active[ordinal];
+        active[ordinal] = true;
+        if (deviceToClusterViews[ordinal] != null) {
+            for (ClusterView view : deviceToClusterViews[ordinal]) {
+                if (activated)
+                    view.activate(ordinal);
+                else
+                    view.update(ordinal);
+            }
+        }
+        if (indexes != null) {
+            for (FitIndex index : indexes)
+                index.add(ordinal);
+        }
+    }
+
+    /**
+     * Returns the cluster device with the most free CPU that can take the given MIPS, preferring devices that
+     * already host a module placed by the run. Ties are broken by the order of the cluster members.
+     *
+     * @param clusterDeviceId device identifying the cluster
+     * @param clusterMembers members of the cluster
+     * @param mips CPU required
+     * @return the id of the selected device, -1 if no member can take the MIPS
+     */
+    public int selectClusterDevice(int clusterDeviceId, List<Integer> clusterMembers, double mips) {
+        ClusterView view = clusterViews.get(clusterDeviceId);
+        if (view == null) {
+            view = new ClusterView(clusterMembers);
+            clusterViews.put(clusterDeviceId, view);
+        }
+        int ordinal = view.select(mips);
+        return ordinal != -1 ? devices[ordinal].getId() : -1;
+    }
+
+    /**
+     * Returns the cluster device that fits the demand most tightly over CPU, RAM and storage.
+     * <p>
+     * Resources are normalised by the largest capacity of the fleet. With best fit the device left with the least
+     * free resources in total is selected, with dominant resource fit the device whose scarcest resource is left the
+     * lowest, both computed on the resources left once the demand is taken. Members are kept sorted on the key of their
+     * free resources. The search starts at the demand key (no member below it can take the demand) and stops once no
+     * further member can be left lower than the best member found: with best fit at the first member taking the demand
+     * on every resource, with dominant resource fit once the free key less the largest demand share reaches the best
+     * key. In the worst case, when few members can take the demand, every member of the cluster is visited.
+     *
+     * @param clusterDeviceId device identifying the cluster
+     * @param clusterMembers members of the cluster
+     * @param dominantResourceFit true for dominant resource fit, false for best fit
+     * @return the id of the selected device, -1 if no member can take the demand
+     */
+    public int selectBestFitDevice(int clusterDeviceId, List<Integer> clusterMembers, double cpu, double ram, double storage,
+                                   boolean dominantResourceFit) {
+        FitIndex index = fitIndexes.get(clusterDeviceId);
+        if (index == null || index.dominantResourceFit != dominantResourceFit) {
+            if (index != null)
+                index.unregister();
+            index = new FitIndex(clusterMembers, dominantResourceFit);
+            fitIndexes.put(clusterDeviceId, index);
+        }
+        int ordinal = index.select(cpu, ram, storage);
+        return ordinal != -1 ? devices[ordinal].getId() : -1;
+    }
+
+    /**
+     * Fit key of a resource vector, the free resources of a device or the resources left once a demand is taken, see
+     * {@link #selectBestFitDevice}.
+     */
+    private double getFitKey(double cpu, double ram, double storage, boolean dominantResourceFit) {
+        double cpuShare = cpu / maxCpuCapacity;
+        double ramShare = ram / maxRamCapacity;
+        double storageShare = storage / maxStorageCapacity;
+        if (dominantResourceFit)
+            return Math.min(cpuShare, Math.min(ramShare, storageShare));
+        return cpuShare + ramShare + storageShare;
+    }
+
+    private void register(int ordinal, ClusterView view) {
+        ClusterView[] views = deviceToClusterViews[ordinal];
+        if (views == null) {
+            views = new ClusterView[]{view};
+        } else {
+            ClusterView[] extended = new ClusterView[views.length + 1];
+            System.arraycopy(views, 0, extended, 0, views.length);
+            extended[views.length] = view;
+            views = extended;
+        }
+        deviceToClusterViews[ordinal] = views;
+    }
+
+    /**
+     * Free CPU view of one cluster: one heap for the members hosting modules of the run and one for the others.
+     */
+    private class ClusterView {
+        private final Map<Integer, Integer> ordinalToMember = new HashMap<>();
+        private final int[] memberOrdinals;
+        private final CapacityHeap activeHeap;
+        private final CapacityHeap inactiveHeap;
+
+        private ClusterView(List<Integer> clusterMembers) {
+            int[] ordinals = new int[clusterMembers.size()];
+            int count = 0;
+            for (Integer id : clusterMembers) {
+                int ordinal = getOrdinal(id);
+                if (ordinal != -1 && !ordinalToMember.containsKey(ordinal)) {
+                    ordinalToMember.put(ordinal, count);
+                    ordinals[count++] = ordinal;
+                }
+            }
+            memberOrdinals = count == ordinals.length ? ordinals : Arrays.copyOf(ordinals, count);
+            activeHeap = new CapacityHeap(count);
+            inactiveHeap = new CapacityHeap(count);
+            for (int member = 0; member < count; member++) {
+                int ordinal = memberOrdinals[member];
+                if (active[ordinal])
+                    activeHeap.insert(member);
+                else
+                    inactiveHeap.insert(member);
+                register(ordinal, this);
+            }
+        }
+
+        private int select(double mips) {
+            int member = activeHeap.peek();
+            if (member != -1 && fits(memberOrdinals[member], mips))
+                return memberOrdinals[member];
+            member = inactiveHeap.peek();
+            if (member != -1 && fits(memberOrdinals[member], mips))
+                return memberOrdinals[member];
+            return -1;
+        }
+
+        private boolean fits(int ordinal, double mips) {
+            return mips + cpuLoad[ordinal] <= cpuCapacity[ordinal];
+        }
+
+        private void activate(int ordinal) {
+            int member = ordinalToMember.get(ordinal);
+            inactiveHeap.remove(member);
+            activeHeap.insert(member);
+        }
+
+        private void update(int ordinal) {
+            int member = ordinalToMember.get(ordinal);
+            if (activeHeap.contains(member))
+                activeHeap.update(member);
+            else
+                inactiveHeap.update(member);
+        }
+
+        /**
+         * Indexed binary max-heap of cluster members on free CPU, ties broken by member position.
+         */
+        private class CapacityHeap {
+            private final int[] heap;
+            private final int[] positions;
+            private int size = 0;
+
+            private CapacityHeap(int capacity) {
+                heap = new int[capacity];
+                positions = new int[capacity];
+                Arrays.fill(positions, -1);
+            }
+
+            private int peek() {
+                return size > 0 ? heap[0] : -1;
+            }
+
+            private boolean contains(int member) {
+                return positions[member] != -1;
+            }
+
+            private void insert(int member) {
+                heap[size] = member;
+                positions[member] = size;
+                size++;
+                siftUp(size - 1);
+            }
+
+            private void remove(int member) {
+                int position = positions[member];
+                size--;
+                if (position != size) {
+                    move(heap[size], position);
+                    siftDown(position);
+                    siftUp(position);
+                }
+                positions[member] = -1;
+            }
+
+            private void update(int member) {
+                int position = positions[member];
+                siftDown(position);
+                siftUp(position);
+            }
+
+            private boolean before(int member1, int member2) {
+                double free1 = getFreeCpu(memberOrdinals[member1]);
+                double free2 = getFreeCpu(memberOrdinals[member2]);
+                return free1 > free2 || free1 == free2 && member1 < member2;
+            }
+
+            private void siftUp(int position) {
+                int member = heap[position];
+                while (position > 0) {
+                    int parent = (position - 1) / 2;
+                    if (!before(member, heap[parent]))
+                        break;
+                    move(heap[parent], position);
+                    position = parent;
+                }
+                move(member, position);
+            }
+
+            private void siftDown(int position) {
+                int member = heap[position];
+                while (true) {
+                    int child = 2 * position + 1;
+                    if (child >= size)
+                        break;
+                    if (child + 1 < size && before(heap[child + 1], heap[child]))
+                        child++;
+                    if (!before(heap[child], member))
+                        break;
+                    move(heap[child], position);
+                    position = child;
+                }
+                move(member, position);
+            }
+
+            private void move(int member, int position) {
+                heap[position] = member;
+                positions[member] = position;
+            }
+        }
+    }
+
+    /**
+     * Members of one cluster sorted on the fit key of their free resources.
+     */
+    private class FitIndex {
+        private static final int PROBE = -1;
+
+        private final boolean dominantResourceFit;
+        private final Map<Integer, Double> keys = new HashMap<>();
+        private double probeKey;
+        private final TreeSet<Integer> members = new TreeSet<>(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer ordinal1, Integer ordinal2) {
+                int result = Double.compare(getKey(ordinal1), getKey(ordinal2));
+                return result != 0 ? result : Integer.compare(ordinal1, ordinal2);
+            }
+        });
+
+        private FitIndex(List<Integer> clusterMembers, boolean dominantResourceFit) {
+            this.dominantResourceFit = dominantResourceFit;
+            for (Integer id : clusterMembers) {
+                int ordinal = getOrdinal(id);
+                if (ordinal != -1 && !keys.containsKey(ordinal)) {
+                    add(ordinal);
+                    List<FitIndex> indexes = deviceToFitIndexes.get(ordinal);
+                    if (indexes == null) {
+                        indexes = new ArrayList<>();
+                        deviceToFitIndexes.put(ordinal, indexes);
+                    }
+                    indexes.add(this);
+                }
+            }
+        }
+
+        private double getKey(int ordinal) {
+            return ordinal == PROBE ? probeKey : keys.get(ordinal);
+        }
+
+        private int select(double cpu, double ram, double storage) {
+            probeKey = getFitKey(cpu, ram, storage, dominantResourceFit);
+            // the key left once the demand is taken is at least the free key less the largest demand share
+            double largestDemand = dominantResourceFit
+                    ? Math.max(cpu / maxCpuCapacity, Math.max(ram / maxRamCapacity, storage / maxStorageCapacity)) : probeKey;
+            int selected = -1;
+            double selectedKey = Double.POSITIVE_INFINITY;
+            for (Integer ordinal : members.tailSet(PROBE, true)) {
+                if (ordinal == PROBE)
+                    continue;
+                if (getKey(ordinal) - largestDemand >= selectedKey)
+                    break;
+                if (!fits(ordinal, cpu, ram, storage))
+                    continue;
+                double key = getFitKey(getFreeCpu(ordinal) - cpu, getFreeRam(ordinal) - ram, getFreeStorage(ordinal) - storage,
+                        dominantResourceFit);
+                if (key < selectedKey) {
+                    selected = ordinal;
+                    selectedKey = key;
+                }
+            }
+            return selected;
+        }
+
+        private void remove(int ordinal) {
+            members.remove(ordinal);
+        }
+
+        private void add(int ordinal) {
+            keys.put(ordinal, getFitKey(getFreeCpu(ordinal), getFreeRam(ordinal), getFreeStorage(ordinal), dominantResourceFit));
+            members.add(ordinal);
+        }
+
+        private void unregister() {
+            for (Integer ordinal : keys.keySet())
+                deviceToFitIndexes.get(ordinal).remove(this);
+        }
+    }
+}
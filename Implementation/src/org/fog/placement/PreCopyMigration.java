@@ -0,0 +1,71 @@
+package org.fog.placement;
+
+import org.fog.utils.MicroservicePlacementConfig;
+
+/**
+ * Timing of a live pre-copy migration of module state (MicroservicePlacementConfig.LIVE_PRE_COPY).
+ * <p>
+ * The first round copies the whole state while the module keeps running on its source, every next round copies the
+ * state dirtied during the previous round at the dirty rate of the module. Rounds end once the dirty state is at most
+ * PRE_COPY_STOP_SIZE, stops shrinking (the module dirties its state faster than it is copied) or after
+ * PRE_COPY_MAX_ROUNDS rounds. The module is then stopped for the copy of the remaining dirty state, the downtime of
+ * the migration.
+ */
+public class PreCopyMigration {
+
+    private int rounds = 0;
+    private double preCopyTime = 0;
+    private final double downtime;
+    private double copiedSize = 0;
+
+    /**
+     * @param size          size of the state
+     * @param dirtyRate     state dirtied per time unit while the module runs
+     * @param transferDelay time to copy a unit of state from the source to the destination
+     */
+    public PreCopyMigration(double size, double dirtyRate, double transferDelay) {
+        double dirtySize = size;
+        while (rounds < MicroservicePlacementConfig.PRE_COPY_MAX_ROUNDS) {
+            double roundTime = dirtySize * transferDelay;
+            preCopyTime += roundTime;
+            copiedSize += dirtySize;
+            rounds++;
+            double nextDirtySize = Math.min(size, dirtyRate * roundTime);
+            boolean converged = nextDirtySize <= MicroservicePlacementConfig.PRE_COPY_STOP_SIZE || nextDirtySize >= dirtySize;
+            dirtySize = nextDirtySize;
+            if (converged)
+                break;
+        }
+        downtime = dirtySize * transferDelay;
+        copiedSize += dirtySize;
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * @return the time from the start of the migration until the module is stopped on its source
+     */
+    public double getPreCopyTime() {
+        return preCopyTime;
+    }
+
+    public double getDowntime() {
+        return downtime;
+    }
+
+    /**
+     * @return the time from the start of the migration until the module runs on its destination
+     */
+    public double getMigrationTime() {
+        return preCopyTime + downtime;
+    }
+
+    /**
+     * @return the state sent over all the rounds and the last copy
+     */
+    public double getCopiedSize() {
+        return copiedSize;
+    }
+}
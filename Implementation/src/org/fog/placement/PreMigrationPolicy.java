@@ -0,0 +1,150 @@
+package org.fog.placement;
+
+import org.fog.mobilitydata.Location;
+import org.fog.mobilitydata.References;
+import org.fog.utils.MicroservicePlacementConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Predicts the next parent of mobile devices and keeps the module copies staged there ahead of their handover.
+ * <p>
+ * In TRACE_LOOKAHEAD mode the position of the device at its next mobility event is read from its trace. In
+ * VELOCITY_PREDICTION mode it is extrapolated from the last two positions observed at mobility events, as for devices
+ * whose future positions are unknown. The predicted parent is the nearest resource to the predicted position.
+ * <p>
+ * Staged copies of a device are taken at its next mobility event : they replace the migration of the same modules to
+ * the same parent, the others are retired.
+ */
+public class PreMigrationPolicy {
+
+    /**
+     * Copy of a module sent to the predicted parent of a mobile device
+     */
+    public static class StagedModule {
+        private final String application;
+        private final String module;
+        private final long size;
+        private final double stagedAt;
+        private final double readyTime;
+
+        public StagedModule(String application, String module, long size, double stagedAt, double readyTime) {
+            this.application = application;
+            this.module = module;
+            this.size = size;
+            this.stagedAt = stagedAt;
+            this.readyTime = readyTime;
+        }
+
+        public String getApplication() {
+            return application;
+        }
+
+        public String getModule() {
+            return module;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public double getStagedAt() {
+            return stagedAt;
+        }
+
+        /**
+         * @return the time the copy is launched on the predicted parent
+         */
+        public double getReadyTime() {
+            return readyTime;
+        }
+    }
+
+    private final LocationHandler locator;
+    private final String mode;
+    // last two positions of each device observed at mobility events : time, latitude, longitude, then the previous ones
+    private final Map<Integer, double[]> observedPositions = new HashMap<>();
+    private final Map<Integer, Integer> stagedParents = new HashMap<>();
+    private final Map<Integer, List<StagedModule>> stagedModules = new HashMap<>();
+
+    public PreMigrationPolicy(LocationHandler locator, String mode) {
+        this.locator = locator;
+        this.mode = mode;
+    }
+
+    public boolean isEnabled() {
+        return !mode.equals(MicroservicePlacementConfig.NO_PRE_MIGRATION);
+    }
+
+    /**
+     * Records the position of the device at one of its mobility events, for VELOCITY_PREDICTION.
+     */
+    public void observe(int deviceId, double time) {
+        if (!mode.equals(MicroservicePlacementConfig.VELOCITY_PREDICTION))
+            return;
+        Location location = locator.getUserLocation(deviceId, time);
+        if (location == null)
+            return;
+        double[] positions = observedPositions.get(deviceId);
+        if (positions == null) {
+            positions = new double[]{time, location.latitude, location.longitude, Double.NaN, 0, 0};
+            observedPositions.put(deviceId, positions);
+        } else if (positions[0] != time) {
+            System.arraycopy(positions, 0, positions, 3, 3);
+            positions[0] = time;
+            positions[1] = location.latitude;
+            positions[2] = location.longitude;
+        }
+    }
+
+    /**
+     * @return the predicted parent of the device at the time, References.NOT_SET if there is no prediction
+     */
+    public int predictParent(int deviceId, double time) {
+        Location location;
+        if (mode.equals(MicroservicePlacementConfig.TRACE_LOOKAHEAD)) {
+            location = locator.getUserLocation(deviceId, time);
+        } else {
+            double[] positions = observedPositions.get(deviceId);
+            if (positions == null || Double.isNaN(positions[3]) || positions[0] == positions[3])
+                return References.NOT_SET;
+            double ratio = (time - positions[0]) / (positions[0] - positions[3]);
+            location = new Location(positions[1] + (positions[1] - positions[4]) * ratio, positions[2] + (positions[2] - positions[5]) * ratio, References.NOT_SET);
+        }
+        return location != null ? locator.determineParent(deviceId, location) : References.NOT_SET;
+    }
+
+    public void stage(int deviceId, int parentId, StagedModule stagedModule) {
+        stagedParents.put(deviceId, parentId);
+        List<StagedModule> modules = stagedModules.get(deviceId);
+        if (modules == null) {
+            modules = new ArrayList<>();
+            stagedModules.put(deviceId, modules);
+        }
+        modules.add(stagedModule);
+    }
+
+    public boolean hasStagedModules(int deviceId) {
+        return stagedModules.containsKey(deviceId);
+    }
+
+    /**
+     * @return the parent the modules of the device are staged on, References.NOT_SET if there is none
+     */
+    public int getStagedParent(int deviceId) {
+        Integer parentId = stagedParents.get(deviceId);
+        return parentId != null ? parentId : References.NOT_SET;
+    }
+
+    /**
+     * Removes the staged copies of the device, to be used or retired by its handover.
+     */
+    public List<StagedModule> takeStagedModules(int deviceId) {
+        stagedParents.remove(deviceId);
+        List<StagedModule> modules = stagedModules.remove(deviceId);
+        return modules != null ? modules : new ArrayList<>();
+    }
+}
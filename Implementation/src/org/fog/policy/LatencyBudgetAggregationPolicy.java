@@ -0,0 +1,60 @@
+package org.fog.policy;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fog.entities.ManagementTuple;
+import org.fog.entities.Tuple;
+import org.fog.entities.TupleBatch;
+
+/**
+ * Packs northbound tuples for at most a fixed latency budget, up to a maximum number of tuples and a maximum batch
+ * size. Tuple types can be given a compression ratio (batched size / original size), tuple types without a ratio
+ * are sent uncompressed. Management tuples are never delayed.
+ */
+public class LatencyBudgetAggregationPolicy implements UplinkAggregationPolicy {
+
+	private final double latencyBudget;
+	private final int maxBatchTuples;
+	private final double maxBatchSize;
+
+	private final Map<String, Double> compressionRatios = new HashMap<String, Double>();
+
+	/**
+	 * @param latencyBudget longest time a tuple waits for its batch to be sent
+	 * @param maxBatchTuples number of tuples after which a batch is sent right away
+	 * @param maxBatchSize batch size after which a batch is sent right away
+	 */
+	public LatencyBudgetAggregationPolicy(double latencyBudget, int maxBatchTuples, double maxBatchSize) {
+		this.latencyBudget = latencyBudget;
+		this.maxBatchTuples = maxBatchTuples;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public LatencyBudgetAggregationPolicy setCompressionRatio(String tupleType, double compressionRatio) {
+		compressionRatios.put(tupleType, compressionRatio);
+		return this;
+	}
+
+	@Override
+	public boolean canAggregate(Tuple tuple) {
+		return !(tuple instanceof ManagementTuple) && !(tuple instanceof TupleBatch) && latencyBudget > 0;
+	}
+
+	@Override
+	public double getLatencyBudget() {
+		return latencyBudget;
+	}
+
+	@Override
+	public double getBatchedSize(Tuple tuple) {
+		Double compressionRatio = compressionRatios.get(tuple.getTupleType());
+		return compressionRatio != null ? tuple.getCloudletFileSize() * compressionRatio : tuple.getCloudletFileSize();
+	}
+
+	@Override
+	public boolean isBatchFull(List<Tuple> tuples, double batchSize) {
+		return tuples.size() >= maxBatchTuples || batchSize >= maxBatchSize;
+	}
+}
@@ -0,0 +1,36 @@
+package org.fog.policy;
+
+import java.util.List;
+
+import org.fog.entities.Tuple;
+
+/**
+ * Decides how a fog device packs its northbound tuples into batches before sending them to its parent.
+ * Tuples are collected from the first tuple of a batch on, the batch is sent when it is full or when the latency
+ * budget of its first tuple is spent, whichever comes first.
+ */
+public interface UplinkAggregationPolicy {
+
+	/**
+	 * Returns true if the tuple may wait in a batch, false if it has to be sent on its own right away.
+	 */
+	public boolean canAggregate(Tuple tuple);
+
+	/**
+	 * Longest time the first tuple of a batch may wait for the batch to be sent.
+	 */
+	public double getLatencyBudget();
+
+	/**
+	 * Size the tuple occupies in a batch, after compression.
+	 */
+	public double getBatchedSize(Tuple tuple);
+
+	/**
+	 * Returns true if the batch has to be sent without waiting for the rest of the latency budget.
+	 *
+	 * @param tuples tuples packed so far
+	 * @param batchSize sum of the batched sizes of the tuples
+	 */
+	public boolean isBatchFull(List<Tuple> tuples, double batchSize);
+}
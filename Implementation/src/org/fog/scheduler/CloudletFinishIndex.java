@@ -0,0 +1,84 @@
+package org.fog.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Vm;
+
+/**
+ * Completion index of the modules of a fog host. Modules processed through {@link #process(Vm, double, List)} that
+ * hold finished tuples are recorded, so that completion checks only visit those modules.
+ *
+ * The index does not restrict processing to the modules whose tuples are due: every datacenter event settles all the
+ * modules holding a share. When the host update goes through the IncrementalMipsAllocator, those are the only modules
+ * processed and checked. Otherwise the host processes every module itself and {@link #scanHost()} polls all of them.
+ */
+public class CloudletFinishIndex {
+
+	private final Host host;
+
+	/**
+	 * Modules processed since the last completion check that hold finished tuples
+	 */
+	private final Set<Vm> vmsWithFinishedCloudlets = new LinkedHashSet<Vm>();
+
+	public CloudletFinishIndex(Host host) {
+		this.host = host;
+	}
+
+	/**
+	 * Updates the processing of a module and records it if it holds finished tuples.
+	 *
+	 * @return the estimated finish time of the earliest running tuple of the module, 0 or Double.MAX_VALUE if none
+	 */
+	public double process(Vm vm, double currentTime, List<Double> mipsShare) {
+		double nextEvent = vm.updateVmProcessing(currentTime, mipsShare);
+		if (vm.getCloudletScheduler().isFinishedCloudlets())
+			vmsWithFinishedCloudlets.add(vm);
+		return nextEvent;
+	}
+
+	/**
+	 * Polls every module of the host for finished tuples, after the host processed all of them itself
+	 * (Host.updateVmsProcessing). The modules holding finished tuples are kept for the completion check.
+	 */
+	public void scanHost() {
+		for (Vm vm : host.getVmList()) {
+			if (vm.getCloudletScheduler().isFinishedCloudlets())
+				vmsWithFinishedCloudlets.add(vm);
+		}
+	}
+
+	/**
+	 * Removes and returns the modules of the host holding finished tuples, in the order of the host VM list.
+	 * Modules that left the host are dropped, their tuples are collected by the device now hosting them.
+	 */
+	public List<Vm> pollVmsWithFinishedCloudlets() {
+		if (vmsWithFinishedCloudlets.isEmpty())
+			return Collections.emptyList();
+		List<Vm> vms = new ArrayList<Vm>();
+		if (vmsWithFinishedCloudlets.size() == 1) {
+			Vm vm = vmsWithFinishedCloudlets.iterator().next();
+			if (isOnHost(vm))
+				vms.add(vm);
+		} else {
+			for (Vm vm : host.getVmList()) {
+				if (vmsWithFinishedCloudlets.contains(vm))
+					vms.add(vm);
+			}
+		}
+		vmsWithFinishedCloudlets.clear();
+		return vms;
+	}
+
+	/**
+	 * A module is on the host as long as the host scheduler holds an allocation for it.
+	 */
+	private boolean isOnHost(Vm vm) {
+		return host.getVmScheduler().getAllocatedMipsForVm(vm) != null;
+	}
+}
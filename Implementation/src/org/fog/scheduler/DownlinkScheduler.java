@@ -0,0 +1,221 @@
+package org.fog.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.commons.math3.util.Pair;
+import org.fog.entities.Tuple;
+
+/**
+ * Southbound link model of a fog device with one queue per child link. The downlink capacity is shared between the
+ * children with queued tuples by weighted fair queueing (fluid model): every child link sending a tuple gets a part of
+ * the capacity proportional to its weight, so a large tuple to one child no longer blocks the tuples to other children.
+ *
+ * Tuples carry a priority class. Within a child link a tuple of a higher class is sent before the tuples of lower
+ * classes, and across links only the links whose next tuple is of the highest class currently queued share the
+ * capacity. Tuples of the same class and link are sent in arrival order.
+ *
+ * The scheduler is driven by the device: tuples are added with {@link #enqueue}, completed tuples are collected with
+ * {@link #pollCompleted(double)} and {@link #getNextCompletionTime(double)} gives the time of the single completion
+ * event the device has to schedule.
+ */
+public class DownlinkScheduler {
+
+	private static class QueuedTuple {
+		private final Tuple tuple;
+		private final int childId;
+		private final int priority;
+		private final long sequence;
+		private final double size;
+		private double remaining;
+
+		private QueuedTuple(Tuple tuple, int childId, int priority, long sequence) {
+			this.tuple = tuple;
+			this.childId = childId;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.size = tuple.getCloudletFileSize();
+			this.remaining = size;
+		}
+	}
+
+	private static final Comparator<QueuedTuple> PRIORITY_ORDER = new Comparator<QueuedTuple>() {
+		@Override
+		public int compare(QueuedTuple t1, QueuedTuple t2) {
+			int result = Integer.compare(t2.priority, t1.priority);
+			return result != 0 ? result : Long.compare(t1.sequence, t2.sequence);
+		}
+	};
+
+	private static class ChildLink {
+		private final PriorityQueue<QueuedTuple> queue = new PriorityQueue<QueuedTuple>(11, PRIORITY_ORDER);
+		private double weight = 1.0;
+		private double rate = 0;
+	}
+
+	/**
+	 * Relative part of a tuple left to send below which the tuple counts as sent, absorbs rounding of the
+	 * completion time
+	 */
+	private static final double COMPLETION_TOLERANCE = 1e-9;
+
+	private double bandwidth;
+
+	private final Map<Integer, ChildLink> links = new LinkedHashMap<Integer, ChildLink>();
+
+	/**
+	 * Child links with queued tuples
+	 */
+	private final Set<ChildLink> activeLinks = new LinkedHashSet<ChildLink>();
+
+	private double lastUpdateTime = 0;
+	private long nextSequence = 0;
+	private int queuedTuples = 0;
+
+	public DownlinkScheduler(double bandwidth) {
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * Queues a tuple on the link to a child.
+	 *
+	 * @param tuple tuple to send
+	 * @param childId child the tuple is sent to
+	 * @param priority priority class of the tuple, higher classes are sent first
+	 * @param currentTime simulation time at which the tuple is queued
+	 */
+	public void enqueue(Tuple tuple, int childId, int priority, double currentTime) {
+		advance(currentTime);
+		ChildLink link = getLink(childId);
+		link.queue.add(new QueuedTuple(tuple, childId, priority, nextSequence++));
+		activeLinks.add(link);
+		queuedTuples++;
+		updateRates();
+	}
+
+	/**
+	 * Removes and returns the tuples completely sent by the given time, together with the child they are sent to.
+	 */
+	public List<Pair<Tuple, Integer>> pollCompleted(double currentTime) {
+		advance(currentTime);
+		List<Pair<Tuple, Integer>> completed = null;
+		Iterator<ChildLink> iterator = activeLinks.iterator();
+		while (iterator.hasNext()) {
+			ChildLink link = iterator.next();
+			QueuedTuple head = link.queue.peek();
+			if (link.rate > 0 && head.remaining <= head.size * COMPLETION_TOLERANCE) {
+				link.queue.poll();
+				queuedTuples--;
+				if (completed == null)
+					completed = new ArrayList<Pair<Tuple, Integer>>();
+				completed.add(new Pair<Tuple, Integer>(head.tuple, head.childId));
+				if (link.queue.isEmpty()) {
+					link.rate = 0;
+					iterator.remove();
+				}
+			}
+		}
+		if (completed == null)
+			return Collections.emptyList();
+		updateRates();
+		return completed;
+	}
+
+	/**
+	 * Time at which the next tuple is completely sent if no other tuple is queued meanwhile, Double.MAX_VALUE if
+	 * nothing is queued.
+	 */
+	public double getNextCompletionTime(double currentTime) {
+		advance(currentTime);
+		double delay = Double.MAX_VALUE;
+		for (ChildLink link : activeLinks) {
+			if (link.rate > 0)
+				delay = Math.min(delay, link.queue.peek().remaining / link.rate);
+		}
+		return delay == Double.MAX_VALUE ? Double.MAX_VALUE : currentTime + delay;
+	}
+
+	/**
+	 * Sets the weight of the link to a child, its share of the capacity relative to the other links.
+	 */
+	public void setChildWeight(int childId, double weight, double currentTime) {
+		advance(currentTime);
+		getLink(childId).weight = weight;
+		updateRates();
+	}
+
+	public void setBandwidth(double bandwidth, double currentTime) {
+		advance(currentTime);
+		this.bandwidth = bandwidth;
+		updateRates();
+	}
+
+	public boolean isIdle() {
+		return queuedTuples == 0;
+	}
+
+	public int getQueuedTuples() {
+		return queuedTuples;
+	}
+
+	/**
+	 * Number of tuples queued on the link to a child, including the tuple being sent.
+	 */
+	public int getQueuedTuples(int childId) {
+		ChildLink link = links.get(childId);
+		return link == null ? 0 : link.queue.size();
+	}
+
+	private ChildLink getLink(int childId) {
+		ChildLink link = links.get(childId);
+		if (link == null) {
+			link = new ChildLink();
+			links.put(childId, link);
+		}
+		return link;
+	}
+
+	/**
+	 * Sends data on every transmitting link at its current rate up to the given time.
+	 */
+	private void advance(double currentTime) {
+		double elapsed = currentTime - lastUpdateTime;
+		if (elapsed > 0) {
+			for (ChildLink link : activeLinks) {
+				if (link.rate > 0) {
+					QueuedTuple head = link.queue.peek();
+					head.remaining = Math.max(0, head.remaining - link.rate * elapsed);
+				}
+			}
+		}
+		lastUpdateTime = Math.max(lastUpdateTime, currentTime);
+	}
+
+	/**
+	 * Shares the capacity between the links whose next tuple is of the highest class queued, by weight.
+	 */
+	private void updateRates() {
+		int topPriority = Integer.MIN_VALUE;
+		for (ChildLink link : activeLinks)
+			topPriority = Math.max(topPriority, link.queue.peek().priority);
+		double totalWeight = 0;
+		for (ChildLink link : activeLinks) {
+			if (link.queue.peek().priority == topPriority)
+				totalWeight += link.weight;
+		}
+		for (ChildLink link : activeLinks) {
+			if (link.queue.peek().priority == topPriority && totalWeight > 0)
+				link.rate = bandwidth * link.weight / totalWeight;
+			else
+				link.rate = 0;
+		}
+	}
+}
@@ -0,0 +1,453 @@
+package org.fog.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.HostDynamicWorkload;
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.Vm;
+import org.fog.application.AppModule;
+
+/**
+ * Keeps the MIPS allocation of a single PE fog host up to date by applying busy/idle transitions of its
+ * application modules instead of deallocating and re-allocating every module on the host.
+ *
+ * Every busy module requests the whole host, so with k busy modules each one is granted the host MIPS scaled
+ * down by k (the same result VmSchedulerTimeSharedOverSubscription produces) and idle modules are granted
+ * nothing. When k is unchanged only the modules that switched state are touched. Share vectors are immutable
+ * and shared between all modules holding the same share.
+ *
+ * Modules whose share is unchanged are not processed on every update. Their progress is identical whether it is
+ * computed now or later under the same share, so it is settled lazily the next time the module is processed.
+ * A module whose share changes is first settled up to the previous update under its old share, which keeps the
+ * accounting of the full reallocation (a new share applies from the previous update onwards).
+ *
+ * The host level update (see {@link #updateVmsProcessing(double)}) goes through the allocator as well, so that
+ * releasing the MIPS of the modules on every datacenter event does not invalidate the allocation. The released
+ * modules that are not granted a share again are processed under no share on the next update, as they would be by a
+ * full reallocation.
+ *
+ * If the allocation is changed through the generic VmScheduler API (module creation or destruction, host level
+ * reallocation), the next update falls back to a full reallocation. A module listed several times on the host is
+ * allocated as if listed once, but counted as many times in the MIPS allocated on the host.
+ */
+public class IncrementalMipsAllocator {
+
+	private final HostDynamicWorkload host;
+	private final StreamOperatorScheduler scheduler;
+	private final CloudletFinishIndex finishIndex;
+	private final double totalMips;
+
+	private final List<Double> fullRequest;
+	private final List<Double> idleShare = Collections.singletonList(0.0);
+	private final List<Double> emptyShare = Collections.emptyList();
+	private final Map<Integer, List<Double>> busyShares = new HashMap<Integer, List<Double>>();
+
+	/**
+	 * Modules found busy by the last update
+	 */
+	private final Set<Vm> busyVms = new LinkedHashSet<Vm>();
+
+	/**
+	 * Modules granted a share since the last update through {@link #requestFullShare(Vm)}
+	 */
+	private final Set<Vm> pinnedVms = new LinkedHashSet<Vm>();
+
+	/**
+	 * Modules whose busy/idle state has to be re-evaluated on the next update
+	 */
+	private final Set<Vm> pendingVms = new LinkedHashSet<Vm>();
+
+	/**
+	 * Modules released by the last host update, still processed under the share they held before it
+	 */
+	private final Set<Vm> releasedVms = new LinkedHashSet<Vm>();
+
+	/**
+	 * Modules kept busy by the previous update even if they had no running tuple: the incoming module and the other
+	 * modules of the host with the same name
+	 */
+	private List<Vm> incomingVms = Collections.emptyList();
+
+	private double lastUpdateTime = 0;
+
+	private int syncedVersion = -1;
+
+	/**
+	 * Number of times each module is listed on the host, as of the last full update
+	 */
+	private final Map<Vm, Integer> listings = new HashMap<Vm, Integer>();
+
+	/**
+	 * Modules of the host by name, as of the last full update
+	 */
+	private final Map<String, List<Vm>> modulesByName = new HashMap<String, List<Vm>>();
+
+	/**
+	 * True if a module of the host requested MIPS from the host (being instantiated) as of the last full update
+	 */
+	private boolean requestingVms = false;
+
+	private int incrementalUpdates = 0;
+	private int fullUpdates = 0;
+
+	public IncrementalMipsAllocator(Host host, CloudletFinishIndex finishIndex) {
+		this.host = (HostDynamicWorkload) host;
+		this.scheduler = (StreamOperatorScheduler) host.getVmScheduler();
+		this.finishIndex = finishIndex;
+		this.totalMips = host.getTotalMips();
+		this.fullRequest = Collections.singletonList(totalMips);
+	}
+
+	/**
+	 * Returns true if the allocator can manage the MIPS of the given host.
+	 */
+	public static boolean supports(Host host) {
+		return host instanceof HostDynamicWorkload && host.getVmScheduler() instanceof StreamOperatorScheduler
+				&& host.getNumberOfPes() == 1;
+	}
+
+	/**
+	 * Marks a module whose running tuples may have changed, e.g. after collecting its finished tuples.
+	 */
+	public void markChanged(Vm vm) {
+		pendingVms.add(vm);
+	}
+
+	/**
+	 * Records that every module of the host is processed up to the given time under its current share, either
+	 * actually or lazily.
+	 */
+	public void processedAllUntil(double currentTime) {
+		lastUpdateTime = currentTime;
+	}
+
+	/**
+	 * Re-evaluates the modules that changed since the last update. A module is busy if it has running tuples or
+	 * if it carries the name of the incoming module about to receive a tuple. The incoming module is always
+	 * processed, so that tuples submitted to it start from an up to date state and are recorded in the finish
+	 * index.
+	 *
+	 * @param incoming module receiving a tuple, may be null
+	 * @param currentTime simulation time of the update
+	 */
+	public void update(Vm incoming, double currentTime) {
+		if (!isSynced()) {
+			reallocateAll(incoming, currentTime);
+			incomingVms = getCopies(incoming);
+			return;
+		}
+
+		List<Vm> incomingCopies = getCopies(incoming);
+		pendingVms.addAll(incomingVms);
+		pendingVms.addAll(incomingCopies);
+		pendingVms.addAll(pinnedVms);
+		pendingVms.addAll(releasedVms);
+		incomingVms = incomingCopies;
+
+		List<Vm> becameBusy = new ArrayList<Vm>();
+		List<Vm> becameIdle = new ArrayList<Vm>();
+		for (Vm vm : pendingVms) {
+			boolean busy = vm.getCloudletScheduler().runningCloudlets() > 0 || isIncoming(vm, incoming);
+			if (busy && !busyVms.contains(vm))
+				becameBusy.add(vm);
+			else if (!busy && busyVms.contains(vm))
+				becameIdle.add(vm);
+		}
+		pendingVms.clear();
+
+		if (!becameBusy.isEmpty() || !becameIdle.isEmpty() || !pinnedVms.isEmpty())
+			applyTransitions(becameBusy, becameIdle, currentTime);
+		pinnedVms.clear();
+		for (Vm vm : releasedVms) {
+			if (!busyVms.contains(vm))
+				finishIndex.process(vm, currentTime, idleShare);
+		}
+		releasedVms.clear();
+
+		if (incoming != null)
+			finishIndex.process(incoming, currentTime, scheduler.getAllocatedMipsForVm(incoming));
+		lastUpdateTime = currentTime;
+	}
+
+	/**
+	 * Processes the modules of the host with the same outcome as HostDynamicWorkload.updateVmsProcessing. Once
+	 * instantiated, fog modules request no MIPS from the host, so the host update leaves every module without a
+	 * share until the next {@link #update(Vm, double)}. Only the modules holding a share are processed and
+	 * released here: the others make no progress and already hold no share. Their state history is not extended,
+	 * its last entry already records no MIPS.
+	 *
+	 * The host update itself is used when the allocation is not known to the allocator, when a module requests MIPS
+	 * from the host, when logging is enabled or when the host utilization was not released yet, and the allocator is
+	 * synchronised from its result.
+	 *
+	 * @param currentTime simulation time of the update
+	 * @return the earliest estimated finish time of the running tuples, as returned by the host update
+	 */
+	public double updateVmsProcessing(double currentTime) {
+		if (!isSynced() || requestingVms || !Log.isDisabled() || host.getUtilizationMips() != 0
+				|| host.getPreviousUtilizationMips() != 0) {
+			double time = host.updateVmsProcessing(currentTime);
+			syncReleased(currentTime);
+			return time;
+		}
+
+		incrementalUpdates++;
+		for (Vm vm : releasedVms)
+			finishIndex.process(vm, currentTime, emptyShare);
+		releasedVms.clear();
+		double smallerTime = Double.MAX_VALUE;
+		List<Double> busyShare = getBusyShare(busyVms.size());
+		for (Vm vm : busyVms)
+			smallerTime = Math.min(smallerTime, release(vm, busyShare, currentTime));
+		for (Vm vm : pinnedVms)
+			smallerTime = Math.min(smallerTime, release(vm, idleShare, currentTime));
+		releasedVms.addAll(busyVms);
+		releasedVms.addAll(pinnedVms);
+		busyVms.clear();
+		pinnedVms.clear();
+		incomingVms = Collections.emptyList();
+		scheduler.updateAvailableMips(totalMips);
+		host.addStateHistoryEntry(currentTime, 0, 0, false);
+		lastUpdateTime = currentTime;
+		return smallerTime;
+	}
+
+	/**
+	 * Grants a share to a module ahead of the next update, without waiting for a tuple to be submitted to it.
+	 * As with a plain re-allocation, the progress of the modules is not recomputed and the module is
+	 * re-evaluated on the next update.
+	 */
+	public void requestFullShare(Vm vm) {
+		if (!isSynced()) {
+			scheduler.deallocatePesForVm(vm);
+			scheduler.allocatePesForVm(vm, fullRequest);
+			return;
+		}
+		if (busyVms.contains(vm) || !pinnedVms.add(vm))
+			return;
+		List<Double> share = getBusyShare(busyVms.size() + pinnedVms.size());
+		for (Vm busyVm : busyVms)
+			scheduler.installMipsShare(busyVm, fullRequest, share);
+		for (Vm pinnedVm : pinnedVms)
+			scheduler.installMipsShare(pinnedVm, fullRequest, share);
+		scheduler.updateAvailableMips(0);
+	}
+
+	/**
+	 * Total MIPS currently granted to the modules of the host.
+	 */
+	public double getAllocatedMips() {
+		int listed = 0;
+		for (Vm vm : busyVms)
+			listed += getListings(vm);
+		for (Vm vm : pinnedVms)
+			listed += getListings(vm);
+		return listed * getBusyShare(busyVms.size() + pinnedVms.size()).get(0);
+	}
+
+	public int getIncrementalUpdates() {
+		return incrementalUpdates;
+	}
+
+	public int getFullUpdates() {
+		return fullUpdates;
+	}
+
+	private boolean isSynced() {
+		return syncedVersion == scheduler.getAllocationVersion()
+				&& scheduler.getVmsMigratingIn().isEmpty() && scheduler.getVmsMigratingOut().isEmpty();
+	}
+
+	private void applyTransitions(List<Vm> becameBusy, List<Vm> becameIdle, double currentTime) {
+		incrementalUpdates++;
+
+		int oldCount = busyVms.size();
+		int installedCount = oldCount + pinnedVms.size();
+		int newCount = oldCount + becameBusy.size() - becameIdle.size();
+		List<Double> oldShare = getBusyShare(oldCount);
+		List<Double> installedShare = getBusyShare(installedCount);
+		List<Double> newShare = getBusyShare(newCount);
+
+		for (Vm vm : becameIdle) {
+			busyVms.remove(vm);
+			changeShare(vm, oldShare, idleShare, idleShare, currentTime);
+		}
+		for (Vm vm : pinnedVms) {
+			if (!becameBusy.contains(vm))
+				scheduler.installMipsShare(vm, idleShare, idleShare);
+		}
+		for (Vm vm : busyVms) {
+			if (!newShare.equals(oldShare))
+				changeShare(vm, oldShare, fullRequest, newShare, currentTime);
+			else if (!newShare.equals(installedShare))
+				scheduler.installMipsShare(vm, fullRequest, newShare);
+		}
+		for (Vm vm : becameBusy) {
+			busyVms.add(vm);
+			changeShare(vm, idleShare, fullRequest, newShare, currentTime);
+		}
+		scheduler.updateAvailableMips(newCount > 0 ? 0 : totalMips);
+	}
+
+	/**
+	 * Settles the progress of the module up to the previous update under its old share, then applies the new
+	 * share from there on.
+	 */
+	private void changeShare(Vm vm, List<Double> oldShare, List<Double> requested, List<Double> newShare, double currentTime) {
+		if (vm.getCloudletScheduler().getPreviousTime() < lastUpdateTime)
+			finishIndex.process(vm, lastUpdateTime, oldShare);
+		scheduler.installMipsShare(vm, requested, newShare);
+		finishIndex.process(vm, currentTime, newShare);
+	}
+
+	/**
+	 * Settles a module up to the previous update under the share it held before any {@link #requestFullShare(Vm)},
+	 * processes it under its installed share and releases that share.
+	 *
+	 * @return the estimated finish time of the earliest running tuple of the module, Double.MAX_VALUE if none
+	 */
+	private double release(Vm vm, List<Double> previousShare, double currentTime) {
+		if (vm.getCloudletScheduler().getPreviousTime() < lastUpdateTime)
+			finishIndex.process(vm, lastUpdateTime, previousShare);
+		double time = finishIndex.process(vm, currentTime, scheduler.getAllocatedMipsForVm(vm));
+		scheduler.installMipsShare(vm, emptyShare, emptyShare);
+		vm.addStateHistoryEntry(currentTime, 0, 0, vm.isInMigration());
+		return time > 0 ? time : Double.MAX_VALUE;
+	}
+
+	/**
+	 * Rebuilds the view of the allocation after the host processed and released every module. The modules running
+	 * tuples are granted their share again on the next update. A module requesting MIPS (being instantiated) is
+	 * granted its request by the host, so the next update is then a full reallocation.
+	 */
+	private void syncReleased(double currentTime) {
+		fullUpdates++;
+		busyVms.clear();
+		pinnedVms.clear();
+		pendingVms.clear();
+		releasedVms.clear();
+		incomingVms = Collections.emptyList();
+		for (Vm vm : host.getVmList()) {
+			if (vm.getCloudletScheduler().runningCloudlets() > 0)
+				pendingVms.add(vm);
+			if (hasShare(vm.getCloudletScheduler().getCurrentMipsShare()))
+				releasedVms.add(vm);
+		}
+		finishIndex.scanHost();
+		indexVms();
+		syncedVersion = requestingVms ? -1 : scheduler.getAllocationVersion();
+		lastUpdateTime = currentTime;
+	}
+
+	/**
+	 * Deallocates and re-allocates every module of the host, as done before incremental updates were available.
+	 * Modules processed lazily are settled under their previous share first.
+	 */
+	private void reallocateAll(Vm incoming, double currentTime) {
+		fullUpdates++;
+		scheduler.deallocatePesForAllVms();
+		busyVms.clear();
+		pinnedVms.clear();
+		pendingVms.clear();
+		releasedVms.clear();
+		for (Vm vm : host.getVmList()) {
+			if (vm.getCloudletScheduler().runningCloudlets() > 0 || isIncoming(vm, incoming)) {
+				scheduler.allocatePesForVm(vm, fullRequest);
+				busyVms.add(vm);
+			} else {
+				scheduler.allocatePesForVm(vm, idleShare);
+			}
+		}
+		for (Vm vm : host.getVmList()) {
+			if (vm.getCloudletScheduler().getPreviousTime() < lastUpdateTime)
+				finishIndex.process(vm, lastUpdateTime, vm.getCloudletScheduler().getCurrentMipsShare());
+			finishIndex.process(vm, currentTime, scheduler.getAllocatedMipsForVm(vm));
+		}
+		indexVms();
+		syncedVersion = scheduler.getAllocationVersion();
+		lastUpdateTime = currentTime;
+	}
+
+	/**
+	 * Counts the listings of every module on the host, groups the modules by name and looks for modules requesting
+	 * MIPS from the host.
+	 */
+	private void indexVms() {
+		listings.clear();
+		modulesByName.clear();
+		requestingVms = false;
+		for (Vm vm : host.getVmList()) {
+			if (!vm.getCurrentRequestedMips().isEmpty())
+				requestingVms = true;
+			Integer count = listings.get(vm);
+			listings.put(vm, count == null ? 1 : count + 1);
+			if (count == null) {
+				List<Vm> copies = modulesByName.get(getModuleName(vm));
+				if (copies == null) {
+					copies = new ArrayList<Vm>();
+					modulesByName.put(getModuleName(vm), copies);
+				}
+				copies.add(vm);
+			}
+		}
+	}
+
+	/**
+	 * The incoming module and the other modules of the host with the same name.
+	 */
+	private List<Vm> getCopies(Vm incoming) {
+		if (incoming == null)
+			return Collections.emptyList();
+		List<Vm> copies = modulesByName.get(getModuleName(incoming));
+		return copies != null && copies.contains(incoming) ? copies : Collections.singletonList(incoming);
+	}
+
+	private int getListings(Vm vm) {
+		Integer count = listings.get(vm);
+		return count == null ? 1 : count;
+	}
+
+	/**
+	 * The incoming module is identified by name, so that every copy of it listed on the host is kept busy.
+	 */
+	private boolean isIncoming(Vm vm, Vm incoming) {
+		return vm == incoming || incoming != null && getModuleName(vm).equals(getModuleName(incoming));
+	}
+
+	private String getModuleName(Vm vm) {
+		return vm instanceof AppModule ? ((AppModule) vm).getName() : vm.getUid();
+	}
+
+	/**
+	 * Share granted to each busy module when count modules are busy. Mirrors the proportional scaling of
+	 * VmSchedulerTimeSharedOverSubscription, which floors the scaled share once the host is oversubscribed.
+	 */
+	private static boolean hasShare(List<Double> share) {
+		for (double mips : share) {
+			if (mips > 0)
+				return true;
+		}
+		return false;
+	}
+
+	private List<Double> getBusyShare(int count) {
+		if (count == 0)
+			return idleShare;
+		List<Double> share = busyShares.get(count);
+		if (share == null) {
+			if (count == 1)
+				share = fullRequest;
+			else
+				share = Collections.singletonList(Math.floor(totalMips * (totalMips / (count * totalMips))));
+			busyShares.put(count, share);
+		}
+		return share;
+	}
+}
@@ -1,16 +1,81 @@
 package org.fog.scheduler;
 
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.VmSchedulerTimeShared;
 import org.cloudbus.cloudsim.VmSchedulerTimeSharedOverSubscription;
 import org.cloudbus.cloudsim.sdn.overbooking.VmSchedulerTimeSharedOverbookingEnergy;
 
 public class StreamOperatorScheduler extends VmSchedulerTimeSharedOverbookingEnergy{
 
+	/**
+	 * Incremented whenever the MIPS allocation is changed through the generic VmScheduler API, so that an
+	 * {@link IncrementalMipsAllocator} knows its view of the allocation has to be rebuilt.
+	 */
+	private int allocationVersion = 0;
+
 	public StreamOperatorScheduler(List<? extends Pe> pelist) {
 		super(pelist);
 	}
+
+	@Override
+	public boolean allocatePesForVm(Vm vm, List<Double> mipsShareRequested) {
+		allocationVersion++;
+		return super.allocatePesForVm(vm, mipsShareRequested);
+	}
+
+	@Override
+	public void deallocatePesForVm(Vm vm) {
+		allocationVersion++;
+		super.deallocatePesForVm(vm);
+	}
+
+	@Override
+	public void deallocatePesForAllVms() {
+		allocationVersion++;
+		super.deallocatePesForAllVms();
+	}
+
+	public int getAllocationVersion() {
+		return allocationVersion;
+	}
+
+	/**
+	 * Replaces the requested and allocated MIPS share of a single VM without touching the other VMs on the host.
+	 * Only valid for single PE hosts, where the allocated share is the requested share already scaled by the caller.
+	 * The available MIPS of the host has to be set by the caller once all shares of a batch are installed.
+	 *
+	 * @param vm the VM whose share changes
+	 * @param requestedShare the share requested by the VM
+	 * @param allocatedShare the share actually granted to the VM
+	 */
+	public void installMipsShare(Vm vm, List<Double> requestedShare, List<Double> allocatedShare) {
+		String vmUid = vm.getUid();
+		List<Double> previousShare = getMipsMapRequested().put(vmUid, requestedShare);
+		setPesInUse(getPesInUse() + requestedShare.size() - (previousShare == null ? 0 : previousShare.size()));
+		getMipsMap().put(vmUid, allocatedShare);
+
+		Pe pe = getPeList().get(0);
+		pe.getPeProvisioner().deallocateMipsForVm(vm);
+		List<Pe> allocatedPes = new LinkedList<Pe>();
+		double mips = allocatedShare.isEmpty() ? 0 : allocatedShare.get(0);
+		if (mips >= 0.1) {
+			pe.getPeProvisioner().allocateMipsForVm(vmUid, mips);
+			allocatedPes.add(pe);
+		}
+		getPeMap().put(vmUid, allocatedPes);
+	}
+
+	/**
+	 * Sets the MIPS left unallocated on the host after a batch of {@link #installMipsShare} calls.
+	 * The utilization history only records actual changes.
+	 */
+	public void updateAvailableMips(double availableMips) {
+		if (availableMips != getAvailableMips())
+			setAvailableMips(availableMips);
+	}
 }
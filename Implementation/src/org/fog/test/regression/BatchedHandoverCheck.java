@@ -0,0 +1,134 @@
+package org.fog.test.regression;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.fog.mobilitydata.DataParser;
+import org.fog.utils.Config;
+import org.fog.utils.MicroservicePlacementConfig;
+
+/**
+ * Checks that the batched handover (MicroservicePlacementConfig.ENABLE_BATCHED_HANDOVER) hands over the mobile devices
+ * and migrates their modules as the handover of one device at a time.
+ *
+ * Runs a microservice mobility example (CardiovascularHealthMonitoringApplication by default, or the one given as
+ * first argument, with the MicroservicePlacementConfig.MIGRATION_MODE and Config.MIGRATION_TRANSFER_MODEL given as
+ * next arguments) in both modes, each in its own JVM as the examples exit at the end of the simulation, with the same
+ * seeded mobility event times, and compares:
+ * - the handovers and the parents the devices move to,
+ * - the migrations of every module, with their downtime and migration time,
+ * - the total time required for module migration.
+ * With link shared transfers (Config.MIGRATION_LINK_SHARED), the delays depend on the tuples sharing the links, emitted
+ * by the sensors at unseeded times, and only the numbers of migrations are compared.
+ *
+ * Runs from the directory holding the dataset, as the mobility examples. Exits with status 1 if a count or delay differs.
+ */
+public class BatchedHandoverCheck {
+
+	private static final String NUMBER = "-?[0-9]+\\.[0-9]+(E-?[0-9]+)?";
+	private static final double DELAY_TOLERANCE = 1e-9;
+
+	public static void main(String[] args) throws Exception {
+		if(args.length == 5 && args[0].equals("-run")){
+			MicroservicePlacementConfig.ENABLE_BATCHED_HANDOVER = Boolean.parseBoolean(args[2]);
+			MicroservicePlacementConfig.MIGRATION_MODE = args[3];
+			Config.MIGRATION_TRANSFER_MODEL = args[4];
+			// same mobility events in both runs
+			DataParser.setMobilityEventSeed(1);
+			Class.forName("org.fog.test.perfeval."+args[1]).getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+			return;
+		}
+
+		String example = args.length > 0 ? args[0] : "CardiovascularHealthMonitoringApplication";
+		String migrationMode = args.length > 1 ? args[1] : MicroservicePlacementConfig.MIGRATION_MODE;
+		String transferModel = args.length > 2 ? args[2] : Config.MIGRATION_TRANSFER_MODEL;
+		List<String> single = run(example, false, migrationMode, transferModel);
+		List<String> batched = run(example, true, migrationMode, transferModel);
+
+		int mismatches = 0;
+		for(int i = 0; i < Math.max(single.size(), batched.size()); i++){
+			String singleLine = i < single.size() ? single.get(i) : "";
+			String batchedLine = i < batched.size() ? batched.get(i) : "";
+			if(sameLine(singleLine, batchedLine))
+				continue;
+			mismatches++;
+			if(mismatches <= 20){
+				System.out.println("  one at a time: "+singleLine);
+				System.out.println("  batched      : "+batchedLine);
+			}
+		}
+		System.out.println("Batched handover check ("+example+", "+migrationMode+", "+transferModel+"): "+single.get(0)+", "
+				+(mismatches == 0 ? "same handovers and migrations in both modes" : mismatches+" mismatches"));
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Whether the lines are the same, but for the rounding of their delays summed in another order
+	 */
+	private static boolean sameLine(String line1, String line2){
+		if(line1.equals(line2))
+			return true;
+		String[] parts1 = line1.split(NUMBER, -1);
+		String[] parts2 = line2.split(NUMBER, -1);
+		if(!Arrays.equals(parts1, parts2))
+			return false;
+		Matcher numbers1 = Pattern.compile(NUMBER).matcher(line1);
+		Matcher numbers2 = Pattern.compile(NUMBER).matcher(line2);
+		while(numbers1.find() && numbers2.find()){
+			double value1 = Double.parseDouble(numbers1.group());
+			double value2 = Double.parseDouble(numbers2.group());
+			if(Math.abs(value1 - value2) > DELAY_TOLERANCE * Math.max(Math.abs(value1), Math.abs(value2)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the example and returns the handover and migration lines of its output, the summary of the handovers first
+	 */
+	private static List<String> run(String example, boolean batched, String migrationMode, String transferModel) throws Exception {
+		ProcessBuilder builder = new ProcessBuilder(System.getProperty("java.home")+File.separator+"bin"+File.separator+"java",
+				"-cp", System.getProperty("java.class.path"), BatchedHandoverCheck.class.getName(), "-run", example, String.valueOf(batched), migrationMode, transferModel);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+
+		List<String> lines = new ArrayList<String>();
+		int handovers = 0;
+		Set<String> handoverTimes = new TreeSet<String>();
+		boolean mobility = false;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			String line;
+			while((line = reader.readLine()) != null){
+				if(line.contains(" Starting Mobility Management for ")){
+					handovers++;
+					handoverTimes.add(line.substring(0, line.indexOf(' ')));
+					mobility = true;
+				} else if(mobility && line.startsWith("Child ")){
+					lines.add(line);
+				} else if(line.startsWith("Migrating ")){
+					lines.add(line);
+				} else if(line.startsWith("Migrations of ") || line.startsWith("Total time required for module migration")){
+					// link shared transfers share the links with the tuples of the sensors, emitted at unseeded times
+					if(!transferModel.equals(Config.MIGRATION_LINK_SHARED))
+						lines.add(line);
+					else if(line.startsWith("Migrations of "))
+						lines.add(line.substring(0, line.indexOf(',')));
+				}
+			}
+		}
+		if(process.waitFor() != 0)
+			throw new IllegalStateException(example+" exited with status "+process.exitValue());
+		if(handovers == 0)
+			throw new IllegalStateException(example+" made no handover");
+		lines.add(0, handovers+" handovers at "+handoverTimes.size()+" times");
+		return lines;
+	}
+}
@@ -0,0 +1,175 @@
+package org.fog.test.regression;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.fog.entities.FogDevice;
+import org.fog.mobilitydata.Clustering;
+import org.fog.mobilitydata.Location;
+import org.fog.placement.LocationHandler;
+import org.fog.utils.Config;
+
+/**
+ * Checks that Clustering.createClusters forms the clusters the per device clustering requests formed before, each
+ * device testing all the children of its parent.
+ *
+ * Runs a clustering example (MicroserviceApp_RandomMobility_Clustering by default, or the one given as argument) and,
+ * when the simulation exits, compares for every device of the clustered levels:
+ * - the cluster members, in order, the cluster flags and the cluster latencies formed during the simulation,
+ * - those formed again by createClusters with communication ranges from 10 m to 100 km.
+ *
+ * Exits with status 1 if a cluster differs.
+ */
+public class ClusteringCheck {
+
+	private static final double[] RANGES = {10, 100, 300, 1000, 3000, 10000, 30000, 100000};
+
+	private static int comparisons = 0;
+	private static int withMembers = 0;
+	private static int mismatches = 0;
+
+	public static void main(String[] args) throws Exception {
+		String example = args.length > 0 ? args[0] : "MicroserviceApp_RandomMobility_Clustering";
+		final Class<?> exampleClass = Class.forName("org.fog.test.perfeval."+example);
+		// the examples exit at the end of the simulation
+		Runtime.getRuntime().addShutdownHook(new Thread(){
+			public void run(){
+				try {
+					compare(example, getFogDevices(exampleClass));
+				} catch (Exception e) {
+					e.printStackTrace();
+					mismatches++;
+				}
+				System.out.flush();
+				Runtime.getRuntime().halt(mismatches == 0 ? 0 : 1);
+			}
+		});
+		exampleClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<FogDevice> getFogDevices(Class<?> example) throws Exception {
+		Field field = example.getDeclaredField("fogDevices");
+		field.setAccessible(true);
+		return new ArrayList<FogDevice>((List<FogDevice>) field.get(null));
+	}
+
+	private static void compare(String example, List<FogDevice> fogDevices) throws Exception {
+		SimEntity controller = null;
+		for(SimEntity entity : CloudSim.getEntityList()){
+			if(getField(entity, "clustering_levels") != null)
+				controller = entity;
+		}
+		if(controller == null)
+			throw new IllegalStateException(example+" has no clustering controller");
+		LocationHandler locator = (LocationHandler) controller.getClass().getMethod("getLocator").invoke(controller);
+		List<?> levels = (List<?>) getField(controller, "clustering_levels").get(controller);
+
+		List<List<FogDevice>> levelDevices = new ArrayList<List<FogDevice>>();
+		int clustered = 0;
+		for(Object level : levels){
+			List<FogDevice> devices = new ArrayList<FogDevice>();
+			for(FogDevice fogDevice : fogDevices){
+				if(fogDevice.getLevel() == (int) level)
+					devices.add(fogDevice);
+			}
+			levelDevices.add(devices);
+			clustered += devices.size();
+			compare("simulation", Config.Node_Communication_RANGE, devices, locator);
+		}
+
+		double range = Config.Node_Communication_RANGE;
+		try {
+			for(double checkedRange : RANGES){
+				Config.Node_Communication_RANGE = checkedRange;
+				for(List<FogDevice> devices : levelDevices){
+					Clustering.createClusters(devices, locator);
+					compare("range", checkedRange, devices, locator);
+				}
+			}
+		} finally {
+			Config.Node_Communication_RANGE = range;
+		}
+		System.out.println("Clustering check ("+example+", "+clustered+" devices in levels "+levels+"): "+comparisons+" clusters ("+withMembers+" with members), "
+				+(mismatches == 0 ? "same clusters as the per device clustering" : mismatches+" mismatches"));
+	}
+
+	private static Field getField(Object object, String name){
+		for(Class<?> type = object.getClass(); type != null; type = type.getSuperclass()){
+			try {
+				Field field = type.getDeclaredField(name);
+				field.setAccessible(true);
+				return field;
+			} catch (NoSuchFieldException e) {
+				// declared by a superclass, if any
+			}
+		}
+		return null;
+	}
+
+	private static void compare(String clusters, double range, List<FogDevice> devices, LocationHandler locator){
+		for(FogDevice fogDevice : devices){
+			comparisons++;
+			List<Integer> reference = referenceClusterMembers(fogDevice, locator, range);
+			if(!reference.isEmpty())
+				withMembers++;
+			List<Integer> members = fogDevice.getSelfCluster() ? Collections.<Integer>emptyList() : fogDevice.getClusterMembers();
+			boolean same = fogDevice.getIsInCluster() && fogDevice.getSelfCluster() == reference.isEmpty() && members.equals(reference);
+			if(same && !reference.isEmpty()){
+				same = fogDevice.getClusterMembersToLatencyMap().keySet().equals(new HashSet<Integer>(reference));
+				for(int memberId : reference)
+					same = same && fogDevice.getClusterMembersToLatencyMap().get(memberId) == Config.clusteringLatency;
+			}
+			if(same)
+				continue;
+			mismatches++;
+			if(mismatches <= 20)
+				System.out.println("  "+clusters+" "+range+" m "+fogDevice.getName()+" : "+members+", reference "+reference);
+		}
+	}
+
+	/**
+	 * Cluster members as found by the clustering request of the device before, see Clustering.createClusterMembers
+	 */
+	private static List<Integer> referenceClusterMembers(FogDevice fogDevice, LocationHandler locatorTemp, double range){
+		List<Integer> clusterMemberList = new ArrayList<Integer>();
+		int fogId = fogDevice.getId();
+		FogDevice parentDevice = (FogDevice) CloudSim.getEntity(fogDevice.getParentId());
+		List<Integer> SiblingListIDs = parentDevice.getChildrenIds();
+
+		double fogNodePositionX = locatorTemp.dataObject.resourceLocationData.get(locatorTemp.instanceToDataId.get(fogId)).latitude;
+		double fogNodePositionY = locatorTemp.dataObject.resourceLocationData.get(locatorTemp.instanceToDataId.get(fogId)).longitude;
+		Location L1 = new Location(fogNodePositionX, fogNodePositionY, 0);
+		for(int siblingId : SiblingListIDs){
+			if(fogId == siblingId)
+				continue;
+			double tempX = locatorTemp.dataObject.resourceLocationData.get(locatorTemp.instanceToDataId.get(siblingId)).latitude;
+			double tempY = locatorTemp.dataObject.resourceLocationData.get(locatorTemp.instanceToDataId.get(siblingId)).longitude;
+			Location L2 = new Location(tempX, tempY, 0);
+			if(referenceInRange(L1, L2, range))
+				clusterMemberList.add(siblingId);
+		}
+		return clusterMemberList;
+	}
+
+	private static boolean referenceInRange(Location loc1, Location loc2, double fogRange){
+		final int R = 6371; // Radius of the earth in Kilometers
+
+		double latDistance = Math.toRadians(loc1.latitude - loc2.latitude);
+		double lonDistance = Math.toRadians(loc1.longitude - loc2.longitude);
+		double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+				+ Math.cos(Math.toRadians(loc1.latitude)) * Math.cos(Math.toRadians(loc2.latitude))
+				* Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+		double distance = R * c; // kms
+
+		distance = Math.pow(distance, 2);
+
+		return Math.sqrt(distance) <= fogRange / 1000;
+	}
+}
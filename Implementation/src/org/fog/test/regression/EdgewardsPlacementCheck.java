@@ -0,0 +1,152 @@
+package org.fog.test.regression;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.application.Application;
+import org.fog.entities.Actuator;
+import org.fog.entities.FogBroker;
+import org.fog.entities.FogDevice;
+import org.fog.entities.Sensor;
+import org.fog.placement.Controller;
+import org.fog.placement.ModuleMapping;
+import org.fog.placement.ModulePlacementEdgewards;
+import org.fog.test.perfeval.DCNSFog;
+import org.fog.test.perfeval.VRGameFog;
+import org.fog.utils.Config;
+
+/**
+ * Checks that the bottom-up edgewards placement places the same modules on the same devices, with the same number of
+ * instances, as the per path placement, on the topologies of DCNSFog and VRGameFog as bundled. Exits with status 1 if
+ * a placement differs.
+ *
+ * With -sweep, also compares the placements on scaled topologies, including topologies loaded enough for the bottom-up
+ * placement to fall back to the per path placement, and exits with status 1 if one of them differs too.
+ */
+public class EdgewardsPlacementCheck {
+
+	public static void main(String[] args) throws Exception {
+		Log.disable();
+		int mismatches = 0;
+		setSize(DCNSFog.class, "numOfAreas", 1, "numOfCamerasPerArea", 4);
+		mismatches += compare(DCNSFog.class, "dcns", "1 areas x 4 cameras");
+		setSize(VRGameFog.class, "numOfDepts", 2, "numOfMobilesPerDept", 5);
+		mismatches += compare(VRGameFog.class, "vr_game", "2 depts x 5 mobiles");
+
+		if(args.length > 0 && args[0].equals("-sweep")){
+			int sweepMismatches = 0;
+			for(int areas = 1; areas <= 4; areas++){
+				for(int cameras = 1; cameras <= 12; cameras++){
+					setSize(DCNSFog.class, "numOfAreas", areas, "numOfCamerasPerArea", cameras);
+					sweepMismatches += compare(DCNSFog.class, "dcns", areas+" areas x "+cameras+" cameras");
+				}
+			}
+			for(int depts = 1; depts <= 4; depts++){
+				for(int mobiles = 1; mobiles <= 12; mobiles++){
+					setSize(VRGameFog.class, "numOfDepts", depts, "numOfMobilesPerDept", mobiles);
+					sweepMismatches += compare(VRGameFog.class, "vr_game", depts+" depts x "+mobiles+" mobiles");
+				}
+			}
+			System.out.println("Scaled topologies: "+sweepMismatches+" of 96 placements differ");
+			mismatches += sweepMismatches;
+		}
+		System.out.println(mismatches == 0 ? "Edgewards placement: identical in both modes" : "Edgewards placement: "+mismatches+" mismatches");
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+
+	private static int compare(Class<?> example, String appId, String size) throws Exception {
+		String perPath = place(example, appId, Config.EDGEWARDS_PER_PATH);
+		String bottomUp = place(example, appId, Config.EDGEWARDS_BOTTOM_UP);
+		if(perPath.equals(bottomUp))
+			return 0;
+		System.out.println(example.getSimpleName()+" ("+size+") differs");
+		System.out.println("  PerPath : "+perPath);
+		System.out.println("  BottomUp: "+bottomUp);
+		return 1;
+	}
+
+	/**
+	 * Builds the topology of the example and returns the placement as device name to module instance counts.
+	 */
+	private static String place(Class<?> example, String appId, String mode) throws Exception {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		List<FogDevice> fogDevices = new ArrayList<FogDevice>();
+		List<Sensor> sensors = new ArrayList<Sensor>();
+		List<Actuator> actuators = new ArrayList<Actuator>();
+		setStatic(example, "fogDevices", fogDevices);
+		setStatic(example, "sensors", sensors);
+		setStatic(example, "actuators", actuators);
+
+		FogBroker broker = new FogBroker("broker");
+		Application application = (Application) invokeStatic(example, "createApplication", new Class<?>[]{String.class, int.class}, appId, broker.getId());
+		application.setUserId(broker.getId());
+		invokeStatic(example, "createFogDevices", new Class<?>[]{int.class, String.class}, broker.getId(), appId);
+
+		// module mappings of the examples when not deployed in the cloud only
+		ModuleMapping moduleMapping = ModuleMapping.createModuleMapping();
+		if(example == DCNSFog.class){
+			for(FogDevice device : fogDevices){
+				if(device.getName().startsWith("m"))
+					moduleMapping.addModuleToDevice("motion_detector", device.getName());
+			}
+			moduleMapping.addModuleToDevice("user_interface", "cloud");
+		} else {
+			moduleMapping.addModuleToDevice("connector", "cloud");
+		}
+		// connects the devices to their parents
+		new Controller("master-controller", fogDevices, sensors, actuators);
+
+		String previousMode = Config.EDGEWARDS_PLACEMENT;
+		PrintStream out = System.out;
+		Config.EDGEWARDS_PLACEMENT = mode;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		ModulePlacementEdgewards placement;
+		try {
+			placement = new ModulePlacementEdgewards(fogDevices, sensors, actuators, application, moduleMapping);
+		} finally {
+			System.setOut(out);
+			Config.EDGEWARDS_PLACEMENT = previousMode;
+		}
+
+		Map<String, Map<String, Integer>> instances = new TreeMap<String, Map<String, Integer>>();
+		for(Map.Entry<Integer, Map<String, Integer>> entry : placement.getModuleInstanceCountMap().entrySet()){
+			if(!entry.getValue().isEmpty())
+				instances.put(CloudSim.getEntityName(entry.getKey()), new TreeMap<String, Integer>(entry.getValue()));
+		}
+		Map<String, List<String>> modules = new TreeMap<String, List<String>>();
+		for(Map.Entry<String, List<Integer>> entry : placement.getModuleToDeviceMap().entrySet()){
+			List<String> devices = new ArrayList<String>();
+			for(int deviceId : entry.getValue())
+				devices.add(CloudSim.getEntityName(deviceId));
+			devices.sort(null);
+			modules.put(entry.getKey(), devices);
+		}
+		return modules+" "+instances;
+	}
+
+	private static void setSize(Class<?> example, String outer, int outerValue, String inner, int innerValue) throws Exception {
+		setStatic(example, outer, outerValue);
+		setStatic(example, inner, innerValue);
+	}
+
+	private static void setStatic(Class<?> example, String name, Object value) throws Exception {
+		Field field = example.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(null, value);
+	}
+
+	private static Object invokeStatic(Class<?> example, String name, Class<?>[] types, Object... args) throws Exception {
+		Method method = example.getDeclaredMethod(name, types);
+		method.setAccessible(true);
+		return method.invoke(null, args);
+	}
+}
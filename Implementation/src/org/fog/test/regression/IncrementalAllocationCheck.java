@@ -0,0 +1,71 @@
+package org.fog.test.regression;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fog.entities.FogDevice;
+import org.fog.scheduler.IncrementalMipsAllocator;
+
+/**
+ * Checks that the MIPS of the fog hosts are kept up to date incrementally during a simulation, instead of the
+ * allocation being invalidated on every datacenter event and fully rebuilt on the next update.
+ *
+ * Runs an example (DCNSFog by default, or the one given as argument) and, when the simulation exits, counts the
+ * incremental and full updates of the IncrementalMipsAllocator of every device. A device running tuples is fully
+ * updated after its modules are created, then incrementally as long as no module is created, removed or being
+ * instantiated.
+ *
+ * Exits with status 1 if no update was incremental, or if the devices were fully updated more often than
+ * incrementally.
+ */
+public class IncrementalAllocationCheck {
+
+	private static int mismatches = 0;
+
+	public static void main(String[] args) throws Exception {
+		String example = args.length > 0 ? args[0] : "DCNSFog";
+		final Class<?> exampleClass = Class.forName("org.fog.test.perfeval."+example);
+		// the examples exit at the end of the simulation
+		Runtime.getRuntime().addShutdownHook(new Thread(){
+			public void run(){
+				try {
+					count(example, getFogDevices(exampleClass));
+				} catch (Exception e) {
+					e.printStackTrace();
+					mismatches++;
+				}
+				System.out.flush();
+				Runtime.getRuntime().halt(mismatches == 0 ? 0 : 1);
+			}
+		});
+		exampleClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<FogDevice> getFogDevices(Class<?> example) throws Exception {
+		Field field = example.getDeclaredField("fogDevices");
+		field.setAccessible(true);
+		return new ArrayList<FogDevice>((List<FogDevice>) field.get(null));
+	}
+
+	private static void count(String example, List<FogDevice> fogDevices) throws Exception {
+		Field field = FogDevice.class.getDeclaredField("mipsAllocator");
+		field.setAccessible(true);
+		int hosts = 0;
+		int incrementalUpdates = 0;
+		int fullUpdates = 0;
+		for(FogDevice fogDevice : fogDevices){
+			IncrementalMipsAllocator allocator = (IncrementalMipsAllocator) field.get(fogDevice);
+			if(allocator == null)
+				continue;
+			hosts++;
+			incrementalUpdates += allocator.getIncrementalUpdates();
+			fullUpdates += allocator.getFullUpdates();
+		}
+		if(incrementalUpdates == 0 || fullUpdates > incrementalUpdates)
+			mismatches++;
+		System.out.println("Incremental allocation check ("+example+"): "+hosts+" hosts, "+incrementalUpdates+" incremental / "
+				+fullUpdates+" full updates, "+(mismatches == 0 ? "kept up to date incrementally" : "not kept up to date incrementally"));
+	}
+}
@@ -0,0 +1,176 @@
+package org.fog.test.regression;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.fog.mobilitydata.DataParser;
+import org.fog.mobilitydata.Location;
+import org.fog.mobilitydata.References;
+import org.fog.placement.LocationHandler;
+import org.fog.utils.Config;
+
+/**
+ * Checks that LocationHandler finds the same parents with its spatial index as the linear scan of the resources of the
+ * parent level it replaced, on the bundled edge resources dataset:
+ * - the parent of every resource at setup time (same block) and after (nearest resource),
+ * - the parent of every recorded position of the bundled user traces (reference and random datasets),
+ * - the parent at a level of random positions over the area of the resources.
+ *
+ * Runs from the directory holding the dataset, as the mobility examples. Exits with status 1 if a parent differs.
+ */
+public class NearestParentCheck {
+
+	private static final int RANDOM_POSITIONS = 100000;
+
+	private static int comparisons = 0;
+	private static int mismatches = 0;
+
+	public static void main(String[] args) throws Exception {
+		List<String> datasets = new ArrayList<String>();
+		datasets.add(References.dataset_reference);
+		datasets.add(References.dataset_random);
+		for(String datasetReference : datasets){
+			Map<Integer, Integer> userMobilityPattern = new HashMap<Integer, Integer>();
+			for(int userId = 1; new File(datasetReference+userId+".csv").exists(); userId++)
+				userMobilityPattern.put(userId, References.DIRECTIONAL_MOBILITY);
+
+			DataParser dataObject = new DataParser();
+			LocationHandler locator = new LocationHandler(dataObject);
+			locator.parseResourceInfo();
+			locator.parseUserInfo(userMobilityPattern, datasetReference);
+
+			// instance ids in order of the resources of each level, then the users
+			int instanceId = 0;
+			for(int level = 0; level < dataObject.levelID.get("LevelsNum"); level++){
+				for(String dataId : locator.getLevelWiseResources(level))
+					locator.linkDataWithInstance(instanceId++, dataId);
+			}
+			for(String dataId : locator.getMobileUserDataId())
+				locator.linkDataWithInstance(instanceId++, dataId);
+
+			for(int id : new ArrayList<Integer>(locator.instanceToDataId.keySet())){
+				String dataId = locator.instanceToDataId.get(id);
+				int parentLevel = dataObject.resourceAndUserToLevel.get(dataId)-1;
+				if(parentLevel < 0)
+					continue;
+				if(dataObject.resourceLocationData.containsKey(dataId)){
+					Location location = dataObject.resourceLocationData.get(dataId);
+					compare(locator, dataId, References.SETUP_TIME, locator.determineParent(id, References.SETUP_TIME),
+							referenceByBlock(locator, parentLevel, location));
+					compare(locator, dataId, References.INIT_TIME, locator.determineParent(id, References.INIT_TIME),
+							referenceNearest(locator, parentLevel, location));
+				} else {
+					for(double time : locator.getTimeSheet(id)){
+						Location location = dataObject.getUserLocation(dataId, time);
+						compare(locator, dataId, time, locator.determineParent(id, time), referenceNearest(locator, parentLevel, location));
+					}
+				}
+			}
+
+			// random positions over the area of the resources, for the parent level of each resource level and the users
+			double minLatitude = Double.MAX_VALUE, maxLatitude = -Double.MAX_VALUE;
+			double minLongitude = Double.MAX_VALUE, maxLongitude = -Double.MAX_VALUE;
+			for(Location location : dataObject.resourceLocationData.values()){
+				minLatitude = Math.min(minLatitude, location.latitude);
+				maxLatitude = Math.max(maxLatitude, location.latitude);
+				minLongitude = Math.min(minLongitude, location.longitude);
+				maxLongitude = Math.max(maxLongitude, location.longitude);
+			}
+			Map<Integer, Integer> deviceOfLevel = new HashMap<Integer, Integer>();
+			for(int id : locator.instanceToDataId.keySet())
+				deviceOfLevel.put(dataObject.resourceAndUserToLevel.get(locator.instanceToDataId.get(id)), id);
+			Random random = new Random(1);
+			for(int i = 0; i < RANDOM_POSITIONS; i++){
+				Location location = new Location(minLatitude+random.nextDouble()*(maxLatitude-minLatitude),
+						minLongitude+random.nextDouble()*(maxLongitude-minLongitude), References.NOT_SET);
+				for(Map.Entry<Integer, Integer> device : deviceOfLevel.entrySet()){
+					if(device.getKey() < 1)
+						continue;
+					compare(locator, "position "+location.latitude+","+location.longitude, References.INIT_TIME,
+							locator.determineParent(device.getValue(), location), referenceNearest(locator, device.getKey()-1, location));
+				}
+			}
+		}
+		System.out.println("Nearest parent check: "+comparisons+" lookups, "
+				+(mismatches == 0 ? "same parents as the linear scan" : mismatches+" mismatches"));
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+
+	private static void compare(LocationHandler locator, String what, double time, int parent, int referenceParent){
+		comparisons++;
+		if(parent == referenceParent)
+			return;
+		mismatches++;
+		System.out.println("  "+what+" at "+time+" : parent "+locator.getDataIdByInstanceID(parent)+", reference "
+				+locator.getDataIdByInstanceID(referenceParent));
+	}
+
+	/**
+	 * Parent at setup time as found before: the last resource of the parent level in the same block
+	 */
+	private static int referenceByBlock(LocationHandler locator, int parentLevel, Location resourceLoc){
+		int parentInstanceId = References.NOT_SET;
+		String parentDataId = "";
+		for(int i=0; i<locator.getLevelWiseResources(parentLevel).size();i++){
+			Location potentialParentLoc = locator.getDataObject().resourceLocationData.get(locator.getLevelWiseResources(parentLevel).get(i));
+			if(potentialParentLoc.block==resourceLoc.block) {
+				parentDataId = locator.getLevelWiseResources(parentLevel).get(i);
+				for(int parentIdIterator: locator.instanceToDataId.keySet())
+				{
+					if(locator.instanceToDataId.get(parentIdIterator).equals(parentDataId))
+					{
+						parentInstanceId = parentIdIterator;
+					}
+				}
+			}
+		}
+		return parentInstanceId;
+	}
+
+	/**
+	 * Parent as found before: the first nearest resource of the parent level
+	 */
+	private static int referenceNearest(LocationHandler locator, int parentLevel, Location resourceLoc){
+		int parentInstanceId = References.NOT_SET;
+		String parentDataId = "";
+		double minmumDistance = Config.MAX_VALUE;
+		for(int i=0; i<locator.getLevelWiseResources(parentLevel).size();i++){
+			Location potentialParentLoc = locator.getDataObject().resourceLocationData.get(locator.getLevelWiseResources(parentLevel).get(i));
+
+			double distance = referenceDistance(resourceLoc, potentialParentLoc);
+				if(distance<minmumDistance){
+					parentDataId = locator.getLevelWiseResources(parentLevel).get(i);
+					minmumDistance = distance;
+				}
+		}
+
+		for(int parentIdIterator: locator.instanceToDataId.keySet())
+		{
+			if(locator.instanceToDataId.get(parentIdIterator).equals(parentDataId))
+			{
+				parentInstanceId = parentIdIterator;
+			}
+		}
+		return parentInstanceId;
+	}
+
+	private static double referenceDistance(Location loc1, Location loc2){
+		final int R = 6371; // Radius of the earth in Kilometers
+
+		double latDistance = Math.toRadians(loc1.latitude - loc2.latitude);
+		double lonDistance = Math.toRadians(loc1.longitude - loc2.longitude);
+		double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+				+ Math.cos(Math.toRadians(loc1.latitude)) * Math.cos(Math.toRadians(loc2.latitude))
+				* Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+		double distance = R * c; // kms
+
+		distance = Math.pow(distance, 2);
+
+		return Math.sqrt(distance);
+	}
+}
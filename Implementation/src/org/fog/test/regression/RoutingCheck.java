@@ -0,0 +1,221 @@
+package org.fog.test.regression;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.util.Pair;
+import org.fog.entities.FogDevice;
+import org.fog.entities.MicroserviceFogDevice;
+import org.fog.utils.ShortestPathRoutingGenerator;
+import org.fog.utils.ShortestPaths;
+
+/**
+ * Checks that the routes of ShortestPathRoutingGenerator are those of the all-pairs relaxation it replaced.
+ *
+ * Runs a microservice example (CardiovascularHealthMonitoringApplication by default, or the one given as argument) and,
+ * when the simulation exits, compares on the topology of the end of the simulation, after handovers and cluster changes:
+ * - the next hop and latency between every pair of devices computed by the previous generator, kept below as reference,
+ * - those of a routing table computed again by ShortestPathRoutingGenerator,
+ * - those of the routing table the devices use, updated incrementally during the simulation.
+ *
+ * Between devices with several paths of the same latency the generators may take different next hops: the previous
+ * generator kept the first path found by its relaxation order. Such a next hop is counted as a tie if it is on a shortest
+ * path to the destination. Exits with status 1 if a latency differs or a next hop is not on a shortest path.
+ */
+public class RoutingCheck {
+
+	private static final double LATENCY_TOLERANCE = 1e-3;
+
+	public static void main(String[] args) throws Exception {
+		String example = args.length > 0 ? args[0] : "CardiovascularHealthMonitoringApplication";
+		final Class<?> exampleClass = Class.forName("org.fog.test.perfeval."+example);
+		// the microservice examples exit at the end of the simulation
+		Runtime.getRuntime().addShutdownHook(new Thread(){
+			public void run(){
+				int mismatches;
+				try {
+					mismatches = compare(example, getFogDevices(exampleClass));
+				} catch (Exception e) {
+					e.printStackTrace();
+					mismatches = 1;
+				}
+				System.out.flush();
+				Runtime.getRuntime().halt(mismatches == 0 ? 0 : 1);
+			}
+		});
+		exampleClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<FogDevice> getFogDevices(Class<?> example) throws Exception {
+		Field field = example.getDeclaredField("fogDevices");
+		field.setAccessible(true);
+		return new ArrayList<FogDevice>((List<FogDevice>) field.get(null));
+	}
+
+	private static int compare(String example, List<FogDevice> fogDevices){
+		int size = fogDevices.size();
+		ShortestPaths used = ShortestPathRoutingGenerator.getShortestPaths();
+		ShortestPaths computed = ShortestPathRoutingGenerator.computeShortestPaths(fogDevices);
+		int[][] referenceRoutes = new int[size][size];
+		double[][] referenceLatencies = new double[size][size];
+		referenceRoutes(fogDevices, referenceRoutes, referenceLatencies);
+
+		int[] counts = new int[2]; // mismatches, ties
+		// a device listed several times (the cloud in MicroservicesAppSample1) had the routes of its last position in the
+		// routing table of the previous generator, keyed by device id
+		for(int row = 0; row < size; row++){
+			if(fogDevices.lastIndexOf(fogDevices.get(row)) != row)
+				continue;
+			for(int column = 0; column < size; column++){
+				if(fogDevices.lastIndexOf(fogDevices.get(column)) != column)
+					continue;
+				compare("computed", computed, row, column, referenceRoutes, referenceLatencies, fogDevices, counts);
+				compare("used", used, row, column, referenceRoutes, referenceLatencies, fogDevices, counts);
+			}
+		}
+		System.out.println("Routing check ("+example+", "+size+" devices): "
+				+(counts[0] == 0 ? "same routes" : counts[0]+" mismatches")+", "+counts[1]+" ties with another next hop");
+		return counts[0];
+	}
+
+	private static void compare(String table, ShortestPaths paths, int row, int column, int[][] referenceRoutes,
+			double[][] referenceLatencies, List<FogDevice> fogDevices, int[] counts){
+		int sourceId = fogDevices.get(row).getId();
+		int destId = fogDevices.get(column).getId();
+		int route = paths.getNextHop(sourceId, destId);
+		double latency = paths.getLatency(sourceId, destId);
+		if(Math.abs(latency - referenceLatencies[row][column]) <= LATENCY_TOLERANCE){
+			if(route == referenceRoutes[row][column])
+				return;
+			if(isOnShortestPath(row, route, column, referenceLatencies, fogDevices)){
+				counts[1]++;
+				return;
+			}
+		}
+		counts[0]++;
+		System.out.println("  "+table+" "+getName(sourceId, fogDevices)+" -> "+getName(destId, fogDevices)+" : next "
+				+getName(route, fogDevices)+" ("+latency+"), reference next "+getName(referenceRoutes[row][column], fogDevices)
+				+" ("+referenceLatencies[row][column]+")");
+	}
+
+	/**
+	 * Whether a device directly connected to the source starts a shortest path from the source to the destination
+	 */
+	private static boolean isOnShortestPath(int row, int nextId, int column, double[][] referenceLatencies, List<FogDevice> fogDevices){
+		for(int next = 0; next < fogDevices.size(); next++){
+			if(fogDevices.get(next).getId() != nextId)
+				continue;
+			double link = directlyConnectedDist(fogDevices.get(row), fogDevices.get(next));
+			if(link < 0)
+				link = directlyConnectedDist(fogDevices.get(next), fogDevices.get(row));
+			return link >= 0 && Math.abs(link + referenceLatencies[next][column] - referenceLatencies[row][column]) <= LATENCY_TOLERANCE;
+		}
+		return false;
+	}
+
+	private static String getName(int deviceId, List<FogDevice> fogDevices){
+		for(FogDevice device : fogDevices){
+			if(device.getId() == deviceId)
+				return device.getName();
+		}
+		return String.valueOf(deviceId);
+	}
+
+	/**
+	 * All-pairs relaxation of the previous ShortestPathRoutingGenerator: next device id and latency from every device
+	 * (row) to every device (column), by position in the device list, -1 if not reachable.
+	 */
+	private static void referenceRoutes(List<FogDevice> fogDevices, int[][] routingMatrix, double[][] distanceMatrix){
+		int size = fogDevices.size();
+		for(int row = 0; row < size; row++){
+			for(int column = 0; column < size; column++){
+				routingMatrix[row][column] = -1;
+				distanceMatrix[row][column] = -1;
+			}
+		}
+
+		boolean change = true;
+		boolean firstIteration = true;
+		while(change || firstIteration){
+			change = false;
+			for(int row = 0; row < size; row++){
+				for(int column = 0; column < size; column++){
+					double dist = distanceMatrix[row][column];
+					FogDevice rFog = fogDevices.get(row);
+					FogDevice cFog = fogDevices.get(column);
+					if(firstIteration && dist < 0){
+						if(row == column){
+							dist = 0;
+						} else {
+							dist = directlyConnectedDist(rFog, cFog);
+						}
+						if(dist >= 0){
+							change = true;
+							distanceMatrix[row][column] = dist;
+							distanceMatrix[column][row] = dist;
+
+							// directly connected
+							routingMatrix[row][column] = cFog.getId();
+							routingMatrix[column][row] = rFog.getId();
+						}
+					}
+					if(dist < 0){
+						Pair<Double, Integer> result = indirectDist(row, column, size, distanceMatrix);
+						dist = result.getFirst();
+						int mid = result.getSecond();
+						if(dist >= 0){
+							change = true;
+							distanceMatrix[row][column] = dist;
+							routingMatrix[row][column] = routingMatrix[row][mid];
+						}
+					}
+					if(dist > 0){
+						Pair<Double, Integer> result = indirectDist(row, column, size, distanceMatrix);
+						double distNew = result.getFirst();
+						int mid = result.getSecond();
+						if(distNew < dist){
+							change = true;
+							distanceMatrix[row][column] = distNew;
+							routingMatrix[row][column] = routingMatrix[row][mid];
+						}
+					}
+				}
+			}
+			firstIteration = false;
+		}
+	}
+
+	private static Pair<Double, Integer> indirectDist(int row, int dest, int size, double[][] distanceMatrix){
+		double minDistFromDirectConn = distanceMatrix[row][dest];
+		int midPoint = -1;
+		for(int column = 0; column < size; column++){
+			if(distanceMatrix[row][column] >= 0 && distanceMatrix[column][dest] >= 0){
+				double totalDist = distanceMatrix[row][column] + distanceMatrix[column][dest];
+				if(minDistFromDirectConn >= 0 && totalDist < minDistFromDirectConn){
+					minDistFromDirectConn = totalDist;
+					midPoint = column;
+				} else if(minDistFromDirectConn < 0){
+					minDistFromDirectConn = totalDist;
+					midPoint = column;
+				}
+			}
+		}
+		return new Pair<Double, Integer>(minDistFromDirectConn, midPoint);
+	}
+
+	private static double directlyConnectedDist(FogDevice rFog, FogDevice cFog){
+		int parent = rFog.getParentId();
+		List<Integer> children = rFog.getChildrenIds();
+		List<Integer> cluster = rFog.getClusterMembers();
+		if(cFog.getId() == parent){
+			return rFog.getUplinkLatency();
+		} else if(children != null && children.contains(cFog.getId())){
+			return rFog.getChildToLatencyMap().get(cFog.getId());
+		} else if(cluster != null && cluster.contains(cFog.getId())){
+			return ((MicroserviceFogDevice) rFog).getClusterMembersToLatencyMap().get(cFog.getId());
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,187 @@
+package org.fog.test.regression;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.fog.entities.FogDevice;
+import org.fog.utils.TopologyAncestry;
+
+/**
+ * Checks that TopologyAncestry gives the same common ancestors, ancestor tests and up and down migration delays as the
+ * walks along the parent links that the mobility controllers used before.
+ *
+ * Runs a mobility example (CardiovascularHealthMonitoringApplication by default, or the one given as argument) and,
+ * when the simulation exits, compares for every pair of devices of the topology of the end of the simulation:
+ * - the index of the mobility controller, updated on every handover of the simulation,
+ * - an index built again from the topology,
+ * - that index after random re-parentings of devices, applied to the devices as well.
+ *
+ * Exits with status 1 if a lookup differs.
+ */
+public class TopologyAncestryCheck {
+
+	private static final int REPARENTINGS = 2000;
+	private static final int REPARENTINGS_PER_COMPARISON = 200;
+	// size of the data transferred for the delays, as a module of the examples
+	private static final double SIZE = 1000;
+
+	private static int comparisons = 0;
+	private static int mismatches = 0;
+
+	public static void main(String[] args) throws Exception {
+		String example = args.length > 0 ? args[0] : "CardiovascularHealthMonitoringApplication";
+		final Class<?> exampleClass = Class.forName("org.fog.test.perfeval."+example);
+		// the examples exit at the end of the simulation
+		Runtime.getRuntime().addShutdownHook(new Thread(){
+			public void run(){
+				try {
+					compare(example, getFogDevices(exampleClass));
+				} catch (Exception e) {
+					e.printStackTrace();
+					mismatches++;
+				}
+				System.out.flush();
+				Runtime.getRuntime().halt(mismatches == 0 ? 0 : 1);
+			}
+		});
+		exampleClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<FogDevice> getFogDevices(Class<?> example) throws Exception {
+		Field field = example.getDeclaredField("fogDevices");
+		field.setAccessible(true);
+		return new ArrayList<FogDevice>((List<FogDevice>) field.get(null));
+	}
+
+	private static void compare(String example, List<FogDevice> fogDevices) throws Exception {
+		Map<Integer, FogDevice> devices = new HashMap<Integer, FogDevice>();
+		for(FogDevice device : fogDevices)
+			devices.put(device.getId(), device);
+
+		TopologyAncestry controllerAncestry = getControllerAncestry();
+		if(controllerAncestry != null)
+			compare("controller", controllerAncestry, fogDevices, devices);
+		TopologyAncestry ancestry = new TopologyAncestry(fogDevices);
+		compare("built", ancestry, fogDevices, devices);
+
+		// devices move under another device of the level of their parent, as on handovers, but not under their descendants
+		Random random = new Random(1);
+		for(int i = 1; i <= REPARENTINGS; i++){
+			FogDevice device = fogDevices.get(random.nextInt(fogDevices.size()));
+			FogDevice parent = devices.get(device.getParentId());
+			if(parent != null){
+				List<FogDevice> candidates = new ArrayList<FogDevice>();
+				for(FogDevice candidate : fogDevices){
+					if(candidate.getLevel() == parent.getLevel() && candidate != device && !isAncestor(device.getId(), candidate.getId(), devices))
+						candidates.add(candidate);
+				}
+				FogDevice newParent = candidates.get(random.nextInt(candidates.size()));
+				device.setParentId(newParent.getId());
+				ancestry.setParent(device.getId(), newParent.getId());
+			}
+			if(i % REPARENTINGS_PER_COMPARISON == 0)
+				compare("re-parented", ancestry, fogDevices, devices);
+		}
+		System.out.println("Topology ancestry check ("+example+", "+fogDevices.size()+" devices): "+comparisons+" lookups, "
+				+(mismatches == 0 ? "same results as the parent walks" : mismatches+" mismatches"));
+	}
+
+	private static TopologyAncestry getControllerAncestry() throws Exception {
+		for(SimEntity entity : CloudSim.getEntityList()){
+			for(Class<?> type = entity.getClass(); type != null; type = type.getSuperclass()){
+				try {
+					Field field = type.getDeclaredField("ancestry");
+					field.setAccessible(true);
+					return (TopologyAncestry) field.get(entity);
+				} catch (NoSuchFieldException e) {
+					// not a mobility controller
+				}
+			}
+		}
+		return null;
+	}
+
+	private static void compare(String index, TopologyAncestry ancestry, List<FogDevice> fogDevices, Map<Integer, FogDevice> devices){
+		for(FogDevice device1 : fogDevices){
+			List<Integer> path1 = getPathToRoot(device1.getId(), devices);
+			for(FogDevice device2 : fogDevices){
+				List<Integer> path2 = getPathToRoot(device2.getId(), devices);
+				int commonAncestor = determineAncestor(path1, path2);
+				check(index, "common ancestor", device1, device2, ancestry.getCommonAncestor(device1.getId(), device2.getId()), commonAncestor);
+				check(index, "ancestor", device2, device1, ancestry.isAncestor(device2.getId(), device1.getId()) ? 1 : 0,
+						isAncestor(device2.getId(), device1.getId(), devices) ? 1 : 0);
+				if(commonAncestor == -1)
+					continue;
+				check(index, "up delay", device1, device2, ancestry.getUpDelay(device1.getId(), commonAncestor, SIZE),
+						getUpDelay(device1.getId(), commonAncestor, devices));
+				check(index, "down delay", device1, device2, ancestry.getDownDelay(device1.getId(), commonAncestor, SIZE),
+						getDownDelay(device1.getId(), commonAncestor, devices));
+			}
+		}
+	}
+
+	private static void check(String index, String lookup, FogDevice device1, FogDevice device2, double value, double reference){
+		comparisons++;
+		if(value == reference || Math.abs(value - reference) <= 1e-9 * Math.max(Math.abs(value), Math.abs(reference)))
+			return;
+		mismatches++;
+		if(mismatches <= 20)
+			System.out.println("  "+index+" "+lookup+" "+device1.getName()+", "+device2.getName()+" : "+value+", reference "+reference);
+	}
+
+	// Parent walks of the mobility controllers before TopologyAncestry
+
+	private static List<Integer> getPathToRoot(int deviceID, Map<Integer, FogDevice> devices){
+		List<Integer> path = new ArrayList<Integer>();
+		while(deviceID != -1){
+			path.add(deviceID);
+			deviceID = devices.get(deviceID).getParentId();
+		}
+		return path;
+	}
+
+	private static int determineAncestor(List<Integer> newParentPath, List<Integer> prevParentPath){
+		for(int deviceId : newParentPath){
+			if(prevParentPath.contains(deviceId))
+				return deviceId;
+		}
+		return -1;
+	}
+
+	private static boolean isAncestor(int commonAncestor, int deviceid, Map<Integer, FogDevice> devices){
+		FogDevice f = devices.get(deviceid);
+		if(f.getId() == commonAncestor)
+			return false;
+		while(f.getParentId() != -1){
+			f = devices.get(f.getParentId());
+			if(f.getId() == commonAncestor)
+				return true;
+		}
+		return false;
+	}
+
+	private static double getDownDelay(int deviceID, int commonAncestorID, Map<Integer, FogDevice> devices){
+		double networkDelay = 0.0;
+		while(deviceID != commonAncestorID){
+			networkDelay = networkDelay + SIZE/devices.get(deviceID).getDownlinkBandwidth();
+			deviceID = devices.get(deviceID).getParentId();
+		}
+		return networkDelay;
+	}
+
+	private static double getUpDelay(int deviceID, int commonAncestorID, Map<Integer, FogDevice> devices){
+		double networkDelay = 0.0;
+		while(deviceID != commonAncestorID){
+			networkDelay = networkDelay + SIZE/devices.get(deviceID).getUplinkBandwidth();
+			deviceID = devices.get(deviceID).getParentId();
+		}
+		return networkDelay;
+	}
+}
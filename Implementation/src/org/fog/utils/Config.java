@@ -1,5 +1,8 @@
 package org.fog.utils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class Config {
 
 	public static final double RESOURCE_MGMT_INTERVAL = 100;
@@ -23,4 +26,69 @@ public class Config {
 	public static double clusteringLatency = 2.0; //milisecond
 
 	public static final int TRANSMISSION_START_DELAY = 50;
+
+	// Acknowledgement of received tuples - NONE (no TUPLE_ACK is sent), PER_TUPLE (one TUPLE_ACK per tuple)
+	// COALESCED (one cumulative TUPLE_ACK per sender for all tuples received within TUPLE_ACK_WINDOW)
+	public static final String ACK_NONE = "None";
+	public static final String ACK_PER_TUPLE = "PerTuple";
+	public static final String ACK_COALESCED = "Coalesced";
+	public static String TUPLE_ACK_POLICY = ACK_PER_TUPLE;
+	public static double TUPLE_ACK_WINDOW = 1.0;
+
+	// Southbound link model - SHARED_FIFO (one FIFO queue for all children, one tuple sent at a time)
+	// FAIR_QUEUEING (one queue per child, the downlink capacity is shared between children by weighted fair queueing)
+	public static final String DOWNLINK_SHARED_FIFO = "SharedFifo";
+	public static final String DOWNLINK_FAIR_QUEUEING = "FairQueueing";
+	public static String DOWNLINK_MODEL = DOWNLINK_SHARED_FIFO;
+
+	// Priority class of each tuple type on the southbound link (fair queueing only), higher classes are sent first.
+	// Tuple types not listed are in class 0
+	public static Map<String, Integer> DOWNLINK_TUPLE_PRIORITY = new HashMap<String, Integer>();
+
+	// Edgewards module placement - PER_PATH (modules are placed on every leaf-to-root path in turn)
+	// BOTTOM_UP (tuple rates are aggregated up the device tree and every device is placed once, see EdgewardsTreePlacement),
+	// falls back to PER_PATH when a device cannot take the aggregated load reaching it
+	public static final String EDGEWARDS_PER_PATH = "PerPath";
+	public static final String EDGEWARDS_BOTTOM_UP = "BottomUp";
+	public static String EDGEWARDS_PLACEMENT = EDGEWARDS_PER_PATH;
+
+	// Print the routing table of every device when routes are generated (ShortestPathRoutingGenerator)
+	public static boolean PRINT_ROUTING_TABLE = true;
+
+	// Module migration transfers - FIXED_DELAY (delivered after module size / bandwidth summed over the hops, as if every migration had the links to itself)
+	// LINK_SHARED (module state is sent hop by hop over the links of the devices, queued with the tuples, see MigrationTransfer)
+	public static final String MIGRATION_FIXED_DELAY = "FixedDelay";
+	public static final String MIGRATION_LINK_SHARED = "LinkShared";
+	public static String MIGRATION_TRANSFER_MODEL = MIGRATION_FIXED_DELAY;
+	// Size of the chunks module state is split into (link shared transfers). Every chunk is forwarded as soon as it arrives, which pipelines a transfer across hops. 0 sends a transfer as one chunk
+	public static long MIGRATION_CHUNK_SIZE = 0;
+	// Priority of migration chunks relative to application tuples on the links - BACKGROUND (sent when no tuple is queued)
+	// SHARED (queued with the tuples), URGENT (sent before the queued tuples)
+	public static final String MIGRATION_PRIORITY_BACKGROUND = "Background";
+	public static final String MIGRATION_PRIORITY_SHARED = "Shared";
+	public static final String MIGRATION_PRIORITY_URGENT = "Urgent";
+	public static String MIGRATION_PRIORITY = MIGRATION_PRIORITY_SHARED;
+
+	public static int getDownlinkPriority(String tupleType) {
+		Integer priority = DOWNLINK_TUPLE_PRIORITY.get(tupleType);
+		return priority != null ? priority : 0;
+	}
+
+	/**
+	 * Priority class of migration chunks on the southbound link (fair queueing only), below or above every tuple
+	 * class for MIGRATION_PRIORITY_BACKGROUND and MIGRATION_PRIORITY_URGENT.
+	 */
+	public static int getMigrationDownlinkPriority() {
+		int lowest = 0;
+		int highest = 0;
+		for (int priority : DOWNLINK_TUPLE_PRIORITY.values()) {
+			lowest = Math.min(lowest, priority);
+			highest = Math.max(highest, priority);
+		}
+		if (MIGRATION_PRIORITY.equals(MIGRATION_PRIORITY_BACKGROUND))
+			return lowest - 1;
+		if (MIGRATION_PRIORITY.equals(MIGRATION_PRIORITY_URGENT))
+			return highest + 1;
+		return 0;
+	}
 }
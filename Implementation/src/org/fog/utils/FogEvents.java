@@ -45,5 +45,14 @@ public class FogEvents {
     public static final int UPDATE_RESOURCE_INFO = BASE + 37;
     //---------------------------------------------
     public static final int START_DYNAMIC_CLUSTERING = BASE + 38;
+    //---------------------------------------------
+    public static final int FLUSH_TUPLE_ACKS = BASE + 39;
+    public static final int FLUSH_UPLINK_BATCH = BASE + 40;
+    public static final int PROCESS_HANDOVER_BATCH = BASE + 42;
+    public static final int PRE_MIGRATE = BASE + 43;
+    public static final int START_MIGRATION_TRANSFER = BASE + 44;
+    public static final int MIGRATION_TRANSFER_COMPLETE = BASE + 45;
+    public static final int COMPLETE_LIVE_MIGRATION = BASE + 46;
+    public static final int STOP_FORWARDING_MIGRATED_MODULES = BASE + 47;
 
 }
@@ -2,14 +2,16 @@ package org.fog.utils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FogUtils {
-	private static int TUPLE_ID = 1;
-	private static int ENTITY_ID = 1;
-	private static int ACTUAL_TUPLE_ID = 1;
+	private static final AtomicInteger TUPLE_ID = new AtomicInteger(1);
+	// atomic, entities can be created by placement logics running in parallel
+	private static final AtomicInteger ENTITY_ID = new AtomicInteger(1);
+	private static final AtomicInteger ACTUAL_TUPLE_ID = new AtomicInteger(1);
 	
 	public static int generateTupleId(){
-		return TUPLE_ID++;
+		return TUPLE_ID.getAndIncrement();
 	}
 	
 	public static String getSensorTypeFromSensorName(String sensorName){
@@ -17,11 +19,11 @@ public class FogUtils {
 	}
 	
 	public static int generateEntityId(){
-		return ENTITY_ID++;
+		return ENTITY_ID.getAndIncrement();
 	}
 	
 	public static int generateActualTupleId(){
-		return ACTUAL_TUPLE_ID++;
+		return ACTUAL_TUPLE_ID.getAndIncrement();
 	}
 	
 	public static int USER_ID = 1;
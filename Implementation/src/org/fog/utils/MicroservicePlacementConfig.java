@@ -1,5 +1,8 @@
 package org.fog.utils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class MicroservicePlacementConfig {
 
     // simulation modes - STATIC - 1(initial placement happens before simulation start and placement related delays are not simulated)
@@ -18,5 +21,73 @@ public class MicroservicePlacementConfig {
     public static Boolean ENABLE_RESOURCE_DATA_SHARING = false;
     public static double MODULE_DEPLOYMENT_TIME = 0.0;
 
+    // Cluster device selection of the multi-dimensional placement - BEST_FIT (least free resources left in total)
+    // DOMINANT_RESOURCE_FIT (scarcest resource left the lowest)
+    public static final String BEST_FIT = "BestFit";
+    public static final String DOMINANT_RESOURCE_FIT = "DominantResourceFit";
+    public static String PLACEMENT_FIT = BEST_FIT;
+
+    // Parallel placement - placement requests of a period starting from different devices or clusters are placed
+    // concurrently (ConcurrentPlacementExecutor), partitions claim their CPU in partition order and the partitions
+    // losing their claim are placed again, so the result does not depend on thread scheduling
+    public static boolean ENABLE_PARALLEL_PLACEMENT = false;
+    public static int PLACEMENT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // Latency-aware placement - maximum number of local search rounds refining the greedy placement of a request
+    public static int LATENCY_LOCAL_SEARCH_ROUNDS = 3;
+
+    // Placement decision cache - placements of requests of an application starting from the same device in the same
+    // capacity state are reused while the devices can take them (PlacementDecisionCache), the cache is shared by the
+    // partitions of parallel placement runs
+    public static boolean ENABLE_PLACEMENT_CACHE = false;
+
+    // Batched handover - mobility events of the same time are handed over together, with one routing table update,
+    // service discovery updates grouped per device and the modules moving between the same devices with the same delays
+    // sent with the same events (MicroservicesMobilityClusteringController)
+    public static boolean ENABLE_BATCHED_HANDOVER = false;
+
+    // Predictive pre-migration - modules a handover would migrate are copied to the predicted next parent of the mobile
+    // device PRE_MIGRATION_LEAD_TIME before its next mobility event (PreMigrationPolicy). TRACE_LOOKAHEAD reads the
+    // position at the next event from the mobility trace, VELOCITY_PREDICTION extrapolates the last two positions.
+    public static final String NO_PRE_MIGRATION = "None";
+    public static final String TRACE_LOOKAHEAD = "TraceLookahead";
+    public static final String VELOCITY_PREDICTION = "VelocityPrediction";
+    public static String PRE_MIGRATION_MODE = NO_PRE_MIGRATION;
+    public static double PRE_MIGRATION_LEAD_TIME = 5.0;
+
+    // Module migration of the mobility controller (fixed delay transfers) - STOP_AND_COPY (the module is released at the
+    // source and launched at the destination after the transfer delays, tuples reaching it in between are dropped)
+    // LIVE_PRE_COPY (the state is copied in rounds while the module runs at the source, then the module is stopped for
+    // the copy of the last dirty state and the tuples reaching it meanwhile are forwarded to the destination, see
+    // PreCopyMigration)
+    public static final String STOP_AND_COPY = "StopAndCopy";
+    public static final String LIVE_PRE_COPY = "LivePreCopy";
+    public static String MIGRATION_MODE = STOP_AND_COPY;
+    // Pre-copy rounds end once the dirty state is at most PRE_COPY_STOP_SIZE, stops shrinking or after
+    // PRE_COPY_MAX_ROUNDS rounds
+    public static int PRE_COPY_MAX_ROUNDS = 5;
+    public static double PRE_COPY_STOP_SIZE = 100;
+    // State dirtied per time unit by a running module (same unit as the module size) by module name, modules not
+    // listed dirty DEFAULT_DIRTY_RATE
+    public static Map<String, Double> MODULE_DIRTY_RATE = new HashMap<>();
+    public static double DEFAULT_DIRTY_RATE = 1000;
+
+    public static double getDirtyRate(String moduleName) {
+        Double dirtyRate = MODULE_DIRTY_RATE.get(moduleName);
+        return dirtyRate != null ? dirtyRate : DEFAULT_DIRTY_RATE;
+    }
+
+    // Load balancing of the tuples over the instances of a microservice (service discovery of the sending device) -
+    // ROUND_ROBIN, LEAST_OUTSTANDING (fewest tuples in flight from the device), LATENCY_WEIGHTED (smooth weighted round
+    // robin, weights 1 / (path latency + LATENCY_WEIGHT_OFFSET)), POWER_OF_TWO_CHOICES (fewer tuples in flight among
+    // two random instances, drawn from LOAD_BALANCER_SEED and the device id)
+    public static final String ROUND_ROBIN = "RoundRobin";
+    public static final String LEAST_OUTSTANDING = "LeastOutstanding";
+    public static final String LATENCY_WEIGHTED = "LatencyWeighted";
+    public static final String POWER_OF_TWO_CHOICES = "PowerOfTwoChoices";
+    public static String LOAD_BALANCER = ROUND_ROBIN;
+    public static double LATENCY_WEIGHT_OFFSET = 1.0;
+    public static long LOAD_BALANCER_SEED = 1;
+
 
 }
@@ -0,0 +1,82 @@
+package org.fog.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Downtime and migration time of the module migrations by module name, and the tuples the migrations buffered,
+ * forwarded or lost. The downtime is the time a migrated module runs neither on its source nor on its destination.
+ */
+public class ModuleMigrationMonitor {
+
+	// number of migrations, total downtime, total migration time, maximum downtime
+	private static Map<String, double[]> migrations = new TreeMap<String, double[]>();
+	private static int bufferedTuples = 0;
+	private static int forwardedTuples = 0;
+	private static int droppedTuples = 0;
+
+	public static void moduleMigrated(String moduleName, double downtime, double migrationTime) {
+		double[] module = migrations.get(moduleName);
+		if (module == null) {
+			module = new double[4];
+			migrations.put(moduleName, module);
+		}
+		module[0]++;
+		module[1] += downtime;
+		module[2] += migrationTime;
+		module[3] = Math.max(module[3], downtime);
+	}
+
+	/**
+	 * A tuple reached a module stopped for the last copy of its live migration.
+	 */
+	public static void tupleBuffered() {
+		bufferedTuples++;
+	}
+
+	/**
+	 * A tuple was sent on to the new device of a migrated module.
+	 */
+	public static void tupleForwarded() {
+		forwardedTuples++;
+	}
+
+	/**
+	 * A tuple was lost, its module was neither on the device it reached nor in its service discovery.
+	 */
+	public static void tupleDropped() {
+		droppedTuples++;
+	}
+
+	public static Iterable<String> getMigratedModules() {
+		return migrations.keySet();
+	}
+
+	public static int getMigrationCount(String moduleName) {
+		return (int) migrations.get(moduleName)[0];
+	}
+
+	public static double getDowntime(String moduleName) {
+		return migrations.get(moduleName)[1];
+	}
+
+	public static double getMigrationTime(String moduleName) {
+		return migrations.get(moduleName)[2];
+	}
+
+	public static double getMaxDowntime(String moduleName) {
+		return migrations.get(moduleName)[3];
+	}
+
+	public static int getBufferedTuples() {
+		return bufferedTuples;
+	}
+
+	public static int getForwardedTuples() {
+		return forwardedTuples;
+	}
+
+	public static int getDroppedTuples() {
+		return droppedTuples;
+	}
+}
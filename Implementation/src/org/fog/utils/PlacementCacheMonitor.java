@@ -0,0 +1,60 @@
+package org.fog.utils;
+
+/**
+ * Counts the placement requests served from the placement decision cache
+ * ({@link MicroservicePlacementConfig#ENABLE_PLACEMENT_CACHE}) and the time spent searching placements for the others.
+ * Updated concurrently by the partitions of parallel placement runs.
+ */
+public class PlacementCacheMonitor {
+
+	private static long lookups = 0;
+	private static long hits = 0;
+	private static long replayFailures = 0;
+	private static long searchedRequests = 0;
+	private static long searchTime = 0;
+
+	public static synchronized void lookingUp(boolean hit){
+		lookups++;
+		if(hit)
+			hits++;
+	}
+
+	/**
+	 * A cached placement was found but its devices could no longer take it
+	 */
+	public static synchronized void replayFailing(){
+		replayFailures++;
+	}
+
+	/**
+	 * @param requests requests placed by a placement search
+	 * @param time duration of the search in nanoseconds
+	 */
+	public static synchronized void searchingPlacements(int requests, long time){
+		searchedRequests += requests;
+		searchTime += time;
+	}
+
+	public static synchronized long getLookups(){
+		return lookups;
+	}
+
+	public static synchronized long getHits(){
+		return hits;
+	}
+
+	public static synchronized long getReplayFailures(){
+		return replayFailures;
+	}
+
+	public static synchronized double getHitRate(){
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+
+	/**
+	 * Search time avoided by the cache hits in milliseconds, at the average search time per request
+	 */
+	public static synchronized double getTimeSaved(){
+		return searchedRequests > 0 ? hits * (searchTime / 1e6) / searchedRequests : 0;
+	}
+}
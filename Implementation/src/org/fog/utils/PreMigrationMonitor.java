@@ -0,0 +1,64 @@
+package org.fog.utils;
+
+/**
+ * Outcome of predictive pre-migration : staged module copies used or wasted at handovers, the migration delay they
+ * saved and what they cost.
+ */
+public class PreMigrationMonitor {
+
+	private static int stagedModules = 0;
+	private static int usedModules = 0;
+	private static int wastedModules = 0;
+	private static double avoidedMigrationDelay = 0.0;
+	private static double wastedNetworkUsage = 0.0;
+	private static double duplicateModuleTime = 0.0;
+
+	public static void moduleStaged() {
+		stagedModules++;
+	}
+
+	/**
+	 * @param avoidedDelay migration delay of the reactive migration minus the time still waited for the staged copy
+	 * @param duplicateTime time both the staged copy and the migrated module existed
+	 */
+	public static void stagedModuleUsed(double avoidedDelay, double duplicateTime) {
+		usedModules++;
+		avoidedMigrationDelay += avoidedDelay;
+		duplicateModuleTime += duplicateTime;
+	}
+
+	/**
+	 * @param transferDelay delay of the transfer of the copy
+	 * @param moduleSize size of the copy
+	 * @param duplicateTime time the copy existed
+	 */
+	public static void stagedModuleWasted(double transferDelay, long moduleSize, double duplicateTime) {
+		wastedModules++;
+		wastedNetworkUsage += transferDelay * moduleSize;
+		duplicateModuleTime += duplicateTime;
+	}
+
+	public static int getStagedModules() {
+		return stagedModules;
+	}
+
+	public static int getUsedModules() {
+		return usedModules;
+	}
+
+	public static int getWastedModules() {
+		return wastedModules;
+	}
+
+	public static double getAvoidedMigrationDelay() {
+		return avoidedMigrationDelay;
+	}
+
+	public static double getWastedNetworkUsage() {
+		return wastedNetworkUsage;
+	}
+
+	public static double getDuplicateModuleTime() {
+		return duplicateModuleTime;
+	}
+}
@@ -1,150 +1,588 @@
 package org.fog.utils;
 
-import org.apache.commons.math3.util.Pair;
 import org.fog.entities.FogDevice;
-import org.fog.entities.MicroserviceFogDevice;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
  * Created by Samodha Pallewatta on 6/18/2021.
  * Creates a routing table considering shortest path between devices.
+ * <p>
+ * Devices and their direct links (parent, children and cluster members) form an undirected graph, the shortest paths
+ * from every device are computed with Dijkstra, one source per task on the common fork-join pool. Among paths of the
+ * same latency the one whose next device comes first in the device list is taken, the all-pairs relaxation used before
+ * kept the first one its iterations found, so such routes may take another next device than before
+ * (RoutingCheck in org.fog.test.regression compares the two).
  */
 public class ShortestPathRoutingGenerator {
 
+    // shortest paths of the last routing table generated, shared by the devices as their routing table
+    private static ShortestPaths shortestPaths = new ShortestPaths(new int[0]);
+    // devices and device graph the shortest paths were computed on, kept for incremental updates
+    private static List<FogDevice> routedDevices = new ArrayList<>();
+    private static DeviceGraph routedGraph = new DeviceGraph(0);
+
+    /**
+     * Adjacency lists of the device graph, by device ordinal. The link type is the one known by the device of the list
+     * (ShortestPaths.NO_LINK if only the other device knows the link).
+     */
+    private static class DeviceGraph {
+        private final int[][] neighbours;
+        private final double[][] latencies;
+        private final byte[][] linkTypes;
+
+        private DeviceGraph(int size) {
+            neighbours = new int[size][];
+            latencies = new double[size][];
+            linkTypes = new byte[size][];
+        }
+
+        private int size() {
+            return neighbours.length;
+        }
+    }
+
     public static Map<Integer, Map<Integer, Integer>> generateRoutingTable(List<FogDevice> fogDevices) {
         // <source device id>  ->  <dest device id,next device to route to>
         Map<Integer, Map<Integer, Integer>> routing = new HashMap<>();
-        Map<String, Map<String, String>> routingString = new HashMap<>();
+        ShortestPaths paths = generateRoutes(fogDevices);
         int size = fogDevices.size();
-
-        int[][] routingMatrix = new int[size][size];
-        double[][] distanceMatrix = new double[size][size];
         for (int row = 0; row < size; row++) {
-            for (int column = 0; column < size; column++) {
-                routingMatrix[row][column] = -1;
-                distanceMatrix[row][column] = -1;
-            }
+            Map<Integer, Integer> route = new HashMap<>();
+            for (int column = 0; column < size; column++)
+                route.put(fogDevices.get(column).getId(), paths.getNextHopByOrdinal(row, column));
+            routing.put(fogDevices.get(row).getId(), route);
         }
+        return routing;
+    }
+
+    /**
+     * Computes the shortest paths between every pair of devices, to be shared by the devices as their routing table.
+     * The routing table is printed if Config.PRINT_ROUTING_TABLE is set.
+     */
+    public static ShortestPaths generateRoutes(List<FogDevice> fogDevices) {
+        ShortestPaths paths = computeShortestPaths(fogDevices);
+        if (Config.PRINT_ROUTING_TABLE)
+            printRoutingTable(fogDevices, paths);
+        return paths;
+    }
+
+    /**
+     * Computes the shortest paths between every pair of devices and keeps them for {@link #getLatency(int, int)}.
+     */
+    public static ShortestPaths computeShortestPaths(List<FogDevice> fogDevices) {
+        int size = fogDevices.size();
+        int[] deviceIds = new int[size];
+        for (int ordinal = 0; ordinal < size; ordinal++)
+            deviceIds[ordinal] = fogDevices.get(ordinal).getId();
+        final ShortestPaths paths = new ShortestPaths(deviceIds);
+        final DeviceGraph graph = buildGraph(fogDevices, paths);
 
-        boolean change = true;
-        boolean firstIteration = true;
-        while (change || firstIteration) {
-            change = false;
-            for (int row = 0; row < size; row++) {
-                for (int column = 0; column < size; column++) {
-                    double dist = distanceMatrix[row][column];
-                    FogDevice rFog = fogDevices.get(row);
-                    FogDevice cFog = fogDevices.get(column);
-                    if (firstIteration && dist < 0) {
-                        if (row == column) {
-                            dist = 0;
-                        } else {
-                            dist = directlyConnectedDist(rFog, cFog);
-                        }
-                        if (dist >= 0) {
-                            change = true;
-                            distanceMatrix[row][column] = dist;
-                            distanceMatrix[column][row] = dist;
-
-                            // directly connected
-                            routingMatrix[row][column] = cFog.getId();
-                            routingMatrix[column][row] = rFog.getId();
-                        }
-                    }
-                    if (dist < 0) {
-                        Pair<Double, Integer> result = indirectDist(row, column, size, distanceMatrix);
-                        dist = result.getFirst();
-                        int mid = result.getSecond();
-                        if (dist >= 0) {
-                            change = true;
-                            distanceMatrix[row][column] = dist;
-                            routingMatrix[row][column] = routingMatrix[row][mid];
-                        }
-                    }
-                    if (dist > 0) {
-                        Pair<Double, Integer> result = indirectDist(row, column, size, distanceMatrix);
-                        double distNew = result.getFirst();
-                        int mid = result.getSecond();
-                        if (distNew < dist) {
-                            change = true;
-                            distanceMatrix[row][column] = distNew;
-                            routingMatrix[row][column] = routingMatrix[row][mid];
-                        }
-                    }
+        IntStream.range(0, size).parallel().forEach(source -> computePaths(source, graph, paths));
+
+        routedDevices = new ArrayList<>(fogDevices);
+        routedGraph = graph;
+        shortestPaths = paths;
+        return shortestPaths;
+    }
+
+    /**
+     * Shortest paths computed for the last routing table generated.
+     */
+    public static ShortestPaths getShortestPaths() {
+        return shortestPaths;
+    }
+
+    /**
+     * Latency of the shortest path between two devices, as computed for the last routing table generated.
+     *
+     * @return -1 if no path between the devices is known
+     */
+    public static double getLatency(int sourceId, int destId) {
+        return shortestPaths.getLatency(sourceId, destId);
+    }
+
+    /**
+     * Updates the shortest paths after links between devices changed (a device moved to another parent, cluster
+     * members changed). The device graph is rebuilt and compared with the graph of the last routes, only the sources
+     * whose shortest paths can go through a changed link are computed again, in place so that devices sharing the
+     * routes see the update. If the devices are not the ones of the last routes all paths are computed again in a new
+     * ShortestPaths.
+     *
+     * @return the routing table entries that changed : source device id -> (destination device id -> next device id)
+     */
+    public static Map<Integer, Map<Integer, Integer>> updateRoutingTable(List<FogDevice> fogDevices) {
+        Map<Integer, Map<Integer, Integer>> delta = new HashMap<>();
+        if (!routedDevices.equals(fogDevices)) {
+            ShortestPaths previous = shortestPaths;
+            ShortestPaths paths = computeShortestPaths(fogDevices);
+            for (int source = 0; source < paths.getSize(); source++) {
+                for (int dest = 0; dest < paths.getSize(); dest++) {
+                    int sourceId = paths.getDeviceId(source);
+                    int destId = paths.getDeviceId(dest);
+                    addChangedRoute(delta, sourceId, destId, previous.getNextHop(sourceId, destId), paths.getNextHopByOrdinal(source, dest));
                 }
             }
-            firstIteration = false;
+            return delta;
         }
 
-        for (int row = 0; row < size; row++) {
-            for (int column = 0; column < size; column++) {
-                int sourceId = fogDevices.get(row).getId();
-                int destId = fogDevices.get(column).getId();
-                if (routing.containsKey(sourceId)) {
-                    routing.get(sourceId).put(destId, routingMatrix[row][column]);
-                    routingString.get(fogDevices.get(row).getName()).put(fogDevices.get(column).getName(), getFogDeviceById(routingMatrix[row][column], fogDevices).getName());
-                } else {
-                    Map<Integer, Integer> route = new HashMap<>();
-                    route.put(destId, routingMatrix[row][column]);
-                    routing.put(sourceId, route);
-
-                    Map<String, String> routeS = new HashMap<>();
-                    routeS.put(fogDevices.get(column).getName(), getFogDeviceById(routingMatrix[row][column], fogDevices).getName());
-                    routingString.put(fogDevices.get(row).getName(), routeS);
+        final int size = fogDevices.size();
+        final ShortestPaths paths = shortestPaths;
+        final DeviceGraph graph = buildGraph(fogDevices, paths);
+        Set<Integer> retyped = new HashSet<>();
+        List<LinkChange> changes = getLinkChanges(graph, retyped);
+        if (changes.isEmpty() && retyped.isEmpty())
+            return delta;
+
+        Set<Integer> leaves = getMovedLeaves(changes, graph);
+        final boolean[] affected = leaves != null ? new boolean[size] : findAffectedSources(changes);
+        if (leaves != null) {
+            for (int leaf : leaves)
+                affected[leaf] = true;
+        }
+        for (int node : retyped)
+            affected[node] = true;
+        routedGraph = graph;
+
+        Map<Integer, int[]> previousRows = new HashMap<>();
+        for (int source = 0; source < size; source++) {
+            if (affected[source])
+                previousRows.put(source, Arrays.copyOfRange(paths.routes, source * size, (source + 1) * size));
+        }
+        Map<Integer, int[]> previousColumns = new HashMap<>();
+        if (leaves != null) {
+            for (int leaf : leaves) {
+                int[] column = new int[size];
+                for (int source = 0; source < size; source++)
+                    column[source] = paths.routes[source * size + leaf];
+                previousColumns.put(leaf, column);
+            }
+        }
+
+        IntStream.range(0, size).parallel().filter(source -> affected[source]).forEach(source -> computePaths(source, graph, paths));
+        if (leaves != null) {
+            for (int leaf : leaves)
+                updateLeafColumn(leaf, graph, paths);
+        }
+
+        for (Map.Entry<Integer, int[]> row : previousRows.entrySet()) {
+            int source = row.getKey();
+            for (int dest = 0; dest < size; dest++)
+                addChangedRoute(delta, paths, source, dest, row.getValue()[dest]);
+        }
+        for (Map.Entry<Integer, int[]> column : previousColumns.entrySet()) {
+            int dest = column.getKey();
+            for (int source = 0; source < size; source++) {
+                if (!affected[source])
+                    addChangedRoute(delta, paths, source, dest, column.getValue()[source]);
+            }
+        }
+        return delta;
+    }
+
+    private static class LinkChange {
+        private final int node;
+        private final int other;
+        private final Double before;
+        private final Double after;
+
+        private LinkChange(int node, int other, Double before, Double after) {
+            this.node = node;
+            this.other = other;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /**
+     * Links added, removed or with a new latency compared to the graph of the last routes.
+     *
+     * @param retyped completed with the devices that know one of their links differently (parent, child, cluster
+     *                member) while the link itself did not change
+     */
+    private static List<LinkChange> getLinkChanges(DeviceGraph graph, Set<Integer> retyped) {
+        List<LinkChange> changes = new ArrayList<>();
+        for (int node = 0; node < graph.size(); node++) {
+            boolean sameLinks = Arrays.equals(routedGraph.neighbours[node], graph.neighbours[node])
+                    && Arrays.equals(routedGraph.latencies[node], graph.latencies[node]);
+            if (sameLinks) {
+                if (!Arrays.equals(routedGraph.linkTypes[node], graph.linkTypes[node]))
+                    retyped.add(node);
+                continue;
+            }
+            Map<Integer, Double> before = getLinks(routedGraph, node);
+            Map<Integer, Double> after = getLinks(graph, node);
+            Set<Integer> others = new HashSet<>(before.keySet());
+            others.addAll(after.keySet());
+            for (int other : others) {
+                // both ends of a changed link see the change, kept once
+                if (node < other && !Objects.equals(before.get(other), after.get(other)))
+                    changes.add(new LinkChange(node, other, before.get(other), after.get(other)));
+            }
+            if (!getLinkTypes(routedGraph, node).equals(getLinkTypes(graph, node)))
+                retyped.add(node);
+        }
+        return changes;
+    }
+
+    private static Map<Integer, Double> getLinks(DeviceGraph graph, int node) {
+        Map<Integer, Double> links = new HashMap<>();
+        for (int i = 0; i < graph.neighbours[node].length; i++)
+            links.put(graph.neighbours[node][i], graph.latencies[node][i]);
+        return links;
+    }
+
+    private static Map<Integer, Byte> getLinkTypes(DeviceGraph graph, int node) {
+        Map<Integer, Byte> linkTypes = new HashMap<>();
+        for (int i = 0; i < graph.neighbours[node].length; i++)
+            linkTypes.put(graph.neighbours[node][i], graph.linkTypes[node][i]);
+        return linkTypes;
+    }
+
+    /**
+     * Devices at one end of every changed link that have at most one link before and after the change, typically a
+     * mobile device moved to another parent. No path goes through such a device, only its own row and column of the
+     * routes change.
+     *
+     * @return null if some changed link has no such device, or if one of them is linked to another of them
+     */
+    private static Set<Integer> getMovedLeaves(List<LinkChange> changes, DeviceGraph graph) {
+        Set<Integer> leaves = new HashSet<>();
+        for (LinkChange change : changes) {
+            if (isLeaf(change.node, graph))
+                leaves.add(change.node);
+            else if (isLeaf(change.other, graph))
+                leaves.add(change.other);
+            else
+                return null;
+        }
+        for (int leaf : leaves) {
+            if (graph.neighbours[leaf].length == 1 && leaves.contains(graph.neighbours[leaf][0]))
+                return null;
+        }
+        return leaves;
+    }
+
+    private static boolean isLeaf(int node, DeviceGraph graph) {
+        return graph.neighbours[node].length <= 1 && routedGraph.neighbours[node].length <= 1;
+    }
+
+    /**
+     * Routes towards a leaf are the routes towards the device it is linked to.
+     */
+    private static void updateLeafColumn(int leaf, DeviceGraph graph, ShortestPaths paths) {
+        int size = paths.getSize();
+        int linked = graph.neighbours[leaf].length == 1 ? graph.neighbours[leaf][0] : -1;
+        int linkedType = ShortestPaths.NO_LINK;
+        if (linked != -1) {
+            for (int i = 0; i < graph.neighbours[linked].length; i++) {
+                if (graph.neighbours[linked][i] == leaf)
+                    linkedType = graph.linkTypes[linked][i];
+            }
+        }
+        for (int source = 0; source < size; source++) {
+            if (source == leaf)
+                continue;
+            if (linked == -1 || paths.routes[source * size + linked] == -1) {
+                paths.routes[source * size + leaf] = -1;
+                paths.latency[source * size + leaf] = -1;
+            } else {
+                paths.routes[source * size + leaf] = source == linked ? ShortestPaths.encode(leaf, linkedType) : paths.routes[source * size + linked];
+                paths.latency[source * size + leaf] = (float) (paths.latency[source * size + linked] + graph.latencies[leaf][0]);
+            }
+        }
+    }
+
+    /**
+     * Sources whose shortest paths may change with the new device graph : paths going through a link removed or made
+     * slower, and paths a link added or made faster can shorten (or tie with).
+     */
+    private static boolean[] findAffectedSources(List<LinkChange> changes) {
+        int size = shortestPaths.getSize();
+        boolean[] affected = new boolean[size];
+        float[] distance = shortestPaths.latency;
+        for (LinkChange change : changes) {
+            for (int source = 0; source < size; source++) {
+                if (affected[source])
+                    continue;
+                double toNode = distance[source * size + change.node];
+                double toOther = distance[source * size + change.other];
+                if (change.before != null && usesLink(toNode, toOther, change.before))
+                    affected[source] = true;
+                else if (change.after != null && improvedByLink(toNode, toOther, change.after))
+                    affected[source] = true;
+            }
+        }
+        return affected;
+    }
+
+    private static boolean usesLink(double toNode, double toOther, double linkLatency) {
+        if (toNode < 0 || toOther < 0)
+            return false;
+        return !greater(toNode + linkLatency, toOther) && !greater(toOther, toNode + linkLatency)
+                || !greater(toOther + linkLatency, toNode) && !greater(toNode, toOther + linkLatency);
+    }
+
+    private static boolean improvedByLink(double toNode, double toOther, double linkLatency) {
+        if (toNode >= 0 && (toOther < 0 || !greater(toNode + linkLatency, toOther)))
+            return true;
+        return toOther >= 0 && (toNode < 0 || !greater(toOther + linkLatency, toNode));
+    }
+
+    /**
+     * Latencies are kept as floats, compares with a tolerance so that equal paths are not missed.
+     */
+    private static boolean greater(double latency1, double latency2) {
+        return latency1 > latency2 + 1e-5 * Math.max(1, Math.abs(latency2));
+    }
+
+    private static void addChangedRoute(Map<Integer, Map<Integer, Integer>> delta, ShortestPaths paths, int source, int dest, int previousRoute) {
+        int previous = previousRoute == -1 ? -1 : paths.getDeviceId(ShortestPaths.nextOrdinal(previousRoute));
+        addChangedRoute(delta, paths.getDeviceId(source), paths.getDeviceId(dest), previous, paths.getNextHopByOrdinal(source, dest));
+    }
+
+    private static void addChangedRoute(Map<Integer, Map<Integer, Integer>> delta, int sourceId, int destId, int previous, int next) {
+        if (next != previous) {
+            if (!delta.containsKey(sourceId))
+                delta.put(sourceId, new HashMap<>());
+            delta.get(sourceId).put(destId, next);
+        }
+    }
+
+    /**
+     * Builds the adjacency lists of the device graph. Two devices are linked if one of them has the other as parent,
+     * child or cluster member. The latency of a link is the one known by the device first in the device list, or by
+     * the other device if the first one does not know the link.
+     */
+    private static DeviceGraph buildGraph(List<FogDevice> fogDevices, ShortestPaths paths) {
+        int size = fogDevices.size();
+        List<Set<Integer>> children = new ArrayList<>(size);
+        List<Set<Integer>> clusters = new ArrayList<>(size);
+        Set<Long> links = new LinkedHashSet<>();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            FogDevice device = fogDevices.get(ordinal);
+            children.add(device.getChildrenIds() != null ? new HashSet<>(device.getChildrenIds()) : new HashSet<Integer>());
+            clusters.add(device.getClusterMembers() != null ? new HashSet<>(device.getClusterMembers()) : new HashSet<Integer>());
+            addLink(links, ordinal, paths.getOrdinal(device.getParentId()), size);
+            for (int childId : children.get(ordinal))
+                addLink(links, ordinal, paths.getOrdinal(childId), size);
+            for (int memberId : clusters.get(ordinal))
+                addLink(links, ordinal, paths.getOrdinal(memberId), size);
+        }
+
+        int[] degree = new int[size];
+        List<int[]> ends = new ArrayList<>(links.size());
+        List<Double> linkLatencies = new ArrayList<>(links.size());
+        for (long link : links) {
+            int first = (int) (link / size);
+            int second = (int) (link % size);
+            double latency = directlyConnectedDist(fogDevices.get(first), fogDevices.get(second), children.get(first), clusters.get(first));
+            if (latency < 0)
+                latency = directlyConnectedDist(fogDevices.get(second), fogDevices.get(first), children.get(second), clusters.get(second));
+            if (latency < 0)
+                continue;
+            ends.add(new int[]{first, second});
+            linkLatencies.add(latency);
+            degree[first]++;
+            degree[second]++;
+        }
+
+        DeviceGraph graph = new DeviceGraph(size);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            graph.neighbours[ordinal] = new int[degree[ordinal]];
+            graph.latencies[ordinal] = new double[degree[ordinal]];
+            graph.linkTypes[ordinal] = new byte[degree[ordinal]];
+            degree[ordinal] = 0;
+        }
+        for (int i = 0; i < ends.size(); i++) {
+            int first = ends.get(i)[0];
+            int second = ends.get(i)[1];
+            addNeighbour(graph, degree, first, second, linkLatencies.get(i), getLinkType(fogDevices.get(first), fogDevices.get(second), children.get(first), clusters.get(first)));
+            addNeighbour(graph, degree, second, first, linkLatencies.get(i), getLinkType(fogDevices.get(second), fogDevices.get(first), children.get(second), clusters.get(second)));
+        }
+        return graph;
+    }
+
+    private static void addLink(Set<Long> links, int ordinal, int other, int size) {
+        if (other == -1 || other == ordinal)
+            return;
+        links.add((long) Math.min(ordinal, other) * size + Math.max(ordinal, other));
+    }
+
+    private static void addNeighbour(DeviceGraph graph, int[] degree, int node, int neighbour, double latency, int linkType) {
+        graph.neighbours[node][degree[node]] = neighbour;
+        graph.latencies[node][degree[node]] = latency;
+        graph.linkTypes[node][degree[node]++] = (byte) linkType;
+    }
+
+    private static double directlyConnectedDist(FogDevice rFog, FogDevice cFog, Set<Integer> children, Set<Integer> cluster) {
+        if (cFog.getId() == rFog.getParentId()) {
+            return rFog.getUplinkLatency();
+        } else if (children.contains(cFog.getId())) {
+            Double latency = rFog.getChildToLatencyMap().get(cFog.getId());
+            return latency != null ? latency : -1;
+        } else if (cluster.contains(cFog.getId())) {
+            Double latency = rFog.getClusterMembersToLatencyMap().get(cFog.getId());
+            return latency != null ? latency : -1;
+        }
+        return -1;
+    }
+
+    private static int getLinkType(FogDevice rFog, FogDevice cFog, Set<Integer> children, Set<Integer> cluster) {
+        if (cFog.getId() == rFog.getParentId())
+            return ShortestPaths.PARENT_LINK;
+        else if (children.contains(cFog.getId()))
+            return ShortestPaths.CHILD_LINK;
+        else if (cluster.contains(cFog.getId()))
+            return ShortestPaths.CLUSTER_LINK;
+        return ShortestPaths.NO_LINK;
+    }
+
+    /**
+     * Dijkstra from one source, writes the row of the source in the routes and latencies.
+     */
+    private static void computePaths(int source, DeviceGraph graph, ShortestPaths paths) {
+        int size = graph.size();
+        double[] dist = new double[size];
+        int[] firstHop = new int[size];
+        int[] firstLinkType = new int[size];
+        boolean[] settled = new boolean[size];
+        Arrays.fill(dist, Double.MAX_VALUE);
+        Arrays.fill(firstHop, -1);
+        dist[source] = 0;
+        firstHop[source] = source;
+        firstLinkType[source] = ShortestPaths.NO_LINK;
+
+        DistanceHeap heap = new DistanceHeap(size, dist);
+        heap.update(source);
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            settled[node] = true;
+            for (int i = 0; i < graph.neighbours[node].length; i++) {
+                int next = graph.neighbours[node][i];
+                if (settled[next])
+                    continue;
+                double distance = dist[node] + graph.latencies[node][i];
+                int hop = node == source ? next : firstHop[node];
+                if (distance < dist[next] || (distance == dist[next] && hop < firstHop[next])) {
+                    dist[next] = distance;
+                    firstHop[next] = hop;
+                    firstLinkType[next] = node == source ? graph.linkTypes[node][i] : firstLinkType[node];
+                    heap.update(next);
                 }
             }
         }
 
+        int offset = source * size;
+        for (int dest = 0; dest < size; dest++) {
+            paths.routes[offset + dest] = firstHop[dest] != -1 ? ShortestPaths.encode(firstHop[dest], firstLinkType[dest]) : -1;
+            paths.latency[offset + dest] = firstHop[dest] != -1 ? (float) dist[dest] : -1;
+        }
+    }
+
+    private static void printRoutingTable(List<FogDevice> fogDevices, ShortestPaths paths) {
+        Map<Integer, String> names = new HashMap<>();
+        for (FogDevice device : fogDevices)
+            names.put(device.getId(), device.getName());
+        Map<String, Map<String, String>> routingString = new HashMap<>();
+        int size = fogDevices.size();
+        for (int row = 0; row < size; row++) {
+            Map<String, String> routeS = new HashMap<>();
+            for (int column = 0; column < size; column++)
+                routeS.put(fogDevices.get(column).getName(), names.get(paths.getNextHopByOrdinal(row, column)));
+            routingString.put(fogDevices.get(row).getName(), routeS);
+        }
+
         System.out.println("Routing Table : ");
         for (String deviceName : routingString.keySet()) {
             System.out.println(deviceName + " : " + routingString.get(deviceName).toString());
         }
         System.out.println("\n");
-
-        return routing;
     }
 
+    /**
+     * Binary min-heap of device ordinals on their current distance, with decrease-key.
+     */
+    private static class DistanceHeap {
+        private final int[] heap;
+        private final int[] position;
+        private final double[] dist;
+        private int size = 0;
+
+        private DistanceHeap(int capacity, double[] dist) {
+            heap = new int[capacity];
+            position = new int[capacity];
+            Arrays.fill(position, -1);
+            this.dist = dist;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
 
-    private static Pair<Double, Integer> indirectDist(int row, int dest, int size, double[][] distanceMatrix) {
-        double minDistFromDirectConn = distanceMatrix[row][dest];
-        int midPoint = -1;
-        for (int column = 0; column < size; column++) {
-            if (distanceMatrix[row][column] >= 0 && distanceMatrix[column][dest] >= 0) {
-                double totalDist = distanceMatrix[row][column] + distanceMatrix[column][dest];
-                if (minDistFromDirectConn >= 0 && totalDist < minDistFromDirectConn) {
-                    minDistFromDirectConn = totalDist;
-                    midPoint = column;
-                } else if (minDistFromDirectConn < 0) {
-                    minDistFromDirectConn = totalDist;
-                    midPoint = column;
+        /**
+         * Inserts a node or moves it up after its distance decreased.
+         */
+        private void update(int node) {
+            int index = position[node];
+            if (index == -1) {
+                index = size++;
+                heap[index] = node;
+                position[node] = index;
+            }
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!before(heap[index], heap[parent]))
+                    break;
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private int poll() {
+            int top = heap[0];
+            position[top] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                position[heap[0]] = 0;
+                int index = 0;
+                while (true) {
+                    int smallest = index;
+                    int left = 2 * index + 1;
+                    int right = left + 1;
+                    if (left < size && before(heap[left], heap[smallest]))
+                        smallest = left;
+                    if (right < size && before(heap[right], heap[smallest]))
+                        smallest = right;
+                    if (smallest == index)
+                        break;
+                    swap(index, smallest);
+                    index = smallest;
                 }
             }
+            return top;
         }
-        return new Pair<>(minDistFromDirectConn, midPoint);
-    }
 
-    private static double directlyConnectedDist(FogDevice rFog, FogDevice cFog) {
-        int parent = rFog.getParentId();
-        List<Integer> children = rFog.getChildrenIds();
-        List<Integer> cluster = (rFog).getClusterMembers();
-        if (cFog.getId() == parent) {
-            return rFog.getUplinkLatency();
-        } else if (children != null && children.contains(cFog.getId())) {
-            return rFog.getChildToLatencyMap().get(cFog.getId());
-        } else if (cluster != null && cluster.contains(cFog.getId())) {
-            return ((MicroserviceFogDevice) rFog).getClusterMembersToLatencyMap().get(cFog.getId());
+        private boolean before(int node1, int node2) {
+            return dist[node1] < dist[node2] || (dist[node1] == dist[node2] && node1 < node2);
         }
-        return -1;
-    }
 
-    private static FogDevice getFogDeviceById(int id, List<FogDevice> fogDevices) {
-        for (FogDevice f : fogDevices) {
-            if (f.getId() == id)
-                return f;
+        private void swap(int i, int j) {
+            int node = heap[i];
+            heap[i] = heap[j];
+            heap[j] = node;
+            position[heap[i]] = i;
+            position[heap[j]] = j;
         }
-        return null;
     }
 }
@@ -0,0 +1,119 @@
+package org.fog.utils;
+
+import java.util.Arrays;
+
+/**
+ * Shortest paths between every pair of devices, as dense matrices indexed by device ordinal (position of the device in
+ * the device list the paths were computed for): the next device on the path with the type of the link to it, and the
+ * latency of the path.
+ * <p>
+ * A single instance is shared by all devices as their routing table and is updated in place by
+ * ShortestPathRoutingGenerator when links change, a forwarding decision is a few array loads.
+ */
+public class ShortestPaths {
+
+    public static final int NO_LINK = 0;
+    public static final int PARENT_LINK = 1;
+    public static final int CHILD_LINK = 2;
+    public static final int CLUSTER_LINK = 3;
+
+    private static final int LINK_TYPE_BITS = 2;
+    private static final int LINK_TYPE_MASK = (1 << LINK_TYPE_BITS) - 1;
+
+    private final int[] deviceIds;
+    /**
+     * Ordinal of each device id, -1 for ids that are not devices of the paths
+     */
+    private final int[] idToOrdinal;
+    /**
+     * Ordinal of the next device on the path from row to column and type of the link to it, see encode. -1 if the
+     * column is not reachable. Row major, n x n.
+     */
+    final int[] routes;
+    /**
+     * Latency of the path from row to column, -1 if the column is not reachable. Row major, n x n.
+     */
+    final float[] latency;
+
+    public ShortestPaths(int[] deviceIds) {
+        this.deviceIds = deviceIds;
+        int maxId = -1;
+        for (int deviceId : deviceIds)
+            maxId = Math.max(maxId, deviceId);
+        idToOrdinal = new int[maxId + 1];
+        Arrays.fill(idToOrdinal, -1);
+        for (int ordinal = 0; ordinal < deviceIds.length; ordinal++)
+            idToOrdinal[deviceIds[ordinal]] = ordinal;
+        routes = new int[deviceIds.length * deviceIds.length];
+        latency = new float[deviceIds.length * deviceIds.length];
+        Arrays.fill(routes, -1);
+        Arrays.fill(latency, -1);
+    }
+
+    static int encode(int nextOrdinal, int linkType) {
+        return nextOrdinal << LINK_TYPE_BITS | linkType;
+    }
+
+    static int nextOrdinal(int route) {
+        return route == -1 ? -1 : route >>> LINK_TYPE_BITS;
+    }
+
+    public int getSize() {
+        return deviceIds.length;
+    }
+
+    /**
+     * @return the ordinal of the device, -1 if the device is not part of the paths
+     */
+    public int getOrdinal(int deviceId) {
+        return deviceId >= 0 && deviceId < idToOrdinal.length ? idToOrdinal[deviceId] : -1;
+    }
+
+    public int getDeviceId(int ordinal) {
+        return deviceIds[ordinal];
+    }
+
+    private int getRoute(int sourceId, int destId) {
+        int source = getOrdinal(sourceId);
+        int dest = getOrdinal(destId);
+        if (source == -1 || dest == -1)
+            return -1;
+        return routes[source * deviceIds.length + dest];
+    }
+
+    /**
+     * @return the id of the next device on the path from source to destination, -1 if there is no path
+     */
+    public int getNextHop(int sourceId, int destId) {
+        int route = getRoute(sourceId, destId);
+        return route == -1 ? -1 : deviceIds[nextOrdinal(route)];
+    }
+
+    /**
+     * @return the type of the link from source to the next device on the path to destination, NO_LINK if there is no
+     * path or the source does not know the link
+     */
+    public int getLinkType(int sourceId, int destId) {
+        int route = getRoute(sourceId, destId);
+        return route == -1 ? NO_LINK : route & LINK_TYPE_MASK;
+    }
+
+    /**
+     * Same as getNextHop, by device ordinal
+     */
+    public int getNextHopByOrdinal(int source, int dest) {
+        int route = routes[source * deviceIds.length + dest];
+        return route == -1 ? -1 : deviceIds[nextOrdinal(route)];
+    }
+
+    /**
+     * @return the latency of the path from source to destination, -1 if there is no path
+     */
+    public double getLatency(int sourceId, int destId) {
+        int source = getOrdinal(sourceId);
+        int dest = getOrdinal(destId);
+        if (source == -1 || dest == -1)
+            return -1;
+        return latency[source * deviceIds.length + dest];
+    }
+}
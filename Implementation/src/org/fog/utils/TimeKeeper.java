@@ -26,6 +26,10 @@ public class TimeKeeper {
 
 	private Map<Integer, Integer> loopIdToLatencyQoSSuccessCount = new HashMap<>();
 
+	// loop delays predicted by latency-aware placement, averaged over the placed requests
+	private Map<Integer, Double> loopIdToPredictedDelay = new HashMap<>();
+	private Map<Integer, Integer> loopIdToPredictionNum = new HashMap<>();
+
 	// loopID -> < Microservice -> < deviceID, <requestCount,totalExecutionTime > >
 	private Map<Integer, Map<String, Map<Integer, Pair<Integer, Double>>>> costCalcData = new HashMap<>();
 	// last execution time
@@ -161,6 +165,19 @@ public class TimeKeeper {
 		return loopIdToLatencyQoSSuccessCount;
 	}
 
+	public void addPredictedLoopDelay(int loopId, double delay) {
+		Integer count = loopIdToPredictionNum.get(loopId);
+		if (count == null)
+			count = 0;
+		Double average = loopIdToPredictedDelay.get(loopId);
+		loopIdToPredictedDelay.put(loopId, ((average != null ? average : 0) * count + delay) / (count + 1));
+		loopIdToPredictionNum.put(loopId, count + 1);
+	}
+
+	public Map<Integer, Double> getLoopIdToPredictedDelay() {
+		return loopIdToPredictedDelay;
+	}
+
 	public void addCostCalcData(List<Integer> loopIds, String microserviceName, int deviceId, int tupleId) {
 //		for (Integer loopid : loopIds) {
 //			if (costCalcData.containsKey(loopid)) {
@@ -0,0 +1,232 @@
+package org.fog.utils;
+
+import org.fog.entities.FogDevice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Ancestry of the devices in the parent/child topology, for the common ancestor and migration delay lookups of
+ * handovers.
+ * <p>
+ * Each device keeps its depth, its ancestors at distances 1, 2, 4, ... (binary lifting) and the sums of 1/uplink and
+ * 1/downlink bandwidth from the device up to the root. The common ancestor of two devices is found in O(log depth) and
+ * the transfer delay along the path from a device up to one of its ancestors is a difference of two sums.
+ * <p>
+ * The index does not observe the devices, re-parenting must be reported with setParent. Only the moved device and its
+ * descendants are updated.
+ */
+public class TopologyAncestry {
+
+    private final int[] deviceIds;
+    private final int[] idToOrdinal;
+    private final int[] parent;
+    private final int[] depth;
+    private final List<List<Integer>> children;
+    /**
+     * ancestors[k][ordinal] is the ancestor of the device at distance 2^k, -1 above the root
+     */
+    private final int[][] ancestors;
+    private final double[] inverseUplinkBandwidth;
+    private final double[] inverseDownlinkBandwidth;
+    private final double[] uplinkBandwidthSum;
+    private final double[] downlinkBandwidthSum;
+
+    public TopologyAncestry(List<FogDevice> fogDevices) {
+        int size = fogDevices.size();
+        deviceIds = new int[size];
+        int maxId = -1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            deviceIds[ordinal] = fogDevices.get(ordinal).getId();
+            maxId = Math.max(maxId, deviceIds[ordinal]);
+        }
+        idToOrdinal = new int[maxId + 1];
+        Arrays.fill(idToOrdinal, -1);
+        for (int ordinal = 0; ordinal < size; ordinal++)
+            idToOrdinal[deviceIds[ordinal]] = ordinal;
+
+        parent = new int[size];
+        depth = new int[size];
+        children = new ArrayList<>(size);
+        ancestors = new int[Math.max(1, 32 - Integer.numberOfLeadingZeros(size))][size];
+        inverseUplinkBandwidth = new double[size];
+        inverseDownlinkBandwidth = new double[size];
+        uplinkBandwidthSum = new double[size];
+        downlinkBandwidthSum = new double[size];
+        for (int ordinal = 0; ordinal < size; ordinal++)
+            children.add(new ArrayList<>());
+
+        List<Integer> roots = new ArrayList<>();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            FogDevice fogDevice = fogDevices.get(ordinal);
+            inverseUplinkBandwidth[ordinal] = 1 / fogDevice.getUplinkBandwidth();
+            inverseDownlinkBandwidth[ordinal] = 1 / fogDevice.getDownlinkBandwidth();
+            parent[ordinal] = getOrdinal(fogDevice.getParentId());
+            if (parent[ordinal] == -1)
+                roots.add(ordinal);
+            else
+                children.get(parent[ordinal]).add(ordinal);
+        }
+        for (int root : roots)
+            updateSubtree(root);
+    }
+
+    /**
+     * @return the ordinal of the device, -1 if the device is not indexed
+     */
+    private int getOrdinal(int deviceId) {
+        return deviceId >= 0 && deviceId < idToOrdinal.length ? idToOrdinal[deviceId] : -1;
+    }
+
+    private int getExistingOrdinal(int deviceId) {
+        int ordinal = getOrdinal(deviceId);
+        if (ordinal == -1)
+            throw new IllegalArgumentException("Device " + deviceId + " is not part of the topology");
+        return ordinal;
+    }
+
+    /**
+     * Recomputes the depth, ancestors and bandwidth sums of the device and its descendants from those of its parent.
+     */
+    private void updateSubtree(int root) {
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            int ordinal = queue.poll();
+            int parentOrdinal = parent[ordinal];
+            if (parentOrdinal == -1) {
+                depth[ordinal] = 0;
+                uplinkBandwidthSum[ordinal] = 0;
+                downlinkBandwidthSum[ordinal] = 0;
+            } else {
+                depth[ordinal] = depth[parentOrdinal] + 1;
+                uplinkBandwidthSum[ordinal] = uplinkBandwidthSum[parentOrdinal] + inverseUplinkBandwidth[ordinal];
+                downlinkBandwidthSum[ordinal] = downlinkBandwidthSum[parentOrdinal] + inverseDownlinkBandwidth[ordinal];
+            }
+            ancestors[0][ordinal] = parentOrdinal;
+            for (int k = 1; k < ancestors.length; k++) {
+                int half = ancestors[k - 1][ordinal];
+                ancestors[k][ordinal] = half == -1 ? -1 : ancestors[k - 1][half];
+            }
+            queue.addAll(children.get(ordinal));
+        }
+    }
+
+    /**
+     * Moves the device, with its descendants, under a new parent.
+     *
+     * @param parentId id of the new parent, -1 to make the device a root
+     */
+    public void setParent(int deviceId, int parentId) {
+        int ordinal = getExistingOrdinal(deviceId);
+        int parentOrdinal = parentId == -1 ? -1 : getExistingOrdinal(parentId);
+        if (parent[ordinal] == parentOrdinal)
+            return;
+        if (parentOrdinal != -1 && (parentOrdinal == ordinal || isAncestorOrdinal(ordinal, parentOrdinal)))
+            throw new IllegalArgumentException("Device " + parentId + " is a descendant of device " + deviceId);
+        if (parent[ordinal] != -1)
+            children.get(parent[ordinal]).remove(Integer.valueOf(ordinal));
+        parent[ordinal] = parentOrdinal;
+        if (parentOrdinal != -1)
+            children.get(parentOrdinal).add(ordinal);
+        updateSubtree(ordinal);
+    }
+
+    public int getDepth(int deviceId) {
+        return depth[getExistingOrdinal(deviceId)];
+    }
+
+    private int getAncestorAtDepth(int ordinal, int targetDepth) {
+        int distance = depth[ordinal] - targetDepth;
+        for (int k = 0; distance > 0; k++, distance >>= 1) {
+            if ((distance & 1) != 0)
+                ordinal = ancestors[k][ordinal];
+        }
+        return ordinal;
+    }
+
+    private boolean isAncestorOrdinal(int ancestorOrdinal, int ordinal) {
+        return depth[ancestorOrdinal] < depth[ordinal] && getAncestorAtDepth(ordinal, depth[ancestorOrdinal]) == ancestorOrdinal;
+    }
+
+    /**
+     * @return true if the ancestor is a strict ancestor of the device
+     */
+    public boolean isAncestor(int ancestorId, int deviceId) {
+        return isAncestorOrdinal(getExistingOrdinal(ancestorId), getExistingOrdinal(deviceId));
+    }
+
+    /**
+     * @return the id of the deepest device that is the device or an ancestor of both devices, -1 if the devices are in
+     * different trees
+     */
+    public int getCommonAncestor(int deviceId1, int deviceId2) {
+        int ordinal1 = getExistingOrdinal(deviceId1);
+        int ordinal2 = getExistingOrdinal(deviceId2);
+        if (depth[ordinal1] > depth[ordinal2])
+            ordinal1 = getAncestorAtDepth(ordinal1, depth[ordinal2]);
+        else
+            ordinal2 = getAncestorAtDepth(ordinal2, depth[ordinal1]);
+        if (ordinal1 == ordinal2)
+            return deviceIds[ordinal1];
+        for (int k = ancestors.length - 1; k >= 0; k--) {
+            if (ancestors[k][ordinal1] != ancestors[k][ordinal2]) {
+                ordinal1 = ancestors[k][ordinal1];
+                ordinal2 = ancestors[k][ordinal2];
+            }
+        }
+        return parent[ordinal1] == -1 ? -1 : deviceIds[parent[ordinal1]];
+    }
+
+    private void checkPath(int ordinal, int ancestorOrdinal) {
+        if (ordinal != ancestorOrdinal && !isAncestorOrdinal(ancestorOrdinal, ordinal))
+            throw new IllegalArgumentException("Device " + deviceIds[ancestorOrdinal] + " is not an ancestor of device " + deviceIds[ordinal]);
+    }
+
+    /**
+     * @return the devices on the path from the source up to the ancestor and down to the destination, both included
+     */
+    public List<Integer> getRoute(int sourceId, int ancestorId, int destinationId) {
+        int source = getExistingOrdinal(sourceId);
+        int ancestor = getExistingOrdinal(ancestorId);
+        int destination = getExistingOrdinal(destinationId);
+        checkPath(source, ancestor);
+        checkPath(destination, ancestor);
+        List<Integer> route = new ArrayList<>();
+        for (int ordinal = source; ordinal != ancestor; ordinal = parent[ordinal])
+            route.add(deviceIds[ordinal]);
+        route.add(ancestorId);
+        int downPathStart = route.size();
+        for (int ordinal = destination; ordinal != ancestor; ordinal = parent[ordinal])
+            route.add(downPathStart, deviceIds[ordinal]);
+        return route;
+    }
+
+    /**
+     * @return the time to send data of the size over the uplinks of the device and its ancestors below the ancestor
+     */
+    public double getUpDelay(int deviceId, int ancestorId, double size) {
+        int ordinal = getExistingOrdinal(deviceId);
+        int ancestorOrdinal = getExistingOrdinal(ancestorId);
+        checkPath(ordinal, ancestorOrdinal);
+        if (ordinal == ancestorOrdinal)
+            return 0.0;
+        return size * (uplinkBandwidthSum[ordinal] - uplinkBandwidthSum[ancestorOrdinal]);
+    }
+
+    /**
+     * @return the time to send data of the size from the ancestor down to the device, over the downlinks of the device
+     * and its ancestors below the ancestor
+     */
+    public double getDownDelay(int deviceId, int ancestorId, double size) {
+        int ordinal = getExistingOrdinal(deviceId);
+        int ancestorOrdinal = getExistingOrdinal(ancestorId);
+        checkPath(ordinal, ancestorOrdinal);
+        if (ordinal == ancestorOrdinal)
+            return 0.0;
+        return size * (downlinkBandwidthSum[ordinal] - downlinkBandwidthSum[ancestorOrdinal]);
+    }
+}
@@ -0,0 +1,37 @@
+package org.fog.utils;
+
+/**
+ * Counts the TUPLE_ACK events scheduled by fog devices under the configured {@link Config#TUPLE_ACK_POLICY},
+ * compared to the one event per tuple of the per-tuple policy.
+ */
+public class TupleAckMonitor {
+
+	private static long acknowledgedTuples = 0;
+	private static long ackEvents = 0;
+
+	public static void acknowledgingTuple(){
+		acknowledgedTuples++;
+	}
+
+	public static void schedulingAckEvents(int events){
+		ackEvents += events;
+	}
+
+	/**
+	 * Tuples received by fog devices that called for an acknowledgement
+	 */
+	public static long getAcknowledgedTuples(){
+		return acknowledgedTuples;
+	}
+
+	/**
+	 * Events scheduled for acknowledgements, including the window events of the coalesced policy
+	 */
+	public static long getAckEvents(){
+		return ackEvents;
+	}
+
+	public static long getAvoidedAckEvents(){
+		return acknowledgedTuples - ackEvents;
+	}
+}